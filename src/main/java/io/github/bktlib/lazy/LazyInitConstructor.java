@@ -0,0 +1,62 @@
+/*
+ *  Copyright (C) 2016 Leonardosc
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+
+package io.github.bktlib.lazy;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Constructor;
+
+public class LazyInitConstructor extends LazyInitValue<Constructor<?>> {
+
+  private Class<?>[] paramsType;
+  private Class<?> clazz;
+
+  /* LazyInit stuffs */
+  private String clazzName;
+
+  public LazyInitConstructor(@Nonnull Class<?> clazz, Class<?> ... paramsType) {
+    this.paramsType = paramsType;
+    this.clazz = clazz;
+  }
+
+  public LazyInitConstructor(@Nonnull String clazzName, Class<?> ... paramsType) {
+    this.paramsType = paramsType;
+    this.clazzName = clazzName;
+  }
+
+  @Nullable
+  @Override
+  protected Constructor<?> init() {
+    if (clazz == null) {
+      try {
+        clazz = Class.forName(clazzName);
+      } catch (ClassNotFoundException e) {
+        e.printStackTrace();
+      }
+    }
+    try {
+      Constructor<?> ret = clazz.getDeclaredConstructor(paramsType);
+      ret.setAccessible(true);
+      return ret;
+    } catch (NoSuchMethodException e) {
+      e.printStackTrace();
+    }
+    return null;
+  }
+}
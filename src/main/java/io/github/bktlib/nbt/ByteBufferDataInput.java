@@ -0,0 +1,101 @@
+package io.github.bktlib.nbt;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link DataInput} que le direto de um {@link ByteBuffer}, sem as copias do
+ * {@link java.io.ByteArrayInputStream}.
+ */
+class ByteBufferDataInput implements DataInput {
+
+  private final ByteBuffer buf;
+  private int pos;
+
+  ByteBufferDataInput(ByteBuffer buf, int pos) {
+    this.buf = buf;
+    this.pos = pos;
+  }
+
+  int position() {
+    return this.pos;
+  }
+
+  private int advance(int len) throws EOFException {
+    if (len > this.buf.limit() - this.pos) {
+      throw new EOFException();
+    }
+    int cur = this.pos;
+    this.pos += len;
+    return cur;
+  }
+
+  public void readFully(byte[] b) throws IOException {
+    this.readFully(b, 0, b.length);
+  }
+
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    int start = this.advance(len);
+    ByteBuffer dup = this.buf.duplicate();
+    dup.position(start);
+    dup.get(b, off, len);
+  }
+
+  public int skipBytes(int n) {
+    int skipped = Math.max(0, Math.min(n, this.buf.limit() - this.pos));
+    this.pos += skipped;
+    return skipped;
+  }
+
+  public boolean readBoolean() throws IOException {
+    return this.readByte() != 0;
+  }
+
+  public byte readByte() throws IOException {
+    return this.buf.get(this.advance(1));
+  }
+
+  public int readUnsignedByte() throws IOException {
+    return this.readByte() & 0xFF;
+  }
+
+  public short readShort() throws IOException {
+    return this.buf.getShort(this.advance(2));
+  }
+
+  public int readUnsignedShort() throws IOException {
+    return this.readShort() & 0xFFFF;
+  }
+
+  public char readChar() throws IOException {
+    return this.buf.getChar(this.advance(2));
+  }
+
+  public int readInt() throws IOException {
+    return this.buf.getInt(this.advance(4));
+  }
+
+  public long readLong() throws IOException {
+    return this.buf.getLong(this.advance(8));
+  }
+
+  public float readFloat() throws IOException {
+    return this.buf.getFloat(this.advance(4));
+  }
+
+  public double readDouble() throws IOException {
+    return this.buf.getDouble(this.advance(8));
+  }
+
+  public String readLine() throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
+  public String readUTF() throws IOException {
+    int start = this.pos;
+    this.advance(this.readUnsignedShort());
+    return ModifiedUTF8.read(this.buf, start);
+  }
+}
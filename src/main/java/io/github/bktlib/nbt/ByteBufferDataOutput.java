@@ -0,0 +1,79 @@
+package io.github.bktlib.nbt;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link DataOutput} que escreve direto em um {@link ByteBuffer}, a partir da
+ * posicao atual dele, sem o buffer intermediario do
+ * {@link java.io.ByteArrayOutputStream}.
+ */
+class ByteBufferDataOutput implements DataOutput {
+
+  private final ByteBuffer buf;
+
+  ByteBufferDataOutput(ByteBuffer buf) {
+    this.buf = buf;
+  }
+
+  public void write(int b) throws IOException {
+    this.buf.put((byte) b);
+  }
+
+  public void write(byte[] b) throws IOException {
+    this.buf.put(b);
+  }
+
+  public void write(byte[] b, int off, int len) throws IOException {
+    this.buf.put(b, off, len);
+  }
+
+  public void writeBoolean(boolean v) throws IOException {
+    this.buf.put((byte) (v ? 1 : 0));
+  }
+
+  public void writeByte(int v) throws IOException {
+    this.buf.put((byte) v);
+  }
+
+  public void writeShort(int v) throws IOException {
+    this.buf.putShort((short) v);
+  }
+
+  public void writeChar(int v) throws IOException {
+    this.buf.putChar((char) v);
+  }
+
+  public void writeInt(int v) throws IOException {
+    this.buf.putInt(v);
+  }
+
+  public void writeLong(long v) throws IOException {
+    this.buf.putLong(v);
+  }
+
+  public void writeFloat(float v) throws IOException {
+    this.buf.putFloat(v);
+  }
+
+  public void writeDouble(double v) throws IOException {
+    this.buf.putDouble(v);
+  }
+
+  public void writeBytes(String s) throws IOException {
+    for (int i = 0; i < s.length(); ++i) {
+      this.buf.put((byte) s.charAt(i));
+    }
+  }
+
+  public void writeChars(String s) throws IOException {
+    for (int i = 0; i < s.length(); ++i) {
+      this.buf.putChar(s.charAt(i));
+    }
+  }
+
+  public void writeUTF(String s) throws IOException {
+    ModifiedUTF8.write(this, s);
+  }
+}
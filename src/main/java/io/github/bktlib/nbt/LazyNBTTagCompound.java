@@ -0,0 +1,337 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.collect.Maps;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link NBTTagCompound} que guarda os bytes codificados e um indice das
+ * chaves. Cada valor so e decodificado na primeira vez que e acessado, e os
+ * valores que nunca foram acessados sao escritos de volta byte a byte no
+ * {@link #write(DataOutput)}, sem serem recodificados.
+ *
+ * <p>{@link #hashCode()} e {@link #equals(Object)} trabalham direto nos
+ * bytes dos valores ainda nao decodificados: o hash e calculado dos bytes e
+ * duas entradas nao decodificadas com os mesmos bytes sao iguais sem
+ * decodificar nada. So quando os hashes batem e os bytes nao, a entrada e
+ * decodificada para comparar.</p>
+ *
+ * <p>Os bytes de {@code buf} nao podem ser modificados enquanto o compound
+ * estiver em uso. Nao e thread-safe, nem para leituras: {@code get} e a
+ * iteracao guardam os valores decodificados no lugar dos bytes.</p>
+ */
+public class LazyNBTTagCompound extends NBTTagCompound {
+
+  private final ByteBuffer buf;
+  private final int depth;
+  private final int maxDepth;
+  private final LazyEntryMap entries;
+
+  LazyNBTTagCompound(ByteBuffer buf, int start, int depth, int maxDepth) {
+    this.buf = buf;
+    this.depth = depth;
+    this.maxDepth = maxDepth;
+    this.entries = new LazyEntryMap();
+    this.dataMap = this.entries;
+
+    int pos = start;
+    byte b;
+
+    while ((b = buf.get(pos)) != 0) {
+      int valuePos = pos + 3 + (buf.getShort(pos + 1) & 0xFFFF);
+      int end = NBTBuffers.skip(buf, valuePos, b, depth + 1, maxDepth);
+      this.entries.backing.put(NBTKeyInterner.intern(NBTBuffers.readUTF(buf, pos + 1)), new RawEntry(pos, valuePos, end));
+      pos = end;
+    }
+  }
+
+  private LazyNBTTagCompound(LazyNBTTagCompound other) {
+    this.buf = other.buf;
+    this.depth = other.depth;
+    this.maxDepth = other.maxDepth;
+    this.entries = new LazyEntryMap();
+    this.dataMap = this.entries;
+
+    for (Map.Entry<String, Object> entry : other.entries.backing.entrySet()) {
+      Object value = entry.getValue();
+      this.entries.backing.put(entry.getKey(), value instanceof RawEntry ? value : ((NBTBase) value).copy());
+    }
+  }
+
+  /**
+   * Cria um compound preguicoso da tag raiz (tipo, nome e payload) que comeca
+   * na posicao atual de {@code buf}. O buffer nao e modificado.
+   *
+   * @param buf Buffer com o NBT sem compressao.
+   * @return O compound raiz.
+   */
+  public static LazyNBTTagCompound wrap(ByteBuffer buf) {
+    return wrap(buf, NBTReadLimiter.DEFAULT_MAX_DEPTH);
+  }
+
+  /**
+   * @param maxDepth Maximo de compounds/listas um dentro do outro (como em
+   * {@link NBTReadLimiter#getMaxDepth()}).
+   */
+  public static LazyNBTTagCompound wrap(ByteBuffer buf, int maxDepth) {
+    ByteBuffer dup = buf.duplicate();
+    int pos = dup.position();
+    byte type = dup.get(pos);
+
+    if (type != 10) {
+      throw new IllegalArgumentException("Root tag must be a compound, found " + NBTReader.typeName(type));
+    }
+    return new LazyNBTTagCompound(dup, pos + 3 + (dup.getShort(pos + 1) & 0xFFFF), 1, maxDepth);
+  }
+
+  public static LazyNBTTagCompound wrap(byte[] data) {
+    return wrap(ByteBuffer.wrap(data));
+  }
+
+  /**
+   * @return Quantos valores ainda nao foram decodificados.
+   */
+  public int getUndecodedCount() {
+    int count = 0;
+
+    for (Object value : this.entries.backing.values()) {
+      if (value instanceof RawEntry) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public byte getTagType(String key) {
+    Object value = this.entries.backing.get(key);
+
+    if (value instanceof RawEntry) {
+      return this.buf.get(((RawEntry) value).start);
+    }
+    return value != null ? ((NBTBase) value).getId() : 0;
+  }
+
+  public NBTBase copy() {
+    return new LazyNBTTagCompound(this);
+  }
+
+  public int hashCode() {
+    int h = 0;
+
+    for (Map.Entry<String, Object> entry : this.entries.backing.entrySet()) {
+      Object value = entry.getValue();
+      int valueHash = value instanceof RawEntry ? ((RawEntry) value).hash(this.buf) : value.hashCode();
+      h += entry.getKey().hashCode() ^ valueHash;
+    }
+    return this.getId() ^ h;
+  }
+
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+
+    if (!(obj instanceof NBTTagCompound)) {
+      return false;
+    }
+
+    NBTTagCompound other = (NBTTagCompound) obj;
+    Map<String, NBTBase> otherMap = other.untrackedMap();
+
+    if (this.entries.size() != otherMap.size() || this.hashCode() != other.hashCode()) {
+      return false;
+    }
+
+    LazyNBTTagCompound lazy = obj instanceof LazyNBTTagCompound ? (LazyNBTTagCompound) obj : null;
+
+    for (Map.Entry<String, Object> entry : this.entries.backing.entrySet()) {
+      String key = entry.getKey();
+      Object value = entry.getValue();
+
+      if (lazy != null) {
+        Object otherValue = lazy.entries.backing.get(key);
+
+        if (otherValue == null) {
+          return false;
+        }
+
+        if (value instanceof RawEntry && otherValue instanceof RawEntry
+            && this.sameBytes((RawEntry) value, lazy.buf, (RawEntry) otherValue)) {
+          continue;
+        }
+      } else if (!otherMap.containsKey(key)) {
+        return false;
+      }
+
+      if (!this.entries.get(key).equals(otherMap.get(key))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean sameBytes(RawEntry raw, ByteBuffer otherBuf, RawEntry other) {
+    int len = raw.end - raw.start;
+    return len == other.end - other.start
+        && NBTBuffers.slice(this.buf, raw.start, len).equals(NBTBuffers.slice(otherBuf, other.start, len));
+  }
+
+  void write(DataOutput output) throws IOException {
+    for (Map.Entry<String, Object> entry : this.entries.backing.entrySet()) {
+      Object value = entry.getValue();
+
+      if (value instanceof RawEntry) {
+        RawEntry raw = (RawEntry) value;
+        NBTBuffers.write(this.buf, raw.start, raw.end - raw.start, output);
+      } else {
+        writeEntry(entry.getKey(), (NBTBase) value, output);
+      }
+    }
+
+    output.writeByte(0);
+  }
+
+  public int sizeOf() {
+    int size = 1;
+
+    for (Map.Entry<String, Object> entry : this.entries.backing.entrySet()) {
+      Object value = entry.getValue();
+
+      if (value instanceof RawEntry) {
+        size += ((RawEntry) value).end - ((RawEntry) value).start;
+      } else {
+        size += entrySize(entry.getKey(), (NBTBase) value);
+      }
+    }
+    return size;
+  }
+
+  private NBTBase decode(RawEntry raw) {
+    byte type = this.buf.get(raw.start);
+
+    if (type == 10) {
+      return new LazyNBTTagCompound(this.buf, raw.valuePos, this.depth + 1, this.maxDepth);
+    }
+    return NBTView.materialize(this.buf, type, raw.valuePos, this.depth, this.maxDepth);
+  }
+
+  private static final class RawEntry {
+    /* Posicao do byte de tipo, do payload e do fim da entrada. */
+    final int start;
+    final int valuePos;
+    final int end;
+
+    /* hashCode do valor, calculado dos bytes; 0 ainda nao foi calculado. */
+    private int hash;
+
+    RawEntry(int start, int valuePos, int end) {
+      this.start = start;
+      this.valuePos = valuePos;
+      this.end = end;
+    }
+
+    int hash(ByteBuffer buf) {
+      int h = this.hash;
+
+      if (h == 0) {
+        h = NBTBuffers.hash(buf, this.valuePos, buf.get(this.start));
+        this.hash = h;
+      }
+      return h;
+    }
+  }
+
+  /**
+   * Mapa usado como {@link #dataMap}: os valores ficam como {@link RawEntry}
+   * ate serem lidos. {@code put} e {@code remove} nao decodificam o valor
+   * antigo so para retorna-lo, e retornam {@code null} nesse caso.
+   */
+  private final class LazyEntryMap extends AbstractMap<String, NBTBase> {
+
+    final Map<String, Object> backing = Maps.newLinkedHashMap();
+
+    private NBTBase resolve(String key, Object value) {
+      if (value instanceof RawEntry) {
+        NBTBase decoded = LazyNBTTagCompound.this.decode((RawEntry) value);
+        this.backing.put(key, decoded);
+        return decoded;
+      }
+      return (NBTBase) value;
+    }
+
+    public NBTBase get(Object key) {
+      Object value = this.backing.get(key);
+      return value == null ? null : this.resolve((String) key, value);
+    }
+
+    public NBTBase put(String key, NBTBase value) {
+      Object old = this.backing.put(key, value);
+      return old instanceof NBTBase ? (NBTBase) old : null;
+    }
+
+    public NBTBase remove(Object key) {
+      Object old = this.backing.remove(key);
+      return old instanceof NBTBase ? (NBTBase) old : null;
+    }
+
+    public boolean containsKey(Object key) {
+      return this.backing.containsKey(key);
+    }
+
+    public int size() {
+      return this.backing.size();
+    }
+
+    public boolean isEmpty() {
+      return this.backing.isEmpty();
+    }
+
+    public void clear() {
+      this.backing.clear();
+    }
+
+    public Set<String> keySet() {
+      return this.backing.keySet();
+    }
+
+    public Set<Map.Entry<String, NBTBase>> entrySet() {
+      return new AbstractSet<Map.Entry<String, NBTBase>>() {
+        public Iterator<Map.Entry<String, NBTBase>> iterator() {
+          Iterator<Map.Entry<String, Object>> it = LazyEntryMap.this.backing.entrySet().iterator();
+
+          return new Iterator<Map.Entry<String, NBTBase>>() {
+            public boolean hasNext() {
+              return it.hasNext();
+            }
+
+            public Map.Entry<String, NBTBase> next() {
+              Map.Entry<String, Object> entry = it.next();
+              Object value = entry.getValue();
+
+              if (value instanceof RawEntry) {
+                value = LazyNBTTagCompound.this.decode((RawEntry) value);
+                entry.setValue(value);
+              }
+              return Maps.immutableEntry(entry.getKey(), (NBTBase) value);
+            }
+
+            public void remove() {
+              it.remove();
+            }
+          };
+        }
+
+        public int size() {
+          return LazyEntryMap.this.backing.size();
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,216 @@
+package io.github.bktlib.nbt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codificacao e decodificacao das strings do NBT (modified UTF-8 com um
+ * prefixo de 2 bytes com o tamanho), no mesmo formato do
+ * {@link DataInput#readUTF()}/{@link DataOutput#writeUTF(String)}.
+ *
+ * <p>Os buffers intermediarios sao reaproveitados por thread, e strings so
+ * com ASCII (o caso comum em chaves e lore) sao copiadas direto, sem passar
+ * pela decodificacao caractere a caractere.</p>
+ */
+final class ModifiedUTF8 {
+
+  private static final int MAX_LENGTH = 0xFFFF;
+
+  private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+  private ModifiedUTF8() {}
+
+  /**
+   * Le uma string com o prefixo de tamanho.
+   */
+  static String read(DataInput input) throws IOException {
+    int len = input.readUnsignedShort();
+
+    if (len == 0) {
+      return "";
+    }
+
+    Buffers buffers = BUFFERS.get();
+    byte[] bytes = buffers.bytes(len);
+    input.readFully(bytes, 0, len);
+    return decode(bytes, 0, len, buffers);
+  }
+
+  /**
+   * Le uma string com o prefixo de tamanho, contando no limiter antes de
+   * decodificar. Como cada caractere ocupa pelo menos um byte, o tamanho em
+   * bytes e o maximo de caracteres da string.
+   */
+  static String read(DataInput input, NBTReadLimiter readLimiter) throws IOException {
+    int len = input.readUnsignedShort();
+    readLimiter.read(16L * len);
+
+    if (len == 0) {
+      return "";
+    }
+
+    Buffers buffers = BUFFERS.get();
+    byte[] bytes = buffers.bytes(len);
+    input.readFully(bytes, 0, len);
+    return decode(bytes, 0, len, buffers);
+  }
+
+  /**
+   * Le a string com o prefixo de tamanho que comeca em {@code pos}, sem
+   * mexer na posicao de {@code buf}.
+   */
+  static String read(ByteBuffer buf, int pos) throws UTFDataFormatException {
+    int len = buf.getShort(pos) & 0xFFFF;
+
+    if (len == 0) {
+      return "";
+    }
+
+    Buffers buffers = BUFFERS.get();
+
+    if (buf.hasArray()) {
+      return decode(buf.array(), buf.arrayOffset() + pos + 2, len, buffers);
+    }
+
+    byte[] bytes = buffers.bytes(len);
+    ByteBuffer dup = buf.duplicate();
+    dup.position(pos + 2);
+    dup.get(bytes, 0, len);
+    return decode(bytes, 0, len, buffers);
+  }
+
+  private static String decode(byte[] bytes, int off, int len, Buffers buffers) throws UTFDataFormatException {
+    int end = off + len;
+    int i = off;
+
+    /*
+        Bytes >= 0x80 sao negativos; enquanto nao aparece nenhum, e ASCII.
+    */
+    while (i < end && bytes[i] >= 0) {
+      i++;
+    }
+
+    if (i == end) {
+      return new String(bytes, off, len, StandardCharsets.ISO_8859_1);
+    }
+
+    char[] chars = buffers.chars(len);
+    int n = 0;
+
+    for (int j = off; j < i; ++j) {
+      chars[n++] = (char) bytes[j];
+    }
+
+    while (i < end) {
+      int c = bytes[i] & 0xFF;
+
+      if (c < 0x80) {
+        chars[n++] = (char) c;
+        i++;
+      } else if ((c >> 5) == 0x6 && i + 1 < end) {
+        int c2 = bytes[i + 1];
+        checkContinuation(c2, i + 1 - off);
+        chars[n++] = (char) (((c & 0x1F) << 6) | (c2 & 0x3F));
+        i += 2;
+      } else if ((c >> 4) == 0xE && i + 2 < end) {
+        int c2 = bytes[i + 1];
+        int c3 = bytes[i + 2];
+        checkContinuation(c2, i + 1 - off);
+        checkContinuation(c3, i + 2 - off);
+        chars[n++] = (char) (((c & 0x0F) << 12) | ((c2 & 0x3F) << 6) | (c3 & 0x3F));
+        i += 3;
+      } else {
+        throw new UTFDataFormatException("Malformed modified UTF-8 around byte " + (i - off));
+      }
+    }
+    return new String(chars, 0, n);
+  }
+
+  /**
+   * Escreve {@code str} com o prefixo de tamanho, em uma unica chamada a
+   * {@link DataOutput#write(byte[], int, int)}.
+   */
+  static void write(DataOutput output, String str) throws IOException {
+    int strlen = str.length();
+    int utflen = encodedLength(str);
+
+    if (utflen > MAX_LENGTH) {
+      throw new UTFDataFormatException("encoded string too long: " + utflen + " bytes");
+    }
+
+    byte[] bytes = BUFFERS.get().bytes(utflen + 2);
+    bytes[0] = (byte) (utflen >>> 8);
+    bytes[1] = (byte) utflen;
+
+    int n = 2;
+
+    if (utflen == strlen) {
+      for (int i = 0; i < strlen; ++i) {
+        bytes[n++] = (byte) str.charAt(i);
+      }
+    } else {
+      for (int i = 0; i < strlen; ++i) {
+        char c = str.charAt(i);
+
+        if (c >= 0x0001 && c <= 0x007F) {
+          bytes[n++] = (byte) c;
+        } else if (c > 0x07FF) {
+          bytes[n++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+          bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          bytes[n++] = (byte) (0x80 | (c & 0x3F));
+        } else {
+          bytes[n++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+          bytes[n++] = (byte) (0x80 | (c & 0x3F));
+        }
+      }
+    }
+    output.write(bytes, 0, n);
+  }
+
+  /**
+   * @return Quantos bytes {@code str} ocupa em modified UTF-8, sem contar o
+   * prefixo de tamanho.
+   */
+  static int encodedLength(String str) {
+    int strlen = str.length();
+    int utflen = strlen;
+
+    for (int i = 0; i < strlen; ++i) {
+      char c = str.charAt(i);
+
+      if (c >= 0x0080 || c == 0) {
+        utflen += c >= 0x0800 ? 2 : 1;
+      }
+    }
+    return utflen;
+  }
+
+  private static void checkContinuation(int b, int offset) throws UTFDataFormatException {
+    if ((b & 0xC0) != 0x80) {
+      throw new UTFDataFormatException("Malformed modified UTF-8 around byte " + offset);
+    }
+  }
+
+  private static final class Buffers {
+    private byte[] bytes = new byte[256];
+    private char[] chars = new char[256];
+
+    byte[] bytes(int len) {
+      if (this.bytes.length < len) {
+        this.bytes = new byte[Math.max(len, Math.min(this.bytes.length * 2, MAX_LENGTH + 2))];
+      }
+      return this.bytes;
+    }
+
+    char[] chars(int len) {
+      if (this.chars.length < len) {
+        this.chars = new char[Math.max(len, Math.min(this.chars.length * 2, MAX_LENGTH))];
+      }
+      return this.chars;
+    }
+  }
+}
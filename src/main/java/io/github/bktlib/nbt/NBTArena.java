@@ -0,0 +1,247 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pool de compounds e listas para NBT que so e lido e descartado (validar um
+ * item recebido, ler dois valores de um pacote...). As tags lidas pelo
+ * {@link #read(DataInput)} saem do pool, e o {@link #reset()} devolve todas
+ * de uma vez, mantendo os mapas e listas internos para a proxima leitura.
+ *
+ * <pre>
+ * NBTTagCompound tag = arena.read(input);
+ * boolean ok = tag.getCompoundTag("tag").hasKey("ench");
+ * arena.reset(); // tag nao pode mais ser usada
+ * </pre>
+ *
+ * <p>Depois do {@link #reset()} nenhuma tag lida antes pode ser usada. Para
+ * guardar alguma, use {@link NBTBase#copy()} antes: compounds e listas que
+ * foram copiados (e tudo dentro deles) nao voltam para o pool. Os valores
+ * compartilhados ({@link NBTTagInt#valueOf(int)}, strings...) e os outros tipos
+ * nunca passam pelo arena.</p>
+ *
+ * <p><b>Sem a copia a tag e reciclada</b>, mesmo que tenha sido colocada em
+ * outra arvore: depois de
+ * {@code longLived.setTag("tag", arenaTag.getCompoundTag("tag"))} (ou
+ * {@code appendTag}) e de um {@link #reset()}, {@code longLived} passa a
+ * apontar para um compound esvaziado que sera reaproveitado pela proxima
+ * leitura. O arena nao consegue detectar isso; use
+ * {@code longLived.setTag("tag", arenaTag.getCompoundTag("tag").copy())}.</p>
+ *
+ * <p>Nao e thread-safe; use um por thread.</p>
+ */
+public final class NBTArena {
+
+  public static final int DEFAULT_MAX_POOLED = 8192;
+
+  private final int maxPooled;
+  private final Deque<NBTTagCompound> compounds = new ArrayDeque<>();
+  private final Deque<NBTTagList> lists = new ArrayDeque<>();
+  private final List<NBTBase> live = Lists.newArrayList();
+  private final ArenaLimiter readLimiter = new ArenaLimiter();
+
+  public NBTArena() {
+    this(DEFAULT_MAX_POOLED);
+  }
+
+  /**
+   * @param maxPooled Maximo de compounds (e de listas) guardados entre um
+   * {@link #reset()} e outro.
+   */
+  public NBTArena(int maxPooled) {
+    Preconditions.checkArgument(maxPooled >= 0, "maxPooled cannot be negative");
+    this.maxPooled = maxPooled;
+  }
+
+  /**
+   * Le um compound com nome na raiz de {@code input}, sem compressao (como o
+   * {@link NBTIO#read}).
+   */
+  public NBTTagCompound read(DataInput input) throws IOException {
+    return this.read(input, NBTReadLimiter.INFINITE);
+  }
+
+  public NBTTagCompound read(DataInput input, NBTReadLimiter readLimiter) throws IOException {
+    byte type = input.readByte();
+
+    if (type != 10) {
+      throw new IOException("Root tag must be a named compound tag, got " + NBTReader.typeName(type));
+    }
+
+    ModifiedUTF8.read(input);
+    NBTTagCompound compound = this.newCompound();
+    this.readLimiter.delegate = readLimiter;
+
+    try {
+      compound.read(input, 0, this.readLimiter);
+    } finally {
+      this.readLimiter.delegate = NBTReadLimiter.INFINITE;
+    }
+    return compound;
+  }
+
+  public NBTTagCompound newCompound() {
+    return (NBTTagCompound) this.create((byte) 10);
+  }
+
+  public NBTTagList newList() {
+    return (NBTTagList) this.create((byte) 9);
+  }
+
+  /**
+   * @return Quantos compounds e listas foram pegos do arena desde o ultimo
+   * {@link #reset()}.
+   */
+  public int getLive() {
+    return this.live.size();
+  }
+
+  /**
+   * @return Quantos compounds e listas estao guardados para serem
+   * reaproveitados.
+   */
+  public int getPooled() {
+    return this.compounds.size() + this.lists.size();
+  }
+
+  NBTBase create(byte id) {
+    NBTBase base;
+
+    switch (id) {
+      case 9:
+        base = this.lists.isEmpty() ? new NBTTagList() : this.lists.pop();
+        break;
+
+      case 10:
+        base = this.compounds.isEmpty() ? new NBTTagCompound() : this.compounds.pop();
+        break;
+
+      default:
+        return NBTBase.createNewByType(id);
+    }
+
+    this.live.add(base);
+    return base;
+  }
+
+  /**
+   * Devolve para o pool todos os compounds e listas pegos desde o ultimo
+   * reset, exceto os que ainda sao usados por uma copia.
+   */
+  public void reset() {
+    Set<NBTBase> escaped = this.findEscaped();
+
+    for (NBTBase base : this.live) {
+      if (escaped != null && escaped.contains(base)) {
+        continue;
+      }
+
+      if (base.getId() == 10) {
+        NBTTagCompound compound = (NBTTagCompound) base;
+        compound.recycle();
+
+        if (this.compounds.size() < this.maxPooled) {
+          this.compounds.push(compound);
+        }
+      } else {
+        NBTTagList list = (NBTTagList) base;
+        list.recycle();
+
+        if (this.lists.size() < this.maxPooled) {
+          this.lists.push(list);
+        }
+      }
+    }
+    this.live.clear();
+  }
+
+  /**
+   * Descarta o pool.
+   */
+  public void clear() {
+    this.live.clear();
+    this.compounds.clear();
+    this.lists.clear();
+  }
+
+  /**
+   * @return Os compounds e listas alcancaveis por uma copia (copy-on-write)
+   * de alguma tag do arena, ou {@code null} se nenhuma foi copiada.
+   */
+  private Set<NBTBase> findEscaped() {
+    Set<NBTBase> escaped = null;
+    Deque<NBTBase> pending = null;
+
+    for (NBTBase base : this.live) {
+      boolean shared = base.getId() == 10 ? ((NBTTagCompound) base).isShared() : ((NBTTagList) base).isShared();
+
+      /* Um filho marcado pelo unshare() continua tambem no mapa da copia. */
+      if (shared || NBTTagCompound.isAliased(base)) {
+        if (escaped == null) {
+          escaped = Sets.newIdentityHashSet();
+          pending = new ArrayDeque<>();
+        }
+        pending.push(base);
+      }
+    }
+
+    while (pending != null && !pending.isEmpty()) {
+      NBTBase base = pending.pop();
+
+      if (!escaped.add(base)) {
+        continue;
+      }
+
+      Iterable<NBTBase> children = base.getId() == 10
+          ? ((NBTTagCompound) base).untrackedMap().values()
+          : ((NBTTagList) base).untrackedElements();
+
+      if (children == null) {
+        continue;
+      }
+
+      for (NBTBase child : children) {
+        if (child.getId() == 9 || child.getId() == 10) {
+          pending.push(child);
+        }
+      }
+    }
+    return escaped;
+  }
+
+  /**
+   * Passa a contagem para o limiter da leitura e faz as tags sairem do arena.
+   */
+  private final class ArenaLimiter extends NBTReadLimiter {
+    NBTReadLimiter delegate = NBTReadLimiter.INFINITE;
+
+    ArenaLimiter() {
+      super(Long.MAX_VALUE);
+    }
+
+    public void read(long bits) {
+      this.delegate.read(bits);
+    }
+
+    public void countNodes(long count) {
+      this.delegate.countNodes(count);
+    }
+
+    public void checkDepth(int depth) {
+      this.delegate.checkDepth(depth);
+    }
+
+    NBTArena arena() {
+      return NBTArena.this;
+    }
+  }
+}
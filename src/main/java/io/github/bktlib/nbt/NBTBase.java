@@ -1,20 +1,95 @@
 package io.github.bktlib.nbt;
 
+import com.google.common.base.Throwables;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
 
 public abstract class NBTBase {
-  public static final String[] NBT_TYPES = new String[] {"END", "BYTE", "SHORT", "INT", "LONG", "FLOAT", "DOUBLE", "BYTE[]", "STRING", "LIST", "COMPOUND", "INT[]"};
+  public static final String[] NBT_TYPES = new String[] {"END", "BYTE", "SHORT", "INT", "LONG", "FLOAT", "DOUBLE", "BYTE[]", "STRING", "LIST", "COMPOUND", "INT[]", "LONG[]"};
 
   abstract void write(DataOutput output) throws IOException;
 
   abstract void read(DataInput input, int depth, NBTReadLimiter readLimiter) throws IOException;
 
+  /**
+   * @return Quantos bytes o payload dessa tag ocupa quando escrito (sem o
+   * tipo e o nome).
+   */
+  public abstract int sizeOf();
+
+  /**
+   * @return Quantos bytes essa tag ocupa quando escrita com um nome, como na
+   * raiz de um arquivo ou de um pacote.
+   */
+  public int sizeOfNamed(String name) {
+    return NBTTagCompound.entrySize(name, this);
+  }
+
+  /**
+   * Escreve essa tag com um nome (tipo, nome e payload) em {@code buffer}, a
+   * partir da posicao atual, avancando a posicao em
+   * {@link #sizeOfNamed(String)} bytes.
+   *
+   * @throws BufferOverflowException Se nao houver espaco suficiente.
+   */
+  public void writeNamed(String name, ByteBuffer buffer) {
+    if (buffer.remaining() < this.sizeOfNamed(name)) {
+      throw new BufferOverflowException();
+    }
+
+    ByteBuffer dup = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+
+    try {
+      NBTTagCompound.writeEntry(name, this, new ByteBufferDataOutput(dup));
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+    buffer.position(dup.position());
+  }
+
+  /**
+   * Escreve essa tag com um nome em {@code buffer}, garantindo antes o espaco
+   * necessario para que o buffer cresca no maximo uma vez.
+   */
+  public void writeNamed(String name, ByteBuf buffer) {
+    buffer.ensureWritable(this.sizeOfNamed(name));
+
+    try {
+      NBTTagCompound.writeEntry(name, this, new ByteBufOutputStream(buffer));
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * @return Essa tag escrita com um nome, em um array do tamanho exato.
+   */
+  public byte[] toByteArray(String name) {
+    byte[] bytes = new byte[this.sizeOfNamed(name)];
+    this.writeNamed(name, ByteBuffer.wrap(bytes));
+    return bytes;
+  }
+
   public abstract String toString();
 
   public abstract byte getId();
 
+  /**
+   * Igual ao {@link #createNewByType(byte)}, mas compounds e listas saem do
+   * pool de {@code arena} (se nao for {@code null}).
+   */
+  static NBTBase createNewByType(byte id, NBTArena arena) {
+    return arena != null ? arena.create(id) : createNewByType(id);
+  }
+
   protected static NBTBase createNewByType(byte id) {
     switch (id) {
       case 0:
@@ -53,6 +128,9 @@ public abstract class NBTBase {
       case 11:
         return new NBTTagIntArray();
 
+      case 12:
+        return new NBTTagLongArray();
+
       default:
         return null;
     }
@@ -77,10 +155,68 @@ public abstract class NBTBase {
     return this.getId();
   }
 
+  /**
+   * @return O {@link #hashCode()} guardado de um compound ou lista, se ainda
+   * for valido, ou {@code null}. Arrays nunca guardam o hash, ja que podem ser
+   * modificados por fora sem aviso.
+   */
+  CachedHash cachedHash() {
+    return null;
+  }
+
   protected String getString() {
     return this.toString();
   }
 
+  /**
+   * hashCode guardado de um compound ou lista, junto com os filhos mutaveis
+   * usados no calculo e o {@link CachedHash} de cada um naquele momento. Ele
+   * so continua valido enquanto todos os filhos ainda tiverem esse mesmo
+   * CachedHash: modificar um filho (mesmo por uma referencia antiga) descarta
+   * o dele, e o que for calculado depois e outra instancia. Os campos sao
+   * final para que o hash possa ser lido por varias threads sem
+   * sincronizacao.
+   */
+  static final class CachedHash {
+    private static final NBTBase[] NO_CHILDREN = new NBTBase[0];
+    private static final CachedHash[] NO_HASHES = new CachedHash[0];
+
+    final int hash;
+    private final NBTBase[] children;
+    private final CachedHash[] childHashes;
+
+    /**
+     * @param children Os filhos mutaveis, com o {@link #hashCode()} ja
+     * chamado.
+     */
+    CachedHash(int hash, List<NBTBase> children) {
+      this.hash = hash;
+
+      if (children == null) {
+        this.children = NO_CHILDREN;
+        this.childHashes = NO_HASHES;
+      } else {
+        this.children = children.toArray(new NBTBase[children.size()]);
+        this.childHashes = new CachedHash[this.children.length];
+
+        for (int i = 0; i < this.children.length; ++i) {
+          this.childHashes[i] = this.children[i].cachedHash();
+        }
+      }
+    }
+
+    boolean isValid() {
+      for (int i = 0; i < this.children.length; ++i) {
+        CachedHash expected = this.childHashes[i];
+
+        if (expected == null || this.children[i].cachedHash() != expected) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
   public abstract static class NBTPrimitive extends NBTBase {
     public abstract long getLong();
 
@@ -0,0 +1,316 @@
+package io.github.bktlib.nbt;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+/**
+ * Operacoes sobre NBT codificado dentro de um {@link ByteBuffer}, sempre com
+ * posicoes absolutas para nao mexer no estado do buffer.
+ */
+final class NBTBuffers {
+
+  private NBTBuffers() {}
+
+  /**
+   * Pula o payload de uma tag do tipo {@code id} que comeca em {@code pos}.
+   *
+   * @param maxDepth A profundidade maxima, normalmente a do limiter da
+   * leitura ({@link NBTReadLimiter#getMaxDepth()}).
+   * @return A posicao logo apos o payload.
+   * @throws IndexOutOfBoundsException Se o payload termina depois do
+   * {@link ByteBuffer#limit() limite} do buffer.
+   */
+  static int skip(ByteBuffer buf, int pos, byte id, int depth, int maxDepth) {
+    switch (id) {
+      case 7:
+        return end(buf, pos, 4L + checkLength(buf.getInt(pos)));
+
+      case 8:
+        return end(buf, pos, 2L + (buf.getShort(pos) & 0xFFFF));
+
+      case 9: {
+        checkDepth(depth, maxDepth);
+        byte elementType = buf.get(pos);
+        int count = checkLength(buf.getInt(pos + 1));
+        return skipPayloads(buf, pos + 5, elementType, count, depth + 1, maxDepth);
+      }
+
+      case 10: {
+        checkDepth(depth, maxDepth);
+        byte b;
+
+        while ((b = buf.get(pos++)) != 0) {
+          pos = end(buf, pos, 2L + (buf.getShort(pos) & 0xFFFF));
+          pos = skip(buf, pos, b, depth + 1, maxDepth);
+        }
+        return pos;
+      }
+
+      case 11:
+        return end(buf, pos, 4L + 4L * checkLength(buf.getInt(pos)));
+
+      case 12:
+        return end(buf, pos, 4L + 8L * checkLength(buf.getInt(pos)));
+
+      default:
+        int size = NBTReader.payloadSize(id);
+
+        if (size < 0) {
+          throw new IllegalArgumentException("Unknown NBT tag type: " + id);
+        }
+        return end(buf, pos, size);
+    }
+  }
+
+  static int skipPayloads(ByteBuffer buf, int pos, byte id, int count, int depth, int maxDepth) {
+    int size = NBTReader.payloadSize(id);
+
+    if (size >= 0) {
+      return end(buf, pos, (long) size * count);
+    }
+
+    for (int i = 0; i < count; ++i) {
+      pos = skip(buf, pos, id, depth, maxDepth);
+    }
+    return pos;
+  }
+
+  /**
+   * Calcula direto dos bytes o {@link NBTBase#hashCode()} que o payload do
+   * tipo {@code id} em {@code pos} teria depois de decodificado, sem montar
+   * as tags. O payload ja deve ter sido validado por {@link #skip}.
+   */
+  static int hash(ByteBuffer buf, int pos, byte id) {
+    return new Hasher(buf, pos).hash(id);
+  }
+
+  /**
+   * Decodifica a string em modified UTF-8 (com o prefixo de tamanho) que
+   * comeca em {@code pos}.
+   */
+  static String readUTF(ByteBuffer buf, int pos) {
+    try {
+      return ModifiedUTF8.read(buf, pos);
+    } catch (UTFDataFormatException e) {
+      throw new IllegalArgumentException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Compara a string em modified UTF-8 que comeca em {@code pos} com
+   * {@code str} sem decodificar.
+   */
+  static boolean utfEquals(ByteBuffer buf, int pos, String str) {
+    int len = buf.getShort(pos) & 0xFFFF;
+    int i = pos + 2;
+    int end = i + len;
+
+    for (int j = 0; j < str.length(); ++j) {
+      char c = str.charAt(j);
+
+      if (c >= 0x0001 && c <= 0x007F) {
+        if (i >= end || buf.get(i++) != (byte) c) {
+          return false;
+        }
+      } else if (c > 0x07FF) {
+        if (i + 3 > end
+            || buf.get(i++) != (byte) (0xE0 | ((c >> 12) & 0x0F))
+            || buf.get(i++) != (byte) (0x80 | ((c >> 6) & 0x3F))
+            || buf.get(i++) != (byte) (0x80 | (c & 0x3F))) {
+          return false;
+        }
+      } else {
+        if (i + 2 > end
+            || buf.get(i++) != (byte) (0xC0 | ((c >> 6) & 0x1F))
+            || buf.get(i++) != (byte) (0x80 | (c & 0x3F))) {
+          return false;
+        }
+      }
+    }
+    return i == end;
+  }
+
+  /**
+   * @return Uma fatia somente leitura de {@code buf}, sem copiar os bytes.
+   */
+  static ByteBuffer slice(ByteBuffer buf, int pos, int len) {
+    ByteBuffer dup = buf.duplicate();
+    dup.limit(pos + len).position(pos);
+    return dup.slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * Copia {@code len} bytes de {@code buf}, a partir de {@code pos}, para
+   * {@code output} sem passar por uma copia intermediaria quando o buffer tem
+   * um array acessivel.
+   */
+  static void write(ByteBuffer buf, int pos, int len, DataOutput output) throws IOException {
+    if (buf.hasArray()) {
+      output.write(buf.array(), buf.arrayOffset() + pos, len);
+      return;
+    }
+
+    ByteBuffer dup = buf.duplicate();
+    dup.position(pos);
+    byte[] chunk = new byte[Math.min(len, 8192)];
+
+    while (len > 0) {
+      int n = Math.min(len, chunk.length);
+      dup.get(chunk, 0, n);
+      output.write(chunk, 0, n);
+      len -= n;
+    }
+  }
+
+  /**
+   * Soma em {@code long} para que um tamanho forjado nao volte a uma posicao
+   * que parece valida.
+   */
+  private static int end(ByteBuffer buf, int pos, long len) {
+    long end = pos + len;
+
+    if (end > buf.limit()) {
+      throw new IndexOutOfBoundsException("NBT payload ends at " + end + ", past the buffer limit " + buf.limit());
+    }
+    return (int) end;
+  }
+
+  /**
+   * Percorre o payload com uma posicao so, repetindo as contas dos
+   * {@code hashCode()} de cada tipo de tag.
+   */
+  private static final class Hasher {
+    private final ByteBuffer buf;
+    private int pos;
+
+    Hasher(ByteBuffer buf, int pos) {
+      this.buf = buf;
+      this.pos = pos;
+    }
+
+    int hash(byte id) {
+      int h;
+
+      switch (id) {
+        case 1:
+          h = this.buf.get(this.pos);
+          this.pos += 1;
+          break;
+
+        case 2:
+          h = this.buf.getShort(this.pos);
+          this.pos += 2;
+          break;
+
+        case 3:
+          h = this.buf.getInt(this.pos);
+          this.pos += 4;
+          break;
+
+        case 4:
+          h = longHash(this.buf.getLong(this.pos));
+          this.pos += 8;
+          break;
+
+        case 5:
+          h = Float.floatToIntBits(this.buf.getFloat(this.pos));
+          this.pos += 4;
+          break;
+
+        case 6:
+          h = longHash(Double.doubleToLongBits(this.buf.getDouble(this.pos)));
+          this.pos += 8;
+          break;
+
+        case 7: {
+          int len = this.buf.getInt(this.pos);
+          this.pos += 4;
+          h = 1;
+
+          for (int i = 0; i < len; ++i) {
+            h = 31 * h + this.buf.get(this.pos++);
+          }
+          break;
+        }
+
+        case 8:
+          h = this.string().hashCode();
+          break;
+
+        case 9: {
+          byte elementType = this.buf.get(this.pos);
+          int count = this.buf.getInt(this.pos + 1);
+          this.pos += 5;
+          h = 1;
+
+          for (int i = 0; i < count; ++i) {
+            h = 31 * h + this.hash(elementType);
+          }
+          break;
+        }
+
+        case 10: {
+          h = 0;
+          byte b;
+
+          while ((b = this.buf.get(this.pos++)) != 0) {
+            String key = this.string();
+            h += key.hashCode() ^ this.hash(b);
+          }
+          break;
+        }
+
+        case 11: {
+          int len = this.buf.getInt(this.pos);
+          this.pos += 4;
+          h = 1;
+
+          for (int i = 0; i < len; ++i, this.pos += 4) {
+            h = 31 * h + this.buf.getInt(this.pos);
+          }
+          break;
+        }
+
+        case 12: {
+          int len = this.buf.getInt(this.pos);
+          this.pos += 4;
+          h = 1;
+
+          for (int i = 0; i < len; ++i, this.pos += 8) {
+            h = 31 * h + longHash(this.buf.getLong(this.pos));
+          }
+          break;
+        }
+
+        default:
+          throw new IllegalArgumentException("Unknown NBT tag type: " + id);
+      }
+      return id ^ h;
+    }
+
+    private String string() {
+      String str = readUTF(this.buf, this.pos);
+      this.pos += 2 + (this.buf.getShort(this.pos) & 0xFFFF);
+      return str;
+    }
+
+    private static int longHash(long value) {
+      return (int) (value ^ value >>> 32);
+    }
+  }
+
+  static int checkLength(int len) {
+    if (len < 0) {
+      throw new IllegalArgumentException("Negative NBT array length: " + len);
+    }
+    return len;
+  }
+
+  private static void checkDepth(int depth, int maxDepth) {
+    if (depth > maxDepth) {
+      throw NBTReadLimiter.tooDeep(maxDepth);
+    }
+  }
+}
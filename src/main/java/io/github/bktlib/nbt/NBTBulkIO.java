@@ -0,0 +1,146 @@
+package io.github.bktlib.nbt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Leitura e escrita de sequencias de numeros em blocos: os bytes sao
+ * transferidos com um {@code readFully}/{@code write} por bloco e convertidos
+ * pelas views do {@link ByteBuffer}, em vez de um {@code readInt} por
+ * elemento.
+ *
+ * <p>Os arrays de destino crescem conforme os dados chegam, entao um tamanho
+ * falso no cabecalho nao causa uma alocacao gigante antes da leitura
+ * falhar.</p>
+ */
+final class NBTBulkIO {
+
+  private static final int CHUNK = 8192;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private NBTBulkIO() {}
+
+  private static byte[] chunk(int count, int width) {
+    return new byte[(int) Math.min((long) count * width, CHUNK)];
+  }
+
+  private static int grow(int length, int needed, int count) {
+    return Math.min(count, Math.max(needed, length * 2));
+  }
+
+  /**
+   * Le {@code count} valores de {@code width} bytes (1, 2 ou 4), estendendo o
+   * sinal para int.
+   */
+  static int[] readInts(DataInput input, int count, int width) throws IOException {
+    int[] values = new int[Math.min(count, INITIAL_CAPACITY)];
+    byte[] buf = chunk(count, width);
+    ByteBuffer view = ByteBuffer.wrap(buf);
+    int n = 0;
+
+    while (n < count) {
+      int batch = Math.min(count - n, buf.length / width);
+      input.readFully(buf, 0, batch * width);
+
+      if (n + batch > values.length) {
+        values = Arrays.copyOf(values, grow(values.length, n + batch, count));
+      }
+
+      switch (width) {
+        case 1:
+          for (int i = 0; i < batch; ++i) {
+            values[n + i] = buf[i];
+          }
+          break;
+
+        case 2:
+          for (int i = 0; i < batch; ++i) {
+            values[n + i] = view.getShort(i << 1);
+          }
+          break;
+
+        default:
+          view.clear();
+          view.asIntBuffer().get(values, n, batch);
+      }
+      n += batch;
+    }
+    return values;
+  }
+
+  static long[] readLongs(DataInput input, int count) throws IOException {
+    long[] values = new long[Math.min(count, INITIAL_CAPACITY)];
+    byte[] buf = chunk(count, 8);
+    ByteBuffer view = ByteBuffer.wrap(buf);
+    int n = 0;
+
+    while (n < count) {
+      int batch = Math.min(count - n, buf.length / 8);
+      input.readFully(buf, 0, batch * 8);
+
+      if (n + batch > values.length) {
+        values = Arrays.copyOf(values, grow(values.length, n + batch, count));
+      }
+
+      view.clear();
+      view.asLongBuffer().get(values, n, batch);
+      n += batch;
+    }
+    return values;
+  }
+
+  /**
+   * Escreve {@code len} valores de {@code values}, cada um truncado para
+   * {@code width} bytes (1, 2 ou 4).
+   */
+  static void writeInts(DataOutput output, int[] values, int len, int width) throws IOException {
+    if (width == 1) {
+      byte[] buf = chunk(len, 1);
+
+      for (int n = 0; n < len; ) {
+        int batch = Math.min(len - n, buf.length);
+
+        for (int i = 0; i < batch; ++i) {
+          buf[i] = (byte) values[n + i];
+        }
+        output.write(buf, 0, batch);
+        n += batch;
+      }
+      return;
+    }
+
+    byte[] buf = chunk(len, width);
+    ByteBuffer view = ByteBuffer.wrap(buf);
+
+    for (int n = 0; n < len; ) {
+      int batch = Math.min(len - n, buf.length / width);
+
+      if (width == 2) {
+        for (int i = 0; i < batch; ++i) {
+          view.putShort(i << 1, (short) values[n + i]);
+        }
+      } else {
+        view.clear();
+        view.asIntBuffer().put(values, n, batch);
+      }
+      output.write(buf, 0, batch * width);
+      n += batch;
+    }
+  }
+
+  static void writeLongs(DataOutput output, long[] values, int len) throws IOException {
+    byte[] buf = chunk(len, 8);
+    ByteBuffer view = ByteBuffer.wrap(buf);
+
+    for (int n = 0; n < len; ) {
+      int batch = Math.min(len - n, buf.length / 8);
+      view.clear();
+      view.asLongBuffer().put(values, n, batch);
+      output.write(buf, 0, batch * 8);
+      n += batch;
+    }
+  }
+}
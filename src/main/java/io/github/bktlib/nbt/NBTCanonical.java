@@ -0,0 +1,130 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.base.Throwables;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Forma canonica do formato binario: duas tags iguais (pelo
+ * {@link NBTBase#equals(Object)}) sempre geram os mesmos bytes, entao eles
+ * podem ser comparados, guardados ou usados como chave diretamente.
+ *
+ * <p>Diferencas em relacao ao {@link NBTBase#toByteArray(String)}:</p>
+ * <ul>
+ *   <li>as chaves dos compounds sao escritas em ordem ({@link String#compareTo});</li>
+ *   <li>listas vazias sempre tem o tipo {@code END} (0);</li>
+ *   <li>a raiz sempre tem o nome vazio.</li>
+ * </ul>
+ *
+ * <p>O resultado continua sendo NBT valido e pode ser lido normalmente.</p>
+ *
+ * @see NBTStore
+ */
+public final class NBTCanonical {
+
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  private NBTCanonical() {}
+
+  /**
+   * Escreve {@code tag} como raiz (tipo, nome vazio e payload).
+   */
+  public static void write(NBTBase tag, DataOutput output) throws IOException {
+    output.writeByte(tag.getId());
+    output.writeShort(0);
+    writePayload(tag, output);
+  }
+
+  public static byte[] toByteArray(NBTBase tag) {
+    /* A forma canonica tem o mesmo tamanho da normal, so muda a ordem. */
+    byte[] bytes = new byte[tag.sizeOfNamed("")];
+
+    try {
+      write(tag, new ByteBufferDataOutput(ByteBuffer.wrap(bytes)));
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+    return bytes;
+  }
+
+  /**
+   * @return O murmur3 de 128 bits da forma canonica de {@code tag}.
+   */
+  public static HashCode hash(NBTBase tag) {
+    return hash(toByteArray(tag));
+  }
+
+  /**
+   * @return O murmur3 de 128 bits de bytes ja na forma canonica.
+   */
+  static HashCode hash(byte[] canonical) {
+    return HASH.hashBytes(canonical);
+  }
+
+  /**
+   * @return Os primeiros 64 bits do {@link #hash(NBTBase)}.
+   */
+  public static long hash64(NBTBase tag) {
+    return hash(tag).asLong();
+  }
+
+  private static void writePayload(NBTBase tag, DataOutput output) throws IOException {
+    switch (tag.getId()) {
+      case 9:
+        writeList((NBTTagList) tag, output);
+        break;
+
+      case 10:
+        writeCompound((NBTTagCompound) tag, output);
+        break;
+
+      default:
+        tag.write(output);
+    }
+  }
+
+  private static void writeCompound(NBTTagCompound compound, DataOutput output) throws IOException {
+    Map<String, NBTBase> map = compound.untrackedMap();
+    String[] keys = map.keySet().toArray(new String[map.size()]);
+    Arrays.sort(keys);
+
+    for (String key : keys) {
+      NBTBase value = map.get(key);
+      output.writeByte(value.getId());
+      ModifiedUTF8.write(output, key);
+      writePayload(value, output);
+    }
+    output.writeByte(0);
+  }
+
+  private static void writeList(NBTTagList list, DataOutput output) throws IOException {
+    int count = list.tagCount();
+    byte elementType = (byte) list.getTagType();
+
+    if (count == 0) {
+      output.writeByte(0);
+      output.writeInt(0);
+      return;
+    }
+
+    if (elementType != 9 && elementType != 10) {
+      /* Nada para ordenar dentro dos elementos. */
+      list.write(output);
+      return;
+    }
+
+    output.writeByte(elementType);
+    output.writeInt(count);
+
+    for (int i = 0; i < count; ++i) {
+      writePayload(list.untrackedGet(i), output);
+    }
+  }
+}
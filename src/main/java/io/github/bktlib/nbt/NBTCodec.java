@@ -0,0 +1,806 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import io.github.bktlib.nbt.annotation.NbtField;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Le e escreve objetos comuns com campos marcados com {@link NbtField} de/para
+ * compounds, sem precisar de um monte de {@code getInteger}/{@code setString}
+ * escritos a mao.
+ *
+ * <pre>
+ * NBTCodec&lt;Pet&gt; codec = NBTCodec.of(Pet.class);
+ *
+ * Pet pet = codec.fromCompound(tag);
+ * pet.level++;
+ * codec.writeInto(pet, tag);
+ * </pre>
+ *
+ * <p>O codec de cada classe e montado uma vez so, com um
+ * {@link MethodHandle} por campo; ler ou escrever nao usa reflection e campos
+ * primitivos nao passam por boxing.</p>
+ *
+ * <p>Tipos suportados: primitivos e seus wrappers ({@code boolean} vira
+ * byte), {@link String}, {@code byte[]}, {@code int[]}, {@code long[]},
+ * enums (pelo nome), tags ({@link NBTBase} e subclasses, copiadas), outras
+ * classes com campos {@link NbtField} (viram compounds) e {@link List}s de
+ * qualquer um desses. A classe precisa de um construtor sem parametros (pode
+ * ser privado).</p>
+ *
+ * <p>Chaves que faltam ou tem um tipo incompativel deixam o campo com o
+ * valor que o construtor deu. Campos {@code null} removem a chave.</p>
+ */
+public final class NBTCodec<T> {
+
+  private static final ClassValue<NBTCodec<?>> CODECS = new ClassValue<NBTCodec<?>>() {
+    protected NBTCodec<?> computeValue(Class<?> type) {
+      return new NBTCodec<>(type);
+    }
+  };
+
+  private final Class<T> type;
+  private final MethodHandle constructor;
+  private final Property[] properties;
+  private final Map<String, Property> byKey = Maps.newHashMap();
+
+  private NBTCodec(Class<T> type) {
+    if (type.isInterface() || type.isArray() || type.isPrimitive() || type.isEnum()
+        || Modifier.isAbstract(type.getModifiers())) {
+      throw new IllegalArgumentException("Cannot create a NBT codec for " + type.getName());
+    }
+
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    try {
+      Constructor<T> ctor = type.getDeclaredConstructor();
+      ctor.setAccessible(true);
+      this.constructor = lookup.unreflectConstructor(ctor).asType(MethodType.methodType(Object.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new IllegalArgumentException(type.getName() + " needs a constructor without parameters", e);
+    }
+
+    List<Property> properties = Lists.newArrayList();
+
+    for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        NbtField annotation = field.getAnnotation(NbtField.class);
+
+        if (annotation == null) {
+          continue;
+        }
+
+        if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+          throw new IllegalArgumentException("@NbtField " + describe(field) + " cannot be static or final");
+        }
+
+        String key = annotation.value().isEmpty() ? field.getName() : annotation.value();
+        Property property = createProperty(lookup, field, key);
+
+        if (this.byKey.put(key, property) != null) {
+          throw new IllegalArgumentException("Duplicated NBT key '" + key + "' in " + type.getName());
+        }
+        properties.add(property);
+      }
+    }
+
+    this.type = type;
+    this.properties = properties.toArray(new Property[properties.size()]);
+  }
+
+  /**
+   * @return O codec de {@code type}, montado na primeira chamada.
+   *
+   * @throws IllegalArgumentException Se a classe ou algum campo nao for
+   * suportado.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> NBTCodec<T> of(Class<T> type) {
+    Preconditions.checkNotNull(type, "type cannot be null");
+    return (NBTCodec<T>) CODECS.get(type);
+  }
+
+  public Class<T> getType() {
+    return this.type;
+  }
+
+  @SuppressWarnings("unchecked")
+  public T newInstance() {
+    try {
+      return (T) (Object) this.constructor.invokeExact();
+    } catch (Throwable t) {
+      throw Throwables.propagate(t);
+    }
+  }
+
+  public T fromCompound(NBTTagCompound compound) {
+    T value = this.newInstance();
+    this.readInto(compound, value);
+    return value;
+  }
+
+  /**
+   * Le os campos de {@code target} que tiverem uma chave em {@code compound}.
+   */
+  public void readInto(NBTTagCompound compound, T target) {
+    Map<String, NBTBase> map = compound.untrackedMap();
+
+    try {
+      for (Property property : this.properties) {
+        NBTBase tag = map.get(property.key);
+
+        if (tag != null) {
+          property.read(target, tag);
+        }
+      }
+    } catch (Throwable t) {
+      throw Throwables.propagate(t);
+    }
+  }
+
+  /**
+   * Le o compound atual do {@code reader} (depois de um
+   * {@link NBTReader#nextTag()} que devolveu 10), sem montar a arvore.
+   * Chaves desconhecidas sao puladas.
+   */
+  public T read(NBTReader reader) throws IOException {
+    T value = this.newInstance();
+    this.readInto(reader, value);
+    return value;
+  }
+
+  public void readInto(NBTReader reader, T target) throws IOException {
+    reader.beginCompound();
+
+    try {
+      while (reader.nextTag() != 0) {
+        Property property = this.byKey.get(reader.name());
+
+        if (property == null) {
+          reader.skipValue();
+        } else {
+          property.read(target, reader);
+        }
+      }
+    } catch (Throwable t) {
+      Throwables.propagateIfInstanceOf(t, IOException.class);
+      throw Throwables.propagate(t);
+    }
+
+    reader.endCompound();
+  }
+
+  public NBTTagCompound toCompound(T value) {
+    NBTTagCompound compound = new NBTTagCompound();
+    this.writeInto(value, compound);
+    return compound;
+  }
+
+  /**
+   * Escreve os campos de {@code value} em {@code compound}; as outras chaves
+   * do compound nao sao mexidas.
+   */
+  public void writeInto(T value, NBTTagCompound compound) {
+    try {
+      for (Property property : this.properties) {
+        property.write(value, compound);
+      }
+    } catch (Throwable t) {
+      throw Throwables.propagate(t);
+    }
+  }
+
+  public String toString() {
+    return "NBTCodec(" + this.type.getName() + ")";
+  }
+
+  private static String describe(Field field) {
+    return field.getDeclaringClass().getName() + "." + field.getName();
+  }
+
+  private static Property createProperty(MethodHandles.Lookup lookup, Field field, String key) {
+    MethodHandle getter;
+    MethodHandle setter;
+
+    try {
+      field.setAccessible(true);
+      getter = lookup.unreflectGetter(field);
+      setter = lookup.unreflectSetter(field);
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException("Cannot access " + describe(field), e);
+    }
+
+    Class<?> fieldType = field.getType();
+
+    if (fieldType.isPrimitive()) {
+      /* Tipos exatos, para o invokeExact nao fazer boxing. */
+      getter = getter.asType(MethodType.methodType(fieldType, Object.class));
+      setter = setter.asType(MethodType.methodType(void.class, Object.class, fieldType));
+      return new PrimitiveProperty(key, getter, setter, fieldType);
+    }
+
+    getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+    setter = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+
+    try {
+      return new ObjectProperty(key, getter, setter, coder(field.getGenericType()));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("@NbtField " + describe(field) + ": " + e.getMessage(), e);
+    }
+  }
+
+  private abstract static class Property {
+    final String key;
+    final MethodHandle getter;
+    final MethodHandle setter;
+
+    Property(String key, MethodHandle getter, MethodHandle setter) {
+      this.key = key;
+      this.getter = getter;
+      this.setter = setter;
+    }
+
+    abstract void read(Object target, NBTBase tag) throws Throwable;
+
+    abstract void read(Object target, NBTReader reader) throws Throwable;
+
+    abstract void write(Object source, NBTTagCompound compound) throws Throwable;
+  }
+
+  private static final class PrimitiveProperty extends Property {
+    private final byte type;
+    private final boolean bool;
+
+    PrimitiveProperty(String key, MethodHandle getter, MethodHandle setter, Class<?> fieldType) {
+      super(key, getter, setter);
+      this.bool = fieldType == boolean.class;
+
+      if (fieldType == boolean.class || fieldType == byte.class) {
+        this.type = 1;
+      } else if (fieldType == short.class) {
+        this.type = 2;
+      } else if (fieldType == int.class) {
+        this.type = 3;
+      } else if (fieldType == long.class) {
+        this.type = 4;
+      } else if (fieldType == float.class) {
+        this.type = 5;
+      } else if (fieldType == double.class) {
+        this.type = 6;
+      } else {
+        throw new IllegalArgumentException("Unsupported primitive type " + fieldType);
+      }
+    }
+
+    void read(Object target, NBTBase tag) throws Throwable {
+      if (!(tag instanceof NBTBase.NBTPrimitive)) {
+        return;
+      }
+
+      NBTBase.NBTPrimitive value = (NBTBase.NBTPrimitive) tag;
+
+      switch (this.type) {
+        case 1:
+          if (this.bool) {
+            this.setter.invokeExact(target, value.getByte() != 0);
+          } else {
+            this.setter.invokeExact(target, value.getByte());
+          }
+          break;
+
+        case 2:
+          this.setter.invokeExact(target, value.getShort());
+          break;
+
+        case 3:
+          this.setter.invokeExact(target, value.getInt());
+          break;
+
+        case 4:
+          this.setter.invokeExact(target, value.getLong());
+          break;
+
+        case 5:
+          this.setter.invokeExact(target, value.getFloat());
+          break;
+
+        default:
+          this.setter.invokeExact(target, value.getDouble());
+      }
+    }
+
+    void read(Object target, NBTReader reader) throws Throwable {
+      byte actual = reader.type();
+
+      if (actual != this.type) {
+        /* Outro tipo numerico: converte como os getters do compound. */
+        if (actual >= 1 && actual <= 6) {
+          this.read(target, reader.readTag());
+        } else {
+          reader.skipValue();
+        }
+        return;
+      }
+
+      switch (this.type) {
+        case 1:
+          if (this.bool) {
+            this.setter.invokeExact(target, reader.readByte() != 0);
+          } else {
+            this.setter.invokeExact(target, reader.readByte());
+          }
+          break;
+
+        case 2:
+          this.setter.invokeExact(target, reader.readShort());
+          break;
+
+        case 3:
+          this.setter.invokeExact(target, reader.readInt());
+          break;
+
+        case 4:
+          this.setter.invokeExact(target, reader.readLong());
+          break;
+
+        case 5:
+          this.setter.invokeExact(target, reader.readFloat());
+          break;
+
+        default:
+          this.setter.invokeExact(target, reader.readDouble());
+      }
+    }
+
+    void write(Object source, NBTTagCompound compound) throws Throwable {
+      switch (this.type) {
+        case 1:
+          if (this.bool) {
+            compound.setBoolean(this.key, (boolean) this.getter.invokeExact(source));
+          } else {
+            compound.setByte(this.key, (byte) this.getter.invokeExact(source));
+          }
+          break;
+
+        case 2:
+          compound.setShort(this.key, (short) this.getter.invokeExact(source));
+          break;
+
+        case 3:
+          compound.setInteger(this.key, (int) this.getter.invokeExact(source));
+          break;
+
+        case 4:
+          compound.setLong(this.key, (long) this.getter.invokeExact(source));
+          break;
+
+        case 5:
+          compound.setFloat(this.key, (float) this.getter.invokeExact(source));
+          break;
+
+        default:
+          compound.setDouble(this.key, (double) this.getter.invokeExact(source));
+      }
+    }
+  }
+
+  private static final class ObjectProperty extends Property {
+    private final Coder coder;
+
+    ObjectProperty(String key, MethodHandle getter, MethodHandle setter, Coder coder) {
+      super(key, getter, setter);
+      this.coder = coder;
+    }
+
+    void read(Object target, NBTBase tag) throws Throwable {
+      if (this.coder.accepts(tag.getId())) {
+        Object value = this.coder.decode(tag);
+
+        if (value != null) {
+          this.setter.invokeExact(target, value);
+        }
+      }
+    }
+
+    void read(Object target, NBTReader reader) throws Throwable {
+      if (!this.coder.accepts(reader.type())) {
+        reader.skipValue();
+        return;
+      }
+
+      Object value = this.coder.read(reader);
+
+      if (value != null) {
+        this.setter.invokeExact(target, value);
+      }
+    }
+
+    void write(Object source, NBTTagCompound compound) throws Throwable {
+      Object value = (Object) this.getter.invokeExact(source);
+
+      if (value == null) {
+        compound.removeTag(this.key);
+      } else {
+        compound.setTag(this.key, this.coder.encode(value));
+      }
+    }
+  }
+
+  /**
+   * Converte um tipo de campo (ou de elemento de lista) de/para tags.
+   */
+  private abstract static class Coder {
+    final byte type;
+
+    Coder(int type) {
+      this.type = (byte) type;
+    }
+
+    boolean accepts(byte id) {
+      return id == this.type;
+    }
+
+    abstract NBTBase encode(Object value);
+
+    /**
+     * @return O valor, ou {@code null} se a tag nao servir.
+     */
+    abstract Object decode(NBTBase tag);
+
+    Object read(NBTReader reader) throws IOException {
+      return this.decode(reader.readTag());
+    }
+  }
+
+  /**
+   * Wrappers de numeros aceitam qualquer tag numerica, como os getters do
+   * compound.
+   */
+  private abstract static class NumberCoder extends Coder {
+    NumberCoder(int type) {
+      super(type);
+    }
+
+    boolean accepts(byte id) {
+      return id >= 1 && id <= 6;
+    }
+
+    Object decode(NBTBase tag) {
+      return this.decode((NBTBase.NBTPrimitive) tag);
+    }
+
+    abstract Object decode(NBTBase.NBTPrimitive tag);
+  }
+
+  private static Coder coder(Type genericType) {
+    Class<?> raw = genericType instanceof ParameterizedType
+        ? (Class<?>) ((ParameterizedType) genericType).getRawType()
+        : genericType instanceof Class ? (Class<?>) genericType : null;
+
+    if (raw == null) {
+      throw new IllegalArgumentException("unsupported type " + genericType);
+    }
+
+    if (raw == Boolean.class) {
+      return new NumberCoder(1) {
+        NBTBase encode(Object value) {
+          return NBTTagByte.valueOf((byte) ((Boolean) value ? 1 : 0));
+        }
+
+        Object decode(NBTBase.NBTPrimitive tag) {
+          return tag.getByte() != 0;
+        }
+      };
+    }
+
+    if (raw == Byte.class) {
+      return new NumberCoder(1) {
+        NBTBase encode(Object value) {
+          return NBTTagByte.valueOf((Byte) value);
+        }
+
+        Object decode(NBTBase.NBTPrimitive tag) {
+          return tag.getByte();
+        }
+      };
+    }
+
+    if (raw == Short.class) {
+      return new NumberCoder(2) {
+        NBTBase encode(Object value) {
+          return NBTTagShort.valueOf((Short) value);
+        }
+
+        Object decode(NBTBase.NBTPrimitive tag) {
+          return tag.getShort();
+        }
+      };
+    }
+
+    if (raw == Integer.class) {
+      return new NumberCoder(3) {
+        NBTBase encode(Object value) {
+          return NBTTagInt.valueOf((Integer) value);
+        }
+
+        Object decode(NBTBase.NBTPrimitive tag) {
+          return tag.getInt();
+        }
+      };
+    }
+
+    if (raw == Long.class) {
+      return new NumberCoder(4) {
+        NBTBase encode(Object value) {
+          return NBTTagLong.valueOf((Long) value);
+        }
+
+        Object decode(NBTBase.NBTPrimitive tag) {
+          return tag.getLong();
+        }
+      };
+    }
+
+    if (raw == Float.class) {
+      return new NumberCoder(5) {
+        NBTBase encode(Object value) {
+          return NBTTagFloat.valueOf((Float) value);
+        }
+
+        Object decode(NBTBase.NBTPrimitive tag) {
+          return tag.getFloat();
+        }
+      };
+    }
+
+    if (raw == Double.class) {
+      return new NumberCoder(6) {
+        NBTBase encode(Object value) {
+          return NBTTagDouble.valueOf((Double) value);
+        }
+
+        Object decode(NBTBase.NBTPrimitive tag) {
+          return tag.getDouble();
+        }
+      };
+    }
+
+    if (raw == String.class) {
+      return new Coder(8) {
+        NBTBase encode(Object value) {
+          return NBTTagString.valueOf((String) value);
+        }
+
+        Object decode(NBTBase tag) {
+          return tag.getString();
+        }
+
+        Object read(NBTReader reader) throws IOException {
+          return reader.readString();
+        }
+      };
+    }
+
+    if (raw == byte[].class) {
+      return new Coder(7) {
+        NBTBase encode(Object value) {
+          return new NBTTagByteArray(((byte[]) value).clone());
+        }
+
+        Object decode(NBTBase tag) {
+          return ((NBTTagByteArray) tag).getByteArray().clone();
+        }
+
+        Object read(NBTReader reader) throws IOException {
+          return reader.readByteArray();
+        }
+      };
+    }
+
+    if (raw == int[].class) {
+      return new Coder(11) {
+        NBTBase encode(Object value) {
+          return new NBTTagIntArray(((int[]) value).clone());
+        }
+
+        Object decode(NBTBase tag) {
+          return ((NBTTagIntArray) tag).getIntArray().clone();
+        }
+
+        Object read(NBTReader reader) throws IOException {
+          return reader.readIntArray();
+        }
+      };
+    }
+
+    if (raw == long[].class) {
+      return new Coder(12) {
+        NBTBase encode(Object value) {
+          return new NBTTagLongArray(((long[]) value).clone());
+        }
+
+        Object decode(NBTBase tag) {
+          return ((NBTTagLongArray) tag).getLongArray().clone();
+        }
+
+        Object read(NBTReader reader) throws IOException {
+          return reader.readLongArray();
+        }
+      };
+    }
+
+    if (raw.isEnum()) {
+      return enumCoder(raw.asSubclass(Enum.class));
+    }
+
+    if (NBTBase.class.isAssignableFrom(raw)) {
+      return tagCoder(raw);
+    }
+
+    if (List.class == raw) {
+      if (!(genericType instanceof ParameterizedType)) {
+        throw new IllegalArgumentException("List needs an element type");
+      }
+      return listCoder(coder(((ParameterizedType) genericType).getActualTypeArguments()[0]));
+    }
+
+    if (!hasFields(raw)) {
+      throw new IllegalArgumentException("unsupported type " + raw.getName() + " (no @NbtField fields)");
+    }
+    return compoundCoder(raw);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Coder enumCoder(Class<? extends Enum> enumType) {
+    return new Coder(8) {
+      NBTBase encode(Object value) {
+        return NBTTagString.valueOf(((Enum<?>) value).name());
+      }
+
+      Object decode(NBTBase tag) {
+        try {
+          return Enum.valueOf(enumType, tag.getString());
+        } catch (IllegalArgumentException e) {
+          /* Constante que nao existe mais: fica o valor padrao. */
+          return null;
+        }
+      }
+    };
+  }
+
+  private static Coder tagCoder(Class<?> tagType) {
+    byte id = -1;
+
+    for (byte i = 1; i < NBTBase.NBT_TYPES.length; ++i) {
+      NBTBase tag = NBTBase.createNewByType(i);
+
+      if (tag != null && tag.getClass() == tagType) {
+        id = i;
+        break;
+      }
+    }
+
+    return new Coder(id) {
+      boolean accepts(byte actual) {
+        return this.type == -1 ? actual != 0 : actual == this.type;
+      }
+
+      NBTBase encode(Object value) {
+        return ((NBTBase) value).copy();
+      }
+
+      Object decode(NBTBase tag) {
+        return tagType.isInstance(tag) ? tag.copy() : null;
+      }
+    };
+  }
+
+  private static Coder listCoder(Coder element) {
+    return new Coder(9) {
+      NBTBase encode(Object value) {
+        NBTTagList list = new NBTTagList();
+
+        for (Object e : (List<?>) value) {
+          if (e != null) {
+            list.appendTag(element.encode(e));
+          }
+        }
+        return list;
+      }
+
+      Object decode(NBTBase tag) {
+        NBTTagList list = (NBTTagList) tag;
+        int count = list.tagCount();
+
+        if (count > 0 && !element.accepts((byte) list.getTagType())) {
+          return null;
+        }
+
+        List<Object> values = Lists.newArrayListWithCapacity(count);
+
+        for (int i = 0; i < count; ++i) {
+          Object value = element.decode(list.get(i));
+
+          if (value != null) {
+            values.add(value);
+          }
+        }
+        return values;
+      }
+
+      Object read(NBTReader reader) throws IOException {
+        int count = reader.beginList();
+
+        if (count > 0 && !element.accepts(reader.listType())) {
+          reader.endList();
+          return null;
+        }
+
+        List<Object> values = Lists.newArrayListWithCapacity(Math.max(count, 0));
+
+        while (reader.nextTag() != 0) {
+          Object value = element.read(reader);
+
+          if (value != null) {
+            values.add(value);
+          }
+        }
+
+        reader.endList();
+        return values;
+      }
+    };
+  }
+
+  private static Coder compoundCoder(Class<?> valueType) {
+    return new Coder(10) {
+      /* Resolvido so no primeiro uso, para classes que se referenciam. */
+      private NBTCodec<Object> codec;
+
+      @SuppressWarnings("unchecked")
+      private NBTCodec<Object> codec() {
+        if (this.codec == null) {
+          this.codec = (NBTCodec<Object>) of(valueType);
+        }
+        return this.codec;
+      }
+
+      NBTBase encode(Object value) {
+        return this.codec().toCompound(value);
+      }
+
+      Object decode(NBTBase tag) {
+        return this.codec().fromCompound((NBTTagCompound) tag);
+      }
+
+      Object read(NBTReader reader) throws IOException {
+        return this.codec().read(reader);
+      }
+    };
+  }
+
+  private static boolean hasFields(Class<?> type) {
+    for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        if (field.isAnnotationPresent(NbtField.class)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,324 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Mapa usado pelo {@link NBTTagCompound}. Enquanto tem poucas chaves guarda
+ * tudo em arrays e procura de forma linear (comparando o hash antes do
+ * {@code equals}); passando de {@link #THRESHOLD} chaves troca para um
+ * {@link java.util.HashMap}.
+ *
+ * <p>Tambem guarda o {@link #hashCode()}, descartado a cada modificacao.
+ * Como o mapa e compartilhado pelas copias de um compound (copy-on-write), o
+ * hash guardado tambem e.</p>
+ */
+final class NBTCompoundMap extends AbstractMap<String, NBTBase> {
+
+  static final int THRESHOLD = 8;
+
+  private String[] keys;
+  private NBTBase[] values;
+  private int[] hashes;
+  private int size;
+
+  /* Usado depois que o mapa passa do THRESHOLD; os arrays ficam null. */
+  private Map<String, NBTBase> hash;
+
+  private NBTBase.CachedHash cachedHash;
+
+  NBTCompoundMap() {
+    this(4);
+  }
+
+  NBTCompoundMap(int expectedSize) {
+    if (expectedSize > THRESHOLD) {
+      this.hash = Maps.newHashMapWithExpectedSize(expectedSize);
+    } else {
+      int capacity = Math.max(expectedSize, 1);
+      this.keys = new String[capacity];
+      this.values = new NBTBase[capacity];
+      this.hashes = new int[capacity];
+    }
+  }
+
+  private int indexOf(Object key) {
+    if (key == null) {
+      return -1;
+    }
+
+    int h = key.hashCode();
+
+    for (int i = 0; i < this.size; ++i) {
+      if (this.hashes[i] == h && key.equals(this.keys[i])) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public NBTBase get(Object key) {
+    if (this.hash != null) {
+      return this.hash.get(key);
+    }
+
+    int idx = this.indexOf(key);
+    return idx >= 0 ? this.values[idx] : null;
+  }
+
+  public boolean containsKey(Object key) {
+    return this.hash != null ? this.hash.containsKey(key) : this.indexOf(key) >= 0;
+  }
+
+  public NBTBase put(String key, NBTBase value) {
+    this.cachedHash = null;
+
+    if (this.hash != null) {
+      return this.hash.put(key, value);
+    }
+
+    int idx = this.indexOf(key);
+
+    if (idx >= 0) {
+      NBTBase old = this.values[idx];
+      this.values[idx] = value;
+      return old;
+    }
+
+    if (this.size == THRESHOLD) {
+      this.inflate();
+      return this.hash.put(key, value);
+    }
+
+    if (this.size == this.keys.length) {
+      int capacity = Math.min(THRESHOLD, this.size * 2);
+      this.keys = Arrays.copyOf(this.keys, capacity);
+      this.values = Arrays.copyOf(this.values, capacity);
+      this.hashes = Arrays.copyOf(this.hashes, capacity);
+    }
+
+    this.keys[this.size] = key;
+    this.values[this.size] = value;
+    this.hashes[this.size] = key.hashCode();
+    this.size++;
+    return null;
+  }
+
+  public NBTBase remove(Object key) {
+    if (this.hash != null) {
+      this.cachedHash = null;
+      return this.hash.remove(key);
+    }
+
+    int idx = this.indexOf(key);
+
+    if (idx < 0) {
+      return null;
+    }
+
+    NBTBase old = this.values[idx];
+    this.removeAt(idx);
+    return old;
+  }
+
+  private void removeAt(int idx) {
+    this.cachedHash = null;
+    int moved = this.size - idx - 1;
+    System.arraycopy(this.keys, idx + 1, this.keys, idx, moved);
+    System.arraycopy(this.values, idx + 1, this.values, idx, moved);
+    System.arraycopy(this.hashes, idx + 1, this.hashes, idx, moved);
+    this.size--;
+    this.keys[this.size] = null;
+    this.values[this.size] = null;
+  }
+
+  private void inflate() {
+    Map<String, NBTBase> map = Maps.newHashMapWithExpectedSize(THRESHOLD * 2);
+
+    for (int i = 0; i < this.size; ++i) {
+      map.put(this.keys[i], this.values[i]);
+    }
+    this.hash = map;
+    this.keys = null;
+    this.values = null;
+    this.hashes = null;
+    this.size = 0;
+  }
+
+  public int size() {
+    return this.hash != null ? this.hash.size() : this.size;
+  }
+
+  public boolean isEmpty() {
+    return this.size() == 0;
+  }
+
+  public void clear() {
+    this.cachedHash = null;
+
+    if (this.hash != null) {
+      this.hash.clear();
+      return;
+    }
+
+    Arrays.fill(this.keys, 0, this.size, null);
+    Arrays.fill(this.values, 0, this.size, null);
+    this.size = 0;
+  }
+
+  /**
+   * A view olha o modo do mapa a cada chamada, entao continua valida depois
+   * que o mapa passa do {@link #THRESHOLD}.
+   */
+  public Set<String> keySet() {
+    return new AbstractSet<String>() {
+      public Iterator<String> iterator() {
+        if (NBTCompoundMap.this.hash != null) {
+          return new HashIterator<>(NBTCompoundMap.this.hash.keySet().iterator());
+        }
+
+        return new ArrayIterator<String>() {
+          String value(int idx) {
+            return NBTCompoundMap.this.keys[idx];
+          }
+        };
+      }
+
+      public boolean contains(Object key) {
+        return NBTCompoundMap.this.containsKey(key);
+      }
+
+      public boolean remove(Object key) {
+        return NBTCompoundMap.this.remove(key) != null;
+      }
+
+      public int size() {
+        return NBTCompoundMap.this.size();
+      }
+    };
+  }
+
+  /**
+   * Como o {@link #keySet()}, a view continua valida depois que o mapa passa
+   * do {@link #THRESHOLD}. O {@code setValue} das entradas nao descarta o
+   * hash guardado; use {@link #put(String, NBTBase)}.
+   */
+  public Set<Map.Entry<String, NBTBase>> entrySet() {
+    return new AbstractSet<Map.Entry<String, NBTBase>>() {
+      public Iterator<Map.Entry<String, NBTBase>> iterator() {
+        if (NBTCompoundMap.this.hash != null) {
+          return new HashIterator<>(NBTCompoundMap.this.hash.entrySet().iterator());
+        }
+
+        return new ArrayIterator<Map.Entry<String, NBTBase>>() {
+          Map.Entry<String, NBTBase> value(int idx) {
+            return Maps.immutableEntry(NBTCompoundMap.this.keys[idx], NBTCompoundMap.this.values[idx]);
+          }
+        };
+      }
+
+      public int size() {
+        return NBTCompoundMap.this.size();
+      }
+    };
+  }
+
+  /**
+   * Mesmo valor que o {@link AbstractMap#hashCode()}, mas guardado ate a
+   * proxima modificacao do mapa ou de algum valor mutavel dele.
+   */
+  public int hashCode() {
+    NBTBase.CachedHash cached = this.cachedHash;
+
+    if (cached != null && cached.isValid()) {
+      return cached.hash;
+    }
+
+    int h = 0;
+    List<NBTBase> children = null;
+
+    for (Map.Entry<String, NBTBase> entry : this.entrySet()) {
+      NBTBase value = entry.getValue();
+      h += entry.getKey().hashCode() ^ value.hashCode();
+
+      if (NBTTagCompound.isMutable(value)) {
+        if (children == null) {
+          children = Lists.newArrayListWithCapacity(4);
+        }
+        children.add(value);
+      }
+    }
+
+    this.cachedHash = new NBTBase.CachedHash(h, children);
+    return h;
+  }
+
+  /**
+   * @return O hash guardado, se ainda for valido, ou {@code null}.
+   */
+  NBTBase.CachedHash cachedHash() {
+    NBTBase.CachedHash cached = this.cachedHash;
+    return cached != null && cached.isValid() ? cached : null;
+  }
+
+  /**
+   * Iterator do {@link java.util.HashMap} que descarta o hash guardado no
+   * {@code remove()}.
+   */
+  private final class HashIterator<T> implements Iterator<T> {
+    private final Iterator<T> delegate;
+
+    HashIterator(Iterator<T> delegate) {
+      this.delegate = delegate;
+    }
+
+    public boolean hasNext() {
+      return this.delegate.hasNext();
+    }
+
+    public T next() {
+      return this.delegate.next();
+    }
+
+    public void remove() {
+      this.delegate.remove();
+      NBTCompoundMap.this.cachedHash = null;
+    }
+  }
+
+  private abstract class ArrayIterator<T> implements Iterator<T> {
+    private int next;
+    private boolean canRemove;
+
+    abstract T value(int idx);
+
+    public boolean hasNext() {
+      return this.next < NBTCompoundMap.this.size;
+    }
+
+    public T next() {
+      if (!this.hasNext()) {
+        throw new NoSuchElementException();
+      }
+      this.canRemove = true;
+      return this.value(this.next++);
+    }
+
+    public void remove() {
+      if (!this.canRemove) {
+        throw new IllegalStateException();
+      }
+      this.canRemove = false;
+      NBTCompoundMap.this.removeAt(--this.next);
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package io.github.bktlib.nbt;
+
+/**
+ * Formatos de compressao usados em arquivos NBT.
+ *
+ * @see NBTIO
+ */
+public enum NBTCompression {
+  /**
+   * Gzip, usado em level.dat e nos arquivos de playerdata.
+   */
+  GZIP,
+
+  /**
+   * Zlib, usado nos chunks dentro dos arquivos de regiao.
+   */
+  ZLIB,
+
+  /**
+   * Sem compressao.
+   */
+  NONE;
+
+  /**
+   * Descobre o formato pelos dois primeiros bytes do arquivo.
+   */
+  public static NBTCompression detect(int b0, int b1) {
+    b0 &= 0xFF;
+    b1 &= 0xFF;
+
+    if (b0 == 0x1F && b1 == 0x8B) {
+      return GZIP;
+    }
+
+    if ((b0 & 0x0F) == 8 && ((b0 << 8) | b1) % 31 == 0) {
+      return ZLIB;
+    }
+    return NONE;
+  }
+}
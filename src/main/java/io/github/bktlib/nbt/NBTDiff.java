@@ -0,0 +1,332 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Diferenca estrutural entre dois compounds: chaves adicionadas, removidas e
+ * modificadas. Compounds que existem dos dois lados sao comparados
+ * recursivamente, entao mudar uma linha do lore so gera uma entrada em
+ * {@code display}; listas e arrays sao tratados como um valor so.
+ *
+ * <pre>
+ * NBTDiff diff = NBTDiff.compute(before, after);
+ * byte[] delta = diff.toByteArray();
+ * ...
+ * NBTDiff.fromByteArray(delta).apply(otherCopy);
+ * </pre>
+ *
+ * <p>O formato binario e uma sequencia de operacoes terminada por 0: um byte
+ * com a operacao, a chave (como nas tags) e, dependendo da operacao, o tipo e
+ * o payload do novo valor ou o diff do compound filho.</p>
+ */
+public final class NBTDiff {
+
+  private static final byte OP_END = 0;
+  private static final byte OP_ADD = 1;
+  private static final byte OP_CHANGE = 2;
+  private static final byte OP_REMOVE = 3;
+  private static final byte OP_PATCH = 4;
+
+  private final Map<String, NBTBase> added = Maps.newLinkedHashMap();
+  private final Map<String, NBTBase> changed = Maps.newLinkedHashMap();
+  private final Set<String> removed = Sets.newLinkedHashSet();
+  private final Map<String, NBTDiff> children = Maps.newLinkedHashMap();
+
+  private NBTDiff() {}
+
+  /**
+   * @return O que precisa ser feito em {@code from} para ele ficar igual a
+   * {@code to}.
+   */
+  public static NBTDiff compute(NBTTagCompound from, NBTTagCompound to) {
+    Preconditions.checkNotNull(from, "from cannot be null");
+    Preconditions.checkNotNull(to, "to cannot be null");
+
+    NBTDiff diff = new NBTDiff();
+
+    Map<String, NBTBase> oldMap = from.untrackedMap();
+    Map<String, NBTBase> newMap = to.untrackedMap();
+
+    if (oldMap == newMap) {
+      /* O mesmo compound, ou copias que ainda compartilham o mapa. */
+      return diff;
+    }
+
+    for (String key : oldMap.keySet()) {
+      if (!newMap.containsKey(key)) {
+        diff.removed.add(key);
+      }
+    }
+
+    for (Map.Entry<String, NBTBase> entry : newMap.entrySet()) {
+      String key = entry.getKey();
+      NBTBase newValue = entry.getValue();
+      NBTBase oldValue = oldMap.get(key);
+
+      if (oldValue == null) {
+        diff.added.put(key, newValue.copy());
+      } else if (oldValue.getId() == 10 && newValue.getId() == 10) {
+        NBTDiff child = compute((NBTTagCompound) oldValue, (NBTTagCompound) newValue);
+
+        if (!child.isEmpty()) {
+          diff.children.put(key, child);
+        }
+      } else if (!oldValue.equals(newValue)) {
+        diff.changed.put(key, newValue.copy());
+      }
+    }
+    return diff;
+  }
+
+  public boolean isEmpty() {
+    return this.added.isEmpty() && this.changed.isEmpty() && this.removed.isEmpty() && this.children.isEmpty();
+  }
+
+  /**
+   * @return Os caminhos (no formato do {@link NBTPath}) adicionados.
+   */
+  public List<String> getAddedPaths() {
+    List<String> paths = Lists.newArrayList();
+    this.collectPaths("", paths, OP_ADD);
+    return paths;
+  }
+
+  /**
+   * @return Os caminhos (no formato do {@link NBTPath}) removidos.
+   */
+  public List<String> getRemovedPaths() {
+    List<String> paths = Lists.newArrayList();
+    this.collectPaths("", paths, OP_REMOVE);
+    return paths;
+  }
+
+  /**
+   * @return Os caminhos (no formato do {@link NBTPath}) cujo valor mudou.
+   */
+  public List<String> getChangedPaths() {
+    List<String> paths = Lists.newArrayList();
+    this.collectPaths("", paths, OP_CHANGE);
+    return paths;
+  }
+
+  private void collectPaths(String prefix, List<String> paths, byte op) {
+    Iterable<String> keys = op == OP_ADD ? this.added.keySet() : op == OP_CHANGE ? this.changed.keySet() : this.removed;
+
+    for (String key : keys) {
+      paths.add(prefix + NBTPath.quoteKey(key));
+    }
+
+    for (Map.Entry<String, NBTDiff> entry : this.children.entrySet()) {
+      entry.getValue().collectPaths(prefix + NBTPath.quoteKey(entry.getKey()) + ".", paths, op);
+    }
+  }
+
+  /**
+   * Aplica o diff em {@code target}. Compounds filhos que nao existirem em
+   * {@code target} sao criados.
+   */
+  public void apply(NBTTagCompound target) {
+    for (String key : this.removed) {
+      target.removeTag(key);
+    }
+
+    for (Map.Entry<String, NBTBase> entry : this.added.entrySet()) {
+      target.setTag(entry.getKey(), entry.getValue().copy());
+    }
+
+    for (Map.Entry<String, NBTBase> entry : this.changed.entrySet()) {
+      target.setTag(entry.getKey(), entry.getValue().copy());
+    }
+
+    for (Map.Entry<String, NBTDiff> entry : this.children.entrySet()) {
+      NBTBase child = target.getTag(entry.getKey());
+
+      if (child == null || child.getId() != 10) {
+        child = new NBTTagCompound();
+        target.setTag(entry.getKey(), child);
+      }
+      entry.getValue().apply((NBTTagCompound) child);
+    }
+  }
+
+  /**
+   * Aplica o diff direto em um compound do NMS. So as chaves que mudaram sao
+   * convertidas e escritas no handle.
+   */
+  public void applyToNMS(Object nmsCompound) {
+    Map<String, Object> map = NMSNBTConverter.nmsMap(nmsCompound);
+
+    for (String key : this.removed) {
+      map.remove(key);
+    }
+
+    for (Map.Entry<String, NBTBase> entry : this.added.entrySet()) {
+      map.put(entry.getKey(), NMSNBTConverter.toNMS(entry.getValue()));
+    }
+
+    for (Map.Entry<String, NBTBase> entry : this.changed.entrySet()) {
+      map.put(entry.getKey(), NMSNBTConverter.toNMS(entry.getValue()));
+    }
+
+    for (Map.Entry<String, NBTDiff> entry : this.children.entrySet()) {
+      Object child = map.get(entry.getKey());
+
+      if (child != null && NMSNBTConverter.typeId(child) == 10) {
+        entry.getValue().applyToNMS(child);
+      } else {
+        NBTTagCompound created = new NBTTagCompound();
+        entry.getValue().apply(created);
+        map.put(entry.getKey(), NMSNBTConverter.toNMS(created));
+      }
+    }
+  }
+
+  public void write(DataOutput output) throws IOException {
+    for (String key : this.removed) {
+      output.writeByte(OP_REMOVE);
+      ModifiedUTF8.write(output, key);
+    }
+
+    writeValues(output, OP_ADD, this.added);
+    writeValues(output, OP_CHANGE, this.changed);
+
+    for (Map.Entry<String, NBTDiff> entry : this.children.entrySet()) {
+      output.writeByte(OP_PATCH);
+      ModifiedUTF8.write(output, entry.getKey());
+      entry.getValue().write(output);
+    }
+
+    output.writeByte(OP_END);
+  }
+
+  private static void writeValues(DataOutput output, byte op, Map<String, NBTBase> values) throws IOException {
+    for (Map.Entry<String, NBTBase> entry : values.entrySet()) {
+      output.writeByte(op);
+      ModifiedUTF8.write(output, entry.getKey());
+      output.writeByte(entry.getValue().getId());
+      entry.getValue().write(output);
+    }
+  }
+
+  /**
+   * @return Quantos bytes {@link #write(DataOutput)} escreve.
+   */
+  public int sizeOf() {
+    int size = 1;
+
+    for (String key : this.removed) {
+      size += 3 + ModifiedUTF8.encodedLength(key);
+    }
+
+    for (Map.Entry<String, NBTBase> entry : this.added.entrySet()) {
+      size += 4 + ModifiedUTF8.encodedLength(entry.getKey()) + entry.getValue().sizeOf();
+    }
+
+    for (Map.Entry<String, NBTBase> entry : this.changed.entrySet()) {
+      size += 4 + ModifiedUTF8.encodedLength(entry.getKey()) + entry.getValue().sizeOf();
+    }
+
+    for (Map.Entry<String, NBTDiff> entry : this.children.entrySet()) {
+      size += 3 + ModifiedUTF8.encodedLength(entry.getKey()) + entry.getValue().sizeOf();
+    }
+    return size;
+  }
+
+  public byte[] toByteArray() {
+    byte[] bytes = new byte[this.sizeOf()];
+
+    try {
+      this.write(new ByteBufferDataOutput(ByteBuffer.wrap(bytes)));
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+    return bytes;
+  }
+
+  public static NBTDiff read(DataInput input, NBTReadLimiter readLimiter) throws IOException {
+    return read(input, 0, readLimiter);
+  }
+
+  private static NBTDiff read(DataInput input, int depth, NBTReadLimiter readLimiter) throws IOException {
+    readLimiter.checkDepth(depth);
+
+    NBTDiff diff = new NBTDiff();
+    byte op;
+
+    while ((op = input.readByte()) != OP_END) {
+      String key = ModifiedUTF8.read(input);
+      readLimiter.read((long) (16 * key.length()));
+
+      switch (op) {
+        case OP_ADD:
+        case OP_CHANGE: {
+          byte type = input.readByte();
+
+          if (type <= 0 || type >= NBTBase.NBT_TYPES.length) {
+            throw new IOException("Invalid tag type in NBT diff: " + type);
+          }
+
+          NBTBase value = NBTTagCompound.readNBT(type, key, input, depth + 1, readLimiter);
+          (op == OP_ADD ? diff.added : diff.changed).put(key, value);
+          break;
+        }
+
+        case OP_REMOVE:
+          diff.removed.add(key);
+          break;
+
+        case OP_PATCH:
+          diff.children.put(key, read(input, depth + 1, readLimiter));
+          break;
+
+        default:
+          throw new IOException("Invalid NBT diff operation: " + op);
+      }
+    }
+    return diff;
+  }
+
+  public static NBTDiff fromByteArray(byte[] bytes) {
+    try {
+      return read(new ByteBufferDataInput(ByteBuffer.wrap(bytes), 0), NBTReadLimiter.INFINITE);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Invalid NBT diff", e);
+    }
+  }
+
+  public String toString() {
+    StringBuilder builder = new StringBuilder("{");
+
+    for (String path : this.getAddedPaths()) {
+      append(builder, "+", path);
+    }
+
+    for (String path : this.getChangedPaths()) {
+      append(builder, "~", path);
+    }
+
+    for (String path : this.getRemovedPaths()) {
+      append(builder, "-", path);
+    }
+    return builder.append("}").toString();
+  }
+
+  private static void append(StringBuilder builder, String op, String path) {
+    if (builder.length() > 1) {
+      builder.append(", ");
+    }
+    builder.append(op).append(path);
+  }
+}
@@ -0,0 +1,468 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Leitura e escrita de compounds NBT com nome na raiz (o formato de
+ * level.dat, playerdata, schematics...) em arquivos, canais e streams.
+ *
+ * <p>Os {@link Inflater}/{@link Deflater} (que alocam memoria nativa) ficam
+ * em um pool e sao reaproveitados entre leituras e escritas, em vez de
+ * criados e destruidos a cada arquivo como no {@link java.util.zip.GZIPInputStream}
+ * e {@link java.util.zip.GZIPOutputStream}.</p>
+ */
+public final class NBTIO {
+
+  private static final int GZIP_MAGIC = 0x8B1F;
+
+  private static final int FHCRC = 2;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+
+  private static final byte[] GZIP_HEADER = {0x1F, (byte) 0x8B, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xFF};
+
+  private static final int MAX_POOLED = Runtime.getRuntime().availableProcessors() * 2;
+
+  /**
+   * Tamanho maximo, descompactado, de um chunk ou arquivo lido inteiro para a
+   * memoria quando ninguem passou um limite. Protege contra zip bombs.
+   */
+  static final long DEFAULT_MAX_INFLATED = 64L << 20;
+
+  private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  private static volatile int bufferSize = 8192;
+  private static volatile int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+  /* O gzip usa deflate puro (nowrap), o header e o trailer sao escritos aqui. */
+  private static final Pool<Inflater> ZLIB_INFLATERS = new Pool<>(Inflater::new, Inflater::reset, Inflater::end);
+  private static final Pool<Inflater> GZIP_INFLATERS = new Pool<>(() -> new Inflater(true), Inflater::reset, Inflater::end);
+  private static final Pool<Deflater> ZLIB_DEFLATERS = new Pool<>(Deflater::new, Deflater::reset, Deflater::end);
+  private static final Pool<Deflater> GZIP_DEFLATERS = new Pool<>(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true), Deflater::reset, Deflater::end);
+
+  private NBTIO() {}
+
+  /**
+   * Define o tamanho dos buffers usados na leitura e escrita. O padrao e
+   * 8192.
+   */
+  public static void setBufferSize(int size) {
+    Preconditions.checkArgument(size > 0, "size must be positive");
+    bufferSize = size;
+  }
+
+  public static int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * Define o nivel de compressao (0-9, ou -1 para o padrao do zlib) usado na
+   * escrita.
+   */
+  public static void setCompressionLevel(int level) {
+    Preconditions.checkArgument(level >= -1 && level <= 9, "invalid compression level: %s", level);
+    compressionLevel = level;
+  }
+
+  public static int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+   * Le o arquivo, descobrindo a compressao pelos primeiros bytes.
+   */
+  public static NBTTagCompound readCompressed(File file) throws IOException {
+    try (PushbackInputStream input = new PushbackInputStream(new FileInputStream(file), 2)) {
+      int b0 = input.read();
+      int b1 = input.read();
+
+      if (b1 < 0) {
+        throw new EOFException(file.getPath());
+      }
+
+      input.unread(b1);
+      input.unread(b0);
+      return readCompressed(input, NBTCompression.detect(b0, b1));
+    }
+  }
+
+  public static NBTTagCompound readCompressed(File file, NBTCompression compression) throws IOException {
+    try (InputStream input = new FileInputStream(file)) {
+      return readCompressed(input, compression);
+    }
+  }
+
+  /**
+   * Le do canal. O canal nao e fechado.
+   */
+  public static NBTTagCompound readCompressed(ReadableByteChannel channel, NBTCompression compression) throws IOException {
+    return readCompressed(Channels.newInputStream(channel), compression);
+  }
+
+  /**
+   * Le do stream. O stream nao e fechado, mas pode ter sido lido alem do fim
+   * do NBT.
+   */
+  public static NBTTagCompound readCompressed(InputStream input, NBTCompression compression) throws IOException {
+    return readCompressed(input, compression, NBTReadLimiter.INFINITE);
+  }
+
+  public static NBTTagCompound readCompressed(InputStream input, NBTCompression compression, NBTReadLimiter readLimiter) throws IOException {
+    switch (compression) {
+      case GZIP: {
+        readGzipHeader(input);
+        Inflater inflater = GZIP_INFLATERS.take();
+
+        try {
+          CRC32 crc = new CRC32();
+          InflaterInput inflated = new InflaterInput(input, inflater);
+          NBTTagCompound compound = read(new DataInputStream(new BufferedInputStream(
+              new CheckedInputStream(inflated, crc), bufferSize)), readLimiter);
+          inflated.finish(crc);
+          return compound;
+        } finally {
+          GZIP_INFLATERS.release(inflater);
+        }
+      }
+
+      case ZLIB: {
+        Inflater inflater = ZLIB_INFLATERS.take();
+
+        try {
+          InflaterInput inflated = new InflaterInput(input, inflater);
+          return read(new DataInputStream(new BufferedInputStream(inflated, bufferSize)), readLimiter);
+        } finally {
+          ZLIB_INFLATERS.release(inflater);
+        }
+      }
+
+      default:
+        return read(new DataInputStream(new BufferedInputStream(input, bufferSize)), readLimiter);
+    }
+  }
+
+  /**
+   * Descompacta {@code len} bytes de {@code data} inteiros para um buffer,
+   * para serem lidos sem montar a arvore (ver {@link LazyNBTTagCompound} e
+   * {@link NBTView}).
+   *
+   * @param maxSize Maximo de bytes descompactados; passar disso lanca
+   * {@link IOException} antes de alocar mais.
+   */
+  static ByteBuffer decompress(byte[] data, int off, int len, NBTCompression compression, long maxSize)
+      throws IOException {
+    if (compression == NBTCompression.NONE) {
+      return ByteBuffer.wrap(data, off, len).slice();
+    }
+
+    boolean gzip = compression == NBTCompression.GZIP;
+
+    if (gzip) {
+      ByteArrayInputStream header = new ByteArrayInputStream(data, off, len);
+      readGzipHeader(header);
+      off += len - header.available();
+      len = header.available();
+    }
+
+    Pool<Inflater> pool = gzip ? GZIP_INFLATERS : ZLIB_INFLATERS;
+    Inflater inflater = pool.take();
+
+    try {
+      inflater.setInput(data, off, len);
+      int limit = (int) Math.min(maxSize, MAX_ARRAY_SIZE);
+      byte[] out = new byte[(int) Math.min(Math.max(256L, len * 4L), limit)];
+      int n = 0;
+
+      while (!inflater.finished()) {
+        if (n == out.length) {
+          if (n == limit) {
+            throw new IOException("NBT data is bigger than " + maxSize + " bytes after decompression");
+          }
+          out = Arrays.copyOf(out, (int) Math.min(out.length * 2L, limit));
+        }
+
+        int inflated = inflater.inflate(out, n, out.length - n);
+
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new EOFException("Unexpected end of compressed data");
+        }
+        n += inflated;
+      }
+
+      if (gzip) {
+        int trailer = off + len - inflater.getRemaining();
+
+        if (inflater.getRemaining() < 8) {
+          throw new EOFException("Unexpected end of GZIP trailer");
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(out, 0, n);
+        checkGzipTrailer(data, trailer, crc, n);
+      }
+      return ByteBuffer.wrap(out, 0, n);
+    } catch (DataFormatException e) {
+      throw new ZipException(e.getMessage());
+    } finally {
+      pool.release(inflater);
+    }
+  }
+
+  /**
+   * Le um compound com nome na raiz de {@code input}, sem compressao.
+   */
+  public static NBTTagCompound read(DataInput input, NBTReadLimiter readLimiter) throws IOException {
+    byte type = input.readByte();
+
+    if (type != 10) {
+      throw new IOException("Root tag must be a named compound tag, got " + NBTReader.typeName(type));
+    }
+
+    ModifiedUTF8.read(input);
+    NBTTagCompound compound = new NBTTagCompound();
+    compound.read(input, 0, readLimiter);
+    return compound;
+  }
+
+  public static void writeCompressed(NBTTagCompound compound, File file, NBTCompression compression) throws IOException {
+    try (OutputStream output = new FileOutputStream(file)) {
+      writeCompressed(compound, output, compression);
+    }
+  }
+
+  /**
+   * Escreve no canal. O canal nao e fechado.
+   */
+  public static void writeCompressed(NBTTagCompound compound, WritableByteChannel channel, NBTCompression compression) throws IOException {
+    writeCompressed(compound, Channels.newOutputStream(channel), compression);
+  }
+
+  /**
+   * Escreve no stream. O stream nao e fechado.
+   */
+  public static void writeCompressed(NBTTagCompound compound, OutputStream output, NBTCompression compression) throws IOException {
+    switch (compression) {
+      case GZIP: {
+        Deflater deflater = GZIP_DEFLATERS.take();
+        deflater.setLevel(compressionLevel);
+
+        try {
+          output.write(GZIP_HEADER);
+
+          CRC32 crc = new CRC32();
+          DeflaterOutputStream deflated = new DeflaterOutputStream(new NonClosing(output), deflater, bufferSize);
+          DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(deflated, crc), bufferSize));
+          write(compound, data);
+          data.flush();
+          deflated.finish();
+
+          writeIntLE(output, (int) crc.getValue());
+          writeIntLE(output, (int) deflater.getBytesRead());
+          output.flush();
+        } finally {
+          GZIP_DEFLATERS.release(deflater);
+        }
+        break;
+      }
+
+      case ZLIB: {
+        Deflater deflater = ZLIB_DEFLATERS.take();
+        deflater.setLevel(compressionLevel);
+
+        try {
+          DeflaterOutputStream deflated = new DeflaterOutputStream(new NonClosing(output), deflater, bufferSize);
+          DataOutputStream data = new DataOutputStream(new BufferedOutputStream(deflated, bufferSize));
+          write(compound, data);
+          data.flush();
+          deflated.finish();
+          output.flush();
+        } finally {
+          ZLIB_DEFLATERS.release(deflater);
+        }
+        break;
+      }
+
+      default: {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new NonClosing(output), bufferSize));
+        write(compound, data);
+        data.flush();
+      }
+    }
+  }
+
+  /**
+   * Escreve {@code compound} com nome vazio na raiz, sem compressao.
+   */
+  public static void write(NBTTagCompound compound, DataOutput output) throws IOException {
+    NBTTagCompound.writeEntry("", compound, output);
+  }
+
+  private static void readGzipHeader(InputStream input) throws IOException {
+    DataInputStream data = new DataInputStream(input);
+
+    if (Short.reverseBytes(data.readShort()) != (short) GZIP_MAGIC) {
+      throw new ZipException("Not in GZIP format");
+    }
+
+    if (data.readUnsignedByte() != Deflater.DEFLATED) {
+      throw new ZipException("Unsupported compression method");
+    }
+
+    int flags = data.readUnsignedByte();
+    NBTReader.skipFully(data, 6);
+
+    if ((flags & FEXTRA) != 0) {
+      NBTReader.skipFully(data, Short.reverseBytes(data.readShort()) & 0xFFFF);
+    }
+
+    if ((flags & FNAME) != 0) {
+      while (data.readUnsignedByte() != 0) {}
+    }
+
+    if ((flags & FCOMMENT) != 0) {
+      while (data.readUnsignedByte() != 0) {}
+    }
+
+    if ((flags & FHCRC) != 0) {
+      NBTReader.skipFully(data, 2);
+    }
+  }
+
+  private static void checkGzipTrailer(byte[] trailer, int off, CRC32 crc, long size) throws ZipException {
+    ByteBuffer buf = ByteBuffer.wrap(trailer, off, 8).order(ByteOrder.LITTLE_ENDIAN);
+
+    if ((buf.getInt() & 0xFFFFFFFFL) != crc.getValue() || (buf.getInt() & 0xFFFFFFFFL) != (size & 0xFFFFFFFFL)) {
+      throw new ZipException("Corrupt GZIP trailer");
+    }
+  }
+
+  private static void writeIntLE(OutputStream output, int v) throws IOException {
+    output.write(v);
+    output.write(v >>> 8);
+    output.write(v >>> 16);
+    output.write(v >>> 24);
+  }
+
+  /**
+   * {@link InflaterInputStream} que, no fim do gzip, confere o trailer com o
+   * CRC e o tamanho descompactado.
+   */
+  private static final class InflaterInput extends InflaterInputStream {
+
+    InflaterInput(InputStream input, Inflater inflater) {
+      super(input, inflater, bufferSize);
+    }
+
+    public void close() throws IOException {
+      /* O stream de baixo pertence a quem chamou. */
+    }
+
+    void finish(CRC32 crc) throws IOException {
+      byte[] skip = new byte[256];
+
+      while (this.read(skip, 0, skip.length) >= 0) {}
+
+      byte[] trailer = new byte[8];
+      int remaining = Math.min(this.inf.getRemaining(), trailer.length);
+      System.arraycopy(this.buf, this.len - this.inf.getRemaining(), trailer, 0, remaining);
+
+      if (remaining < trailer.length) {
+        new DataInputStream(this.in).readFully(trailer, remaining, trailer.length - remaining);
+      }
+
+      checkGzipTrailer(trailer, 0, crc, this.inf.getBytesWritten());
+    }
+  }
+
+  /**
+   * Impede que o {@link DeflaterOutputStream} feche o stream de quem chamou.
+   */
+  private static final class NonClosing extends FilterOutputStream {
+
+    NonClosing(OutputStream output) {
+      super(output);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+      this.out.write(b, off, len);
+    }
+
+    public void close() throws IOException {
+      this.flush();
+    }
+  }
+
+  private static final class Pool<T> {
+    private final Queue<T> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final Supplier<T> factory;
+    private final Consumer<T> reset;
+    private final Consumer<T> end;
+
+    Pool(Supplier<T> factory, Consumer<T> reset, Consumer<T> end) {
+      this.factory = factory;
+      this.reset = reset;
+      this.end = end;
+    }
+
+    T take() {
+      T value = this.free.poll();
+
+      if (value == null) {
+        return this.factory.get();
+      }
+      this.size.decrementAndGet();
+      return value;
+    }
+
+    void release(T value) {
+      this.reset.accept(value);
+
+      if (this.size.incrementAndGet() <= MAX_POOLED) {
+        this.free.offer(value);
+      } else {
+        this.size.decrementAndGet();
+        this.end.accept(value);
+      }
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package io.github.bktlib.nbt;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tabela de chaves de compound compartilhadas. As chaves lidas de NBT se
+ * repetem muito ("id", "Count", "tag", "display"...), entao em vez de cada
+ * compound guardar a sua propria copia da string, todas apontam para a mesma
+ * instancia.
+ *
+ * <p>A tabela tem um limite de {@link #MAX_SIZE} chaves; depois disso as
+ * chaves novas sao devolvidas sem serem guardadas, para que dados com chaves
+ * aleatorias nao facam a tabela crescer para sempre.</p>
+ */
+public final class NBTKeyInterner {
+
+  public static final int MAX_SIZE = 4096;
+
+  private static final ConcurrentMap<String, String> KEYS = new ConcurrentHashMap<>(256);
+
+  private static volatile boolean enabled = true;
+
+  static {
+    String[] common = {
+        "id", "Count", "Damage", "tag", "display", "Name", "Lore", "color", "ench", "lvl",
+        "Unbreakable", "HideFlags", "AttributeModifiers", "AttributeName", "Amount", "Operation",
+        "UUIDMost", "UUIDLeast", "SkullOwner", "Id", "Properties", "textures", "Value", "Signature",
+        "BlockEntityTag", "CustomPotionEffects", "Potion", "Duration", "Amplifier", "Ambient",
+        "ShowParticles", "Items", "Slot", "Inventory", "EnderItems", "Pos", "Motion", "Rotation",
+        "FallDistance", "Fire", "Air", "OnGround", "Dimension", "Invulnerable", "PortalCooldown",
+        "UUID", "CustomName", "CustomNameVisible", "Silent", "Health", "HealF", "AbsorptionAmount",
+        "Attributes", "Base", "Modifiers", "ActiveEffects", "Equipment", "DropChances", "x", "y", "z",
+        "Sections", "Y", "Blocks", "Data", "BlockLight", "SkyLight", "Add", "Entities",
+        "TileEntities", "TileTicks", "Level", "xPos", "zPos", "LastUpdate", "InhabitedTime",
+        "Biomes", "HeightMap", "TerrainPopulated", "LightPopulated", "Text1", "Text2", "Text3",
+        "Text4", "pages", "title", "author", "generation", "Fireworks", "Explosion", "Explosions",
+        "Flight", "Type", "Colors", "FadeColors", "Trail", "Flicker", "StoredEnchantments",
+        "RepairCost", "CanDestroy", "CanPlaceOn", "Patterns", "Pattern", "Color"
+    };
+
+    for (String key : common) {
+      KEYS.put(key, key);
+    }
+  }
+
+  private NBTKeyInterner() {}
+
+  /**
+   * @param key Chave lida de um compound.
+   * @return A instancia compartilhada de {@code key}. Se a tabela estiver
+   * cheia, ou desativada, devolve o proprio {@code key}.
+   */
+  public static String intern(String key) {
+    if (!enabled || key == null) {
+      return key;
+    }
+
+    String shared = KEYS.get(key);
+
+    if (shared != null) {
+      return shared;
+    }
+
+    if (KEYS.size() >= MAX_SIZE) {
+      return key;
+    }
+
+    shared = KEYS.putIfAbsent(key, key);
+    return shared != null ? shared : key;
+  }
+
+  /**
+   * Ativa ou desativa o compartilhamento de chaves. Chaves ja guardadas
+   * continuam na tabela.
+   */
+  public static void setEnabled(boolean enabled) {
+    NBTKeyInterner.enabled = enabled;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return Quantas chaves estao guardadas na tabela.
+   */
+  public static int size() {
+    return KEYS.size();
+  }
+}
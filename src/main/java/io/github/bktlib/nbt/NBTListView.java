@@ -0,0 +1,148 @@
+package io.github.bktlib.nbt;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Visao somente leitura de uma lista NBT codificada dentro de um
+ * {@link ByteBuffer}. Veja {@link NBTView}.
+ */
+public class NBTListView {
+
+  static final NBTListView EMPTY = new NBTListView(ByteBuffer.wrap(new byte[5]).asReadOnlyBuffer(), 0, 0,
+      NBTReadLimiter.DEFAULT_MAX_DEPTH);
+
+  private final ByteBuffer buf;
+  private final int start;
+  private final int depth;
+  private final int maxDepth;
+  private final byte tagType;
+  private final int size;
+
+  /* Posicao de cada elemento quando o tipo nao tem tamanho fixo. */
+  private int[] elements;
+
+  NBTListView(ByteBuffer buf, int start, int depth, int maxDepth) {
+    this.buf = buf;
+    this.start = start;
+    this.depth = depth;
+    this.maxDepth = maxDepth;
+    this.tagType = buf.get(start);
+    this.size = NBTBuffers.checkLength(buf.getInt(start + 1));
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public int tagCount() {
+    return this.size;
+  }
+
+  public int getTagType() {
+    return this.tagType;
+  }
+
+  /**
+   * @return A posicao do payload do elemento {@code i}, ou {@code -1} se o
+   * indice nao existe.
+   */
+  private int position(int i) {
+    if (i < 0 || i >= this.size) {
+      return -1;
+    }
+
+    int fixed = NBTReader.payloadSize(this.tagType);
+
+    if (fixed >= 0) {
+      return this.start + 5 + fixed * i;
+    }
+
+    if (this.elements == null) {
+      int[] positions = new int[this.size];
+      int pos = this.start + 5;
+
+      for (int j = 0; j < this.size; ++j) {
+        positions[j] = pos;
+        pos = NBTBuffers.skip(this.buf, pos, this.tagType, this.depth + 1, this.maxDepth);
+      }
+      this.elements = positions;
+    }
+    return this.elements[i];
+  }
+
+  private int position(int i, int type) {
+    return this.tagType == type ? this.position(i) : -1;
+  }
+
+  public int getInt(int i) {
+    int pos = this.position(i);
+    return pos < 0 ? 0 : NBTView.readInt(this.buf, this.tagType, pos);
+  }
+
+  public long getLong(int i) {
+    int pos = this.position(i);
+    return pos < 0 ? 0L : NBTView.readLong(this.buf, this.tagType, pos);
+  }
+
+  public double getDouble(int i) {
+    int pos = this.position(i, 6);
+    return pos < 0 ? 0.0D : this.buf.getDouble(pos);
+  }
+
+  public float getFloat(int i) {
+    int pos = this.position(i, 5);
+    return pos < 0 ? 0.0F : this.buf.getFloat(pos);
+  }
+
+  public String getStringTagAt(int i) {
+    int pos = this.position(i, 8);
+    return pos < 0 ? "" : NBTBuffers.readUTF(this.buf, pos);
+  }
+
+  public ByteBuffer getByteArray(int i) {
+    int pos = this.position(i, 7);
+    return pos < 0 ? NBTView.EMPTY_BYTES : NBTBuffers.slice(this.buf, pos + 4, this.buf.getInt(pos));
+  }
+
+  public IntBuffer getIntArray(int i) {
+    int pos = this.position(i, 11);
+    return pos < 0 ? NBTView.EMPTY_INTS : NBTBuffers.slice(this.buf, pos + 4, 4 * this.buf.getInt(pos)).asIntBuffer();
+  }
+
+  public LongBuffer getLongArray(int i) {
+    int pos = this.position(i, 12);
+    return pos < 0 ? NBTView.EMPTY_LONGS : NBTBuffers.slice(this.buf, pos + 4, 8 * this.buf.getInt(pos)).asLongBuffer();
+  }
+
+  public NBTView getCompoundTagAt(int i) {
+    int pos = this.position(i, 10);
+    return pos < 0 ? NBTView.EMPTY : new NBTView(this.buf, pos, this.depth + 1, this.maxDepth);
+  }
+
+  public NBTListView getListAt(int i) {
+    int pos = this.position(i, 9);
+    return pos < 0 ? EMPTY : new NBTListView(this.buf, pos, this.depth + 1, this.maxDepth);
+  }
+
+  /**
+   * Materializa o elemento {@code i} como um {@link NBTBase}.
+   */
+  public NBTBase get(int i) {
+    int pos = this.position(i);
+    return pos < 0 ? new NBTTagEnd() : NBTView.materialize(this.buf, this.tagType, pos, this.depth,
+        this.maxDepth);
+  }
+
+  /**
+   * Materializa a lista inteira como uma {@link NBTTagList}.
+   */
+  public NBTTagList toList() {
+    return (NBTTagList) NBTView.materialize(this.buf, (byte) 9, this.start, this.depth - 1, this.maxDepth);
+  }
+
+  public String toString() {
+    return this.toList().toString();
+  }
+}
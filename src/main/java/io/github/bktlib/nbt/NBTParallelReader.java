@@ -0,0 +1,269 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.base.Preconditions;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Le um compound com nome na raiz (como o {@link NBTIO#read}) decodificando
+ * as listas grandes em paralelo, em duas fases:
+ * <ol>
+ *   <li>acha onde cada elemento da lista comeca, pulando os bytes sem
+ *   alocar nada (ver {@link NBTBuffers#skip});</li>
+ *   <li>divide os elementos, por tamanho em bytes, entre as threads do
+ *   {@link ForkJoinPool}; cada parte e decodificada direto para a posicao
+ *   final dos elementos, entao a lista fica na ordem original.</li>
+ * </ol>
+ *
+ * <p>Listas de numeros e listas com menos de {@link #getMinElements()}
+ * elementos sao lidas normalmente, na thread atual. So compensa para NBT
+ * grande (entidades de uma regiao, storages com milhares de itens); em tags
+ * pequenas dividir o trabalho custa mais do que decodificar.</p>
+ *
+ * <pre>
+ * NBTParallelReader reader = new NBTParallelReader(ForkJoinPool.commonPool());
+ * NBTTagCompound data = reader.readCompressed(bytes, NBTCompression.GZIP);
+ * </pre>
+ *
+ * <p>As partes de uma lista dividem um mesmo {@link NBTReadLimiter}
+ * thread-safe com o que resta dos limites, somado de volta no limiter da
+ * leitura quando todas terminam.</p>
+ */
+public final class NBTParallelReader {
+
+  public static final int DEFAULT_MIN_ELEMENTS = 256;
+
+  private final ForkJoinPool pool;
+  private final int minElements;
+
+  public NBTParallelReader(ForkJoinPool pool) {
+    this(pool, DEFAULT_MIN_ELEMENTS);
+  }
+
+  /**
+   * @param minElements Tamanho minimo de uma lista para ela ser decodificada
+   * em paralelo.
+   */
+  public NBTParallelReader(ForkJoinPool pool, int minElements) {
+    Preconditions.checkNotNull(pool, "pool cannot be null");
+    Preconditions.checkArgument(minElements > 0, "minElements must be positive");
+
+    this.pool = pool;
+    this.minElements = minElements;
+  }
+
+  public int getMinElements() {
+    return this.minElements;
+  }
+
+  /**
+   * Le a tag raiz que comeca na posicao atual de {@code buf}, sem compressao.
+   * O buffer nao e modificado.
+   */
+  public NBTTagCompound read(ByteBuffer buf) throws IOException {
+    return this.read(buf, NBTReadLimiter.INFINITE);
+  }
+
+  public NBTTagCompound read(ByteBuffer buf, NBTReadLimiter readLimiter) throws IOException {
+    ByteBuffer dup = buf.duplicate().order(ByteOrder.BIG_ENDIAN);
+    ByteBufferDataInput input = new ByteBufferDataInput(dup, dup.position());
+    byte type = input.readByte();
+
+    if (type != 10) {
+      throw new IOException("Root tag must be a named compound tag, got " + NBTReader.typeName(type));
+    }
+
+    ModifiedUTF8.read(input);
+
+    try {
+      return this.readCompound(dup, input, 0, readLimiter);
+    } catch (IndexOutOfBoundsException e) {
+      throw new EOFException("Unexpected end of NBT data");
+    }
+  }
+
+  public NBTTagCompound readCompressed(byte[] data, NBTCompression compression) throws IOException {
+    return this.readCompressed(data, compression, NBTReadLimiter.INFINITE);
+  }
+
+  public NBTTagCompound readCompressed(byte[] data, NBTCompression compression, NBTReadLimiter readLimiter)
+      throws IOException {
+    /*
+        O buffer descompactado tambem e memoria alocada pela leitura; sem
+        limite (INFINITE) ainda vale o teto contra zip bombs do NBTIO.
+    */
+    long remaining = readLimiter.getMax() - readLimiter.getRead();
+    long maxSize = Math.min(NBTIO.DEFAULT_MAX_INFLATED, remaining);
+    return this.read(NBTIO.decompress(data, 0, data.length, compression, maxSize), readLimiter);
+  }
+
+  private NBTBase readValue(ByteBuffer buf, ByteBufferDataInput input, byte type, String key, int depth,
+                            NBTReadLimiter readLimiter) throws IOException {
+    switch (type) {
+      case 9:
+        return this.readList(buf, input, depth, readLimiter);
+
+      case 10:
+        return this.readCompound(buf, input, depth, readLimiter);
+
+      default:
+        return NBTTagCompound.readNBT(type, key, input, depth, readLimiter);
+    }
+  }
+
+  private NBTTagCompound readCompound(ByteBuffer buf, ByteBufferDataInput input, int depth,
+                                      NBTReadLimiter readLimiter) throws IOException {
+    readLimiter.checkDepth(depth);
+    NBTTagCompound compound = new NBTTagCompound();
+    byte type;
+
+    while ((type = input.readByte()) != 0) {
+      String key = NBTKeyInterner.intern(ModifiedUTF8.read(input));
+      readLimiter.read((long) (16 * key.length()));
+      readLimiter.countNodes(1L);
+      compound.setTag(key, this.readValue(buf, input, type, key, depth + 1, readLimiter));
+    }
+    return compound;
+  }
+
+  private NBTBase readList(ByteBuffer buf, ByteBufferDataInput input, int depth, NBTReadLimiter readLimiter)
+      throws IOException {
+    int pos = input.position();
+    byte elementType = buf.get(pos);
+    int count = NBTReader.checkListCount(buf.getInt(pos + 1));
+    boolean containers = elementType == 9 || elementType == 10;
+
+    /* Listas pequenas (e as de numeros, que sao so uma copia) nao sao divididas. */
+    if (NBTReader.payloadSize(elementType) >= 0 || count < this.minElements && !containers) {
+      return NBTTagCompound.readNBT((byte) 9, null, input, depth, readLimiter);
+    }
+
+    readLimiter.checkDepth(depth);
+    readLimiter.read(8L);
+    input.skipBytes(5);
+    readLimiter.countNodes(count);
+    readLimiter.read(32L * count);
+
+    /* Todo elemento ocupa pelo menos um byte; recusa a contagem antes de alocar. */
+    if (count > buf.limit() - input.position()) {
+      throw new EOFException("NBT list with " + count + " elements is bigger than the data");
+    }
+
+    NBTBase[] elements = new NBTBase[count];
+
+    if (count < this.minElements || this.pool.getParallelism() < 2) {
+      /* Pode ter uma lista grande dentro. */
+      for (int i = 0; i < count; ++i) {
+        elements[i] = this.readValue(buf, input, elementType, null, depth + 1, readLimiter);
+      }
+    } else {
+      int end = this.readParallel(buf, input.position(), elementType, elements, depth + 1, readLimiter);
+      input.skipBytes(end - input.position());
+    }
+    return NBTTagList.of(elementType, elements);
+  }
+
+  /**
+   * Decodifica {@code elements.length} elementos a partir de {@code pos}.
+   *
+   * @return A posicao logo apos o ultimo elemento.
+   */
+  private int readParallel(ByteBuffer buf, int pos, byte type, NBTBase[] elements, int depth,
+                           NBTReadLimiter readLimiter) throws IOException {
+    int count = elements.length;
+    int[] offsets = new int[count + 1];
+
+    for (int i = 0; i < count; ++i) {
+      offsets[i] = pos;
+      pos = NBTBuffers.skip(buf, pos, type, depth, readLimiter.getMaxDepth());
+    }
+    offsets[count] = pos;
+
+    if (pos > buf.limit()) {
+      throw new EOFException("Unexpected end of NBT data");
+    }
+
+    int parts = Math.min(count, this.pool.getParallelism() * 4);
+    long bytes = pos - offsets[0];
+    DecodeTask[] tasks = new DecodeTask[parts];
+    NBTReadLimiter shared = readLimiter.fork();
+    int from = 0;
+
+    for (int i = 0; i < parts; ++i) {
+      int to = i == parts - 1 ? count : indexAt(offsets, offsets[0] + (int) (bytes * (i + 1) / parts));
+      tasks[i] = new DecodeTask(buf, offsets, type, elements, from, Math.max(to, from), depth, shared);
+      from = Math.max(to, from);
+    }
+
+    try {
+      if (ForkJoinTask.inForkJoinPool()) {
+        ForkJoinTask.invokeAll(tasks);
+      } else {
+        this.pool.invoke(new RecursiveAction() {
+          protected void compute() {
+            ForkJoinTask.invokeAll(tasks);
+          }
+        });
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    readLimiter.join(shared);
+    return pos;
+  }
+
+  /**
+   * @return O primeiro elemento que comeca em {@code pos} ou depois.
+   */
+  private static int indexAt(int[] offsets, int pos) {
+    int idx = Arrays.binarySearch(offsets, pos);
+    return idx >= 0 ? idx : -idx - 1;
+  }
+
+  private final class DecodeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final ByteBuffer buf;
+    private final int[] offsets;
+    private final byte type;
+    private final NBTBase[] elements;
+    private final int from;
+    private final int to;
+    private final int depth;
+    private final NBTReadLimiter readLimiter;
+
+    DecodeTask(ByteBuffer buf, int[] offsets, byte type, NBTBase[] elements, int from, int to, int depth,
+               NBTReadLimiter readLimiter) {
+      this.buf = buf;
+      this.offsets = offsets;
+      this.type = type;
+      this.elements = elements;
+      this.from = from;
+      this.to = to;
+      this.depth = depth;
+      this.readLimiter = readLimiter;
+    }
+
+    protected void compute() {
+      ByteBufferDataInput input = new ByteBufferDataInput(this.buf, this.offsets[this.from]);
+
+      try {
+        for (int i = this.from; i < this.to; ++i) {
+          this.elements[i] = NBTParallelReader.this.readValue(this.buf, input, this.type, null, this.depth,
+              this.readLimiter);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
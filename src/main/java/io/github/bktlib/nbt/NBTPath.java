@@ -0,0 +1,383 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caminho pre-compilado para um valor dentro de um compound, como
+ * {@code display.Lore[2]} ou {@code AttributeModifiers[0].Amount}.
+ *
+ * <p>Chaves sao separadas por {@code .} e indices de lista ficam entre
+ * colchetes. Chaves com {@code .}, {@code [}, {@code ]} ou aspas podem ser
+ * escritas entre aspas, onde {@code \"} e {@code \\} sao uma aspa e uma
+ * barra: {@code BlockEntityTag."weird.key"}.</p>
+ *
+ * <p>Diferente de {@code getCompoundTag("display").getTagList("Lore", 8)},
+ * um caminho que nao existe nao cria compounds e listas vazias no meio do
+ * caminho; {@link #get(NBTTagCompound)} so devolve {@code null}.</p>
+ *
+ * <p>As leituras ({@link #get(NBTTagCompound)}, {@link #has(NBTTagCompound)}
+ * e os getters) nao modificam nada: nao desfazem o compartilhamento de uma
+ * copia (copy-on-write) nem marcam o item como modificado. Por isso o valor
+ * retornado nao deve ser modificado; use {@link #set(NBTTagCompound, NBTBase)}
+ * ou modifique um {@link NBTBase#copy()}.</p>
+ *
+ * <pre>
+ * private static final NBTPath LORE_2 = NBTPath.compile("display.Lore[2]");
+ *
+ * String line = LORE_2.getString(tag);
+ * LORE_2.set(tag, new NBTTagString("..."));
+ * </pre>
+ */
+public final class NBTPath {
+
+  private static final int MAX_CACHED = 1024;
+  private static final ConcurrentMap<String, NBTPath> CACHE = new ConcurrentHashMap<>();
+
+  private final String path;
+
+  /* Para cada segmento, a chave ou null se o segmento e um indice. */
+  private final String[] keys;
+  private final int[] indexes;
+
+  private NBTPath(String path, String[] keys, int[] indexes) {
+    this.path = path;
+    this.keys = keys;
+    this.indexes = indexes;
+  }
+
+  /**
+   * Compila (ou pega do cache) o caminho.
+   *
+   * @throws IllegalArgumentException Se o caminho for invalido.
+   */
+  public static NBTPath compile(String path) {
+    Preconditions.checkNotNull(path, "path cannot be null");
+
+    NBTPath compiled = CACHE.get(path);
+
+    if (compiled == null) {
+      compiled = parse(path);
+
+      if (CACHE.size() < MAX_CACHED) {
+        CACHE.putIfAbsent(path, compiled);
+      }
+    }
+    return compiled;
+  }
+
+  private static NBTPath parse(String path) {
+    List<String> keys = Lists.newArrayList();
+    List<Integer> indexes = Lists.newArrayList();
+    int i = 0;
+    int len = path.length();
+
+    while (i < len) {
+      char c = path.charAt(i);
+
+      if (c == '[') {
+        if (keys.isEmpty()) {
+          throw syntax(path, i, "path must start with a key");
+        }
+
+        int end = path.indexOf(']', i);
+
+        if (end < 0 || end == i + 1) {
+          throw syntax(path, i, "expected index");
+        }
+
+        int index;
+
+        try {
+          index = Integer.parseInt(path.substring(i + 1, end));
+        } catch (NumberFormatException e) {
+          throw syntax(path, i + 1, "invalid index");
+        }
+
+        if (index < 0) {
+          throw syntax(path, i + 1, "negative index");
+        }
+
+        keys.add(null);
+        indexes.add(index);
+        i = end + 1;
+      } else {
+        if (!keys.isEmpty()) {
+          if (c != '.') {
+            throw syntax(path, i, "expected '.' or '['");
+          }
+          i++;
+        }
+
+        StringBuilder key = new StringBuilder();
+
+        if (i < len && path.charAt(i) == '"') {
+          int quote = i++;
+
+          while (i < len && path.charAt(i) != '"') {
+            char k = path.charAt(i++);
+
+            if (k == '\\' && i < len) {
+              k = path.charAt(i++);
+            }
+            key.append(k);
+          }
+
+          if (i >= len) {
+            throw syntax(path, quote, "unterminated quote");
+          }
+          i++;
+        } else {
+          while (i < len && ".[]\"".indexOf(path.charAt(i)) < 0) {
+            key.append(path.charAt(i++));
+          }
+
+          if (key.length() == 0) {
+            throw syntax(path, i, "expected key");
+          }
+        }
+
+        keys.add(key.toString());
+        indexes.add(-1);
+      }
+    }
+
+    if (keys.isEmpty()) {
+      throw syntax(path, 0, "empty path");
+    }
+
+    int[] idx = new int[indexes.size()];
+
+    for (int j = 0; j < idx.length; ++j) {
+      idx[j] = indexes.get(j);
+    }
+    return new NBTPath(path, keys.toArray(new String[keys.size()]), idx);
+  }
+
+  private static IllegalArgumentException syntax(String path, int pos, String message) {
+    return new IllegalArgumentException("Invalid NBT path '" + path + "' at " + pos + ": " + message);
+  }
+
+  /**
+   * @return O valor no caminho, ou {@code null} se algum segmento nao
+   * existir ou nao for do tipo esperado.
+   */
+  public NBTBase get(NBTTagCompound root) {
+    return this.walk(root, this.keys.length, false);
+  }
+
+  public boolean has(NBTTagCompound root) {
+    return this.get(root) != null;
+  }
+
+  /**
+   * @return A string no caminho, ou {@code def} se ela nao existir.
+   */
+  public String getString(NBTTagCompound root, String def) {
+    NBTBase value = this.get(root);
+    return value != null && value.getId() == 8 ? value.getString() : def;
+  }
+
+  /**
+   * @return A string no caminho, ou {@code ""} se ela nao existir.
+   */
+  public String getString(NBTTagCompound root) {
+    return this.getString(root, "");
+  }
+
+  /**
+   * @return O numero no caminho convertido para int, ou 0.
+   */
+  public int getInt(NBTTagCompound root) {
+    NBTBase value = this.get(root);
+    return value instanceof NBTBase.NBTPrimitive ? ((NBTBase.NBTPrimitive) value).getInt() : 0;
+  }
+
+  /**
+   * @return O numero no caminho convertido para double, ou 0.
+   */
+  public double getDouble(NBTTagCompound root) {
+    NBTBase value = this.get(root);
+    return value instanceof NBTBase.NBTPrimitive ? ((NBTBase.NBTPrimitive) value).getDouble() : 0.0D;
+  }
+
+  /**
+   * Define o valor no caminho. Compounds e listas que faltarem no meio do
+   * caminho sao criados; um indice so pode ser de um elemento que ja existe
+   * ou igual ao tamanho da lista (para adicionar no fim).
+   *
+   * @throws IllegalArgumentException Se um segmento do meio existir mas nao
+   * for um compound/lista, ou o indice estiver fora da lista.
+   */
+  public void set(NBTTagCompound root, NBTBase value) {
+    Preconditions.checkNotNull(value, "value cannot be null");
+
+    NBTBase current = root;
+    int last = this.keys.length - 1;
+
+    for (int i = 0; i < last; ++i) {
+      NBTBase next = this.child(current, i, true);
+
+      if (next == null) {
+        next = this.keys[i + 1] != null ? new NBTTagCompound() : new NBTTagList();
+        this.put(current, i, next);
+      } else if (next.getId() != (this.keys[i + 1] != null ? 10 : 9)) {
+        throw new IllegalArgumentException(this.describe(i) + " is a " + NBTReader.typeName(next.getId())
+            + ", not a " + (this.keys[i + 1] != null ? "compound" : "list"));
+      }
+      current = next;
+    }
+    this.put(current, last, value);
+  }
+
+  /**
+   * Remove o valor no caminho.
+   *
+   * @return Se havia um valor para remover.
+   */
+  public boolean remove(NBTTagCompound root) {
+    int last = this.keys.length - 1;
+    NBTBase parent = this.walk(root, last, true);
+
+    if (parent == null || this.child(parent, last, false) == null) {
+      return false;
+    }
+
+    if (this.keys[last] != null) {
+      ((NBTTagCompound) parent).removeTag(this.keys[last]);
+    } else {
+      ((NBTTagList) parent).removeTag(this.indexes[last]);
+    }
+    return true;
+  }
+
+  /**
+   * Segue os {@code count} primeiros segmentos.
+   *
+   * @param mutable Se o resultado vai ser modificado: passa pelo
+   * {@link NBTTagCompound#getTag(String)}/{@link NBTTagList#get(int)}, que
+   * desfazem o copy-on-write. Para so ler, o mapa e a lista sao acessados
+   * direto.
+   */
+  private NBTBase walk(NBTTagCompound root, int count, boolean mutable) {
+    NBTBase current = root;
+
+    for (int i = 0; i < count && current != null; ++i) {
+      current = this.child(current, i, mutable);
+    }
+    return current;
+  }
+
+  private NBTBase child(NBTBase parent, int segment, boolean mutable) {
+    String key = this.keys[segment];
+
+    if (key != null) {
+      if (parent.getId() != 10) {
+        return null;
+      }
+
+      NBTTagCompound compound = (NBTTagCompound) parent;
+      return mutable ? compound.getTag(key) : compound.untrackedMap().get(key);
+    }
+
+    if (parent.getId() != 9) {
+      return null;
+    }
+
+    NBTTagList list = (NBTTagList) parent;
+    int index = this.indexes[segment];
+
+    if (index >= list.tagCount()) {
+      return null;
+    }
+    return mutable ? list.get(index) : list.untrackedGet(index);
+  }
+
+  private void put(NBTBase parent, int segment, NBTBase value) {
+    String key = this.keys[segment];
+
+    if (key != null) {
+      ((NBTTagCompound) parent).setTag(key, value);
+      return;
+    }
+
+    NBTTagList list = (NBTTagList) parent;
+    int index = this.indexes[segment];
+
+    if (list.tagCount() > 0 && list.getTagType() != value.getId()) {
+      throw new IllegalArgumentException(this.describe(segment - 1) + " is a list of "
+          + NBTReader.typeName((byte) list.getTagType()) + ", cannot hold a " + NBTReader.typeName(value.getId()));
+    }
+
+    if (index < list.tagCount()) {
+      list.set(index, value);
+    } else if (index == list.tagCount()) {
+      list.appendTag(value);
+    } else {
+      throw new IllegalArgumentException("Index " + index + " is out of bounds for " + this.describe(segment - 1)
+          + " (size " + list.tagCount() + ")");
+    }
+  }
+
+  /**
+   * @return O texto do caminho ate o segmento {@code segment} (inclusive).
+   */
+  private String describe(int segment) {
+    if (segment < 0) {
+      return "root";
+    }
+
+    StringBuilder builder = new StringBuilder();
+
+    for (int i = 0; i <= segment; ++i) {
+      if (this.keys[i] == null) {
+        builder.append('[').append(this.indexes[i]).append(']');
+      } else {
+        if (i > 0) {
+          builder.append('.');
+        }
+        builder.append(quoteKey(this.keys[i]));
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * @return {@code key} como um segmento de caminho, entre aspas se
+   * necessario.
+   */
+  static String quoteKey(String key) {
+    if (!key.isEmpty() && key.indexOf('.') < 0 && key.indexOf('[') < 0 && key.indexOf(']') < 0
+        && key.indexOf('"') < 0) {
+      return key;
+    }
+
+    StringBuilder builder = new StringBuilder(key.length() + 2).append('"');
+
+    for (int i = 0; i < key.length(); ++i) {
+      char c = key.charAt(i);
+
+      if (c == '"' || c == '\\') {
+        builder.append('\\');
+      }
+      builder.append(c);
+    }
+    return builder.append('"').toString();
+  }
+
+  public boolean equals(Object obj) {
+    return obj instanceof NBTPath && ((NBTPath) obj).path.equals(this.path);
+  }
+
+  public int hashCode() {
+    return this.path.hashCode();
+  }
+
+  public String toString() {
+    return this.path;
+  }
+}
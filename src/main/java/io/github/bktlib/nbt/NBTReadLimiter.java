@@ -1,22 +1,276 @@
 package io.github.bktlib.nbt;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limita o que uma leitura de NBT pode alocar: o total de bytes, o numero de
+ * tags e a profundidade. Os valores sao somados durante toda a leitura e
+ * verificados antes de cada alocacao, entao um array ou lista gigante e
+ * recusado antes de ser criado.
+ *
+ * <p>Uma instancia guarda o estado de uma leitura; para reaproveita-la chame
+ * {@link #reset()}. Nao e thread-safe, exceto o {@link #INFINITE}, que nao
+ * guarda nada.</p>
+ *
+ * <pre>
+ * NBTReadLimiter limiter = new NBTReadLimiter(2097152L, 64, 65536L);
+ * NBTTagCompound tag = NBTIO.read(input, limiter);
+ * </pre>
+ */
 public class NBTReadLimiter {
 
-  public static final NBTReadLimiter INFINITE = new NBTReadLimiter(0L) {
+  public static final int DEFAULT_MAX_DEPTH = 512;
+
+  /**
+   * Sem limite de tamanho nem de tags; a profundidade continua limitada a
+   * {@link #DEFAULT_MAX_DEPTH}.
+   */
+  public static final NBTReadLimiter INFINITE = new NBTReadLimiter(Long.MAX_VALUE) {
     public void read(long bits) {}
+
+    public void countNodes(long count) {}
+
+    public void checkDepth(int depth) {
+      if (depth > DEFAULT_MAX_DEPTH) {
+        throw tooDeep(DEFAULT_MAX_DEPTH);
+      }
+    }
+
+    public void reset() {}
+
+    NBTReadLimiter fork() {
+      return this;
+    }
+
+    void join(NBTReadLimiter child) {}
   };
 
   private final long max;
+  private final int maxDepth;
+  private final long maxNodes;
 
+  private long read;
+  private long nodes;
+  private int peakDepth;
+  private long peak;
+
+  /**
+   * @param max Maximo de bytes alocados.
+   */
   public NBTReadLimiter(long max) {
+    this(max, DEFAULT_MAX_DEPTH, Long.MAX_VALUE);
+  }
+
+  /**
+   * @param max Maximo de bytes alocados.
+   * @param maxDepth Maximo de compounds/listas um dentro do outro.
+   * @param maxNodes Maximo de tags lidas.
+   */
+  public NBTReadLimiter(long max, int maxDepth, long maxNodes) {
     this.max = max;
+    this.maxDepth = maxDepth;
+    this.maxNodes = maxNodes;
   }
 
+  /**
+   * Conta {@code bits} no total da leitura. Chamado antes de alocar.
+   */
   public void read(long bits) {
-    long read = bits / 8L;
+    checkSize(bits);
+    this.read += bits / 8L;
+
+    if (this.read > this.peak) {
+      this.peak = this.read;
+    }
+
+    if (this.read > this.max) {
+      throw tooBig(this.read, this.max);
+    }
+  }
+
+  /**
+   * Conta {@code count} tags no total da leitura.
+   */
+  public void countNodes(long count) {
+    checkCount(count);
+    this.nodes += count;
+
+    if (this.nodes > this.maxNodes) {
+      throw tooManyNodes(this.nodes, this.maxNodes);
+    }
+  }
+
+  public void checkDepth(int depth) {
+    if (depth > this.maxDepth) {
+      throw tooDeep(this.maxDepth);
+    }
+
+    if (depth > this.peakDepth) {
+      this.peakDepth = depth;
+    }
+  }
+
+  /**
+   * @return Um limiter thread-safe, com o que ainda resta dos limites desse,
+   * para ser usado por todas as threads de uma parte da leitura feita em
+   * paralelo. Os contadores dele sao somados de volta com
+   * {@link #join(NBTReadLimiter)}.
+   */
+  NBTReadLimiter fork() {
+    return new Shared(this.max - this.read, this.maxDepth, this.maxNodes - this.nodes);
+  }
+
+  /**
+   * Soma os contadores de um limiter criado pelo {@link #fork()}, verificando
+   * os limites de novo.
+   */
+  void join(NBTReadLimiter child) {
+    this.read(child.getRead() * 8L);
+    this.countNodes(child.getNodes());
+    this.peakDepth = Math.max(this.peakDepth, child.getPeakDepth());
+  }
+
+  /**
+   * @return O arena de onde os compounds e listas dessa leitura saem, ou
+   * {@code null} para cria-los normalmente.
+   */
+  NBTArena arena() {
+    return null;
+  }
+
+  static RuntimeException tooDeep(int maxDepth) {
+    return new RuntimeException("Tried to read NBT tag with too high complexity, depth > " + maxDepth);
+  }
+
+  private static RuntimeException tooBig(long read, long max) {
+    return new RuntimeException("Tried to read NBT tag that was too big; tried to allocate: " + read + "bytes where max allowed: " + max);
+  }
+
+  private static RuntimeException tooManyNodes(long nodes, long maxNodes) {
+    return new RuntimeException("Tried to read NBT tag with too many nodes: " + nodes + " where max allowed: " + maxNodes);
+  }
+
+  private static void checkSize(long bits) {
+    if (bits < 0) {
+      throw new RuntimeException("Tried to read NBT tag with negative size: " + bits / 8L + " bytes");
+    }
+  }
+
+  private static void checkCount(long count) {
+    if (count < 0) {
+      throw new RuntimeException("Tried to read NBT list with negative size: " + count);
+    }
+  }
+
+  /**
+   * Zera os contadores para uma nova leitura. O {@link #getPeak()} e mantido.
+   */
+  public void reset() {
+    this.read = 0L;
+    this.nodes = 0L;
+    this.peakDepth = 0;
+  }
+
+  /**
+   * @return Quantos bytes a leitura atual alocou.
+   */
+  public long getRead() {
+    return this.read;
+  }
+
+  /**
+   * @return O maior {@link #getRead()} ja visto por esse limiter, inclusive
+   * em leituras anteriores ao {@link #reset()}.
+   */
+  public long getPeak() {
+    return this.peak;
+  }
+
+  public long getNodes() {
+    return this.nodes;
+  }
+
+  public int getPeakDepth() {
+    return this.peakDepth;
+  }
+
+  public long getMax() {
+    return this.max;
+  }
+
+  public int getMaxDepth() {
+    return this.maxDepth;
+  }
+
+  public long getMaxNodes() {
+    return this.maxNodes;
+  }
+
+  /**
+   * Criado pelo {@link #fork()}: os contadores sao atomicos, entao um limite
+   * passado por qualquer uma das threads vale para a leitura toda.
+   */
+  private static final class Shared extends NBTReadLimiter {
+    private final AtomicLong sharedRead = new AtomicLong();
+    private final AtomicLong sharedNodes = new AtomicLong();
+    private final AtomicInteger sharedPeakDepth = new AtomicInteger();
+
+    Shared(long max, int maxDepth, long maxNodes) {
+      super(max, maxDepth, maxNodes);
+    }
+
+    public void read(long bits) {
+      checkSize(bits);
+      long read = this.sharedRead.addAndGet(bits / 8L);
+
+      if (read > this.getMax()) {
+        throw tooBig(read, this.getMax());
+      }
+    }
+
+    public void countNodes(long count) {
+      checkCount(count);
+      long nodes = this.sharedNodes.addAndGet(count);
+
+      if (nodes > this.getMaxNodes()) {
+        throw tooManyNodes(nodes, this.getMaxNodes());
+      }
+    }
+
+    public void checkDepth(int depth) {
+      if (depth > this.getMaxDepth()) {
+        throw tooDeep(this.getMaxDepth());
+      }
+      this.sharedPeakDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    void join(NBTReadLimiter child) {
+      this.read(child.getRead() * 8L);
+      this.countNodes(child.getNodes());
+      this.sharedPeakDepth.accumulateAndGet(child.getPeakDepth(), Math::max);
+    }
+
+    public void reset() {
+      this.sharedRead.set(0L);
+      this.sharedNodes.set(0L);
+      this.sharedPeakDepth.set(0);
+    }
+
+    public long getRead() {
+      return this.sharedRead.get();
+    }
+
+    public long getPeak() {
+      return this.sharedRead.get();
+    }
+
+    public long getNodes() {
+      return this.sharedNodes.get();
+    }
 
-    if (read > this.max) {
-      throw new RuntimeException("Tried to read NBT tag that was too big; tried to allocate: " + read + "bytes where max allowed: " + this.max);
+    public int getPeakDepth() {
+      return this.sharedPeakDepth.get();
     }
   }
 }
@@ -0,0 +1,444 @@
+package io.github.bktlib.nbt;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Leitor NBT no estilo "pull": percorre os dados direto do {@link DataInput}
+ * sem montar a arvore de {@link NBTBase}, entao so os valores que forem
+ * realmente lidos sao alocados.
+ *
+ * <pre>
+ * NBTReader reader = new NBTReader(input);
+ * reader.nextTag();          // tag raiz
+ * reader.beginCompound();
+ * while (reader.nextTag() != 0) {
+ *   if (reader.name().equals("Health")) health = reader.readFloat();
+ *   else reader.skipValue();
+ * }
+ * reader.endCompound();
+ * </pre>
+ */
+public class NBTReader {
+
+  private static final byte SCOPE_COMPOUND = 0;
+  private static final byte SCOPE_LIST = 1;
+
+  private final DataInput input;
+  private final NBTReadLimiter readLimiter;
+
+  private byte[] scopeKinds = new byte[16];
+  private byte[] listTypes = new byte[16];
+  private int[] remaining = new int[16];
+  private int depth;
+
+  private byte type;
+  private String name;
+  private boolean pending;
+  private boolean scopeEnded;
+
+  public NBTReader(DataInput input) {
+    this(input, NBTReadLimiter.INFINITE);
+  }
+
+  public NBTReader(DataInput input, NBTReadLimiter readLimiter) {
+    this.input = input;
+    this.readLimiter = readLimiter;
+  }
+
+  /**
+   * Avanca para o proximo valor do escopo atual (compound, lista ou raiz).
+   * Se o valor anterior nao foi consumido ele e pulado.
+   *
+   * @return O id do tipo do valor, ou {@code 0} quando o escopo terminou.
+   */
+  public byte nextTag() throws IOException {
+    if (this.pending) {
+      this.skipValue();
+    }
+
+    if (this.depth > 0 && this.scopeKinds[this.depth - 1] == SCOPE_LIST) {
+      int top = this.depth - 1;
+      this.name = null;
+
+      if (this.remaining[top] <= 0) {
+        this.type = 0;
+        return 0;
+      }
+
+      this.remaining[top]--;
+      this.type = this.listTypes[top];
+      this.pending = true;
+      return this.type;
+    }
+
+    if (this.scopeEnded) {
+      this.type = 0;
+      this.name = null;
+      return 0;
+    }
+
+    this.type = this.input.readByte();
+
+    if (this.type == 0) {
+      this.name = null;
+      this.scopeEnded = this.depth > 0;
+      return 0;
+    }
+
+    this.name = ModifiedUTF8.read(this.input);
+    this.readLimiter.read((long) (16 * this.name.length()));
+    this.pending = true;
+    return this.type;
+  }
+
+  /**
+   * Avanca ate o valor com a chave {@code key} no compound atual, pulando os
+   * outros.
+   *
+   * @return O id do tipo do valor encontrado, ou {@code 0} se a chave nao
+   * existe no compound.
+   */
+  public byte findTag(String key) throws IOException {
+    byte b;
+
+    while ((b = this.nextTag()) != 0) {
+      if (key.equals(this.name)) {
+        return b;
+      }
+      this.skipValue();
+    }
+    return 0;
+  }
+
+  public byte type() {
+    return this.type;
+  }
+
+  /**
+   * @return A chave do valor atual, ou {@code null} se o valor e um elemento
+   * de lista.
+   */
+  public String name() {
+    return this.name;
+  }
+
+  public int depth() {
+    return this.depth;
+  }
+
+  public void skipValue() throws IOException {
+    this.expectPending();
+    this.pending = false;
+    skip(this.input, this.type, this.depth + 1, this.readLimiter);
+  }
+
+  public byte readByte() throws IOException {
+    this.expect(1);
+    this.readLimiter.read(8L);
+    return this.input.readByte();
+  }
+
+  public boolean readBoolean() throws IOException {
+    return this.readByte() != 0;
+  }
+
+  public short readShort() throws IOException {
+    this.expect(2);
+    this.readLimiter.read(16L);
+    return this.input.readShort();
+  }
+
+  public int readInt() throws IOException {
+    this.expect(3);
+    this.readLimiter.read(32L);
+    return this.input.readInt();
+  }
+
+  public long readLong() throws IOException {
+    this.expect(4);
+    this.readLimiter.read(64L);
+    return this.input.readLong();
+  }
+
+  public float readFloat() throws IOException {
+    this.expect(5);
+    this.readLimiter.read(32L);
+    return this.input.readFloat();
+  }
+
+  public double readDouble() throws IOException {
+    this.expect(6);
+    this.readLimiter.read(64L);
+    return this.input.readDouble();
+  }
+
+  public byte[] readByteArray() throws IOException {
+    this.expect(7);
+    int len = this.input.readInt();
+    this.readLimiter.read(8L * len);
+    byte[] data = new byte[len];
+    this.input.readFully(data);
+    return data;
+  }
+
+  public String readString() throws IOException {
+    this.expect(8);
+    return ModifiedUTF8.read(this.input, this.readLimiter);
+  }
+
+  public int[] readIntArray() throws IOException {
+    this.expect(11);
+    int len = this.input.readInt();
+    this.readLimiter.read(32L * len);
+    return NBTBulkIO.readInts(this.input, len, 4);
+  }
+
+  public long[] readLongArray() throws IOException {
+    this.expect(12);
+    int len = this.input.readInt();
+    this.readLimiter.read(64L * len);
+    return NBTBulkIO.readLongs(this.input, len);
+  }
+
+  /**
+   * Materializa o valor atual como um {@link NBTBase}. Util quando so uma
+   * parte pequena dos dados precisa virar arvore.
+   */
+  public NBTBase readTag() throws IOException {
+    this.expectPending();
+    this.pending = false;
+    NBTBase base = NBTBase.createNewByType(this.type);
+    base.read(this.input, this.depth + 1, this.readLimiter);
+    return base;
+  }
+
+  public void beginCompound() throws IOException {
+    this.expect(10);
+    this.push(SCOPE_COMPOUND, (byte) 0, 0);
+    this.scopeEnded = false;
+  }
+
+  /**
+   * Sai do compound atual, pulando as entradas que ainda nao foram lidas.
+   */
+  public void endCompound() throws IOException {
+    if (this.depth == 0 || this.scopeKinds[this.depth - 1] != SCOPE_COMPOUND) {
+      throw new IllegalStateException("Not inside a compound");
+    }
+
+    while (this.nextTag() != 0) {
+      this.skipValue();
+    }
+    this.pop();
+  }
+
+  /**
+   * Entra na lista atual.
+   *
+   * @return O numero de elementos da lista.
+   */
+  public int beginList() throws IOException {
+    this.expect(9);
+    this.readLimiter.read(8L);
+    byte elementType = this.input.readByte();
+    int count = checkListCount(this.input.readInt());
+    this.push(SCOPE_LIST, elementType, count);
+    return count;
+  }
+
+  /**
+   * @return O id do tipo dos elementos da lista atual.
+   */
+  public byte listType() {
+    if (this.depth == 0 || this.scopeKinds[this.depth - 1] != SCOPE_LIST) {
+      throw new IllegalStateException("Not inside a list");
+    }
+    return this.listTypes[this.depth - 1];
+  }
+
+  /**
+   * Sai da lista atual, pulando os elementos que ainda nao foram lidos.
+   */
+  public void endList() throws IOException {
+    byte elementType = this.listType();
+    int top = this.depth - 1;
+
+    if (this.pending) {
+      this.skipValue();
+    }
+    skipPayloads(this.input, elementType, this.remaining[top], this.depth + 1, this.readLimiter);
+    this.remaining[top] = 0;
+    this.pop();
+  }
+
+  private void push(byte kind, byte elementType, int count) {
+    this.readLimiter.checkDepth(this.depth + 1);
+
+    if (this.depth == this.scopeKinds.length) {
+      int newLen = this.depth * 2;
+      this.scopeKinds = Arrays.copyOf(this.scopeKinds, newLen);
+      this.listTypes = Arrays.copyOf(this.listTypes, newLen);
+      this.remaining = Arrays.copyOf(this.remaining, newLen);
+    }
+
+    this.pending = false;
+    this.scopeKinds[this.depth] = kind;
+    this.listTypes[this.depth] = elementType;
+    this.remaining[this.depth] = count;
+    this.depth++;
+  }
+
+  private void pop() {
+    this.depth--;
+    this.pending = false;
+    this.type = 0;
+    this.name = null;
+    /*
+        O escopo pai so pode ser um compound ainda aberto,
+        senao nao teriamos entrado nesse escopo.
+    */
+    this.scopeEnded = false;
+  }
+
+  private void expectPending() {
+    if (!this.pending) {
+      throw new IllegalStateException("No pending value, call nextTag() first");
+    }
+  }
+
+  private void expect(int id) {
+    this.expectPending();
+
+    if (this.type != id) {
+      throw new IllegalStateException("Expected " + NBTBase.NBT_TYPES[id] + " but was " + typeName(this.type));
+    }
+    this.pending = false;
+  }
+
+  static String typeName(byte id) {
+    return id >= 0 && id < NBTBase.NBT_TYPES.length ? NBTBase.NBT_TYPES[id] : "UNKNOWN(" + id + ")";
+  }
+
+  /**
+   * @return {@code count}, o numero de elementos de uma lista lido dos dados.
+   * @throws IOException Se for negativo.
+   */
+  static int checkListCount(int count) throws IOException {
+    if (count < 0) {
+      throw new IOException("Tried to read NBT list with negative size: " + count);
+    }
+    return count;
+  }
+
+  /**
+   * @return O tamanho fixo do payload do tipo, ou {@code -1} se o tamanho
+   * depende dos dados.
+   */
+  static int payloadSize(byte id) {
+    switch (id) {
+      case 0:
+        return 0;
+
+      case 1:
+        return 1;
+
+      case 2:
+        return 2;
+
+      case 3:
+      case 5:
+        return 4;
+
+      case 4:
+      case 6:
+        return 8;
+
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Pula o payload de uma tag do tipo {@code id}. Os bytes pulados contam no
+   * {@code readLimiter} (antes de serem pulados) e a profundidade e a dele.
+   */
+  static void skip(DataInput input, byte id, int depth, NBTReadLimiter readLimiter) throws IOException {
+    switch (id) {
+      case 7:
+        skipCounted(input, input.readInt(), readLimiter);
+        break;
+
+      case 8:
+        skipCounted(input, input.readUnsignedShort(), readLimiter);
+        break;
+
+      case 9: {
+        readLimiter.checkDepth(depth);
+        readLimiter.read(8L);
+        byte elementType = input.readByte();
+        int count = checkListCount(input.readInt());
+        skipPayloads(input, elementType, count, depth + 1, readLimiter);
+        break;
+      }
+
+      case 10: {
+        readLimiter.checkDepth(depth);
+        byte b;
+
+        while ((b = input.readByte()) != 0) {
+          skipCounted(input, input.readUnsignedShort(), readLimiter);
+          skip(input, b, depth + 1, readLimiter);
+        }
+        break;
+      }
+
+      case 11:
+        skipCounted(input, 4L * input.readInt(), readLimiter);
+        break;
+
+      case 12:
+        skipCounted(input, 8L * input.readInt(), readLimiter);
+        break;
+
+      default:
+        int size = payloadSize(id);
+
+        if (size < 0) {
+          throw new IOException("Unknown NBT tag type: " + id);
+        }
+        skipCounted(input, size, readLimiter);
+    }
+  }
+
+  static void skipPayloads(DataInput input, byte id, int count, int depth, NBTReadLimiter readLimiter)
+      throws IOException {
+    int size = payloadSize(id);
+
+    if (size >= 0) {
+      skipCounted(input, (long) size * count, readLimiter);
+    } else {
+      for (int i = 0; i < count; ++i) {
+        skip(input, id, depth, readLimiter);
+      }
+    }
+  }
+
+  private static void skipCounted(DataInput input, long len, NBTReadLimiter readLimiter) throws IOException {
+    readLimiter.read(8L * len);
+    skipFully(input, len);
+  }
+
+  static void skipFully(DataInput input, long len) throws IOException {
+    while (len > 0) {
+      int skipped = input.skipBytes((int) Math.min(len, Integer.MAX_VALUE));
+
+      if (skipped <= 0) {
+        input.readByte();
+        skipped = 1;
+      }
+      len -= skipped;
+    }
+  }
+}
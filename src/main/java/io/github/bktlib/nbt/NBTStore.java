@@ -0,0 +1,144 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Guarda cada compound distinto uma vez so, indexado pelo
+ * {@link NBTCanonical#hash(NBTBase) hash da forma canonica}, e devolve
+ * {@link Ref}s compartilhadas para ele. Util quando milhoes de itens (leiloes,
+ * baus de jogadores) repetem alguns milhares de tags diferentes.
+ *
+ * <pre>
+ * item.ref = store.intern(itemTag); // no lugar da tag
+ * ...
+ * NBTTagCompound tag = item.ref.get();
+ * </pre>
+ *
+ * <p>Cada {@link Ref} guarda so os bytes da
+ * {@link NBTCanonical forma canonica}, e cada {@link Ref#get()} monta uma
+ * arvore nova a partir deles, entao nada do que foi passado para o
+ * {@link #intern(NBTTagCompound)} ou devolvido pelo {@code get()} e
+ * compartilhado com o store. Listas vazias voltam com o tipo {@code END},
+ * como na forma canonica.</p>
+ *
+ * <p><b>O store nao e persistente.</b> As entradas so sao mantidas enquanto
+ * alguem tiver uma referencia para a {@link Ref}; o store em si nao impede
+ * que elas sejam coletadas, e depois disso {@link #get(HashCode)} devolve
+ * {@code null}. Guardar so o {@link Ref#getHash() hash} (em um arquivo, banco
+ * de dados...) nao e suficiente para recuperar a tag.</p>
+ *
+ * <p>Tags com o mesmo hash mas forma canonica diferente (colisoes) recebem
+ * uma {@link Ref} propria que nao fica registrada no store.</p>
+ */
+public final class NBTStore {
+
+  private final ConcurrentMap<HashCode, Ref> refs = CacheBuilder.newBuilder()
+      .weakValues()
+      .<HashCode, Ref>build()
+      .asMap();
+
+  /**
+   * @return A referencia para um compound igual a {@code tag}, criando uma
+   * se for o primeiro. {@code tag} (e qualquer parte dele) pode ser
+   * modificado depois sem afetar o store.
+   */
+  public Ref intern(NBTTagCompound tag) {
+    Preconditions.checkNotNull(tag, "tag cannot be null");
+
+    byte[] canonical = NBTCanonical.toByteArray(tag);
+    HashCode hash = NBTCanonical.hash(canonical);
+    Ref created = null;
+
+    while (true) {
+      Ref existing = this.refs.get(hash);
+
+      if (existing != null) {
+        /*
+            O murmur3 nao e criptografico e os dados podem vir de jogadores:
+            uma colisao nunca pode devolver a tag de outro.
+        */
+        return Arrays.equals(existing.canonical, canonical) ? existing : new Ref(hash, canonical);
+      }
+
+      if (created == null) {
+        created = new Ref(hash, canonical);
+      }
+
+      if (this.refs.putIfAbsent(hash, created) == null) {
+        return created;
+      }
+    }
+  }
+
+  /**
+   * @return A referencia com o hash {@code hash}, ou {@code null} se ela nao
+   * estiver (mais) no store: nenhuma {@link Ref} desse hash e mantida por
+   * quem chamou o {@link #intern(NBTTagCompound)}.
+   */
+  public Ref get(HashCode hash) {
+    return this.refs.get(hash);
+  }
+
+  public boolean contains(HashCode hash) {
+    return this.refs.containsKey(hash);
+  }
+
+  /**
+   * @return Quantas tags distintas estao no store.
+   */
+  public int size() {
+    return this.refs.size();
+  }
+
+  public void clear() {
+    this.refs.clear();
+  }
+
+  /**
+   * Referencia para uma tag guardada no store.
+   */
+  public static final class Ref {
+    private final HashCode hash;
+    private final byte[] canonical;
+
+    Ref(HashCode hash, byte[] canonical) {
+      this.hash = hash;
+      this.canonical = canonical;
+    }
+
+    public HashCode getHash() {
+      return this.hash;
+    }
+
+    /**
+     * @return Uma arvore nova com a tag, que pode ser modificada livremente.
+     */
+    public NBTTagCompound get() {
+      try {
+        return NBTIO.read(new ByteBufferDataInput(ByteBuffer.wrap(this.canonical), 0), NBTReadLimiter.INFINITE);
+      } catch (IOException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+
+    /**
+     * @return Se {@code tag} tem a mesma forma canonica que a tag guardada,
+     * sem montar a arvore guardada.
+     */
+    public boolean matches(NBTTagCompound tag) {
+      return Arrays.equals(this.canonical, NBTCanonical.toByteArray(tag));
+    }
+
+    public String toString() {
+      return this.hash + "=" + this.get();
+    }
+  }
+}
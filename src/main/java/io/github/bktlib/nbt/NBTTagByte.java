@@ -8,16 +8,35 @@ public class NBTTagByte extends NBTBase.NBTPrimitive {
 
   private byte data;
 
+  private static final NBTTagByte[] CACHE = new NBTTagByte[256];
+
+  static {
+    for (int i = 0; i < CACHE.length; ++i) {
+      CACHE[i] = new NBTTagByte((byte) (i - 128));
+    }
+  }
+
   NBTTagByte() {}
 
   public NBTTagByte(byte data) {
     this.data = data;
   }
 
+  /**
+   * @return Uma instancia compartilhada (todos os bytes ficam em cache).
+   */
+  public static NBTTagByte valueOf(byte data) {
+    return CACHE[data + 128];
+  }
+
   void write(DataOutput output) throws IOException {
     output.writeByte(this.data);
   }
 
+  public int sizeOf() {
+    return 1;
+  }
+
   void read(DataInput input, int depth, NBTReadLimiter readLimiter) throws IOException {
     readLimiter.read(8L);
     this.data = input.readByte();
@@ -32,7 +51,7 @@ public class NBTTagByte extends NBTBase.NBTPrimitive {
   }
 
   public NBTBase copy() {
-    return new NBTTagByte(this.data);
+    return valueOf(this.data);
   }
 
   public boolean equals(Object obj) {
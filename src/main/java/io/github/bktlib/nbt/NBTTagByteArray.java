@@ -20,9 +20,13 @@ public class NBTTagByteArray extends NBTBase {
     output.write(this.data);
   }
 
+  public int sizeOf() {
+    return 4 + this.data.length;
+  }
+
   void read(DataInput input, int depth, NBTReadLimiter readLimiter) throws IOException {
     int i = input.readInt();
-    readLimiter.read(8 * i);
+    readLimiter.read(8L * i);
     this.data = new byte[i];
     input.readFully(this.data);
   }
@@ -1,18 +1,34 @@
 package io.github.bktlib.nbt;
 
-import com.google.common.base.Throwables;
-import com.google.common.collect.Maps;
 import io.github.bktlib.reflect.util.ReflectUtil;
 
 import java.io.*;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 public class NBTTagCompound extends NBTBase {
 
-  protected Map<String, NBTBase> dataMap = Maps.newHashMap();
+  protected Map<String, NBTBase> dataMap = new NBTCompoundMap();
+
+  /*
+      Quando true o dataMap tambem e usado por uma copia (copy-on-write),
+      entao ele precisa ser duplicado antes de qualquer modificacao.
+  */
+  private boolean shared;
+
+  /*
+      Quando true algum compound, lista ou array desse compound pode ser
+      usado por fora (saiu por um getter ou entrou por um setTag), entao o
+      copy() nao pode compartilhar o dataMap.
+  */
+  private boolean escaped;
+
+  /*
+      Quando true esse compound esta no mapa (ou lista) de mais de um pai,
+      que copiam ele antes de entrega-lo por um getter.
+  */
+  private boolean aliased;
 
   public static NBTTagCompound fromNMSCompound(Object nmsCompound) {
     if (nmsCompound.getClass() != ReflectUtil.getClass("{nms}.NBTTagCompound")) {
@@ -28,14 +44,11 @@ public class NBTTagCompound extends NBTBase {
       thiz.saveToHandle();
       return thiz.getHandle();
     }
-    Object newInst = ReflectUtil.instantiate("{nms}.NBTTagCompound");
-    NMSNBTTagCompound newCompound = new NMSNBTTagCompound(newInst);
-    newCompound.merge(this);
-    newCompound.saveToHandle();
-    return newInst;
+    return NMSNBTConverter.toNMS(this);
   }
 
   public Set<String> getKeySet() {
+    this.unshare();
     return this.dataMap.keySet();
   }
 
@@ -44,43 +57,52 @@ public class NBTTagCompound extends NBTBase {
   }
 
   public void setTag(String key, NBTBase value) {
+    this.unshare();
+
+    if (isMutable(value)) {
+      this.escaped = true;
+    }
     this.dataMap.put(key, value);
   }
 
   public void setByte(String key, byte value) {
-    this.dataMap.put(key, new NBTTagByte(value));
+    this.setTag(key, NBTTagByte.valueOf(value));
   }
 
   public void setShort(String key, short value) {
-    this.dataMap.put(key, new NBTTagShort(value));
+    this.setTag(key, NBTTagShort.valueOf(value));
   }
 
   public void setInteger(String key, int value) {
-    this.dataMap.put(key, new NBTTagInt(value));
+    this.setTag(key, NBTTagInt.valueOf(value));
   }
 
   public void setLong(String key, long value) {
-    this.dataMap.put(key, new NBTTagLong(value));
+    this.setTag(key, NBTTagLong.valueOf(value));
   }
 
   public void setFloat(String key, float value) {
-    this.dataMap.put(key, new NBTTagFloat(value));
+    this.setTag(key, NBTTagFloat.valueOf(value));
   }
 
   public void setDouble(String key, double value) {
-    this.dataMap.put(key, new NBTTagDouble(value));
+    this.setTag(key, NBTTagDouble.valueOf(value));
   }
 
   public void setString(String key, String value) {
-    this.dataMap.put(key, new NBTTagString(value));
+    this.setTag(key, NBTTagString.valueOf(value));
   }
 
   public void setByteArray(String key, byte[] value) {
-    this.dataMap.put(key, new NBTTagByteArray(value));
+    this.setTag(key, new NBTTagByteArray(value));
   }
 
   public void setIntArray(String key, int[] value) {
-    this.dataMap.put(key, new NBTTagIntArray(value));
+    this.setTag(key, new NBTTagIntArray(value));
+  }
+
+  public void setLongArray(String key, long[] value) {
+    this.setTag(key, new NBTTagLongArray(value));
   }
 
   public void setBoolean(String key, boolean value) {
@@ -88,7 +110,7 @@ public class NBTTagCompound extends NBTBase {
   }
 
   public NBTBase getTag(String key) {
-    return this.dataMap.get(key);
+    return this.getMutable(key);
   }
 
   public byte getTagType(String key) {
@@ -108,78 +130,66 @@ public class NBTTagCompound extends NBTBase {
   }
 
   public byte getByte(String key) {
-    try {
-      return !this.hasKey(key, 99) ? 0 : ((NBTBase.NBTPrimitive) this.dataMap.get(key)).getByte();
-    } catch (ClassCastException e) {
-      return (byte) 0;
-    }
+    NBTBase val = this.dataMap.get(key);
+    return val instanceof NBTPrimitive ? ((NBTPrimitive) val).getByte() : 0;
   }
 
   public short getShort(String key) {
-    try {
-      return !this.hasKey(key, 99) ? 0 : ((NBTBase.NBTPrimitive) this.dataMap.get(key)).getShort();
-    } catch (ClassCastException e) {
-      return (short) 0;
-    }
+    NBTBase val = this.dataMap.get(key);
+    return val instanceof NBTPrimitive ? ((NBTPrimitive) val).getShort() : 0;
   }
 
   public int getInteger(String key) {
-    try {
-      return !this.hasKey(key, 99) ? 0 : ((NBTBase.NBTPrimitive) this.dataMap.get(key)).getInt();
-    } catch (ClassCastException e) {
-      return 0;
-    }
+    NBTBase val = this.dataMap.get(key);
+    return val instanceof NBTPrimitive ? ((NBTPrimitive) val).getInt() : 0;
   }
 
   public long getLong(String key) {
-    try {
-      return !this.hasKey(key, 99) ? 0L : ((NBTBase.NBTPrimitive) this.dataMap.get(key)).getLong();
-    } catch (ClassCastException e) {
-      return 0L;
-    }
+    NBTBase val = this.dataMap.get(key);
+    return val instanceof NBTPrimitive ? ((NBTPrimitive) val).getLong() : 0L;
   }
 
   public float getFloat(String key) {
-    try {
-      return !this.hasKey(key, 99) ? 0.0F : ((NBTBase.NBTPrimitive) this.dataMap.get(key)).getFloat();
-    } catch (ClassCastException e) {
-      return 0.0F;
-    }
+    NBTBase val = this.dataMap.get(key);
+    return val instanceof NBTPrimitive ? ((NBTPrimitive) val).getFloat() : 0.0F;
   }
 
   public double getDouble(String key) {
-    try {
-      return !this.hasKey(key, 99) ? 0.0D : ((NBTBase.NBTPrimitive) this.dataMap.get(key)).getDouble();
-    } catch (ClassCastException e) {
-      return 0.0D;
-    }
+    NBTBase val = this.dataMap.get(key);
+    return val instanceof NBTPrimitive ? ((NBTPrimitive) val).getDouble() : 0.0D;
   }
 
   public String getString(String key) {
-    try {
-      return !this.hasKey(key, 8) ? "" : this.dataMap.get(key).getString();
-    } catch (ClassCastException e) {
-      return "";
-    }
+    NBTBase val = this.dataMap.get(key);
+    return val != null && val.getId() == 8 ? val.getString() : "";
   }
 
   public byte[] getByteArray(String key) {
-    return !this.hasKey(key, 7) ? new byte[0] : ((NBTTagByteArray) this.dataMap.get(key)).getByteArray();
+    NBTBase val = this.getMutable(key, 7);
+    return val == null ? new byte[0] : ((NBTTagByteArray) val).getByteArray();
   }
 
   public int[] getIntArray(String key) {
-    return !this.hasKey(key, 11) ? new int[0] : ((NBTTagIntArray) this.dataMap.get(key)).getIntArray();
+    NBTBase val = this.getMutable(key, 11);
+    return val == null ? new int[0] : ((NBTTagIntArray) val).getIntArray();
+  }
+
+  public long[] getLongArray(String key) {
+    NBTBase val = this.getMutable(key, 12);
+    return val == null ? new long[0] : ((NBTTagLongArray) val).getLongArray();
   }
 
   public NBTTagCompound getCompoundTag(String key) {
-    return !this.hasKey(key, 10) ? new NBTTagCompound() : (NBTTagCompound) this.dataMap.get(key);
+    NBTBase val = this.getMutable(key, 10);
+    return val == null ? new NBTTagCompound() : (NBTTagCompound) val;
   }
 
   public NBTTagList getTagList(String key, int type) {
-    if (this.getTagType(key) != 9) {
+    NBTTagList list = (NBTTagList) this.getMutable(key, 9);
+
+    if (list == null) {
       return new NBTTagList();
     } else {
-      NBTTagList list = (NBTTagList) this.dataMap.get(key);
       return list.tagCount() > 0 && list.getTagType() != type ? new NBTTagList() : list;
     }
   }
@@ -189,73 +199,270 @@ public class NBTTagCompound extends NBTBase {
   }
 
   public void removeTag(String key) {
+    this.unshare();
     this.dataMap.remove(key);
   }
 
   public String toString() {
-    return "{" + dataMap.entrySet().stream()
-        .map((k) -> k.getKey() + ": " + k.getValue())
-        .collect(Collectors.joining(", ")) + "}";
+    return SNBTWriter.toString(this);
   }
 
   public boolean hasNoTags() {
     return this.dataMap.isEmpty();
   }
 
+  /**
+   * Copia o compound. Se nenhum compound, lista ou array dele saiu por um
+   * getter ou entrou por um {@link #setTag(String, NBTBase)}, a copia e
+   * O(1): os dois lados usam o mesmo mapa ate um deles ser modificado. Senao
+   * so os valores mutaveis sao copiados (de novo em O(1) para os que estao
+   * nessa situacao), ja que alguem pode ter uma referencia para eles.
+   *
+   * <p>A copia marca esse compound (e os filhos copiados) como
+   * compartilhado, entao para threads ela conta como uma modificacao: nao
+   * pode rodar ao mesmo tempo que outra operacao nessa arvore, mesmo uma
+   * leitura.</p>
+   */
   public NBTBase copy() {
     NBTTagCompound newComp = new NBTTagCompound();
-    Iterator it = this.dataMap.keySet().iterator();
 
-    while (it.hasNext()) {
-      String cur = (String) it.next();
-      newComp.setTag(cur, this.dataMap.get(cur).copy());
+    if (this.getClass() == NBTTagCompound.class && !this.escaped) {
+      this.shared = true;
+      newComp.shared = true;
+      newComp.dataMap = this.dataMap;
+      return newComp;
+    }
+
+    newComp.dataMap = new NBTCompoundMap(this.dataMap.size());
+
+    for (Map.Entry<String, NBTBase> entry : this.dataMap.entrySet()) {
+      newComp.dataMap.put(entry.getKey(), copyIfMutable(entry.getValue()));
     }
 
     return newComp;
   }
 
+  /**
+   * Se o {@link #dataMap} e compartilhado com uma copia, troca ele por um
+   * mapa proprio com os mesmos valores. Compounds e listas continuam sendo
+   * os mesmos objetos nos dois mapas, marcados com {@link #alias(NBTBase)},
+   * e so sao copiados quando um dos lados entregar ele por um getter; arrays
+   * nao tem essa marcacao e sao copiados aqui.
+   */
+  private void unshare() {
+    if (this.shared) {
+      Map<String, NBTBase> own = new NBTCompoundMap(this.dataMap.size());
+
+      for (Map.Entry<String, NBTBase> entry : this.dataMap.entrySet()) {
+        NBTBase value = entry.getValue();
+
+        if (!alias(value)) {
+          value = copyIfMutable(value);
+        }
+        own.put(entry.getKey(), value);
+      }
+      this.dataMap = own;
+      this.shared = false;
+    }
+  }
+
+  private NBTBase getMutable(String key) {
+    NBTBase val = this.dataMap.get(key);
+    return val != null && isMutable(val) ? this.handOut(key, val) : val;
+  }
+
+  /**
+   * Igual ao {@link #getMutable(String)}, mas retorna {@code null} se o valor
+   * nao e do tipo {@code type}; uma busca so no mapa no caso comum.
+   */
+  private NBTBase getMutable(String key, int type) {
+    NBTBase val = this.dataMap.get(key);
+    return val == null || val.getId() != type ? null : this.handOut(key, val);
+  }
+
+  /**
+   * Prepara o valor mutavel {@code val} de {@code key} para sair por um
+   * getter: o mapa deixa de ser compartilhado e o valor e copiado se tambem
+   * estiver no mapa de outro compound.
+   */
+  private NBTBase handOut(String key, NBTBase val) {
+    if (this.shared) {
+      this.unshare();
+      val = this.dataMap.get(key);
+    }
+
+    if (isAliased(val)) {
+      val = val.copy();
+      this.dataMap.put(key, val);
+    }
+    this.escaped = true;
+    return val;
+  }
+
+  /**
+   * @return Se o mapa tambem e usado por uma copia (ver {@link #copy()}).
+   */
+  boolean isShared() {
+    return this.shared;
+  }
+
+  /**
+   * Esvazia o compound para ser reaproveitado pelo {@link NBTArena},
+   * mantendo o mapa.
+   */
+  void recycle() {
+    this.dataMap.clear();
+    this.escaped = false;
+  }
+
+  static boolean isMutable(NBTBase base) {
+    byte id = base.getId();
+    return id == 7 || id == 9 || id == 10 || id == 11 || id == 12;
+  }
+
+  static NBTBase copyIfMutable(NBTBase base) {
+    return isMutable(base) ? base.copy() : base;
+  }
+
+  /**
+   * Marca um compound ou lista que passou a estar em mais de um mapa ou
+   * lista (ver {@link #unshare()}).
+   *
+   * @return Se {@code base} e um compound ou lista.
+   */
+  static boolean alias(NBTBase base) {
+    if (base instanceof NBTTagCompound) {
+      ((NBTTagCompound) base).aliased = true;
+      return true;
+    }
+
+    if (base instanceof NBTTagList) {
+      ((NBTTagList) base).alias();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return Se {@code base} esta em mais de um mapa ou lista e precisa ser
+   * copiado antes de sair por um getter.
+   */
+  static boolean isAliased(NBTBase base) {
+    if (base instanceof NBTTagCompound) {
+      return ((NBTTagCompound) base).aliased;
+    }
+    return base instanceof NBTTagList && ((NBTTagList) base).isAliased();
+  }
+
   public boolean equals(Object obj) {
-    if (super.equals(obj)) {
-      NBTTagCompound tagCompound = (NBTTagCompound) obj;
-      return this.dataMap.entrySet().equals(tagCompound.dataMap.entrySet());
-    } else {
+    if (this == obj) {
+      return true;
+    }
+
+    if (!super.equals(obj)) {
       return false;
     }
+
+    Map<String, NBTBase> map = this.untrackedMap();
+    Map<String, NBTBase> other = ((NBTTagCompound) obj).untrackedMap();
+
+    /* Copias que ainda compartilham o mapa sao iguais sem comparar nada. */
+    if (map == other) {
+      return true;
+    }
+
+    /* O hash fica guardado, entao comparar a mesma tag de novo e barato. */
+    if (map.size() != other.size() || this.hashCode() != obj.hashCode()) {
+      return false;
+    }
+
+    for (Map.Entry<String, NBTBase> entry : map.entrySet()) {
+      NBTBase value = other.get(entry.getKey());
+
+      if (value == null || !entry.getValue().equals(value)) {
+        return false;
+      }
+    }
+    return true;
   }
 
+  /**
+   * O hash e guardado (ver {@link NBTCompoundMap}) e so recalculado depois
+   * de uma modificacao nesse compound ou em algum compound, lista ou array
+   * dentro dele.
+   */
   public int hashCode() {
-    return super.hashCode() ^ this.dataMap.hashCode();
+    return super.hashCode() ^ this.untrackedMap().hashCode();
+  }
+
+  CachedHash cachedHash() {
+    Map<String, NBTBase> map = this.untrackedMap();
+    return map instanceof NBTCompoundMap ? ((NBTCompoundMap) map).cachedHash() : null;
   }
 
-  private static void writeEntry(String name, NBTBase data, DataOutput output) throws IOException {
+  static void writeEntry(String name, NBTBase data, DataOutput output) throws IOException {
     output.writeByte(data.getId());
 
     if (data.getId() != 0) {
-      output.writeUTF(name);
+      ModifiedUTF8.write(output, name);
       data.write(output);
     }
   }
 
-  private static byte readType(DataInput input, NBTReadLimiter readLimiter) throws IOException {
-    return input.readByte();
+  /**
+   * @return Quantos bytes {@link #writeEntry(String, NBTBase, DataOutput)}
+   * escreve.
+   */
+  static int entrySize(String name, NBTBase data) {
+    return data.getId() != 0 ? 3 + ModifiedUTF8.encodedLength(name) + data.sizeOf() : 1;
   }
 
-  private static String readKey(DataInput input, NBTReadLimiter readLimiter) throws IOException {
-    return input.readUTF();
+  /**
+   * @return O mapa com as entradas, para leitura sem passar pelo controle de
+   * modificacoes das subclasses (usado na escrita).
+   */
+  Map<String, NBTBase> untrackedMap() {
+    return this.dataMap;
   }
 
-  static NBTBase readNBT(byte id, String key, DataInput input, int depth, NBTReadLimiter readLimiter) {
-    NBTBase base = NBTBase.createNewByType(id);
+  private static byte readType(DataInput input, NBTReadLimiter readLimiter) throws IOException {
+    return input.readByte();
+  }
 
-    try {
-      base.read(input, depth, readLimiter);
-      return base;
-    } catch (IOException e) {
-      Throwables.propagate(e);
+  private static String readKey(DataInput input, NBTReadLimiter readLimiter) throws IOException {
+    return NBTKeyInterner.intern(ModifiedUTF8.read(input));
+  }
+
+  static NBTBase readNBT(byte id, String key, DataInput input, int depth, NBTReadLimiter readLimiter)
+      throws IOException {
+    /*
+        Os tipos pequenos mais comuns sao lidos direto para as instancias
+        compartilhadas (ver NBTTagX.valueOf), sem alocar uma tag nova.
+    */
+    switch (id) {
+      case 1:
+        readLimiter.read(8L);
+        return NBTTagByte.valueOf(input.readByte());
+
+      case 2:
+        readLimiter.read(16L);
+        return NBTTagShort.valueOf(input.readShort());
+
+      case 3:
+        readLimiter.read(32L);
+        return NBTTagInt.valueOf(input.readInt());
+
+      case 8: {
+        return NBTTagString.valueOf(ModifiedUTF8.read(input, readLimiter));
+      }
     }
-    return null;
+
+    NBTBase base = NBTBase.createNewByType(id, readLimiter.arena());
+    base.read(input, depth, readLimiter);
+    return base;
   }
 
+
   public void merge(NBTTagCompound other) {
     Iterator it = other.dataMap.keySet().iterator();
 
@@ -277,30 +484,43 @@ public class NBTTagCompound extends NBTBase {
   }
 
   void write(DataOutput output) throws IOException {
-    Iterator it = this.dataMap.keySet().iterator();
+    Iterator<Map.Entry<String, NBTBase>> it = this.untrackedMap().entrySet().iterator();
 
     while (it.hasNext()) {
-      String k = (String) it.next();
-      NBTBase v = this.dataMap.get(k);
-      writeEntry(k, v, output);
+      Map.Entry<String, NBTBase> entry = it.next();
+      writeEntry(entry.getKey(), entry.getValue(), output);
     }
 
     output.writeByte(0);
   }
 
+  public int sizeOf() {
+    int size = 1;
+
+    for (Map.Entry<String, NBTBase> entry : this.untrackedMap().entrySet()) {
+      size += entrySize(entry.getKey(), entry.getValue());
+    }
+    return size;
+  }
+
   void read(DataInput input, int depth, NBTReadLimiter readLimiter) throws IOException {
-    if (depth > 512) {
-      throw new RuntimeException("Tried to read NBT tag with too high complexity, depth > 512");
+    readLimiter.checkDepth(depth);
+
+    if (this.shared) {
+      this.dataMap = new NBTCompoundMap();
+      this.shared = false;
     } else {
       this.dataMap.clear();
-      byte b;
-
-      while ((b = readType(input, readLimiter)) != 0) {
-        String key = readKey(input, readLimiter);
-        readLimiter.read((long) (16 * key.length()));
-        NBTBase nbtBase = readNBT(b, key, input, depth + 1, readLimiter);
-        this.dataMap.put(key, nbtBase);
-      }
+    }
+    this.escaped = false;
+    byte b;
+
+    while ((b = readType(input, readLimiter)) != 0) {
+      String key = readKey(input, readLimiter);
+      readLimiter.read((long) (16 * key.length()));
+      readLimiter.countNodes(1L);
+      NBTBase nbtBase = readNBT(b, key, input, depth + 1, readLimiter);
+      this.dataMap.put(key, nbtBase);
     }
   }
 }
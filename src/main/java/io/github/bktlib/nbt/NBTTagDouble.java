@@ -7,16 +7,31 @@ import java.io.IOException;
 public class NBTTagDouble extends NBTBase.NBTPrimitive {
   private double data;
 
+  private static final NBTTagDouble ZERO = new NBTTagDouble(0.0D);
+  private static final NBTTagDouble ONE = new NBTTagDouble(1.0D);
+
   NBTTagDouble() {}
 
   public NBTTagDouble(double data) {
     this.data = data;
   }
 
+  /**
+   * @return Uma instancia compartilhada para 0 e 1, ou uma nova instancia.
+   */
+  public static NBTTagDouble valueOf(double data) {
+    long bits = Double.doubleToRawLongBits(data);
+    return bits == 0L ? ZERO : bits == Double.doubleToRawLongBits(1.0D) ? ONE : new NBTTagDouble(data);
+  }
+
   void write(DataOutput output) throws IOException {
     output.writeDouble(this.data);
   }
 
+  public int sizeOf() {
+    return 8;
+  }
+
   void read(DataInput input, int depth, NBTReadLimiter readLimiter) throws IOException {
     readLimiter.read(64L);
     this.data = input.readDouble();
@@ -31,13 +46,17 @@ public class NBTTagDouble extends NBTBase.NBTPrimitive {
   }
 
   public NBTBase copy() {
-    return new NBTTagDouble(this.data);
+    return valueOf(this.data);
   }
 
+  /**
+   * Compara os bits, como o {@link Double#equals(Object)} (ver
+   * {@link NBTTagFloat#equals(Object)}).
+   */
   public boolean equals(Object obj) {
     if (super.equals(obj)) {
       NBTTagDouble tagDouble = (NBTTagDouble) obj;
-      return this.data == tagDouble.data;
+      return Double.doubleToLongBits(this.data) == Double.doubleToLongBits(tagDouble.data);
     } else {
       return false;
     }
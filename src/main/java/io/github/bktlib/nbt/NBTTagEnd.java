@@ -9,6 +9,10 @@ public class NBTTagEnd extends NBTBase {
 
   void write(DataOutput output) throws IOException {}
 
+  public int sizeOf() {
+    return 0;
+  }
+
   public byte getId() {
     return (byte) 0;
   }
@@ -9,16 +9,31 @@ public class NBTTagFloat extends NBTBase.NBTPrimitive {
 
   private float data;
 
+  private static final NBTTagFloat ZERO = new NBTTagFloat(0.0F);
+  private static final NBTTagFloat ONE = new NBTTagFloat(1.0F);
+
   NBTTagFloat() {}
 
   public NBTTagFloat(float data) {
     this.data = data;
   }
 
+  /**
+   * @return Uma instancia compartilhada para 0 e 1, ou uma nova instancia.
+   */
+  public static NBTTagFloat valueOf(float data) {
+    int bits = Float.floatToRawIntBits(data);
+    return bits == 0 ? ZERO : bits == Float.floatToRawIntBits(1.0F) ? ONE : new NBTTagFloat(data);
+  }
+
   void write(DataOutput output) throws IOException {
     output.writeFloat(this.data);
   }
 
+  public int sizeOf() {
+    return 4;
+  }
+
   void read(DataInput input, int depth, NBTReadLimiter readLimiter) throws IOException {
     readLimiter.read(32L);
     this.data = input.readFloat();
@@ -33,13 +48,18 @@ public class NBTTagFloat extends NBTBase.NBTPrimitive {
   }
 
   public NBTBase copy() {
-    return new NBTTagFloat(this.data);
+    return valueOf(this.data);
   }
 
+  /**
+   * Compara os bits, como o {@link Float#equals(Object)}: {@code NaN} e igual
+   * a {@code NaN} e {@code 0.0f} e diferente de {@code -0.0f}, do mesmo jeito
+   * que o {@link #hashCode()}.
+   */
   public boolean equals(Object obj) {
     if (super.equals(obj)) {
       NBTTagFloat tagFloat = (NBTTagFloat) obj;
-      return this.data == tagFloat.data;
+      return Float.floatToIntBits(this.data) == Float.floatToIntBits(tagFloat.data);
     } else {
       return false;
     }
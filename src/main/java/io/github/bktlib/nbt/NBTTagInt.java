@@ -8,16 +8,36 @@ public class NBTTagInt extends NBTBase.NBTPrimitive {
 
   private int data;
 
+  private static final NBTTagInt[] CACHE = new NBTTagInt[128 + 1024];
+
+  static {
+    for (int i = 0; i < CACHE.length; ++i) {
+      CACHE[i] = new NBTTagInt(i - 128);
+    }
+  }
+
   NBTTagInt() {}
 
   public NBTTagInt(int data) {
     this.data = data;
   }
 
+  /**
+   * @return Uma instancia compartilhada para valores entre -128 e 1023, ou
+   * uma nova instancia.
+   */
+  public static NBTTagInt valueOf(int data) {
+    return data >= -128 && data < 1024 ? CACHE[data + 128] : new NBTTagInt(data);
+  }
+
   void write(DataOutput output) throws IOException {
     output.writeInt(this.data);
   }
 
+  public int sizeOf() {
+    return 4;
+  }
+
   void read(DataInput input, int depth, NBTReadLimiter readLimiter) throws IOException {
     readLimiter.read(32L);
     this.data = input.readInt();
@@ -32,7 +52,7 @@ public class NBTTagInt extends NBTBase.NBTPrimitive {
   }
 
   public NBTBase copy() {
-    return new NBTTagInt(this.data);
+    return valueOf(this.data);
   }
 
   public boolean equals(Object obj) {
@@ -17,20 +17,17 @@ public class NBTTagIntArray extends NBTBase {
 
   void write(DataOutput output) throws IOException {
     output.writeInt(this.intArray.length);
+    NBTBulkIO.writeInts(output, this.intArray, this.intArray.length, 4);
+  }
 
-    for (int i = 0; i < this.intArray.length; ++i) {
-      output.writeInt(this.intArray[i]);
-    }
+  public int sizeOf() {
+    return 4 + 4 * this.intArray.length;
   }
 
   void read(DataInput input, int depth, NBTReadLimiter readLimiter) throws IOException {
     int i = input.readInt();
-    readLimiter.read((long) (32 * i));
-    this.intArray = new int[i];
-
-    for (int j = 0; j < i; ++j) {
-      this.intArray[j] = input.readInt();
-    }
+    readLimiter.read(32L * i);
+    this.intArray = NBTBulkIO.readInts(input, i, 4);
   }
 
   public byte getId() {
@@ -5,7 +5,7 @@ import com.google.common.collect.Lists;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
 
 public class NBTTagList extends NBTBase {
@@ -13,7 +13,52 @@ public class NBTTagList extends NBTBase {
   private List<NBTBase> tagList = Lists.newArrayList();
   private byte tagType = 0;
 
+  /*
+      Listas de byte, short, int, long, float ou double ficam "empacotadas":
+      tagList e null e os valores ficam em ints (byte, short, int e os bits
+      do float) ou longs (long e os bits do double), sem um NBTBase por
+      elemento.
+  */
+  private int[] ints;
+  private long[] longs;
+  private int size;
+
+  /*
+      Quando true o tagList (ou o array empacotado) tambem e usado por uma
+      copia (copy-on-write), entao ele precisa ser duplicado antes de
+      qualquer modificacao.
+  */
+  private boolean shared;
+
+  /*
+      Quando true algum compound, lista ou array da lista pode ser usado por
+      fora (saiu por um getter ou entrou por appendTag/set), entao o copy()
+      nao pode compartilhar o tagList.
+  */
+  private boolean escaped;
+
+  /*
+      Quando true essa lista esta no mapa (ou lista) de mais de um pai, que
+      copiam ela antes de entrega-la por um getter.
+  */
+  private boolean aliased;
+
+  /* hashCode guardado, descartado a cada modificacao (ver NBTBase.CachedHash). */
+  private CachedHash cachedHash;
+
   void write(DataOutput output) throws IOException {
+    if (this.tagList == null) {
+      output.writeByte(this.tagType);
+      output.writeInt(this.size);
+
+      if (this.ints != null) {
+        NBTBulkIO.writeInts(output, this.ints, this.size, NBTReader.payloadSize(this.tagType));
+      } else {
+        NBTBulkIO.writeLongs(output, this.longs, this.size);
+      }
+      return;
+    }
+
     if (!this.tagList.isEmpty()) {
       this.tagType = this.tagList.get(0).getId();
     } else {
@@ -28,67 +73,204 @@ public class NBTTagList extends NBTBase {
     }
   }
 
+  public int sizeOf() {
+    if (this.tagList == null) {
+      return 5 + this.size * NBTReader.payloadSize(this.tagType);
+    }
+
+    int size = 5;
+
+    for (int i = 0; i < this.tagList.size(); ++i) {
+      size += this.tagList.get(i).sizeOf();
+    }
+    return size;
+  }
+
   void read(DataInput input, int depth, NBTReadLimiter readLimiter) throws IOException {
-    if (depth > 512) {
-      throw new RuntimeException("Tried to read NBT tag with too high complexity, depth > 512");
-    } else {
-      readLimiter.read(8L);
-      this.tagType = input.readByte();
-      int i = input.readInt();
-      this.tagList = Lists.newArrayList();
+    readLimiter.checkDepth(depth);
+    readLimiter.read(8L);
+    this.tagType = input.readByte();
+    int i = NBTReader.checkListCount(input.readInt());
+    boolean reusable = this.tagList != null && !this.shared;
+    this.shared = false;
+    this.escaped = false;
+    this.cachedHash = null;
 
-      for (int j = 0; j < i; ++j) {
-        NBTBase nbtBase = NBTBase.createNewByType(this.tagType);
-        nbtBase.read(input, depth + 1, readLimiter);
-        this.tagList.add(nbtBase);
+    /* Conta a lista inteira antes de alocar qualquer elemento. */
+    readLimiter.countNodes(i);
+
+    if (isPackable(this.tagType)) {
+      int width = NBTReader.payloadSize(this.tagType);
+      readLimiter.read(8L * width * i);
+      this.tagList = null;
+      this.size = i;
+
+      if (width == 8) {
+        this.ints = null;
+        this.longs = NBTBulkIO.readLongs(input, this.size);
+      } else {
+        this.longs = null;
+        this.ints = NBTBulkIO.readInts(input, this.size, width);
       }
+      return;
+    }
+
+    /* Pelo menos uma referencia por elemento, mesmo que os elementos sejam vazios. */
+    readLimiter.read(32L * i);
+    this.ints = null;
+    this.longs = null;
+
+    if (reusable) {
+      this.tagList.clear();
+    } else {
+      this.tagList = Lists.newArrayListWithCapacity(Math.min(i, 1024));
+    }
+
+    for (int j = 0; j < i; ++j) {
+      NBTBase nbtBase = NBTBase.createNewByType(this.tagType, readLimiter.arena());
+      nbtBase.read(input, depth + 1, readLimiter);
+      this.tagList.add(nbtBase);
     }
   }
 
+  /**
+   * @return Uma lista com {@code elements}, ja decodificados, nessa ordem.
+   */
+  static NBTTagList of(byte type, NBTBase[] elements) {
+    NBTTagList list = new NBTTagList();
+    list.tagType = type;
+    list.tagList = Lists.newArrayList(elements);
+    return list;
+  }
+
   public byte getId() {
     return (byte) 9;
   }
 
   public String toString() {
-    StringBuilder builder = new StringBuilder("[");
-    for (int i = 0; i < tagList.size(); i++) {
-      NBTBase cur = tagList.get(i);
-      builder.append(i).append(":").append(cur);
-      if ((i + 1) < tagList.size())
-        builder.append(", ");
-    }
-    return builder.append("]").toString();
+    return SNBTWriter.toString(this);
   }
 
   public void appendTag(NBTBase nbt) {
+    this.modified();
+
+    if (this.tagCount() == 0 && isPackable(nbt.getId())) {
+      this.pack(nbt.getId());
+    }
+
+    if (this.tagList == null) {
+      if (nbt.getId() == this.tagType) {
+        this.ensureCapacity(this.size + 1);
+        this.store(this.size++, (NBTPrimitive) nbt);
+        return;
+      }
+      this.unpack();
+    }
+
     if (this.tagType == 0) {
       this.tagType = nbt.getId();
     }
 
+    this.escaped |= NBTTagCompound.isMutable(nbt);
     this.tagList.add(nbt);
   }
 
+  public void appendByte(byte value) {
+    this.appendPacked((byte) 1, value);
+  }
+
+  public void appendShort(short value) {
+    this.appendPacked((byte) 2, value);
+  }
+
+  public void appendInt(int value) {
+    this.appendPacked((byte) 3, value);
+  }
+
+  public void appendLong(long value) {
+    this.appendPacked((byte) 4, value);
+  }
+
+  public void appendFloat(float value) {
+    this.appendPacked((byte) 5, Float.floatToRawIntBits(value));
+  }
+
+  public void appendDouble(double value) {
+    this.appendPacked((byte) 6, Double.doubleToRawLongBits(value));
+  }
+
+  private void appendPacked(byte type, long bits) {
+    this.modified();
+
+    if (this.tagCount() == 0) {
+      this.pack(type);
+    }
+
+    if (this.tagList != null || this.tagType != type) {
+      this.appendTag(box(type, bits));
+      return;
+    }
+
+    this.ensureCapacity(this.size + 1);
+
+    if (this.ints != null) {
+      this.ints[this.size++] = (int) bits;
+    } else {
+      this.longs[this.size++] = bits;
+    }
+  }
+
   public void set(int idx, NBTBase nbt) {
-    if (idx >= 0 && idx < this.tagList.size()) {
+    if (idx >= 0 && idx < this.tagCount()) {
+      this.modified();
+
+      if (this.tagList == null) {
+        if (nbt.getId() == this.tagType) {
+          this.store(idx, (NBTPrimitive) nbt);
+          return;
+        }
+        this.unpack();
+      }
+
       if (this.tagType == 0) {
         this.tagType = nbt.getId();
       }
 
+      this.escaped |= NBTTagCompound.isMutable(nbt);
       this.tagList.set(idx, nbt);
     }
   }
 
   public NBTBase removeTag(int i) {
-    return this.tagList.remove(i);
+    this.modified();
+
+    if (this.tagList == null) {
+      if (i < 0 || i >= this.size) {
+        throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.size);
+      }
+
+      NBTBase removed = this.box(i);
+      int moved = this.size - i - 1;
+
+      if (this.ints != null) {
+        System.arraycopy(this.ints, i + 1, this.ints, i, moved);
+      } else {
+        System.arraycopy(this.longs, i + 1, this.longs, i, moved);
+      }
+      this.size--;
+      return removed;
+    }
+    NBTBase removed = this.tagList.remove(i);
+    return NBTTagCompound.isAliased(removed) ? removed.copy() : removed;
   }
 
   public boolean hasNoTags() {
-    return this.tagList.isEmpty();
+    return this.tagCount() == 0;
   }
 
   public NBTTagCompound getCompoundTagAt(int i) {
-    if (i >= 0 && i < this.tagList.size()) {
-      NBTBase base = this.tagList.get(i);
+    if (this.tagList != null && i >= 0 && i < this.tagList.size()) {
+      NBTBase base = this.getMutable(i);
       return base.getId() == 10 ? (NBTTagCompound) base : new NBTTagCompound();
     } else {
       return new NBTTagCompound();
@@ -96,76 +278,434 @@ public class NBTTagList extends NBTBase {
   }
 
   public int[] getIntArray(int i) {
-    if (i >= 0 && i < this.tagList.size()) {
-      NBTBase base = this.tagList.get(i);
+    if (this.tagList != null && i >= 0 && i < this.tagList.size()) {
+      NBTBase base = this.getMutable(i);
       return base.getId() == 11 ? ((NBTTagIntArray) base).getIntArray() : new int[0];
     } else {
       return new int[0];
     }
   }
 
+  public byte getByte(int i) {
+    return this.isPacked(i, 1) ? (byte) this.ints[i] : this.primitiveAt(i, 1) ? ((NBTPrimitive) this.tagList.get(i)).getByte() : 0;
+  }
+
+  public short getShort(int i) {
+    return this.isPacked(i, 2) ? (short) this.ints[i] : this.primitiveAt(i, 2) ? ((NBTPrimitive) this.tagList.get(i)).getShort() : 0;
+  }
+
+  public int getInt(int i) {
+    return this.isPacked(i, 3) ? this.ints[i] : this.primitiveAt(i, 3) ? ((NBTPrimitive) this.tagList.get(i)).getInt() : 0;
+  }
+
+  public long getLong(int i) {
+    return this.isPacked(i, 4) ? this.longs[i] : this.primitiveAt(i, 4) ? ((NBTPrimitive) this.tagList.get(i)).getLong() : 0L;
+  }
+
   public double getDouble(int i) {
-    if (i >= 0 && i < this.tagList.size()) {
-      NBTBase base = this.tagList.get(i);
-      return base.getId() == 6 ? ((NBTTagDouble) base).getDouble() : 0.0D;
-    } else {
-      return 0.0D;
+    if (this.isPacked(i, 6)) {
+      return Double.longBitsToDouble(this.longs[i]);
     }
+    return this.primitiveAt(i, 6) ? ((NBTTagDouble) this.tagList.get(i)).getDouble() : 0.0D;
   }
 
   public float getFloat(int i) {
-    if (i >= 0 && i < this.tagList.size()) {
-      NBTBase base = this.tagList.get(i);
-      return base.getId() == 5 ? ((NBTTagFloat) base).getFloat() : 0.0F;
-    } else {
-      return 0.0F;
+    if (this.isPacked(i, 5)) {
+      return Float.intBitsToFloat(this.ints[i]);
     }
+    return this.primitiveAt(i, 5) ? ((NBTTagFloat) this.tagList.get(i)).getFloat() : 0.0F;
   }
 
   public String getStringTagAt(int i) {
-    if (i >= 0 && i < this.tagList.size()) {
-      NBTBase base = this.tagList.get(i);
+    if (i >= 0 && i < this.tagCount()) {
+      NBTBase base = this.tagList != null ? this.tagList.get(i) : this.box(i);
       return base.getId() == 8 ? base.getString() : base.toString();
     } else {
       return "";
     }
   }
 
+  /**
+   * Em listas de numeros o elemento e criado na hora; modificar a lista
+   * nao muda um {@link NBTBase} retornado antes.
+   */
   public NBTBase get(int idx) {
-    return idx >= 0 && idx < this.tagList.size() ? this.tagList.get(idx) : new NBTTagEnd();
+    if (idx < 0 || idx >= this.tagCount()) {
+      return new NBTTagEnd();
+    }
+    return this.tagList != null ? this.getMutable(idx) : this.box(idx);
   }
 
   public int tagCount() {
-    return this.tagList.size();
+    return this.tagList != null ? this.tagList.size() : this.size;
   }
 
+  /**
+   * Copia a lista. Se nenhum compound, lista ou array dela saiu por um
+   * getter ou entrou por {@link #appendTag(NBTBase)}/{@link #set(int, NBTBase)},
+   * a copia e O(1): as duas listas usam o mesmo tagList ate uma delas ser
+   * modificada. Senao so os elementos mutaveis sao copiados.
+   *
+   * <p>Como no {@link NBTTagCompound#copy()}, a copia marca essa lista como
+   * compartilhada e para threads conta como uma modificacao.</p>
+   */
   public NBTBase copy() {
     NBTTagList newList = new NBTTagList();
     newList.tagType = this.tagType;
-    Iterator it = this.tagList.iterator();
 
-    while (it.hasNext()) {
-      NBTBase cur = (NBTBase) it.next();
-      NBTBase curCpy = cur.copy();
-      newList.tagList.add(curCpy);
+    if (this.tagList != null && this.escaped) {
+      newList.tagList = Lists.newArrayListWithCapacity(this.tagList.size());
+
+      for (NBTBase base : this.tagList) {
+        newList.tagList.add(NBTTagCompound.copyIfMutable(base));
+      }
+      return newList;
     }
 
+    newList.tagList = this.tagList;
+    newList.ints = this.ints;
+    newList.longs = this.longs;
+    newList.size = this.size;
+    newList.shared = true;
+    newList.cachedHash = this.cachedHash;
+    this.shared = true;
     return newList;
   }
 
+  /**
+   * Chamado antes de qualquer modificacao.
+   */
+  private void modified() {
+    this.unshare();
+    this.cachedHash = null;
+  }
+
+  /**
+   * Se o {@link #tagList} e compartilhado com uma copia, troca ele por uma
+   * lista propria com os mesmos elementos; compounds e listas so sao
+   * copiados quando sairem por um getter (ver
+   * {@link NBTTagCompound#alias(NBTBase)}), arrays sao copiados aqui.
+   */
+  private void unshare() {
+    if (this.shared) {
+      /* O hash guardado depende dos arrays antigos, que ficam com a copia. */
+      this.cachedHash = null;
+
+      if (this.tagList != null) {
+        List<NBTBase> own = Lists.newArrayListWithCapacity(this.tagList.size());
+
+        for (NBTBase base : this.tagList) {
+          own.add(NBTTagCompound.alias(base) ? base : NBTTagCompound.copyIfMutable(base));
+        }
+        this.tagList = own;
+      } else if (this.ints != null) {
+        this.ints = Arrays.copyOf(this.ints, Math.max(this.size, 4));
+      } else {
+        this.longs = Arrays.copyOf(this.longs, Math.max(this.size, 4));
+      }
+      this.shared = false;
+    }
+  }
+
+  /**
+   * Prepara o elemento {@code idx} para sair por um getter: a lista deixa de
+   * ser compartilhada e o elemento e copiado se tambem estiver em outra.
+   */
+  private NBTBase getMutable(int idx) {
+    NBTBase base = this.tagList.get(idx);
+
+    if (!NBTTagCompound.isMutable(base)) {
+      return base;
+    }
+
+    if (this.shared) {
+      this.unshare();
+      base = this.tagList.get(idx);
+    }
+
+    if (NBTTagCompound.isAliased(base)) {
+      base = base.copy();
+      this.tagList.set(idx, base);
+      this.cachedHash = null;
+    }
+    this.escaped = true;
+    return base;
+  }
+
+  private static boolean isPackable(byte id) {
+    return id >= 1 && id <= 6;
+  }
+
+  boolean isShared() {
+    return this.shared;
+  }
+
+  boolean isAliased() {
+    return this.aliased;
+  }
+
+  void alias() {
+    this.aliased = true;
+  }
+
+  /**
+   * @return Os elementos, ou {@code null} se a lista esta empacotada; para
+   * leitura, sem o copy-on-write do {@link #get(int)}.
+   */
+  List<NBTBase> untrackedElements() {
+    return this.tagList;
+  }
+
+  /**
+   * @return O elemento {@code idx}, que deve existir, sem o copy-on-write do
+   * {@link #get(int)}.
+   */
+  NBTBase untrackedGet(int idx) {
+    return this.tagList != null ? this.tagList.get(idx) : this.box(idx);
+  }
+
+  /**
+   * Esvazia a lista para ser reaproveitada pelo {@link NBTArena}, mantendo a
+   * capacidade do {@link #tagList}.
+   */
+  void recycle() {
+    if (this.tagList != null) {
+      this.tagList.clear();
+    } else {
+      this.tagList = Lists.newArrayList();
+    }
+    this.ints = null;
+    this.longs = null;
+    this.size = 0;
+    this.tagType = 0;
+    this.escaped = false;
+    this.cachedHash = null;
+  }
+
+  /**
+   * @return Se os elementos estao guardados como numeros, sem tags.
+   */
+  boolean isPacked() {
+    return this.tagList == null;
+  }
+
+  private boolean isPacked(int i, int type) {
+    return this.tagList == null && this.tagType == type && i >= 0 && i < this.size;
+  }
+
+  private boolean primitiveAt(int i, int type) {
+    return this.tagList != null && i >= 0 && i < this.tagList.size() && this.tagList.get(i).getId() == type;
+  }
+
+  /**
+   * Passa a lista (vazia) para o modo empacotado do tipo {@code type}.
+   */
+  private void pack(byte type) {
+    this.tagType = type;
+    this.tagList = null;
+    this.size = 0;
+
+    if (NBTReader.payloadSize(type) == 8) {
+      this.ints = null;
+      this.longs = new long[4];
+    } else {
+      this.longs = null;
+      this.ints = new int[4];
+    }
+  }
+
+  /**
+   * Volta para um {@link NBTBase} por elemento, usado quando um elemento de
+   * outro tipo e colocado na lista.
+   */
+  private void unpack() {
+    List<NBTBase> list = Lists.newArrayListWithCapacity(this.size + 1);
+
+    for (int i = 0; i < this.size; ++i) {
+      list.add(this.box(i));
+    }
+    this.tagList = list;
+    this.ints = null;
+    this.longs = null;
+    this.size = 0;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (this.ints != null && this.ints.length < capacity) {
+      this.ints = Arrays.copyOf(this.ints, Math.max(capacity, this.ints.length * 2));
+    } else if (this.longs != null && this.longs.length < capacity) {
+      this.longs = Arrays.copyOf(this.longs, Math.max(capacity, this.longs.length * 2));
+    }
+  }
+
+  private void store(int idx, NBTPrimitive value) {
+    switch (this.tagType) {
+      case 4:
+        this.longs[idx] = value.getLong();
+        break;
+
+      case 5:
+        this.ints[idx] = Float.floatToRawIntBits(value.getFloat());
+        break;
+
+      case 6:
+        this.longs[idx] = Double.doubleToRawLongBits(value.getDouble());
+        break;
+
+      default:
+        this.ints[idx] = value.getInt();
+    }
+  }
+
+  private long bits(int idx) {
+    return this.ints != null ? this.ints[idx] : this.longs[idx];
+  }
+
+  private NBTBase box(int idx) {
+    return box(this.tagType, this.bits(idx));
+  }
+
+  private static NBTBase box(byte type, long bits) {
+    switch (type) {
+      case 1:
+        return NBTTagByte.valueOf((byte) bits);
+
+      case 2:
+        return NBTTagShort.valueOf((short) bits);
+
+      case 3:
+        return NBTTagInt.valueOf((int) bits);
+
+      case 4:
+        return NBTTagLong.valueOf(bits);
+
+      case 5:
+        return NBTTagFloat.valueOf(Float.intBitsToFloat((int) bits));
+
+      default:
+        return NBTTagDouble.valueOf(Double.longBitsToDouble(bits));
+    }
+  }
+
+  /**
+   * Mesmo valor que {@code box(idx).hashCode()}, sem criar o objeto.
+   */
+  private int packedHash(int idx) {
+    switch (this.tagType) {
+      case 4: {
+        long v = this.longs[idx];
+        return this.tagType ^ (int) (v ^ v >>> 32);
+      }
+
+      case 5:
+        return this.tagType ^ Float.floatToIntBits(Float.intBitsToFloat(this.ints[idx]));
+
+      case 6: {
+        long v = Double.doubleToLongBits(Double.longBitsToDouble(this.longs[idx]));
+        return this.tagType ^ (int) (v ^ v >>> 32);
+      }
+
+      default:
+        return this.tagType ^ this.ints[idx];
+    }
+  }
+
+  private boolean packedEquals(int idx, NBTTagList other) {
+    switch (this.tagType) {
+      case 5:
+        return Float.floatToIntBits(Float.intBitsToFloat(this.ints[idx]))
+            == Float.floatToIntBits(Float.intBitsToFloat(other.ints[idx]));
+
+      case 6:
+        return Double.doubleToLongBits(Double.longBitsToDouble(this.longs[idx]))
+            == Double.doubleToLongBits(Double.longBitsToDouble(other.longs[idx]));
+
+      default:
+        return this.bits(idx) == other.bits(idx);
+    }
+  }
+
   public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+
     if (super.equals(obj)) {
       NBTTagList list = (NBTTagList) obj;
 
       if (this.tagType == list.tagType) {
-        return this.tagList.equals(list.tagList);
+        int count = this.tagCount();
+
+        if (count != list.tagCount()) {
+          return false;
+        }
+
+        /* Copias que ainda compartilham os elementos sao iguais sem comparar nada. */
+        if (this.tagList != null ? this.tagList == list.tagList
+            : this.ints != null ? this.ints == list.ints : this.longs == list.longs) {
+          return true;
+        }
+
+        if (this.hashCode() != list.hashCode()) {
+          return false;
+        }
+
+        if (this.tagList != null && list.tagList != null) {
+          return this.tagList.equals(list.tagList);
+        }
+
+        boolean packed = this.tagList == null && list.tagList == null;
+
+        for (int i = 0; i < count; ++i) {
+          if (packed ? !this.packedEquals(i, list) : !this.untrackedGet(i).equals(list.untrackedGet(i))) {
+            return false;
+          }
+        }
+        return true;
       }
     }
     return false;
   }
 
+  /**
+   * O hash e guardado e so recalculado depois de uma modificacao nessa lista
+   * ou em algum compound, lista ou array dentro dela.
+   */
   public int hashCode() {
-    return super.hashCode() ^ this.tagList.hashCode();
+    CachedHash cached = this.cachedHash;
+
+    if (cached != null && cached.isValid()) {
+      return cached.hash;
+    }
+
+    int hash = 1;
+    List<NBTBase> children = null;
+
+    if (this.tagList != null) {
+      for (NBTBase base : this.tagList) {
+        hash = 31 * hash + base.hashCode();
+
+        if (NBTTagCompound.isMutable(base)) {
+          if (children == null) {
+            children = Lists.newArrayListWithCapacity(this.tagList.size());
+          }
+          children.add(base);
+        }
+      }
+    } else {
+      for (int i = 0; i < this.size; ++i) {
+        hash = 31 * hash + this.packedHash(i);
+      }
+    }
+
+    hash ^= super.hashCode();
+    this.cachedHash = new CachedHash(hash, children);
+    return hash;
+  }
+
+  CachedHash cachedHash() {
+    CachedHash cached = this.cachedHash;
+    return cached != null && cached.isValid() ? cached : null;
   }
 
   public int getTagType() {
@@ -7,16 +7,36 @@ import java.io.IOException;
 public class NBTTagLong extends NBTBase.NBTPrimitive {
   private long data;
 
+  private static final NBTTagLong[] CACHE = new NBTTagLong[256];
+
+  static {
+    for (int i = 0; i < CACHE.length; ++i) {
+      CACHE[i] = new NBTTagLong(i - 128);
+    }
+  }
+
   NBTTagLong() {}
 
   public NBTTagLong(long data) {
     this.data = data;
   }
 
+  /**
+   * @return Uma instancia compartilhada para valores entre -128 e 127, ou
+   * uma nova instancia.
+   */
+  public static NBTTagLong valueOf(long data) {
+    return data >= -128 && data < 128 ? CACHE[(int) data + 128] : new NBTTagLong(data);
+  }
+
   void write(DataOutput output) throws IOException {
     output.writeLong(this.data);
   }
 
+  public int sizeOf() {
+    return 8;
+  }
+
   void read(DataInput input, int depth, NBTReadLimiter readLimiter) throws IOException {
     readLimiter.read(64L);
     this.data = input.readLong();
@@ -31,7 +51,7 @@ public class NBTTagLong extends NBTBase.NBTPrimitive {
   }
 
   public NBTBase copy() {
-    return new NBTTagLong(this.data);
+    return valueOf(this.data);
   }
 
   public boolean equals(Object obj) {
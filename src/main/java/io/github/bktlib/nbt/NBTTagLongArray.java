@@ -0,0 +1,59 @@
+package io.github.bktlib.nbt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class NBTTagLongArray extends NBTBase {
+  private long[] longArray;
+
+  NBTTagLongArray() {}
+
+  public NBTTagLongArray(long[] data) {
+    this.longArray = data;
+  }
+
+  void write(DataOutput output) throws IOException {
+    output.writeInt(this.longArray.length);
+    NBTBulkIO.writeLongs(output, this.longArray, this.longArray.length);
+  }
+
+  public int sizeOf() {
+    return 4 + 8 * this.longArray.length;
+  }
+
+  void read(DataInput input, int depth, NBTReadLimiter readLimiter) throws IOException {
+    int i = input.readInt();
+    readLimiter.read(64L * i);
+    this.longArray = NBTBulkIO.readLongs(input, i);
+  }
+
+  public byte getId() {
+    return (byte) 12;
+  }
+
+  /**
+   * @return O array em SNBT ({@code [L; 1L, 2L]}), para nao ser confundido com
+   * uma lista.
+   */
+  public String toString() {
+    return SNBTWriter.toString(this);
+  }
+
+  public NBTBase copy() {
+    return new NBTTagLongArray(this.longArray.clone());
+  }
+
+  public boolean equals(Object obj) {
+    return super.equals(obj) && Arrays.equals(this.longArray, ((NBTTagLongArray) obj).longArray);
+  }
+
+  public int hashCode() {
+    return super.hashCode() ^ Arrays.hashCode(this.longArray);
+  }
+
+  public long[] getLongArray() {
+    return this.longArray;
+  }
+}
@@ -8,16 +8,36 @@ public class NBTTagShort extends NBTBase.NBTPrimitive {
 
   private short data;
 
+  private static final NBTTagShort[] CACHE = new NBTTagShort[128 + 1024];
+
+  static {
+    for (int i = 0; i < CACHE.length; ++i) {
+      CACHE[i] = new NBTTagShort((short) (i - 128));
+    }
+  }
+
   NBTTagShort() {}
 
   public NBTTagShort(short data) {
     this.data = data;
   }
 
+  /**
+   * @return Uma instancia compartilhada para valores entre -128 e 1023, ou
+   * uma nova instancia.
+   */
+  public static NBTTagShort valueOf(short data) {
+    return data >= -128 && data < 1024 ? CACHE[data + 128] : new NBTTagShort(data);
+  }
+
   void write(DataOutput output) throws IOException {
     output.writeShort(this.data);
   }
 
+  public int sizeOf() {
+    return 2;
+  }
+
   void read(DataInput input, int depth, NBTReadLimiter readLimiter) throws IOException {
     readLimiter.read(16L);
     this.data = input.readShort();
@@ -32,7 +52,7 @@ public class NBTTagShort extends NBTBase.NBTPrimitive {
   }
 
   public NBTBase copy() {
-    return new NBTTagShort(this.data);
+    return valueOf(this.data);
   }
 
   public boolean equals(Object obj) {
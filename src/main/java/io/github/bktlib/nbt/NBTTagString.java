@@ -6,6 +6,8 @@ import java.io.IOException;
 
 public class NBTTagString extends NBTBase {
 
+  private static final NBTTagString EMPTY = new NBTTagString("");
+
   private String data;
 
   public NBTTagString() {
@@ -19,13 +21,24 @@ public class NBTTagString extends NBTBase {
     this.data = data;
   }
 
+  /**
+   * @return Uma instancia compartilhada para a string vazia, ou uma nova
+   * instancia.
+   */
+  public static NBTTagString valueOf(String data) {
+    return data != null && data.isEmpty() ? EMPTY : new NBTTagString(data);
+  }
+
   void write(DataOutput output) throws IOException {
-    output.writeUTF(this.data);
+    ModifiedUTF8.write(output, this.data);
+  }
+
+  public int sizeOf() {
+    return 2 + ModifiedUTF8.encodedLength(this.data);
   }
 
   void read(DataInput input, int depth, NBTReadLimiter readLimiter) throws IOException {
-    this.data = input.readUTF();
-    readLimiter.read((long) (16 * this.data.length()));
+    this.data = ModifiedUTF8.read(input, readLimiter);
   }
 
   public byte getId() {
@@ -37,7 +50,7 @@ public class NBTTagString extends NBTBase {
   }
 
   public NBTBase copy() {
-    return new NBTTagString(this.data);
+    return valueOf(this.data);
   }
 
   public boolean hasNoTags() {
@@ -0,0 +1,312 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Reescreve NBT enquanto copia de um {@link DataInput} para um
+ * {@link DataOutput}, sem montar a arvore inteira. Partes que o transformer
+ * nao quer ver sao copiadas byte a byte, entao migrar um mundo inteiro (por
+ * exemplo renomear uma chave em todos os itens) custa pouco mais que copiar
+ * os arquivos.
+ *
+ * <p>Para cada entrada de compound, nessa ordem:</p>
+ * <ol>
+ *   <li>{@link #transformKey} pode renomear ou remover a entrada;</li>
+ *   <li>se {@link #transforms} devolver {@code true}, o valor e lido como
+ *   tag e passa por {@link #transformValue};</li>
+ *   <li>senao, compounds e listas para os quais {@link #enter} devolver
+ *   {@code true} sao percorridos;</li>
+ *   <li>o resto e copiado sem ser decodificado.</li>
+ * </ol>
+ *
+ * <p>Elementos de lista passam pelos mesmos passos com a chave
+ * {@code null}, mas nao podem ser removidos nem mudar de tipo.</p>
+ *
+ * <pre>
+ * NBTTransformer.renameKeys(ImmutableMap.of("Owner", "OwnerName")).transform(in, out);
+ * </pre>
+ *
+ * <p>Instancias guardam o estado da transformacao atual, entao nao devem ser
+ * usadas por varias threads ao mesmo tempo.</p>
+ */
+public class NBTTransformer {
+
+  private final byte[] buffer = new byte[8192];
+
+  private NBTReadLimiter readLimiter = NBTReadLimiter.INFINITE;
+  private String[] keys = new String[16];
+  private int depth;
+
+  /**
+   * @return A nova chave da entrada, ou {@code null} para remove-la.
+   */
+  protected String transformKey(String key, byte type) {
+    return key;
+  }
+
+  /**
+   * @return Se o compound/lista {@code key} deve ser percorrido. Se nao, ele
+   * e copiado inteiro.
+   */
+  protected boolean enter(String key, byte type) {
+    return true;
+  }
+
+  /**
+   * @return Se o valor de {@code key} deve ser lido e passado para
+   * {@link #transformValue}.
+   */
+  protected boolean transforms(String key, byte type) {
+    return false;
+  }
+
+  /**
+   * @return O novo valor, ou {@code null} para remover a entrada.
+   */
+  protected NBTBase transformValue(String key, NBTBase value) {
+    return value;
+  }
+
+  /**
+   * @return A chave do compound ou lista sendo percorrido, ou {@code null}
+   * na raiz e em elementos de lista.
+   */
+  protected final String parentKey() {
+    return this.depth == 0 ? null : this.keys[this.depth - 1];
+  }
+
+  /**
+   * @return Quantos compounds/listas estao abertos (0 na raiz).
+   */
+  protected final int depth() {
+    return this.depth;
+  }
+
+  /**
+   * Transforma a tag raiz (tipo, nome e valor) de {@code input}, escrevendo o
+   * resultado em {@code output}.
+   */
+  public final void transform(DataInput input, DataOutput output) throws IOException {
+    this.transform(input, output, NBTReadLimiter.INFINITE);
+  }
+
+  public final void transform(DataInput input, DataOutput output, NBTReadLimiter readLimiter) throws IOException {
+    this.readLimiter = readLimiter;
+    this.depth = 0;
+
+    byte type = input.readByte();
+    output.writeByte(type);
+
+    if (type == 0) {
+      return;
+    }
+
+    ModifiedUTF8.write(output, ModifiedUTF8.read(input));
+
+    if (type == 9 || type == 10) {
+      this.transformContainer(input, output, type, null, 0);
+    } else {
+      this.copy(input, output, type, 0);
+    }
+  }
+
+  private void transformContainer(DataInput input, DataOutput output, byte type, String key, int depth)
+      throws IOException {
+    this.readLimiter.checkDepth(depth);
+
+    if (this.depth == this.keys.length) {
+      this.keys = Arrays.copyOf(this.keys, this.depth * 2);
+    }
+    this.keys[this.depth++] = key;
+
+    if (type == 10) {
+      this.transformCompound(input, output, depth);
+    } else {
+      this.transformList(input, output, depth);
+    }
+
+    this.keys[--this.depth] = null;
+  }
+
+  private void transformCompound(DataInput input, DataOutput output, int depth) throws IOException {
+    byte type;
+
+    while ((type = input.readByte()) != 0) {
+      String key = ModifiedUTF8.read(input);
+      this.readLimiter.read((long) (16 * key.length()));
+
+      String newKey = this.transformKey(key, type);
+
+      if (newKey == null) {
+        NBTReader.skip(input, type, depth + 1, this.readLimiter);
+        continue;
+      }
+
+      if (this.transforms(key, type)) {
+        NBTBase value = this.transformValue(key, NBTTagCompound.readNBT(type, key, input, depth + 1, this.readLimiter));
+
+        if (value != null) {
+          output.writeByte(value.getId());
+          ModifiedUTF8.write(output, newKey);
+          value.write(output);
+        }
+        continue;
+      }
+
+      output.writeByte(type);
+      ModifiedUTF8.write(output, newKey);
+
+      if ((type == 9 || type == 10) && this.enter(key, type)) {
+        this.transformContainer(input, output, type, key, depth + 1);
+      } else {
+        this.copy(input, output, type, depth + 1);
+      }
+    }
+
+    output.writeByte(0);
+  }
+
+  private void transformList(DataInput input, DataOutput output, int depth) throws IOException {
+    byte elementType = input.readByte();
+    int count = NBTReader.checkListCount(input.readInt());
+    output.writeByte(elementType);
+    output.writeInt(count);
+
+    if (count == 0) {
+      return;
+    }
+
+    if (this.transforms(null, elementType)) {
+      for (int i = 0; i < count; ++i) {
+        NBTBase value = this.transformValue(null, NBTTagCompound.readNBT(elementType, null, input, depth + 1,
+            this.readLimiter));
+
+        if (value == null || value.getId() != elementType) {
+          throw new IllegalStateException("List elements can't be removed or change type");
+        }
+        value.write(output);
+      }
+    } else if ((elementType == 9 || elementType == 10) && this.enter(null, elementType)) {
+      for (int i = 0; i < count; ++i) {
+        this.transformContainer(input, output, elementType, null, depth + 1);
+      }
+    } else {
+      this.copyPayloads(input, output, elementType, count, depth + 1);
+    }
+  }
+
+  /**
+   * Copia o payload de um valor sem decodifica-lo.
+   */
+  private void copy(DataInput input, DataOutput output, byte type, int depth) throws IOException {
+    switch (type) {
+      case 7: {
+        int len = input.readInt();
+        output.writeInt(len);
+        this.copyBytes(input, output, len);
+        break;
+      }
+
+      case 8: {
+        int len = input.readUnsignedShort();
+        output.writeShort(len);
+        this.copyBytes(input, output, len);
+        break;
+      }
+
+      case 9: {
+        this.readLimiter.checkDepth(depth);
+        byte elementType = input.readByte();
+        int count = NBTReader.checkListCount(input.readInt());
+        output.writeByte(elementType);
+        output.writeInt(count);
+        this.copyPayloads(input, output, elementType, count, depth + 1);
+        break;
+      }
+
+      case 10: {
+        this.readLimiter.checkDepth(depth);
+        byte b;
+
+        while ((b = input.readByte()) != 0) {
+          output.writeByte(b);
+          int len = input.readUnsignedShort();
+          output.writeShort(len);
+          this.copyBytes(input, output, len);
+          this.copy(input, output, b, depth + 1);
+        }
+
+        output.writeByte(0);
+        break;
+      }
+
+      case 11: {
+        int len = input.readInt();
+        output.writeInt(len);
+        this.copyBytes(input, output, 4L * len);
+        break;
+      }
+
+      case 12: {
+        int len = input.readInt();
+        output.writeInt(len);
+        this.copyBytes(input, output, 8L * len);
+        break;
+      }
+
+      default:
+        int size = NBTReader.payloadSize(type);
+
+        if (size < 0) {
+          throw new IOException("Unknown NBT tag type: " + type);
+        }
+        this.copyBytes(input, output, size);
+    }
+  }
+
+  private void copyPayloads(DataInput input, DataOutput output, byte type, int count, int depth) throws IOException {
+    int size = NBTReader.payloadSize(type);
+
+    if (size >= 0) {
+      this.copyBytes(input, output, (long) size * count);
+    } else {
+      for (int i = 0; i < count; ++i) {
+        this.copy(input, output, type, depth);
+      }
+    }
+  }
+
+  private void copyBytes(DataInput input, DataOutput output, long len) throws IOException {
+    this.readLimiter.read(8L * len);
+
+    while (len > 0) {
+      int n = (int) Math.min(len, this.buffer.length);
+      input.readFully(this.buffer, 0, n);
+      output.write(this.buffer, 0, n);
+      len -= n;
+    }
+  }
+
+  /**
+   * @return Um transformer que renomeia as chaves de {@code renames} (antiga
+   * para nova) em qualquer compound.
+   */
+  public static NBTTransformer renameKeys(Map<String, String> renames) {
+    Preconditions.checkNotNull(renames, "renames cannot be null");
+    Map<String, String> copy = ImmutableMap.copyOf(renames);
+
+    return new NBTTransformer() {
+      protected String transformKey(String key, byte type) {
+        String renamed = copy.get(key);
+        return renamed != null ? renamed : key;
+      }
+    };
+  }
+}
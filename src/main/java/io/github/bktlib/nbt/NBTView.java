@@ -0,0 +1,329 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Sets;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Visao somente leitura de um compound NBT codificado dentro de um
+ * {@link ByteBuffer} (inclusive um {@link java.nio.MappedByteBuffer}).
+ * Nada e copiado para uma arvore de {@link NBTBase}: numeros sao lidos
+ * direto do buffer, strings sao decodificadas so quando pedidas e arrays sao
+ * expostos como fatias do buffer.
+ */
+public class NBTView {
+
+  static final NBTView EMPTY = new NBTView(ByteBuffer.wrap(new byte[1]).asReadOnlyBuffer(), 0, 0,
+      NBTReadLimiter.DEFAULT_MAX_DEPTH);
+
+  static final ByteBuffer EMPTY_BYTES = ByteBuffer.allocate(0).asReadOnlyBuffer();
+  static final IntBuffer EMPTY_INTS = IntBuffer.allocate(0).asReadOnlyBuffer();
+  static final LongBuffer EMPTY_LONGS = LongBuffer.allocate(0).asReadOnlyBuffer();
+
+  private final ByteBuffer buf;
+  private final int start;
+  private final int depth;
+  private final int maxDepth;
+
+  /* Posicoes do byte de tipo de cada entrada, montado no primeiro acesso. */
+  private int[] entries;
+
+  NBTView(ByteBuffer buf, int start, int depth, int maxDepth) {
+    this.buf = buf;
+    this.start = start;
+    this.depth = depth;
+    this.maxDepth = maxDepth;
+  }
+
+  /**
+   * Cria uma visao da tag raiz (tipo, nome e payload) que comeca na posicao
+   * atual de {@code buf}. O buffer nao e modificado.
+   *
+   * @param buf Buffer com o NBT sem compressao.
+   * @return Visao do compound raiz.
+   */
+  public static NBTView wrap(ByteBuffer buf) {
+    return wrap(buf, NBTReadLimiter.DEFAULT_MAX_DEPTH);
+  }
+
+  /**
+   * @param maxDepth Maximo de compounds/listas um dentro do outro (como em
+   * {@link NBTReadLimiter#getMaxDepth()}).
+   */
+  public static NBTView wrap(ByteBuffer buf, int maxDepth) {
+    ByteBuffer dup = buf.duplicate();
+    int pos = dup.position();
+    byte type = dup.get(pos);
+
+    if (type != 10) {
+      throw new IllegalArgumentException("Root tag must be a compound, found " + NBTReader.typeName(type));
+    }
+    return new NBTView(dup, pos + 3 + (dup.getShort(pos + 1) & 0xFFFF), 1, maxDepth);
+  }
+
+  /**
+   * Mapeia o arquivo em memoria e cria uma visao da tag raiz. Somente as
+   * paginas que forem acessadas sao lidas do disco.
+   *
+   * @param file Arquivo NBT sem compressao.
+   * @return Visao do compound raiz.
+   */
+  public static NBTView map(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  private int[] entries() {
+    if (this.entries == null) {
+      int[] offsets = new int[8];
+      int count = 0;
+      int pos = this.start;
+      byte b;
+
+      while ((b = this.buf.get(pos)) != 0) {
+        if (count == offsets.length) {
+          offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count++] = pos;
+        pos += 3 + (this.buf.getShort(pos + 1) & 0xFFFF);
+        pos = NBTBuffers.skip(this.buf, pos, b, this.depth + 1, this.maxDepth);
+      }
+      this.entries = Arrays.copyOf(offsets, count);
+    }
+    return this.entries;
+  }
+
+  /**
+   * @return A posicao do byte de tipo da entrada {@code key}, ou {@code -1}.
+   */
+  private int find(String key) {
+    for (int entry : this.entries()) {
+      if (NBTBuffers.utfEquals(this.buf, entry + 1, key)) {
+        return entry;
+      }
+    }
+    return -1;
+  }
+
+  private int valuePos(int entry) {
+    return entry + 3 + (this.buf.getShort(entry + 1) & 0xFFFF);
+  }
+
+  private int find(String key, int type) {
+    int entry = this.find(key);
+    return entry >= 0 && this.buf.get(entry) == type ? this.valuePos(entry) : -1;
+  }
+
+  public Set<String> getKeySet() {
+    int[] entries = this.entries();
+    Set<String> keys = Sets.newLinkedHashSetWithExpectedSize(entries.length);
+
+    for (int entry : entries) {
+      keys.add(NBTBuffers.readUTF(this.buf, entry + 1));
+    }
+    return keys;
+  }
+
+  public int size() {
+    return this.entries().length;
+  }
+
+  public boolean hasNoTags() {
+    return this.buf.get(this.start) == 0;
+  }
+
+  public byte getTagType(String key) {
+    int entry = this.find(key);
+    return entry >= 0 ? this.buf.get(entry) : 0;
+  }
+
+  public boolean hasKey(String key) {
+    return this.find(key) >= 0;
+  }
+
+  public boolean hasKey(String key, int type) {
+    byte b = this.getTagType(key);
+
+    return b == type || type == 99 && (b == 1 || b == 2 ||
+           b == 3 || b == 4 || b == 5 || b == 6);
+  }
+
+  public byte getByte(String key) {
+    return (byte) this.getInteger(key);
+  }
+
+  public short getShort(String key) {
+    return (short) this.getInteger(key);
+  }
+
+  public int getInteger(String key) {
+    int entry = this.find(key);
+    return entry < 0 ? 0 : readInt(this.buf, this.buf.get(entry), this.valuePos(entry));
+  }
+
+  public long getLong(String key) {
+    int entry = this.find(key);
+    return entry < 0 ? 0L : readLong(this.buf, this.buf.get(entry), this.valuePos(entry));
+  }
+
+  public float getFloat(String key) {
+    return (float) this.getDouble(key);
+  }
+
+  public double getDouble(String key) {
+    int entry = this.find(key);
+    return entry < 0 ? 0.0D : readDouble(this.buf, this.buf.get(entry), this.valuePos(entry));
+  }
+
+  public boolean getBoolean(String key) {
+    return this.getByte(key) != 0;
+  }
+
+  public String getString(String key) {
+    int pos = this.find(key, 8);
+    return pos < 0 ? "" : NBTBuffers.readUTF(this.buf, pos);
+  }
+
+  /**
+   * @return Fatia somente leitura com os bytes do array, sem copia.
+   */
+  public ByteBuffer getByteArray(String key) {
+    int pos = this.find(key, 7);
+    return pos < 0 ? EMPTY_BYTES : NBTBuffers.slice(this.buf, pos + 4, this.buf.getInt(pos));
+  }
+
+  /**
+   * @return Fatia somente leitura com os ints do array, sem copia.
+   */
+  public IntBuffer getIntArray(String key) {
+    int pos = this.find(key, 11);
+    return pos < 0 ? EMPTY_INTS : NBTBuffers.slice(this.buf, pos + 4, 4 * this.buf.getInt(pos)).asIntBuffer();
+  }
+
+  /**
+   * @return Fatia somente leitura com os longs do array, sem copia.
+   */
+  public LongBuffer getLongArray(String key) {
+    int pos = this.find(key, 12);
+    return pos < 0 ? EMPTY_LONGS : NBTBuffers.slice(this.buf, pos + 4, 8 * this.buf.getInt(pos)).asLongBuffer();
+  }
+
+  public NBTView getCompoundTag(String key) {
+    int pos = this.find(key, 10);
+    return pos < 0 ? EMPTY : new NBTView(this.buf, pos, this.depth + 1, this.maxDepth);
+  }
+
+  public NBTListView getTagList(String key, int type) {
+    int pos = this.find(key, 9);
+
+    if (pos < 0) {
+      return NBTListView.EMPTY;
+    }
+
+    NBTListView list = new NBTListView(this.buf, pos, this.depth + 1, this.maxDepth);
+    return list.size() > 0 && list.getTagType() != type ? NBTListView.EMPTY : list;
+  }
+
+  /**
+   * Materializa o valor de {@code key} como um {@link NBTBase}.
+   *
+   * @return O valor ou {@code null} se a chave nao existe.
+   */
+  public NBTBase getTag(String key) {
+    int entry = this.find(key);
+    return entry < 0 ? null : materialize(this.buf, this.buf.get(entry), this.valuePos(entry), this.depth,
+        this.maxDepth);
+  }
+
+  /**
+   * Materializa o compound inteiro como um {@link NBTTagCompound}.
+   */
+  public NBTTagCompound toCompound() {
+    return (NBTTagCompound) materialize(this.buf, (byte) 10, this.start, this.depth - 1, this.maxDepth);
+  }
+
+  public String toString() {
+    return this.toCompound().toString();
+  }
+
+  static NBTBase materialize(ByteBuffer buf, byte type, int pos, int depth, int maxDepth) {
+    NBTBase base = NBTBase.createNewByType(type);
+    NBTReadLimiter readLimiter = maxDepth == NBTReadLimiter.DEFAULT_MAX_DEPTH
+        ? NBTReadLimiter.INFINITE
+        : new NBTReadLimiter(Long.MAX_VALUE, maxDepth, Long.MAX_VALUE);
+
+    try {
+      base.read(new ByteBufferDataInput(buf, pos), depth + 1, readLimiter);
+      return base;
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  static int readInt(ByteBuffer buf, byte type, int pos) {
+    switch (type) {
+      case 1:
+        return buf.get(pos);
+
+      case 2:
+        return buf.getShort(pos);
+
+      case 3:
+        return buf.getInt(pos);
+
+      case 4:
+        return (int) buf.getLong(pos);
+
+      case 5:
+        return (int) Math.floor(buf.getFloat(pos));
+
+      case 6:
+        return (int) Math.floor(buf.getDouble(pos));
+
+      default:
+        return 0;
+    }
+  }
+
+  static long readLong(ByteBuffer buf, byte type, int pos) {
+    switch (type) {
+      case 4:
+        return buf.getLong(pos);
+
+      case 5:
+        return (long) buf.getFloat(pos);
+
+      case 6:
+        return (long) Math.floor(buf.getDouble(pos));
+
+      default:
+        return readInt(buf, type, pos);
+    }
+  }
+
+  static double readDouble(ByteBuffer buf, byte type, int pos) {
+    switch (type) {
+      case 4:
+        return (double) buf.getLong(pos);
+
+      case 5:
+        return buf.getFloat(pos);
+
+      case 6:
+        return buf.getDouble(pos);
+
+      default:
+        return readInt(buf, type, pos);
+    }
+  }
+}
@@ -0,0 +1,298 @@
+package io.github.bktlib.nbt;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Recebe os valores de uma tag na ordem em que aparecem, seja de uma arvore
+ * ja montada ({@link #walk(NBTBase, NBTVisitor)}) ou direto do formato binario
+ * ({@link #walk(DataInput, NBTVisitor)}), sem montar a arvore.
+ *
+ * <p>Todos os metodos nao fazem nada por padrao; basta sobrescrever os que
+ * interessam.</p>
+ *
+ * <pre>
+ * NBTVisitor.walk(input, new NBTVisitor() {
+ *   public boolean visitKey(String key, byte type) {
+ *     return !key.equals("Sections"); // nao le os blocos
+ *   }
+ *
+ *   public void visitString(String value) {
+ *     ...
+ *   }
+ * });
+ * </pre>
+ *
+ * @see NBTTransformer
+ */
+public abstract class NBTVisitor {
+
+  public void visitCompoundStart() {}
+
+  /**
+   * Chamado antes do valor de cada entrada de um compound.
+   *
+   * @return {@code false} para pular o valor (e tudo dentro dele).
+   */
+  public boolean visitKey(String key, byte type) {
+    return true;
+  }
+
+  public void visitCompoundEnd() {}
+
+  public void visitListStart(byte elementType, int size) {}
+
+  public void visitListEnd() {}
+
+  public void visitByte(byte value) {}
+
+  public void visitShort(short value) {}
+
+  public void visitInt(int value) {}
+
+  public void visitLong(long value) {}
+
+  public void visitFloat(float value) {}
+
+  public void visitDouble(double value) {}
+
+  public void visitString(String value) {}
+
+  public void visitByteArray(byte[] value) {}
+
+  public void visitIntArray(int[] value) {}
+
+  public void visitLongArray(long[] value) {}
+
+  /**
+   * Percorre uma arvore ja montada.
+   */
+  public static void walk(NBTBase tag, NBTVisitor visitor) {
+    switch (tag.getId()) {
+      case 1:
+        visitor.visitByte(((NBTTagByte) tag).getByte());
+        break;
+
+      case 2:
+        visitor.visitShort(((NBTTagShort) tag).getShort());
+        break;
+
+      case 3:
+        visitor.visitInt(((NBTTagInt) tag).getInt());
+        break;
+
+      case 4:
+        visitor.visitLong(((NBTTagLong) tag).getLong());
+        break;
+
+      case 5:
+        visitor.visitFloat(((NBTTagFloat) tag).getFloat());
+        break;
+
+      case 6:
+        visitor.visitDouble(((NBTTagDouble) tag).getDouble());
+        break;
+
+      case 7:
+        visitor.visitByteArray(((NBTTagByteArray) tag).getByteArray());
+        break;
+
+      case 8:
+        visitor.visitString(((NBTTagString) tag).getString());
+        break;
+
+      case 9:
+        walkList((NBTTagList) tag, visitor);
+        break;
+
+      case 10:
+        visitor.visitCompoundStart();
+
+        for (Map.Entry<String, NBTBase> entry : ((NBTTagCompound) tag).untrackedMap().entrySet()) {
+          if (visitor.visitKey(entry.getKey(), entry.getValue().getId())) {
+            walk(entry.getValue(), visitor);
+          }
+        }
+
+        visitor.visitCompoundEnd();
+        break;
+
+      case 11:
+        visitor.visitIntArray(((NBTTagIntArray) tag).getIntArray());
+        break;
+
+      case 12:
+        visitor.visitLongArray(((NBTTagLongArray) tag).getLongArray());
+        break;
+    }
+  }
+
+  private static void walkList(NBTTagList list, NBTVisitor visitor) {
+    int count = list.tagCount();
+    byte elementType = (byte) list.getTagType();
+    visitor.visitListStart(elementType, count);
+
+    for (int i = 0; i < count; ++i) {
+      /* Listas de numeros nao precisam criar a tag de cada elemento. */
+      switch (list.isPacked() ? elementType : 0) {
+        case 1:
+          visitor.visitByte(list.getByte(i));
+          break;
+
+        case 2:
+          visitor.visitShort(list.getShort(i));
+          break;
+
+        case 3:
+          visitor.visitInt(list.getInt(i));
+          break;
+
+        case 4:
+          visitor.visitLong(list.getLong(i));
+          break;
+
+        case 5:
+          visitor.visitFloat(list.getFloat(i));
+          break;
+
+        case 6:
+          visitor.visitDouble(list.getDouble(i));
+          break;
+
+        default:
+          walk(list.get(i), visitor);
+      }
+    }
+
+    visitor.visitListEnd();
+  }
+
+  /**
+   * Percorre a tag raiz (tipo, nome e valor) lida de {@code input}. O nome da
+   * raiz e ignorado.
+   */
+  public static void walk(DataInput input, NBTVisitor visitor) throws IOException {
+    walk(input, NBTReadLimiter.INFINITE, visitor);
+  }
+
+  public static void walk(DataInput input, NBTReadLimiter readLimiter, NBTVisitor visitor) throws IOException {
+    byte type = input.readByte();
+
+    if (type != 0) {
+      ModifiedUTF8.read(input);
+      walkPayload(input, type, 0, readLimiter, visitor);
+    }
+  }
+
+  /**
+   * Percorre so o payload de um valor do tipo {@code type}.
+   */
+  public static void walkPayload(DataInput input, byte type, NBTReadLimiter readLimiter, NBTVisitor visitor)
+      throws IOException {
+    walkPayload(input, type, 0, readLimiter, visitor);
+  }
+
+  private static void walkPayload(DataInput input, byte type, int depth, NBTReadLimiter readLimiter,
+                                  NBTVisitor visitor) throws IOException {
+    switch (type) {
+      case 1:
+        readLimiter.read(8L);
+        visitor.visitByte(input.readByte());
+        break;
+
+      case 2:
+        readLimiter.read(16L);
+        visitor.visitShort(input.readShort());
+        break;
+
+      case 3:
+        readLimiter.read(32L);
+        visitor.visitInt(input.readInt());
+        break;
+
+      case 4:
+        readLimiter.read(64L);
+        visitor.visitLong(input.readLong());
+        break;
+
+      case 5:
+        readLimiter.read(32L);
+        visitor.visitFloat(input.readFloat());
+        break;
+
+      case 6:
+        readLimiter.read(64L);
+        visitor.visitDouble(input.readDouble());
+        break;
+
+      case 7: {
+        int len = input.readInt();
+        readLimiter.read(8L * len);
+        byte[] data = new byte[len];
+        input.readFully(data);
+        visitor.visitByteArray(data);
+        break;
+      }
+
+      case 8: {
+        visitor.visitString(ModifiedUTF8.read(input, readLimiter));
+        break;
+      }
+
+      case 9: {
+        readLimiter.checkDepth(depth);
+        readLimiter.read(40L);
+        byte elementType = input.readByte();
+        int count = NBTReader.checkListCount(input.readInt());
+        readLimiter.countNodes(count);
+        visitor.visitListStart(elementType, count);
+
+        for (int i = 0; i < count; ++i) {
+          walkPayload(input, elementType, depth + 1, readLimiter, visitor);
+        }
+
+        visitor.visitListEnd();
+        break;
+      }
+
+      case 10: {
+        readLimiter.checkDepth(depth);
+        visitor.visitCompoundStart();
+        byte b;
+
+        while ((b = input.readByte()) != 0) {
+          String key = ModifiedUTF8.read(input);
+          readLimiter.read((long) (16 * key.length()));
+          readLimiter.countNodes(1L);
+
+          if (visitor.visitKey(key, b)) {
+            walkPayload(input, b, depth + 1, readLimiter, visitor);
+          } else {
+            NBTReader.skip(input, b, depth + 1, readLimiter);
+          }
+        }
+
+        visitor.visitCompoundEnd();
+        break;
+      }
+
+      case 11: {
+        int len = input.readInt();
+        readLimiter.read(32L * len);
+        visitor.visitIntArray(NBTBulkIO.readInts(input, len, 4));
+        break;
+      }
+
+      case 12: {
+        int len = input.readInt();
+        readLimiter.read(64L * len);
+        visitor.visitLongArray(NBTBulkIO.readLongs(input, len));
+        break;
+      }
+
+      default:
+        throw new IOException("Unknown NBT tag type: " + type);
+    }
+  }
+}
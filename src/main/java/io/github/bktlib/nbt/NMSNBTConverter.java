@@ -0,0 +1,267 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import io.github.bktlib.lazy.LazyInitConstructor;
+import io.github.bktlib.lazy.LazyInitField;
+import io.github.bktlib.lazy.LazyInitVar;
+import io.github.bktlib.reflect.util.ReflectUtil;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converte arvores NBT do NMS para as do bktlib (e vice-versa) andando
+ * direto pelos campos das tags do NMS, sem serializar para bytes.
+ */
+final class NMSNBTConverter {
+
+  private static final String[] NMS_CLASSES = {
+      "NBTTagEnd", "NBTTagByte", "NBTTagShort", "NBTTagInt", "NBTTagLong", "NBTTagFloat",
+      "NBTTagDouble", "NBTTagByteArray", "NBTTagString", "NBTTagList", "NBTTagCompound", "NBTTagIntArray",
+      "NBTTagLongArray"
+  };
+  private static final Class<?>[] DATA_TYPES = {
+      null, byte.class, short.class, int.class, long.class, float.class,
+      double.class, byte[].class, String.class, null, null, int[].class, long[].class
+  };
+
+  private static final LazyInitField[] DATA_FIELDS = new LazyInitField[NMS_CLASSES.length];
+  private static final LazyInitConstructor[] CONSTRUCTORS = new LazyInitConstructor[NMS_CLASSES.length];
+
+  private static final LazyInitField COMPOUND_MAP = new LazyInitField(nmsName(10), "map");
+  private static final LazyInitField LIST_LIST = new LazyInitField(nmsName(9), "list");
+  private static final LazyInitField LIST_TYPE = new LazyInitField(nmsName(9), "type");
+
+  private static final LazyInitVar<Map<Class<?>, Byte>> TYPE_IDS = LazyInitVar.of(() -> {
+    Map<Class<?>, Byte> ids = Maps.newIdentityHashMap();
+
+    for (int i = 0; i < NMS_CLASSES.length; ++i) {
+      try {
+        ids.put(Class.forName(nmsName(i)), (byte) i);
+      } catch (ClassNotFoundException e) {
+        /* NBTTagLongArray so existe a partir do 1.12. */
+      }
+    }
+    return ids;
+  });
+
+  /* O campo do NBTTagLongArray nao se chama "data", entao e achado pelo tipo. */
+  private static final LazyInitVar<Field> LONG_ARRAY_DATA = LazyInitVar.of(() -> {
+    for (Field field : ReflectUtil.getClass(nmsName(12)).getDeclaredFields()) {
+      if (field.getType() == long[].class) {
+        field.setAccessible(true);
+        return field;
+      }
+    }
+    throw new IllegalStateException("Could not find the data field of " + nmsName(12));
+  });
+
+  static {
+    for (int i = 0; i < NMS_CLASSES.length; ++i) {
+      if (i == 12) {
+        CONSTRUCTORS[i] = new LazyInitConstructor(nmsName(i), DATA_TYPES[i]);
+      } else if (DATA_TYPES[i] != null) {
+        DATA_FIELDS[i] = new LazyInitField(nmsName(i), "data");
+        CONSTRUCTORS[i] = new LazyInitConstructor(nmsName(i), DATA_TYPES[i]);
+      } else {
+        CONSTRUCTORS[i] = new LazyInitConstructor(nmsName(i));
+      }
+    }
+  }
+
+  private NMSNBTConverter() {}
+
+  private static String nmsName(int id) {
+    return ReflectUtil.resolveName("{nms}." + NMS_CLASSES[id]);
+  }
+
+  static byte typeId(Object nmsTag) {
+    Byte id = TYPE_IDS.get().get(nmsTag.getClass());
+
+    if (id == null) {
+      throw new IllegalArgumentException(nmsTag.getClass() + " is not a NBT tag");
+    }
+    return id;
+  }
+
+  @SuppressWarnings("unchecked")
+  static Map<String, Object> nmsMap(Object nmsCompound) {
+    try {
+      return (Map<String, Object>) COMPOUND_MAP.get().get(nmsCompound);
+    } catch (IllegalAccessException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  static List<Object> nmsList(Object nmsList) {
+    try {
+      return (List<Object>) LIST_LIST.get().get(nmsList);
+    } catch (IllegalAccessException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Copia as entradas do compound do NMS para {@code target}.
+   */
+  static void readCompound(Object nmsCompound, NBTTagCompound target) {
+    for (Map.Entry<String, Object> entry : nmsMap(nmsCompound).entrySet()) {
+      target.dataMap.put(entry.getKey(), fromNMS(entry.getValue()));
+    }
+  }
+
+  static NBTBase fromNMS(Object nmsTag) {
+    byte id = typeId(nmsTag);
+
+    try {
+      switch (id) {
+        case 0:
+          return new NBTTagEnd();
+
+        case 1:
+          return NBTTagByte.valueOf(DATA_FIELDS[1].get().getByte(nmsTag));
+
+        case 2:
+          return NBTTagShort.valueOf(DATA_FIELDS[2].get().getShort(nmsTag));
+
+        case 3:
+          return NBTTagInt.valueOf(DATA_FIELDS[3].get().getInt(nmsTag));
+
+        case 4:
+          return NBTTagLong.valueOf(DATA_FIELDS[4].get().getLong(nmsTag));
+
+        case 5:
+          return NBTTagFloat.valueOf(DATA_FIELDS[5].get().getFloat(nmsTag));
+
+        case 6:
+          return NBTTagDouble.valueOf(DATA_FIELDS[6].get().getDouble(nmsTag));
+
+        case 7:
+          return new NBTTagByteArray(((byte[]) DATA_FIELDS[7].get().get(nmsTag)).clone());
+
+        case 8:
+          return NBTTagString.valueOf((String) DATA_FIELDS[8].get().get(nmsTag));
+
+        case 9: {
+          NBTTagList list = new NBTTagList();
+
+          for (Object element : nmsList(nmsTag)) {
+            list.appendTag(fromNMS(element));
+          }
+          return list;
+        }
+
+        case 10: {
+          NBTTagCompound compound = new NBTTagCompound();
+          readCompound(nmsTag, compound);
+          return compound;
+        }
+
+        case 11:
+          return new NBTTagIntArray(((int[]) DATA_FIELDS[11].get().get(nmsTag)).clone());
+
+        default:
+          return new NBTTagLongArray(((long[]) LONG_ARRAY_DATA.get().get(nmsTag)).clone());
+      }
+    } catch (IllegalAccessException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  static Object toNMS(NBTBase tag) {
+    byte id = tag.getId();
+
+    try {
+      switch (id) {
+        case 1:
+          return CONSTRUCTORS[1].get().newInstance(((NBTTagByte) tag).getByte());
+
+        case 2:
+          return CONSTRUCTORS[2].get().newInstance(((NBTTagShort) tag).getShort());
+
+        case 3:
+          return CONSTRUCTORS[3].get().newInstance(((NBTTagInt) tag).getInt());
+
+        case 4:
+          return CONSTRUCTORS[4].get().newInstance(((NBTTagLong) tag).getLong());
+
+        case 5:
+          return CONSTRUCTORS[5].get().newInstance(((NBTTagFloat) tag).getFloat());
+
+        case 6:
+          return CONSTRUCTORS[6].get().newInstance(((NBTTagDouble) tag).getDouble());
+
+        case 7:
+          return CONSTRUCTORS[7].get().newInstance((Object) ((NBTTagByteArray) tag).getByteArray().clone());
+
+        case 8:
+          return CONSTRUCTORS[8].get().newInstance(tag.getString());
+
+        case 9: {
+          NBTTagList list = (NBTTagList) tag;
+          Object nmsList = CONSTRUCTORS[9].get().newInstance();
+          List<Object> elements = nmsList(nmsList);
+
+          for (int i = 0; i < list.tagCount(); ++i) {
+            elements.add(toNMS(list.untrackedGet(i)));
+          }
+          LIST_TYPE.get().setByte(nmsList, (byte) list.getTagType());
+          return nmsList;
+        }
+
+        case 10: {
+          Object nmsCompound = CONSTRUCTORS[10].get().newInstance();
+          Map<String, Object> map = nmsMap(nmsCompound);
+
+          for (Map.Entry<String, NBTBase> entry : ((NBTTagCompound) tag).untrackedMap().entrySet()) {
+            map.put(entry.getKey(), toNMS(entry.getValue()));
+          }
+          return nmsCompound;
+        }
+
+        case 11:
+          return CONSTRUCTORS[11].get().newInstance((Object) ((NBTTagIntArray) tag).getIntArray().clone());
+
+        case 12:
+          if (!TYPE_IDS.get().containsValue((byte) 12)) {
+            throw new UnsupportedOperationException("This server version has no LONG[] tags");
+          }
+          return CONSTRUCTORS[12].get().newInstance((Object) ((NBTTagLongArray) tag).getLongArray().clone());
+
+        default:
+          return CONSTRUCTORS[0].get().newInstance();
+      }
+    } catch (ReflectiveOperationException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Atualiza o compound do NMS para ficar igual a {@code source}. Compounds
+   * que existem dos dois lados sao atualizados no lugar em vez de recriados.
+   * {@code source} so e lido (pelo {@link NBTTagCompound#untrackedMap()}),
+   * sem marcar nada como modificado.
+   */
+  static void patchCompound(Object nmsCompound, NBTTagCompound source) {
+    Map<String, Object> map = nmsMap(nmsCompound);
+    Map<String, NBTBase> sourceMap = source.untrackedMap();
+    map.keySet().retainAll(sourceMap.keySet());
+
+    for (Map.Entry<String, NBTBase> entry : sourceMap.entrySet()) {
+      putTag(map, entry.getKey(), entry.getValue());
+    }
+  }
+
+  static void putTag(Map<String, Object> map, String key, NBTBase value) {
+    Object current = map.get(key);
+
+    if (value.getId() == 10 && current != null && typeId(current) == 10) {
+      patchCompound(current, (NBTTagCompound) value);
+    } else {
+      map.put(key, toNMS(value));
+    }
+  }
+}
@@ -1,59 +1,295 @@
 package io.github.bktlib.nbt;
 
-import io.github.bktlib.lazy.LazyInitField;
-import io.github.bktlib.lazy.LazyInitMethod;
-import io.github.bktlib.reflect.util.ReflectUtil;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
-import java.io.*;
-import java.lang.reflect.InvocationTargetException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Compound ligado a um compound do NMS. Guarda quais chaves foram definidas
+ * ou removidas desde que foi criado e, no {@link #saveToHandle()}, aplica no
+ * handle so essas mudancas. Compounds filhos tambem sao
+ * {@link NMSNBTTagCompound}, entao uma mudanca dentro de "display" so
+ * reescreve a chave alterada dentro de "display".
+ *
+ * <p>Listas, arrays e compounds que nao sao rastreados, depois de sairem do
+ * mapa, podem ser modificados por fora a qualquer momento; essas chaves sao
+ * reescritas em todo {@link #saveToHandle()} enquanto o valor continuar no
+ * mapa.</p>
+ */
 class NMSNBTTagCompound extends NBTTagCompound {
 
   private Object handle; //nms compound
 
-  private static final LazyInitMethod NMS_COMPOUND_WRITE_METHOD = new LazyInitMethod(
-      ReflectUtil.resolveName("{nms}.NBTTagCompound"), "write", DataOutput.class
-  );
-  private static final LazyInitMethod NMS_COMPOUND_LOAD_METHOD = new LazyInitMethod(
-      ReflectUtil.resolveName("{nms}.NBTTagCompound"), "load", DataInput.class, int.class,
-      ReflectUtil.getClass("{nms}.NBTReadLimiter")
-  );
-  private static final LazyInitField INFINITE_READ_LIMITER = new LazyInitField(
-      ReflectUtil.resolveName("{nms}.NBTReadLimiter"), "a"
-  );
+  private final NMSNBTTagCompound parent;
+  private final String parentKey;
+
+  private final TrackingMap tracking;
+  private final Set<String> dirty = Sets.newHashSet();
+  private final Set<String> dirtyChildren = Sets.newHashSet();
+  private final Set<String> handedOut = Sets.newHashSet();
 
   public NMSNBTTagCompound(Object handle) {
+    this(handle, null, null);
+  }
+
+  private NMSNBTTagCompound(Object handle, NMSNBTTagCompound parent, String parentKey) {
     this.handle = handle;
+    this.parent = parent;
+    this.parentKey = parentKey;
+    this.tracking = new TrackingMap(new NBTCompoundMap());
     /*
         Read data from handle
     */
-
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    DataOutputStream das = new DataOutputStream(baos);
-    try {
-      NMS_COMPOUND_WRITE_METHOD.get().invoke(handle, das);
-      ByteArrayInputStream byteArrayInput = new ByteArrayInputStream(baos.toByteArray());
-      DataInputStream dataInput = new DataInputStream(byteArrayInput);
-      this.read(dataInput, 0, NBTReadLimiter.INFINITE);
-    } catch (IOException | IllegalAccessException | InvocationTargetException e) {
-      e.printStackTrace();
+    for (Map.Entry<String, Object> entry : NMSNBTConverter.nmsMap(handle).entrySet()) {
+      Object value = entry.getValue();
+      this.tracking.delegate.put(entry.getKey(), NMSNBTConverter.typeId(value) == 10
+          ? new NMSNBTTagCompound(value, this, entry.getKey())
+          : NMSNBTConverter.fromNMS(value));
     }
+    this.dataMap = this.tracking;
   }
 
   Object getHandle() {
     return handle;
   }
 
+  /**
+   * @return Se alguma chave desse compound, ou de algum filho, foi modificada
+   * desde o ultimo {@link #saveToHandle()} ou pode ter sido modificada por
+   * fora.
+   */
+  boolean isDirty() {
+    return !this.dirty.isEmpty() || !this.dirtyChildren.isEmpty() || !this.handedOut.isEmpty();
+  }
+
+  public byte getTagType(String key) {
+    NBTBase val = this.tracking.delegate.get(key);
+    return val != null ? val.getId() : 0;
+  }
+
+  public NBTBase copy() {
+    NBTTagCompound newComp = new NBTTagCompound();
+
+    for (Map.Entry<String, NBTBase> entry : this.tracking.delegate.entrySet()) {
+      newComp.dataMap.put(entry.getKey(), entry.getValue().copy());
+    }
+    return newComp;
+  }
+
+  Map<String, NBTBase> untrackedMap() {
+    return this.tracking.delegate;
+  }
+
   void saveToHandle() {
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    DataOutputStream dataOutput = new DataOutputStream(baos);
-    try {
-      this.write(dataOutput);
-      ByteArrayInputStream byteArrayInput = new ByteArrayInputStream(baos.toByteArray());
-      DataInputStream dataInput = new DataInputStream(byteArrayInput);
-      NMS_COMPOUND_LOAD_METHOD.get().invoke(handle, dataInput, 0, INFINITE_READ_LIMITER.get().get(null));
-    } catch (Exception e) {
-      e.printStackTrace();
+    if (!this.isDirty()) {
+      return;
+    }
+
+    Map<String, Object> map = NMSNBTConverter.nmsMap(this.handle);
+
+    for (String key : this.dirty) {
+      this.save(map, key);
+    }
+
+    for (String key : this.handedOut) {
+      if (!this.dirty.contains(key)) {
+        this.save(map, key);
+      }
+    }
+
+    for (String key : this.dirtyChildren) {
+      if (!this.dirty.contains(key) && !this.handedOut.contains(key)) {
+        this.save(map, key);
+      }
+    }
+
+    this.dirty.clear();
+
+    /* Filhos com valores que sairam do mapa continuam sendo verificados. */
+    this.dirtyChildren.removeIf(key -> {
+      NBTBase value = this.tracking.delegate.get(key);
+      return !this.isOwnChild(value) || !((NMSNBTTagCompound) value).isDirty();
+    });
+  }
+
+  /**
+   * Escreve o valor de {@code key} no mapa do handle. O valor e lido sem
+   * passar pelo {@link TrackingMap}, para a escrita nao marcar nada.
+   */
+  private void save(Map<String, Object> map, String key) {
+    NBTBase value = this.tracking.delegate.get(key);
+
+    if (value == null) {
+      map.remove(key);
+    } else if (this.isOwnChild(value)) {
+      NMSNBTTagCompound child = (NMSNBTTagCompound) value;
+      child.saveToHandle();
+
+      if (map.get(key) != child.handle) {
+        map.put(key, child.handle);
+      }
+    } else {
+      NMSNBTConverter.putTag(map, key, value);
+    }
+  }
+
+  private boolean isOwnChild(NBTBase value) {
+    return value instanceof NMSNBTTagCompound && ((NMSNBTTagCompound) value).parent == this;
+  }
+
+  private void markDirty(String key) {
+    if (this.dirty.add(key) && this.parent != null) {
+      this.parent.markChildDirty(this.parentKey);
+    }
+  }
+
+  private void markChildDirty(String key) {
+    if (this.dirtyChildren.add(key) && this.parent != null) {
+      this.parent.markChildDirty(this.parentKey);
+    }
+  }
+
+  /**
+   * Chamado quando um valor sai do mapa ou e colocado nele. Arrays, listas e
+   * compounds que nao sao rastreados podem ser modificados por fora, entao a
+   * chave e reescrita em todo save enquanto esse valor estiver no mapa.
+   */
+  private void exposed(String key, NBTBase value) {
+    if (NBTTagCompound.isMutable(value) && !this.isOwnChild(value)) {
+      if (this.handedOut.add(key) && this.parent != null) {
+        this.parent.markChildDirty(this.parentKey);
+      }
+    } else {
+      this.handedOut.remove(key);
+    }
+  }
+
+  private void removed(String key) {
+    this.markDirty(key);
+    this.handedOut.remove(key);
+  }
+
+  private final class TrackingMap extends AbstractMap<String, NBTBase> {
+
+    final Map<String, NBTBase> delegate;
+
+    TrackingMap(Map<String, NBTBase> delegate) {
+      this.delegate = delegate;
+    }
+
+    public NBTBase get(Object key) {
+      NBTBase value = this.delegate.get(key);
+
+      if (value != null) {
+        NMSNBTTagCompound.this.exposed((String) key, value);
+      }
+      return value;
+    }
+
+    public NBTBase put(String key, NBTBase value) {
+      NMSNBTTagCompound.this.markDirty(key);
+      NMSNBTTagCompound.this.exposed(key, value);
+      return this.delegate.put(key, value);
+    }
+
+    public NBTBase remove(Object key) {
+      if (this.delegate.containsKey(key)) {
+        NMSNBTTagCompound.this.removed((String) key);
+      }
+      return this.delegate.remove(key);
+    }
+
+    public boolean containsKey(Object key) {
+      return this.delegate.containsKey(key);
+    }
+
+    public int size() {
+      return this.delegate.size();
+    }
+
+    public boolean isEmpty() {
+      return this.delegate.isEmpty();
+    }
+
+    public void clear() {
+      for (String key : this.delegate.keySet()) {
+        NMSNBTTagCompound.this.removed(key);
+      }
+      this.delegate.clear();
+    }
+
+    public Set<String> keySet() {
+      return new AbstractSet<String>() {
+        public Iterator<String> iterator() {
+          Iterator<String> it = TrackingMap.this.delegate.keySet().iterator();
+
+          return new Iterator<String>() {
+            private String current;
+
+            public boolean hasNext() {
+              return it.hasNext();
+            }
+
+            public String next() {
+              return this.current = it.next();
+            }
+
+            public void remove() {
+              it.remove();
+              NMSNBTTagCompound.this.removed(this.current);
+            }
+          };
+        }
+
+        public boolean contains(Object key) {
+          return TrackingMap.this.delegate.containsKey(key);
+        }
+
+        public boolean remove(Object key) {
+          return TrackingMap.this.remove(key) != null;
+        }
+
+        public int size() {
+          return TrackingMap.this.delegate.size();
+        }
+      };
+    }
+
+    public Set<Map.Entry<String, NBTBase>> entrySet() {
+      return new AbstractSet<Map.Entry<String, NBTBase>>() {
+        public Iterator<Map.Entry<String, NBTBase>> iterator() {
+          Iterator<Map.Entry<String, NBTBase>> it = TrackingMap.this.delegate.entrySet().iterator();
+
+          return new Iterator<Map.Entry<String, NBTBase>>() {
+            private String current;
+
+            public boolean hasNext() {
+              return it.hasNext();
+            }
+
+            public Map.Entry<String, NBTBase> next() {
+              Map.Entry<String, NBTBase> entry = it.next();
+              this.current = entry.getKey();
+              NMSNBTTagCompound.this.exposed(entry.getKey(), entry.getValue());
+              return Maps.immutableEntry(entry.getKey(), entry.getValue());
+            }
+
+            public void remove() {
+              it.remove();
+              NMSNBTTagCompound.this.removed(this.current);
+            }
+          };
+        }
+
+        public int size() {
+          return TrackingMap.this.delegate.size();
+        }
+      };
     }
   }
 }
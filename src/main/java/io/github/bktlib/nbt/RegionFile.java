@@ -0,0 +1,231 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.ZipException;
+
+/**
+ * Leitor de arquivos de regiao do formato Anvil (.mca), somente leitura.
+ *
+ * <p>O arquivo e mapeado em memoria, entao abrir uma regiao so le o header
+ * de 8 KiB (localizacao e timestamp de cada chunk); os dados de um chunk so
+ * sao lidos do disco quando ele e pedido. Os chunks sao entregues como
+ * {@link LazyNBTTagCompound}, {@link NBTView} ou {@link NBTReader}, sem
+ * montar a arvore inteira.</p>
+ *
+ * <pre>
+ * try (RegionFile region = RegionFile.open(file)) {
+ *   for (int i = 0; i &lt; RegionFile.CHUNKS; ++i) {
+ *     if (region.hasChunk(i)) {
+ *       NBTView level = region.readChunkView(i).getCompoundTag("Level");
+ *       ...
+ *     }
+ *   }
+ * }
+ * </pre>
+ */
+public final class RegionFile implements Closeable {
+
+  /**
+   * Quantidade de chunks em uma regiao (32x32).
+   */
+  public static final int CHUNKS = 1024;
+
+  private static final int SECTOR_SIZE = 4096;
+  private static final int HEADER_SIZE = 2 * SECTOR_SIZE;
+
+  private final File file;
+  private final FileChannel channel;
+  private final MappedByteBuffer buf;
+
+  /* Offset (em setores) << 8 | quantidade de setores, como no arquivo. */
+  private final int[] locations = new int[CHUNKS];
+  private final int[] timestamps = new int[CHUNKS];
+
+  private RegionFile(File file, FileChannel channel, MappedByteBuffer buf) {
+    this.file = file;
+    this.channel = channel;
+    this.buf = buf;
+
+    if (buf.capacity() >= HEADER_SIZE) {
+      ByteBuffer header = buf.duplicate();
+      header.asIntBuffer().get(this.locations);
+      header.position(SECTOR_SIZE);
+      header.asIntBuffer().get(this.timestamps);
+    }
+  }
+
+  /**
+   * Abre e mapeia o arquivo de regiao. Um arquivo vazio ou menor que o header
+   * e tratado como uma regiao sem chunks.
+   */
+  public static RegionFile open(File file) throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+    try {
+      return new RegionFile(file, channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return O indice do chunk dentro da regiao, a partir das coordenadas do
+   * chunk (globais ou relativas a regiao).
+   */
+  public static int index(int chunkX, int chunkZ) {
+    return (chunkX & 31) + (chunkZ & 31) * 32;
+  }
+
+  public File getFile() {
+    return this.file;
+  }
+
+  public boolean hasChunk(int chunkX, int chunkZ) {
+    return this.hasChunk(index(chunkX, chunkZ));
+  }
+
+  public boolean hasChunk(int index) {
+    return this.locations[checkIndex(index)] != 0;
+  }
+
+  /**
+   * @return Quantos chunks existem nessa regiao.
+   */
+  public int getChunkCount() {
+    int count = 0;
+
+    for (int location : this.locations) {
+      if (location != 0) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return Quando o chunk foi salvo pela ultima vez, em segundos desde a
+   * epoch, ou 0 se ele nao existir.
+   */
+  public int getTimestamp(int chunkX, int chunkZ) {
+    return this.getTimestamp(index(chunkX, chunkZ));
+  }
+
+  public int getTimestamp(int index) {
+    return this.timestamps[checkIndex(index)];
+  }
+
+  /**
+   * @return O chunk como um compound preguicoso, ou {@code null} se ele nao
+   * existir.
+   */
+  public LazyNBTTagCompound readChunk(int chunkX, int chunkZ) throws IOException {
+    return this.readChunk(index(chunkX, chunkZ));
+  }
+
+  public LazyNBTTagCompound readChunk(int index) throws IOException {
+    ByteBuffer data = this.chunkData(index);
+    return data != null ? LazyNBTTagCompound.wrap(data) : null;
+  }
+
+  /**
+   * @return O chunk como uma {@link NBTView}, ou {@code null} se ele nao
+   * existir.
+   */
+  public NBTView readChunkView(int chunkX, int chunkZ) throws IOException {
+    return this.readChunkView(index(chunkX, chunkZ));
+  }
+
+  public NBTView readChunkView(int index) throws IOException {
+    ByteBuffer data = this.chunkData(index);
+    return data != null ? NBTView.wrap(data) : null;
+  }
+
+  /**
+   * @return Um {@link NBTReader} posicionado antes da tag raiz do chunk, ou
+   * {@code null} se ele nao existir.
+   */
+  public NBTReader openChunk(int chunkX, int chunkZ) throws IOException {
+    return this.openChunk(index(chunkX, chunkZ));
+  }
+
+  public NBTReader openChunk(int index) throws IOException {
+    ByteBuffer data = this.chunkData(index);
+    return data != null ? new NBTReader(new ByteBufferDataInput(data, data.position())) : null;
+  }
+
+  /**
+   * @return O NBT do chunk sem compressao. Chunks salvos sem compressao
+   * apontam direto para o arquivo mapeado.
+   */
+  private ByteBuffer chunkData(int index) throws IOException {
+    int location = this.locations[checkIndex(index)];
+
+    if (location == 0) {
+      return null;
+    }
+
+    long offset = (long) (location >>> 8) * SECTOR_SIZE;
+    long sectors = location & 0xFF;
+
+    if (offset < HEADER_SIZE || offset + 5 > this.buf.capacity()) {
+      throw new IOException("Chunk " + index + " of " + this.file + " points outside the file");
+    }
+
+    int pos = (int) offset;
+    int length = this.buf.getInt(pos);
+
+    if (length <= 0 || length + 4L > sectors * SECTOR_SIZE || pos + 4L + length > this.buf.capacity()) {
+      throw new IOException("Chunk " + index + " of " + this.file + " has an invalid length: " + length);
+    }
+
+    NBTCompression compression = compression(this.buf.get(pos + 4));
+
+    if (compression == NBTCompression.NONE) {
+      return NBTBuffers.slice(this.buf, pos + 5, length - 1);
+    }
+
+    byte[] compressed = new byte[length - 1];
+    ByteBuffer dup = this.buf.duplicate();
+    dup.position(pos + 5);
+    dup.get(compressed);
+    return NBTIO.decompress(compressed, 0, compressed.length, compression, NBTIO.DEFAULT_MAX_INFLATED);
+  }
+
+  private static NBTCompression compression(byte type) throws ZipException {
+    switch (type) {
+      case 1:
+        return NBTCompression.GZIP;
+
+      case 2:
+        return NBTCompression.ZLIB;
+
+      case 3:
+        return NBTCompression.NONE;
+
+      default:
+        throw new ZipException("Unknown chunk compression type: " + type);
+    }
+  }
+
+  private static int checkIndex(int index) {
+    Preconditions.checkElementIndex(index, CHUNKS);
+    return index;
+  }
+
+  /**
+   * Fecha o arquivo. O mapeamento so e liberado quando o buffer for coletado
+   * pelo GC, entao buffers de chunks sem compressao continuam validos.
+   */
+  public void close() throws IOException {
+    this.channel.close();
+  }
+}
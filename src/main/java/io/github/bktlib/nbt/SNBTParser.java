@@ -0,0 +1,443 @@
+package io.github.bktlib.nbt;
+
+/**
+ * Le tags no formato texto (SNBT), o mesmo escrito pelo {@link SNBTWriter}
+ * e usado nos comandos do jogo:
+ *
+ * <pre>
+ * {id: "minecraft:stone", Count: 1b, tag: {display: {Lore: ["a", 'b']}}}
+ * </pre>
+ *
+ * <p>Numeros sem sufixo sao int (ou double se tiverem ponto/expoente); os
+ * sufixos {@code b s L f d} mudam o tipo, {@code true}/{@code false} viram
+ * bytes e qualquer outro texto sem aspas vira string. {@code NaN},
+ * {@code Infinity} e {@code -Infinity} so sao numeros com o sufixo
+ * ({@code NaNf}, {@code -Infinityd}), como o {@link SNBTWriter} escreve. Arrays sao escritos
+ * como {@code [B; 1b, 2b]}, {@code [I; 1, 2]} e {@code [L; 1L, 2L]}. O formato do
+ * {@code toString} antigo, com indices nas listas ({@code [0:"a", 1:"b"]}),
+ * tambem e aceito.</p>
+ */
+public final class SNBTParser {
+
+  private static final int MAX_DEPTH = 512;
+
+  private final String str;
+  private int pos;
+
+  private SNBTParser(String str) {
+    this.str = str;
+  }
+
+  /**
+   * @throws NBTException Se o texto nao for uma tag valida.
+   */
+  public static NBTBase parse(String str) throws NBTException {
+    SNBTParser parser = new SNBTParser(str);
+    NBTBase tag = parser.readValue(0);
+    parser.skipWhitespace();
+
+    if (parser.pos < str.length()) {
+      throw parser.error("Unexpected trailing data");
+    }
+    return tag;
+  }
+
+  /**
+   * @throws NBTException Se o texto nao for um compound valido.
+   */
+  public static NBTTagCompound parseCompound(String str) throws NBTException {
+    NBTBase tag = parse(str);
+
+    if (tag.getId() != 10) {
+      throw new NBTException("Expected a compound, found " + NBTReader.typeName(tag.getId()));
+    }
+    return (NBTTagCompound) tag;
+  }
+
+  private NBTBase readValue(int depth) throws NBTException {
+    if (depth > MAX_DEPTH) {
+      throw this.error("Too deeply nested, depth > " + MAX_DEPTH);
+    }
+
+    this.skipWhitespace();
+
+    if (this.pos >= this.str.length()) {
+      throw this.error("Expected value");
+    }
+
+    char c = this.str.charAt(this.pos);
+
+    switch (c) {
+      case '{':
+        return this.readCompound(depth);
+
+      case '[':
+        return this.readListOrArray(depth);
+
+      case '"':
+      case '\'':
+        return NBTTagString.valueOf(this.readQuoted());
+
+      default:
+        return parsePrimitive(this.readBare());
+    }
+  }
+
+  private NBTTagCompound readCompound(int depth) throws NBTException {
+    this.expect('{');
+    NBTTagCompound compound = new NBTTagCompound();
+
+    if (this.tryConsume('}')) {
+      return compound;
+    }
+
+    do {
+      this.skipWhitespace();
+      boolean quoted = this.peekQuote();
+      String key = quoted ? this.readQuoted() : this.readBare();
+
+      if (!quoted && key.isEmpty()) {
+        throw this.error("Expected key");
+      }
+
+      this.expect(':');
+      compound.setTag(NBTKeyInterner.intern(key), this.readValue(depth + 1));
+    } while (this.tryConsume(','));
+
+    this.expect('}');
+    return compound;
+  }
+
+  private NBTBase readListOrArray(int depth) throws NBTException {
+    this.expect('[');
+
+    if (this.pos + 1 < this.str.length() && this.str.charAt(this.pos + 1) == ';') {
+      char type = this.str.charAt(this.pos);
+
+      if (type == 'B' || type == 'I' || type == 'L') {
+        this.pos += 2;
+        return type == 'B' ? this.readByteArray() : type == 'I' ? this.readIntArray() : this.readLongArray();
+      }
+      throw this.error("Unknown array type '" + type + "'");
+    }
+
+    NBTTagList list = new NBTTagList();
+
+    if (this.tryConsume(']')) {
+      return list;
+    }
+
+    do {
+      this.skipIndexPrefix();
+      int start = this.pos;
+      NBTBase element = this.readValue(depth + 1);
+
+      if (list.tagCount() > 0 && element.getId() != list.getTagType()) {
+        this.pos = start;
+        throw this.error("Can't insert " + NBTReader.typeName(element.getId()) + " into a list of "
+            + NBTReader.typeName((byte) list.getTagType()));
+      }
+      list.appendTag(element);
+    } while (this.tryConsume(','));
+
+    this.expect(']');
+    return list;
+  }
+
+  /**
+   * Pula o "0:" do formato antigo de listas, se houver.
+   */
+  private void skipIndexPrefix() {
+    this.skipWhitespace();
+    int i = this.pos;
+
+    while (i < this.str.length() && Character.isDigit(this.str.charAt(i))) {
+      i++;
+    }
+
+    if (i > this.pos && i < this.str.length() && this.str.charAt(i) == ':') {
+      this.pos = i + 1;
+    }
+  }
+
+  private NBTTagByteArray readByteArray() throws NBTException {
+    byte[] data = new byte[8];
+    int n = 0;
+
+    if (!this.tryConsume(']')) {
+      do {
+        NBTBase element = this.readValue(MAX_DEPTH);
+
+        if (element.getId() != 1) {
+          throw this.error("Byte arrays can only hold bytes, found " + NBTReader.typeName(element.getId()));
+        }
+
+        if (n == data.length) {
+          data = java.util.Arrays.copyOf(data, n * 2);
+        }
+        data[n++] = ((NBTTagByte) element).getByte();
+      } while (this.tryConsume(','));
+
+      this.expect(']');
+    }
+    return new NBTTagByteArray(java.util.Arrays.copyOf(data, n));
+  }
+
+  private NBTTagIntArray readIntArray() throws NBTException {
+    int[] data = new int[8];
+    int n = 0;
+
+    if (!this.tryConsume(']')) {
+      do {
+        NBTBase element = this.readValue(MAX_DEPTH);
+
+        if (element.getId() < 1 || element.getId() > 3) {
+          throw this.error("Int arrays can only hold ints, found " + NBTReader.typeName(element.getId()));
+        }
+
+        if (n == data.length) {
+          data = java.util.Arrays.copyOf(data, n * 2);
+        }
+        data[n++] = ((NBTBase.NBTPrimitive) element).getInt();
+      } while (this.tryConsume(','));
+
+      this.expect(']');
+    }
+    return new NBTTagIntArray(java.util.Arrays.copyOf(data, n));
+  }
+
+  private NBTTagLongArray readLongArray() throws NBTException {
+    long[] data = new long[8];
+    int n = 0;
+
+    if (!this.tryConsume(']')) {
+      do {
+        NBTBase element = this.readValue(MAX_DEPTH);
+
+        if (element.getId() < 1 || element.getId() > 4) {
+          throw this.error("Long arrays can only hold longs, found " + NBTReader.typeName(element.getId()));
+        }
+
+        if (n == data.length) {
+          data = java.util.Arrays.copyOf(data, n * 2);
+        }
+        data[n++] = ((NBTBase.NBTPrimitive) element).getLong();
+      } while (this.tryConsume(','));
+
+      this.expect(']');
+    }
+    return new NBTTagLongArray(java.util.Arrays.copyOf(data, n));
+  }
+
+  /**
+   * Converte um valor sem aspas para o tipo indicado pelo formato.
+   */
+  static NBTBase parsePrimitive(String token) {
+    if (token.equalsIgnoreCase("true")) {
+      return NBTTagByte.valueOf((byte) 1);
+    }
+
+    if (token.equalsIgnoreCase("false")) {
+      return NBTTagByte.valueOf((byte) 0);
+    }
+
+    int len = token.length();
+    char suffix = len > 1 ? Character.toLowerCase(token.charAt(len - 1)) : 0;
+
+    if ((suffix == 'f' || suffix == 'd') && isNonFinite(token.substring(0, len - 1))) {
+      double value = Double.parseDouble(token.substring(0, len - 1));
+      return suffix == 'f' ? NBTTagFloat.valueOf((float) value) : NBTTagDouble.valueOf(value);
+    }
+
+    if (len == 0 || !isNumberStart(token.charAt(0))) {
+      return NBTTagString.valueOf(token);
+    }
+
+    String number = token;
+
+    if ("bslfd".indexOf(suffix) >= 0 && len > 1) {
+      number = token.substring(0, len - 1);
+    } else {
+      suffix = 0;
+    }
+
+    try {
+      switch (suffix) {
+        case 'b':
+          return NBTTagByte.valueOf(Byte.parseByte(number));
+
+        case 's':
+          return NBTTagShort.valueOf(Short.parseShort(number));
+
+        case 'l':
+          return NBTTagLong.valueOf(Long.parseLong(number));
+
+        case 'f':
+          return isDecimal(number) ? NBTTagFloat.valueOf(Float.parseFloat(number)) : NBTTagString.valueOf(token);
+
+        case 'd':
+          return isDecimal(number) ? NBTTagDouble.valueOf(Double.parseDouble(number)) : NBTTagString.valueOf(token);
+
+        default:
+          if (isInteger(number)) {
+            return NBTTagInt.valueOf(Integer.parseInt(number));
+          }
+          return isDecimal(number) ? NBTTagDouble.valueOf(Double.parseDouble(number)) : NBTTagString.valueOf(token);
+      }
+    } catch (NumberFormatException e) {
+      /* Parece numero mas nao cabe no tipo (ou nao e numero): string. */
+      return NBTTagString.valueOf(token);
+    }
+  }
+
+  private static boolean isNonFinite(String number) {
+    return number.equals("NaN") || number.equals("Infinity") || number.equals("-Infinity");
+  }
+
+  private static boolean isNumberStart(char c) {
+    return c >= '0' && c <= '9' || c == '-' || c == '+' || c == '.';
+  }
+
+  private static boolean isInteger(String number) {
+    int i = number.startsWith("-") || number.startsWith("+") ? 1 : 0;
+
+    if (i == number.length()) {
+      return false;
+    }
+
+    for (; i < number.length(); ++i) {
+      if (!Character.isDigit(number.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Aceita [+-]digitos[.digitos][e[+-]digitos], sem NaN/Infinity/hexa que o
+   * {@link Double#parseDouble} tambem aceitaria.
+   */
+  private static boolean isDecimal(String number) {
+    int i = number.startsWith("-") || number.startsWith("+") ? 1 : 0;
+    int digits = 0;
+    int len = number.length();
+
+    while (i < len && Character.isDigit(number.charAt(i))) {
+      i++;
+      digits++;
+    }
+
+    if (i < len && number.charAt(i) == '.') {
+      i++;
+
+      while (i < len && Character.isDigit(number.charAt(i))) {
+        i++;
+        digits++;
+      }
+    }
+
+    if (digits == 0) {
+      return false;
+    }
+
+    if (i < len && (number.charAt(i) == 'e' || number.charAt(i) == 'E')) {
+      i++;
+
+      if (i < len && (number.charAt(i) == '-' || number.charAt(i) == '+')) {
+        i++;
+      }
+
+      int exponent = i;
+
+      while (i < len && Character.isDigit(number.charAt(i))) {
+        i++;
+      }
+
+      if (i == exponent) {
+        return false;
+      }
+    }
+    return i == len;
+  }
+
+  private String readBare() {
+    this.skipWhitespace();
+    int start = this.pos;
+
+    while (this.pos < this.str.length() && SNBTWriter.isBareChar(this.str.charAt(this.pos))) {
+      this.pos++;
+    }
+    return this.str.substring(start, this.pos);
+  }
+
+  private boolean peekQuote() {
+    if (this.pos >= this.str.length()) {
+      return false;
+    }
+
+    char c = this.str.charAt(this.pos);
+    return c == '"' || c == '\'';
+  }
+
+  private String readQuoted() throws NBTException {
+    char quote = this.str.charAt(this.pos++);
+    int start = this.pos;
+    StringBuilder builder = null;
+
+    while (this.pos < this.str.length()) {
+      char c = this.str.charAt(this.pos);
+
+      if (c == quote) {
+        String result = builder == null
+            ? this.str.substring(start, this.pos)
+            : builder.append(this.str, start, this.pos).toString();
+        this.pos++;
+        return result;
+      }
+
+      if (c == '\\') {
+        if (this.pos + 1 >= this.str.length()) {
+          break;
+        }
+
+        if (builder == null) {
+          builder = new StringBuilder();
+        }
+        builder.append(this.str, start, this.pos).append(this.str.charAt(this.pos + 1));
+        this.pos += 2;
+        start = this.pos;
+      } else {
+        this.pos++;
+      }
+    }
+    throw this.error("Unterminated string");
+  }
+
+  private void skipWhitespace() {
+    while (this.pos < this.str.length() && Character.isWhitespace(this.str.charAt(this.pos))) {
+      this.pos++;
+    }
+  }
+
+  private boolean tryConsume(char c) {
+    this.skipWhitespace();
+
+    if (this.pos < this.str.length() && this.str.charAt(this.pos) == c) {
+      this.pos++;
+      return true;
+    }
+    return false;
+  }
+
+  private void expect(char c) throws NBTException {
+    if (!this.tryConsume(c)) {
+      throw this.error("Expected '" + c + "'");
+    }
+  }
+
+  private NBTException error(String message) {
+    int from = Math.max(0, this.pos - 20);
+    int to = Math.min(this.str.length(), this.pos + 1);
+    return new NBTException(message + " at " + this.pos + ": ..." + this.str.substring(from, to) + "<--[HERE]");
+  }
+}
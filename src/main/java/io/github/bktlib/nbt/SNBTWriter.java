@@ -0,0 +1,302 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.base.Throwables;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Escreve tags no formato texto (SNBT), como {@code {id: "stone", Count: 1b}},
+ * direto em um {@link Appendable} (um {@link StringBuilder}, um
+ * {@link java.io.Writer}...), sem montar strings intermediarias.
+ *
+ * <p>A saida pode ser lida de volta pelo {@link SNBTParser}.</p>
+ *
+ * <pre>
+ * new SNBTWriter(writer).indent("  ").write(tag);
+ * </pre>
+ */
+public final class SNBTWriter {
+
+  private final Appendable out;
+  private String indent;
+  private int depth;
+
+  public SNBTWriter(Appendable out) {
+    this.out = out;
+  }
+
+  /**
+   * Ativa a escrita com quebras de linha, usando {@code indent} para cada
+   * nivel. {@code null} (o padrao) escreve tudo em uma linha.
+   */
+  public SNBTWriter indent(String indent) {
+    this.indent = indent;
+    return this;
+  }
+
+  /**
+   * @return A tag em uma linha.
+   */
+  public static String toString(NBTBase tag) {
+    StringBuilder builder = new StringBuilder();
+    new SNBTWriter(builder).writeUnchecked(tag);
+    return builder.toString();
+  }
+
+  /**
+   * @return A tag com quebras de linha e dois espacos de indentacao.
+   */
+  public static String toPrettyString(NBTBase tag) {
+    StringBuilder builder = new StringBuilder();
+    new SNBTWriter(builder).indent("  ").writeUnchecked(tag);
+    return builder.toString();
+  }
+
+  private void writeUnchecked(NBTBase tag) {
+    try {
+      this.write(tag);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  public void write(NBTBase tag) throws IOException {
+    switch (tag.getId()) {
+      case 1:
+        this.out.append(Byte.toString(((NBTTagByte) tag).getByte())).append('b');
+        break;
+
+      case 2:
+        this.out.append(Short.toString(((NBTTagShort) tag).getShort())).append('s');
+        break;
+
+      case 3:
+        this.out.append(Integer.toString(((NBTTagInt) tag).getInt()));
+        break;
+
+      case 4:
+        this.out.append(Long.toString(((NBTTagLong) tag).getLong())).append('L');
+        break;
+
+      case 5:
+        this.out.append(Float.toString(((NBTTagFloat) tag).getFloat())).append('f');
+        break;
+
+      case 6:
+        this.out.append(Double.toString(((NBTTagDouble) tag).getDouble())).append('d');
+        break;
+
+      case 7:
+        this.writeByteArray(((NBTTagByteArray) tag).getByteArray());
+        break;
+
+      case 8:
+        this.writeString(((NBTTagString) tag).getString());
+        break;
+
+      case 9:
+        this.writeList((NBTTagList) tag);
+        break;
+
+      case 10:
+        this.writeCompound((NBTTagCompound) tag);
+        break;
+
+      case 11:
+        this.writeIntArray(((NBTTagIntArray) tag).getIntArray());
+        break;
+
+      case 12:
+        this.writeLongArray(((NBTTagLongArray) tag).getLongArray());
+        break;
+
+      default:
+        this.out.append("END");
+    }
+  }
+
+  private void writeCompound(NBTTagCompound compound) throws IOException {
+    Map<String, NBTBase> map = compound.untrackedMap();
+
+    if (map.isEmpty()) {
+      this.out.append("{}");
+      return;
+    }
+
+    this.out.append('{');
+    this.depth++;
+    boolean first = true;
+
+    for (Map.Entry<String, NBTBase> entry : map.entrySet()) {
+      this.separator(first);
+      first = false;
+      this.writeKey(entry.getKey());
+      this.out.append(": ");
+      this.write(entry.getValue());
+    }
+
+    this.depth--;
+    this.newLine();
+    this.out.append('}');
+  }
+
+  private void writeList(NBTTagList list) throws IOException {
+    int count = list.tagCount();
+
+    if (count == 0) {
+      this.out.append("[]");
+      return;
+    }
+
+    /* Listas de numeros ficam em uma linha so, mesmo indentadas. */
+    boolean inline = NBTReader.payloadSize((byte) list.getTagType()) > 0;
+
+    this.out.append('[');
+    this.depth++;
+
+    for (int i = 0; i < count; ++i) {
+      if (inline) {
+        if (i > 0) {
+          this.out.append(", ");
+        }
+      } else {
+        this.separator(i == 0);
+      }
+      this.writeElement(list, i);
+    }
+
+    this.depth--;
+
+    if (!inline) {
+      this.newLine();
+    }
+    this.out.append(']');
+  }
+
+  /**
+   * Escreve o elemento {@code i} sem criar a tag quando a lista guarda os
+   * numeros direto (ver {@link NBTTagList}).
+   */
+  private void writeElement(NBTTagList list, int i) throws IOException {
+    switch (list.isPacked() ? list.getTagType() : 0) {
+      case 1:
+        this.out.append(Byte.toString(list.getByte(i))).append('b');
+        break;
+
+      case 2:
+        this.out.append(Short.toString(list.getShort(i))).append('s');
+        break;
+
+      case 3:
+        this.out.append(Integer.toString(list.getInt(i)));
+        break;
+
+      case 4:
+        this.out.append(Long.toString(list.getLong(i))).append('L');
+        break;
+
+      case 5:
+        this.out.append(Float.toString(list.getFloat(i))).append('f');
+        break;
+
+      case 6:
+        this.out.append(Double.toString(list.getDouble(i))).append('d');
+        break;
+
+      default:
+        this.write(list.get(i));
+    }
+  }
+
+  private void writeByteArray(byte[] data) throws IOException {
+    this.out.append("[B;");
+
+    for (int i = 0; i < data.length; ++i) {
+      this.out.append(i == 0 ? " " : ", ").append(Byte.toString(data[i])).append('b');
+    }
+    this.out.append(']');
+  }
+
+  private void writeIntArray(int[] data) throws IOException {
+    this.out.append("[I;");
+
+    for (int i = 0; i < data.length; ++i) {
+      this.out.append(i == 0 ? " " : ", ").append(Integer.toString(data[i]));
+    }
+    this.out.append(']');
+  }
+
+  private void writeLongArray(long[] data) throws IOException {
+    this.out.append("[L;");
+
+    for (int i = 0; i < data.length; ++i) {
+      this.out.append(i == 0 ? " " : ", ").append(Long.toString(data[i])).append('L');
+    }
+    this.out.append(']');
+  }
+
+  private void separator(boolean first) throws IOException {
+    if (!first) {
+      this.out.append(',');
+
+      if (this.indent == null) {
+        this.out.append(' ');
+      }
+    }
+    this.newLine();
+  }
+
+  private void newLine() throws IOException {
+    if (this.indent != null) {
+      this.out.append('\n');
+
+      for (int i = 0; i < this.depth; ++i) {
+        this.out.append(this.indent);
+      }
+    }
+  }
+
+  private void writeKey(String key) throws IOException {
+    if (isBareKey(key)) {
+      this.out.append(key);
+    } else {
+      this.writeString(key);
+    }
+  }
+
+  static boolean isBareKey(String key) {
+    if (key.isEmpty()) {
+      return false;
+    }
+
+    for (int i = 0; i < key.length(); ++i) {
+      char c = key.charAt(i);
+
+      if (!isBareChar(c)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static boolean isBareChar(char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+        || c == '_' || c == '-' || c == '.' || c == '+';
+  }
+
+  private void writeString(String str) throws IOException {
+    this.out.append('"');
+    int start = 0;
+
+    for (int i = 0; i < str.length(); ++i) {
+      char c = str.charAt(i);
+
+      if (c == '"' || c == '\\') {
+        this.out.append(str, start, i).append('\\').append(c);
+        start = i + 1;
+      }
+    }
+    this.out.append(str, start, str.length()).append('"');
+  }
+}
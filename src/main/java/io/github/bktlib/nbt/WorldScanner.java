@@ -0,0 +1,493 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Percorre os arquivos NBT de um mundo (chunks em {@code region/*.mca},
+ * incluindo as dimensoes {@code DIM-1}/{@code DIM1}, e jogadores em
+ * {@code playerdata/*.dat}) em paralelo, em um {@link ForkJoinPool} proprio
+ * (ou no pool passado no construtor).
+ *
+ * <p>Cada arquivo e processado inteiro por uma thread e os chunks sao lidos
+ * como {@link NBTView}, sem montar a arvore. Os resultados passam por uma
+ * fila limitada: se quem consome o {@link Stream} ficar para tras, as
+ * threads param de ler arquivos novos, entao a memoria usada nao depende do
+ * tamanho do mundo.</p>
+ *
+ * <p>O stream <b>precisa</b> ser fechado, mesmo com operacoes que param antes
+ * do fim ({@code findFirst}, {@code anyMatch}...): use sempre um
+ * try-with-resources. Se ninguem pegar nenhum resultado por
+ * {@link #abandonAfter(long, TimeUnit)}, a leitura e cancelada para as
+ * threads do pool nao ficarem presas.</p>
+ *
+ * <pre>
+ * WorldScanner scanner = new WorldScanner(worldDir);
+ * try (Stream&lt;WorldScanner.Match&lt;NBTView&gt;&gt; matches = scanner.scan(root -&gt; ...)) {
+ *   matches.forEach(match -&gt; ...);
+ * }
+ * System.out.println(scanner.getStats());
+ * </pre>
+ */
+public final class WorldScanner {
+
+  private static final Object END = new Object();
+
+  public static final long DEFAULT_ABANDON_SECONDS = 60L;
+
+  private final File worldDirectory;
+  private final ForkJoinPool pool;
+
+  private int queueCapacity = 1024;
+  private long abandonNanos = TimeUnit.SECONDS.toNanos(DEFAULT_ABANDON_SECONDS);
+  private BiConsumer<File, Exception> errorHandler = (file, e) -> {};
+
+  private volatile Stats stats = new Stats();
+
+  /**
+   * Usa um pool proprio do {@code WorldScanner}, com uma thread por
+   * processador, para nao ocupar o {@link ForkJoinPool#commonPool()}.
+   */
+  public WorldScanner(File worldDirectory) {
+    this(worldDirectory, DefaultPool.POOL);
+  }
+
+  public WorldScanner(File worldDirectory, ForkJoinPool pool) {
+    this.worldDirectory = Preconditions.checkNotNull(worldDirectory, "worldDirectory cannot be null");
+    this.pool = Preconditions.checkNotNull(pool, "pool cannot be null");
+  }
+
+  /**
+   * Define quantos resultados podem ficar esperando o consumidor antes das
+   * threads pararem. O padrao e 1024.
+   */
+  public WorldScanner queueCapacity(int capacity) {
+    Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+    this.queueCapacity = capacity;
+    return this;
+  }
+
+  /**
+   * Define quanto tempo o consumidor pode ficar sem pegar resultados
+   * enquanto a fila esta cheia antes da leitura ser cancelada. O padrao e
+   * {@value #DEFAULT_ABANDON_SECONDS} segundos.
+   */
+  public WorldScanner abandonAfter(long time, TimeUnit unit) {
+    Preconditions.checkArgument(time > 0, "time must be positive");
+    this.abandonNanos = unit.toNanos(time);
+    return this;
+  }
+
+  /**
+   * Define o que fazer com arquivos ou chunks que nao puderam ser lidos. Por
+   * padrao eles sao so contados em {@link Stats#getErrors()}, ja que mundos
+   * antigos costumam ter alguns chunks corrompidos. O handler e chamado das
+   * threads do pool.
+   */
+  public WorldScanner onError(BiConsumer<File, Exception> handler) {
+    this.errorHandler = Preconditions.checkNotNull(handler, "handler cannot be null");
+    return this;
+  }
+
+  /**
+   * @return Os contadores da ultima chamada a {@link #scan(Visitor)}.
+   */
+  public Stats getStats() {
+    return this.stats;
+  }
+
+  /**
+   * @return Os arquivos que seriam lidos pelo {@link #scan(Visitor)}.
+   */
+  public List<File> listFiles() {
+    List<File> files = Lists.newArrayList();
+    addFiles(files, new File(this.worldDirectory, "region"), ".mca");
+    addFiles(files, new File(this.worldDirectory, "DIM-1/region"), ".mca");
+    addFiles(files, new File(this.worldDirectory, "DIM1/region"), ".mca");
+    addFiles(files, new File(this.worldDirectory, "playerdata"), ".dat");
+    return files;
+  }
+
+  private static void addFiles(List<File> files, File dir, String extension) {
+    File[] children = dir.listFiles((parent, name) -> name.endsWith(extension));
+
+    if (children != null) {
+      for (File child : children) {
+        if (child.isFile()) {
+          files.add(child);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return As raizes (chunks e jogadores) que passam em {@code predicate}.
+   */
+  public Stream<Match<NBTView>> scan(Predicate<NBTView> predicate) {
+    return this.scan((source, root, out) -> {
+      if (predicate.test(root)) {
+        out.accept(root);
+      }
+    });
+  }
+
+  /**
+   * Comeca a ler o mundo em segundo plano. O {@code visitor} e chamado de
+   * varias threads ao mesmo tempo, uma vez para cada chunk e jogador.
+   *
+   * <p>O stream deve ser fechado (ou consumido ate o fim); fechar antes do
+   * fim cancela a leitura. Se a leitura for cancelada porque o consumidor
+   * parou de pegar resultados (ver {@link #abandonAfter(long, TimeUnit)}), o
+   * iterator lanca {@link IllegalStateException} em vez de terminar.</p>
+   */
+  public <T> Stream<Match<T>> scan(Visitor<T> visitor) {
+    Preconditions.checkNotNull(visitor, "visitor cannot be null");
+
+    Scan<T> scan = new Scan<>(visitor, new ArrayBlockingQueue<>(this.queueCapacity), new Stats(),
+        this.abandonNanos);
+    this.stats = scan.stats;
+    this.pool.execute(scan);
+
+    Iterator<Match<T>> iterator = new Iterator<Match<T>>() {
+      private Object next;
+
+      public boolean hasNext() {
+        if (this.next == null) {
+          try {
+            this.next = scan.queue.take();
+            scan.lastTake = System.nanoTime();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            scan.cancelled = true;
+            this.next = END;
+          }
+        }
+
+        if (this.next == END) {
+          /* Deixa o END na fila para chamadas seguintes. */
+          scan.queue.offer(END);
+
+          if (scan.abandoned) {
+            throw new IllegalStateException("Scan cancelled: no result was taken for "
+                + TimeUnit.NANOSECONDS.toSeconds(scan.abandonNanos) + "s");
+          }
+          return false;
+        }
+        return true;
+      }
+
+      @SuppressWarnings("unchecked")
+      public Match<T> next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+
+        Object value = this.next;
+        this.next = null;
+        return (Match<T>) value;
+      }
+    };
+
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
+        .onClose(() -> {
+          scan.cancelled = true;
+          scan.queue.clear();
+        });
+  }
+
+  private final class Scan<T> extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final Visitor<T> visitor;
+    final BlockingQueue<Object> queue;
+    final Stats stats;
+    final long abandonNanos;
+
+    volatile boolean cancelled;
+    volatile boolean abandoned;
+    volatile long lastTake = System.nanoTime();
+
+    Scan(Visitor<T> visitor, BlockingQueue<Object> queue, Stats stats, long abandonNanos) {
+      this.visitor = visitor;
+      this.queue = queue;
+      this.stats = stats;
+      this.abandonNanos = abandonNanos;
+    }
+
+    protected void compute() {
+      try {
+        List<ForkJoinTask<?>> tasks = Lists.newArrayList();
+
+        for (File file : WorldScanner.this.listFiles()) {
+          tasks.add(ForkJoinTask.adapt(() -> this.scanFile(file)));
+        }
+        invokeAll(tasks);
+      } finally {
+        this.stats.finish();
+
+        if (!this.put(END)) {
+          /* O consumidor fechou ou abandonou o stream: ninguem mais vai esvaziar a fila. */
+          this.queue.clear();
+          this.queue.offer(END);
+        }
+      }
+    }
+
+    private void scanFile(File file) {
+      if (this.cancelled) {
+        return;
+      }
+
+      try {
+        if (file.getName().endsWith(".mca")) {
+          try (RegionFile region = RegionFile.open(file)) {
+            for (int i = 0; i < RegionFile.CHUNKS && !this.cancelled; ++i) {
+              int index = i;
+
+              if (region.hasChunk(index)) {
+                this.scanRoot(new Source(file, index), () -> region.readChunkView(index));
+              }
+            }
+          }
+        } else {
+          byte[] data = Files.readAllBytes(file.toPath());
+          this.scanRoot(new Source(file, -1), () -> {
+            NBTCompression compression = data.length < 2 ? NBTCompression.NONE : NBTCompression.detect(data[0], data[1]);
+            ByteBuffer buf = NBTIO.decompress(data, 0, data.length, compression, NBTIO.DEFAULT_MAX_INFLATED);
+            return NBTView.wrap(buf);
+          });
+        }
+        this.stats.files.increment();
+        this.stats.bytes.add(file.length());
+      } catch (IOException | RuntimeException e) {
+        this.error(file, e);
+      }
+    }
+
+    private void scanRoot(Source source, RootLoader loader) {
+      try {
+        NBTView root = loader.load();
+        this.stats.roots.increment();
+        this.visitor.visit(source, root, value -> {
+          if (!this.cancelled) {
+            this.stats.matches.increment();
+            this.put(new Match<>(source, value));
+          }
+        });
+      } catch (IOException | RuntimeException e) {
+        this.error(source.getFile(), e);
+      }
+    }
+
+    private void error(File file, Exception e) {
+      this.stats.errors.increment();
+      WorldScanner.this.errorHandler.accept(file, e);
+    }
+
+    /**
+     * Espera espaco na fila sem segurar a thread do pool: o
+     * {@link ForkJoinPool#managedBlock} compensa com outra thread enquanto
+     * esta espera.
+     *
+     * @return {@code false} se a leitura foi cancelada antes.
+     */
+    private boolean put(Object value) {
+      Put put = new Put(value);
+
+      try {
+        ForkJoinPool.managedBlock(put);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        this.cancelled = true;
+      }
+      return put.done;
+    }
+
+    private final class Put implements ManagedBlocker {
+      private final Object value;
+      boolean done;
+
+      Put(Object value) {
+        this.value = value;
+      }
+
+      public boolean isReleasable() {
+        return this.done || Scan.this.cancelled || (this.done = Scan.this.queue.offer(this.value));
+      }
+
+      public boolean block() throws InterruptedException {
+        while (!this.isReleasable()) {
+          if (System.nanoTime() - Scan.this.lastTake > Scan.this.abandonNanos) {
+            /* Ninguem pega resultados ha muito tempo (stream esquecido sem close). */
+            Scan.this.abandoned = true;
+            Scan.this.cancelled = true;
+            break;
+          }
+          this.done = Scan.this.queue.offer(this.value, 100, TimeUnit.MILLISECONDS);
+        }
+        return true;
+      }
+    }
+  }
+
+  private static final class DefaultPool {
+    static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+  }
+
+  private interface RootLoader {
+    NBTView load() throws IOException;
+  }
+
+  @FunctionalInterface
+  public interface Visitor<T> {
+    /**
+     * Chamado para cada chunk ou jogador. Os valores passados para
+     * {@code matches} viram {@link Match}es no stream.
+     */
+    void visit(Source source, NBTView root, Consumer<? super T> matches) throws IOException;
+  }
+
+  /**
+   * De onde uma raiz foi lida: o arquivo e, para regioes, o indice do chunk.
+   */
+  public static final class Source {
+    private final File file;
+    private final int chunkIndex;
+
+    Source(File file, int chunkIndex) {
+      this.file = file;
+      this.chunkIndex = chunkIndex;
+    }
+
+    public File getFile() {
+      return this.file;
+    }
+
+    public boolean isChunk() {
+      return this.chunkIndex >= 0;
+    }
+
+    /**
+     * @return O indice do chunk na regiao (ver {@link RegionFile#index}), ou
+     * {@code -1} para arquivos de jogador.
+     */
+    public int getChunkIndex() {
+      return this.chunkIndex;
+    }
+
+    public String toString() {
+      return this.isChunk() ? this.file.getName() + "#" + this.chunkIndex : this.file.getName();
+    }
+  }
+
+  public static final class Match<T> {
+    private final Source source;
+    private final T value;
+
+    Match(Source source, T value) {
+      this.source = source;
+      this.value = value;
+    }
+
+    public Source getSource() {
+      return this.source;
+    }
+
+    public T getValue() {
+      return this.value;
+    }
+
+    public String toString() {
+      return this.source + ": " + this.value;
+    }
+  }
+
+  /**
+   * Contadores de uma leitura. Podem ser consultados enquanto ela acontece.
+   */
+  public static final class Stats {
+    private final long start = System.nanoTime();
+    private volatile long end;
+
+    final LongAdder files = new LongAdder();
+    final LongAdder roots = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+    final LongAdder matches = new LongAdder();
+    final LongAdder errors = new LongAdder();
+
+    void finish() {
+      this.end = System.nanoTime();
+    }
+
+    public boolean isFinished() {
+      return this.end != 0;
+    }
+
+    public long getFiles() {
+      return this.files.sum();
+    }
+
+    /**
+     * @return Quantos chunks e jogadores foram lidos.
+     */
+    public long getRoots() {
+      return this.roots.sum();
+    }
+
+    /**
+     * @return Quantos bytes foram lidos do disco.
+     */
+    public long getBytes() {
+      return this.bytes.sum();
+    }
+
+    public long getMatches() {
+      return this.matches.sum();
+    }
+
+    public long getErrors() {
+      return this.errors.sum();
+    }
+
+    public double getElapsedSeconds() {
+      return ((this.end != 0 ? this.end : System.nanoTime()) - this.start) / 1e9;
+    }
+
+    public double getFilesPerSecond() {
+      return this.getFiles() / Math.max(this.getElapsedSeconds(), 1e-9);
+    }
+
+    public double getBytesPerSecond() {
+      return this.getBytes() / Math.max(this.getElapsedSeconds(), 1e-9);
+    }
+
+    public String toString() {
+      return String.format("%d files (%.1f/s), %d roots, %.1f MiB (%.1f MiB/s), %d matches, %d errors in %.2fs",
+          this.getFiles(), this.getFilesPerSecond(), this.getRoots(), this.getBytes() / 1048576.0,
+          this.getBytesPerSecond() / 1048576.0, this.getMatches(), this.getErrors(), this.getElapsedSeconds());
+    }
+  }
+}
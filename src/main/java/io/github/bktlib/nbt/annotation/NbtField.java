@@ -0,0 +1,27 @@
+package io.github.bktlib.nbt.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marca um campo para ser lido/escrito pelo
+ * {@link io.github.bktlib.nbt.NBTCodec}.
+ *
+ * <pre>
+ * public class Pet {
+ *   &#64;NbtField("Owner") String owner;
+ *   &#64;NbtField int level = 1;
+ * }
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface NbtField {
+
+  /**
+   * Chave no compound. Vazio usa o nome do campo.
+   */
+  String value() default "";
+}
@@ -0,0 +1,82 @@
+package io.github.bktlib.nbt;
+
+import java.io.IOException;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+
+public class LazyNBTTagCompoundTest {
+
+  public static void testDecodesOnAccess() throws IOException {
+    NBTTagCompound tag = NBTSamples.everything();
+    LazyNBTTagCompound lazy = LazyNBTTagCompound.wrap(NBTSamples.write(tag));
+    int size = tag.getKeySet().size();
+
+    checkEquals(size, lazy.getUndecodedCount(), "nothing decoded");
+    checkEquals((byte) 9, lazy.getTagType("ench"), "type without decoding");
+    checkEquals(size, lazy.getUndecodedCount(), "getTagType does not decode");
+
+    checkEquals("\u00A76Nome", lazy.getCompoundTag("display").getString("Name"), "nested value");
+    checkEquals(size - 1, lazy.getUndecodedCount(), "one value decoded");
+    checkEquals(tag, NBTSamples.read(NBTSamples.write(lazy)), "write after a partial decode");
+  }
+
+  public static void testHashAndEqualsFromBytes() throws IOException {
+    NBTTagCompound tag = NBTSamples.everything();
+    byte[] data = NBTSamples.write(tag);
+    LazyNBTTagCompound lazy = LazyNBTTagCompound.wrap(data);
+    int size = lazy.getUndecodedCount();
+
+    checkEquals(tag.hashCode(), lazy.hashCode(), "same hash as the tree");
+    check(lazy.equals(LazyNBTTagCompound.wrap(data)), "equal to another wrap of the same bytes");
+
+    NBTTagCompound changed = NBTSamples.everything();
+    changed.getTagList("packedInts", 3).set(0, new NBTTagInt(1));
+    check(!lazy.equals(LazyNBTTagCompound.wrap(NBTSamples.write(changed))), "different bytes");
+    check(!lazy.equals(changed), "different tree");
+    checkEquals(size, lazy.getUndecodedCount(), "hashCode and equals did not decode");
+
+    check(lazy.equals(tag), "equal to the tree");
+    check(tag.equals(lazy), "tree equal to the lazy compound");
+    checkEquals(tag.hashCode(), lazy.hashCode(), "same hash after decoding");
+  }
+
+  public static void testUntouchedWriteIsByteIdentical() throws IOException {
+    /* A ordem das chaves vem dos bytes, nao de um mapa novo. */
+    byte[] data = NBTSamples.write(NBTSamples.everything());
+    LazyNBTTagCompound lazy = LazyNBTTagCompound.wrap(data);
+
+    checkEquals(data, NBTSamples.write(lazy), "untouched");
+    checkEquals(data.length - 3, lazy.sizeOf(), "sizeOf");
+
+    lazy.setInteger("int", 5);
+    lazy.removeTag("string");
+    NBTTagCompound read = NBTSamples.read(NBTSamples.write(lazy));
+
+    NBTTagCompound expected = NBTSamples.everything();
+    expected.setInteger("int", 5);
+    expected.removeTag("string");
+    checkEquals(expected, read, "after changes");
+    checkEquals(expected.sizeOf(), lazy.sizeOf(), "sizeOf after changes");
+  }
+
+  public static void testCopyIsolated() throws IOException {
+    LazyNBTTagCompound lazy = LazyNBTTagCompound.wrap(NBTSamples.write(NBTSamples.everything()));
+    lazy.getCompoundTag("display").setString("Name", "decodificado");
+
+    NBTTagCompound copy = (NBTTagCompound) lazy.copy();
+    copy.getCompoundTag("display").setString("Name", "copia");
+    copy.getCompoundTag("compound").setByte("b", (byte) 1);
+
+    checkEquals("decodificado", lazy.getCompoundTag("display").getString("Name"), "decoded value");
+    check(lazy.getCompoundTag("compound").hasNoTags(), "raw value");
+  }
+
+  public static void main(String[] args) throws IOException {
+    testDecodesOnAccess();
+    testHashAndEqualsFromBytes();
+    testUntouchedWriteIsByteIdentical();
+    testCopyIsolated();
+    System.out.println("LazyNBTTagCompoundTest ok");
+  }
+}
@@ -0,0 +1,97 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.base.Strings;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+import static io.github.bktlib.nbt.NBTAssert.checkThrows;
+
+public class ModifiedUTF8Test {
+
+  private static final String[] STRINGS = {
+      "",
+      "minecraft:diamond_sword",
+      "\u0000",
+      "a\u0000b",
+      "a\u00E7\u00E3o \u00E7\u00E9",
+      "\u07FF\u0800\uFFFF",
+      "\uD83D\uDE00 emoji",
+      "\uD800 sozinho",
+      Strings.repeat("x", 65535),
+      Strings.repeat("\u00E7", 32767),
+  };
+
+  private static byte[] writeUTF(String str) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new DataOutputStream(out).writeUTF(str);
+    return out.toByteArray();
+  }
+
+  private static byte[] write(String str) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ModifiedUTF8.write(new DataOutputStream(out), str);
+    return out.toByteArray();
+  }
+
+  private static DataInputStream input(byte[] data) {
+    return new DataInputStream(new ByteArrayInputStream(data));
+  }
+
+  public static void testSameBytesAsWriteUTF() throws IOException {
+    for (String str : STRINGS) {
+      byte[] expected = writeUTF(str);
+      checkEquals(expected, write(str), "write " + str.length() + " chars");
+      checkEquals(expected.length - 2, ModifiedUTF8.encodedLength(str), "encodedLength " + str.length() + " chars");
+    }
+  }
+
+  public static void testSameStringsAsReadUTF() throws IOException {
+    for (String str : STRINGS) {
+      byte[] data = writeUTF(str);
+      String expected = input(data).readUTF();
+
+      checkEquals(expected, ModifiedUTF8.read(input(data)), "read " + str.length() + " chars");
+      checkEquals(expected, ModifiedUTF8.read(input(data), NBTReadLimiter.INFINITE), "read with limiter");
+      checkEquals(expected, ModifiedUTF8.read(ByteBuffer.wrap(data), 0), "read from heap buffer");
+
+      ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+      direct.put(data).flip();
+      checkEquals(expected, ModifiedUTF8.read(direct, 0), "read from direct buffer");
+    }
+  }
+
+  public static void testMalformedLikeReadUTF() throws IOException {
+    byte[][] malformed = {
+        {0, 1, (byte) 0x80},
+        {0, 2, (byte) 0xC3, 0x41},
+        {0, 2, (byte) 0xE2, (byte) 0x82},
+        {0, 1, (byte) 0xF0},
+    };
+
+    for (byte[] data : malformed) {
+      checkThrows(UTFDataFormatException.class, () -> input(data).readUTF(), "readUTF");
+      checkThrows(UTFDataFormatException.class, () -> ModifiedUTF8.read(input(data)), "read");
+    }
+  }
+
+  public static void testTooLong() {
+    String str = Strings.repeat("\u00E7", 32768);
+    checkThrows(UTFDataFormatException.class, () -> writeUTF(str), "writeUTF");
+    checkThrows(UTFDataFormatException.class, () -> write(str), "write");
+  }
+
+  public static void main(String[] args) throws IOException {
+    testSameBytesAsWriteUTF();
+    testSameStringsAsReadUTF();
+    testMalformedLikeReadUTF();
+    testTooLong();
+    System.out.println("ModifiedUTF8Test ok");
+  }
+}
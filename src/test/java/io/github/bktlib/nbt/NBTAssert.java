@@ -0,0 +1,52 @@
+package io.github.bktlib.nbt;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Verificacoes usadas pelos testes de NBT, que rodam sem servidor pelo
+ * {@code main} de cada classe.
+ */
+final class NBTAssert {
+
+  private NBTAssert() {}
+
+  static void check(boolean condition, String message) {
+    if (!condition) {
+      throw new AssertionError(message);
+    }
+  }
+
+  static void checkEquals(Object expected, Object actual, String message) {
+    if (!Objects.deepEquals(expected, actual)) {
+      throw new AssertionError(message + ": expected " + toString(expected) + " but was " + toString(actual));
+    }
+  }
+
+  static void checkThrows(Class<? extends Throwable> type, ThrowingRunnable runnable, String message) {
+    try {
+      runnable.run();
+    } catch (Throwable t) {
+      if (type.isInstance(t)) {
+        return;
+      }
+      throw new AssertionError(message + ": expected " + type.getSimpleName() + " but got " + t, t);
+    }
+    throw new AssertionError(message + ": expected " + type.getSimpleName());
+  }
+
+  private static String toString(Object value) {
+    if (value instanceof byte[]) {
+      return Arrays.toString((byte[]) value);
+    } else if (value instanceof int[]) {
+      return Arrays.toString((int[]) value);
+    } else if (value instanceof long[]) {
+      return Arrays.toString((long[]) value);
+    }
+    return String.valueOf(value);
+  }
+
+  interface ThrowingRunnable {
+    void run() throws Exception;
+  }
+}
@@ -0,0 +1,136 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.collect.Lists;
+import io.github.bktlib.nbt.annotation.NbtField;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+
+public class NBTCodecTest {
+
+  enum Kind { CAT, DOG }
+
+  static class Owner {
+    @NbtField("Name") String name = "ninguem";
+    @NbtField int age;
+  }
+
+  static class Pet {
+    @NbtField("Level") int level = 1;
+    @NbtField boolean tame;
+    @NbtField byte b;
+    @NbtField short s;
+    @NbtField long l;
+    @NbtField float f;
+    @NbtField double d;
+    @NbtField Integer boxed;
+    @NbtField String name;
+    @NbtField byte[] bytes;
+    @NbtField int[] ints;
+    @NbtField long[] longs;
+    @NbtField Kind kind;
+    @NbtField NBTTagCompound extra;
+    @NbtField Owner owner;
+    @NbtField List<String> tags;
+    @NbtField List<Owner> previous;
+    String notMapped = "fora";
+  }
+
+  private static Pet sample() {
+    Pet pet = new Pet();
+    pet.level = 7;
+    pet.tame = true;
+    pet.b = -1;
+    pet.s = 300;
+    pet.l = 1L << 40;
+    pet.f = 0.5F;
+    pet.d = -2.25D;
+    pet.boxed = 42;
+    pet.name = "Rex \u00A7a";
+    pet.bytes = new byte[] {1, 2};
+    pet.ints = new int[] {3, 4};
+    pet.longs = new long[] {5L};
+    pet.kind = Kind.DOG;
+    pet.extra = NBTSamples.everything();
+    pet.owner = new Owner();
+    pet.owner.name = "Ana";
+    pet.owner.age = 30;
+    pet.tags = Lists.newArrayList("a", "b");
+    pet.previous = Lists.newArrayList(new Owner(), pet.owner);
+    pet.notMapped = "mudado";
+    return pet;
+  }
+
+  public static void testTreeRoundTrip() {
+    NBTCodec<Pet> codec = NBTCodec.of(Pet.class);
+    NBTTagCompound tag = codec.toCompound(sample());
+
+    checkEquals(7, tag.getInteger("Level"), "renamed key");
+    checkEquals((byte) 1, tag.getTagType("tame"), "boolean as byte");
+    checkEquals("DOG", tag.getString("kind"), "enum by name");
+    checkEquals("Ana", tag.getCompoundTag("owner").getString("Name"), "nested object");
+    check(!tag.hasKey("notMapped"), "field without annotation");
+
+    Pet read = codec.fromCompound(tag);
+    checkEquals(tag, codec.toCompound(read), "round-trip");
+    checkEquals("fora", read.notMapped, "field without annotation not read");
+    checkEquals(2, read.previous.size(), "list of objects");
+    checkEquals("ninguem", read.previous.get(0).name, "default kept in list element");
+  }
+
+  public static void testStreamRoundTrip() throws IOException {
+    NBTCodec<Pet> codec = NBTCodec.of(Pet.class);
+    NBTTagCompound tag = codec.toCompound(sample());
+    tag.setString("unknown", "pulado");
+    tag.setTag("unknownList", NBTSamples.everything().getTagList("ench", 10));
+
+    NBTReader reader = new NBTReader(new DataInputStream(new ByteArrayInputStream(NBTSamples.write(tag))));
+    checkEquals((byte) 10, reader.nextTag(), "root");
+    Pet read = codec.read(reader);
+
+    tag.removeTag("unknown");
+    tag.removeTag("unknownList");
+    checkEquals(tag, codec.toCompound(read), "streaming reader");
+  }
+
+  public static void testMissingAndWrongTypes() {
+    NBTTagCompound tag = new NBTTagCompound();
+    tag.setString("Level", "nao e int");
+    tag.setInteger("name", 5);
+
+    Pet read = NBTCodec.of(Pet.class).fromCompound(tag);
+    checkEquals(1, read.level, "wrong type keeps the default");
+    checkEquals(null, read.name, "wrong type keeps null");
+    checkEquals(null, read.owner, "missing key");
+  }
+
+  public static void testNullRemovesKeyAndTagsAreCopied() {
+    NBTCodec<Pet> codec = NBTCodec.of(Pet.class);
+    Pet pet = sample();
+    NBTTagCompound tag = codec.toCompound(pet);
+
+    pet.extra.setInteger("int", 99);
+    checkEquals(NBTSamples.everything(), tag.getCompoundTag("extra"), "written tag is a copy");
+
+    Pet read = codec.fromCompound(tag);
+    tag.getCompoundTag("extra").setInteger("int", 98);
+    checkEquals(NBTSamples.everything(), read.extra, "read tag is a copy");
+
+    pet.name = null;
+    codec.writeInto(pet, tag);
+    check(!tag.hasKey("name"), "null removes the key");
+  }
+
+  public static void main(String[] args) throws IOException {
+    testTreeRoundTrip();
+    testStreamRoundTrip();
+    testMissingAndWrongTypes();
+    testNullRemovesKeyAndTagsAreCopied();
+    System.out.println("NBTCodecTest ok");
+  }
+}
@@ -0,0 +1,64 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.collect.Sets;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+
+public class NBTCompoundMapTest {
+
+  public static void testViewsAcrossThreshold() {
+    NBTCompoundMap map = new NBTCompoundMap();
+    map.put("k0", NBTTagInt.valueOf(0));
+    Set<String> keys = map.keySet();
+    Set<Map.Entry<String, NBTBase>> entries = map.entrySet();
+
+    int count = NBTCompoundMap.THRESHOLD + 4;
+
+    for (int i = 1; i < count; ++i) {
+      map.put("k" + i, NBTTagInt.valueOf(i));
+    }
+
+    checkEquals(count, keys.size(), "key view size");
+    checkEquals(count, entries.size(), "entry view size");
+    check(keys.contains("k" + (count - 1)), "key view contains");
+    checkEquals(map.keySet(), Sets.newHashSet(keys), "key view iteration");
+
+    int sum = 0;
+
+    for (Map.Entry<String, NBTBase> entry : entries) {
+      sum += ((NBTTagInt) entry.getValue()).getInt();
+    }
+    checkEquals(count * (count - 1) / 2, sum, "entry view iteration");
+
+    check(keys.remove("k0"), "remove through the key view");
+    check(!map.containsKey("k0"), "removed from the map");
+
+    Iterator<String> it = keys.iterator();
+    it.next();
+    it.remove();
+    checkEquals(count - 2, map.size(), "iterator remove");
+  }
+
+  public static void testCompoundKeySetAcrossThreshold() {
+    NBTTagCompound tag = new NBTTagCompound();
+    Set<String> keys = tag.getKeySet();
+
+    for (int i = 0; i <= NBTCompoundMap.THRESHOLD; ++i) {
+      tag.setInteger("k" + i, i);
+    }
+
+    checkEquals(NBTCompoundMap.THRESHOLD + 1, keys.size(), "size");
+    check(keys.contains("k" + NBTCompoundMap.THRESHOLD), "contains");
+  }
+
+  public static void main(String[] args) {
+    testViewsAcrossThreshold();
+    testCompoundKeySetAcrossThreshold();
+    System.out.println("NBTCompoundMapTest ok");
+  }
+}
@@ -0,0 +1,159 @@
+package io.github.bktlib.nbt;
+
+import java.io.IOException;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+
+public class NBTCopyOnWriteTest {
+
+  public static void testCopyIsolatedFromOriginal() {
+    NBTTagCompound original = NBTSamples.everything();
+    NBTTagCompound copy = (NBTTagCompound) original.copy();
+
+    copy.getCompoundTag("display").setString("Name", "outro");
+    copy.getTagList("ench", 10).getCompoundTagAt(0).setShort("lvl", (short) 5);
+    copy.getCompoundTag("display").getTagList("Lore", 8).appendTag(new NBTTagString("x"));
+    copy.setInteger("int", 1);
+
+    checkEquals(NBTSamples.everything(), original, "original unchanged");
+    checkEquals("outro", copy.getCompoundTag("display").getString("Name"), "copy changed");
+    checkEquals((short) 5, copy.getTagList("ench", 10).getCompoundTagAt(0).getShort("lvl"), "copy list changed");
+  }
+
+  public static void testOriginalIsolatedFromCopy() {
+    NBTTagCompound original = NBTSamples.everything();
+    NBTTagCompound copy = (NBTTagCompound) original.copy();
+
+    original.getCompoundTag("display").getTagList("Lore", 8).removeTag(0);
+    original.getTagList("packedInts", 3).appendInt(99);
+    original.removeTag("string");
+
+    checkEquals(NBTSamples.everything(), copy, "copy unchanged");
+  }
+
+  public static void testArraysAreNotShared() {
+    NBTTagCompound original = NBTSamples.everything();
+    NBTTagCompound copy = (NBTTagCompound) original.copy();
+
+    copy.getByteArray("bytes")[0] = 42;
+    copy.getIntArray("ints")[0] = 42;
+    copy.getLongArray("longs")[0] = 42L;
+
+    checkEquals(NBTSamples.everything(), original, "original arrays unchanged");
+  }
+
+  public static void testCopyOfCopy() {
+    NBTTagCompound original = NBTSamples.everything();
+    NBTTagCompound first = (NBTTagCompound) original.copy();
+    NBTTagCompound second = (NBTTagCompound) first.copy();
+
+    first.getCompoundTag("display").setString("Name", "first");
+    second.getCompoundTag("display").setString("Name", "second");
+
+    checkEquals("\u00A76Nome", original.getCompoundTag("display").getString("Name"), "original");
+    checkEquals("first", first.getCompoundTag("display").getString("Name"), "first copy");
+    checkEquals("second", second.getCompoundTag("display").getString("Name"), "second copy");
+  }
+
+  public static void testReadTreeIsolated() throws IOException {
+    NBTTagCompound original = NBTSamples.readEverything();
+    NBTTagCompound copy = (NBTTagCompound) original.copy();
+
+    copy.getCompoundTag("display").getTagList("Lore", 8).appendTag(new NBTTagString("x"));
+    original.getTagList("ench", 10).getCompoundTagAt(0).setShort("lvl", (short) 5);
+    copy.getIntArray("ints")[0] = 42;
+
+    NBTTagCompound expected = NBTSamples.everything();
+    expected.getTagList("ench", 10).getCompoundTagAt(0).setShort("lvl", (short) 5);
+    checkEquals(expected, original, "original");
+
+    expected = NBTSamples.everything();
+    expected.getCompoundTag("display").getTagList("Lore", 8).appendTag(new NBTTagString("x"));
+    expected.getIntArray("ints")[0] = 42;
+    checkEquals(expected, copy, "copy");
+  }
+
+  public static void testRetainedChildBeforeCopy() throws IOException {
+    for (NBTTagCompound original : new NBTTagCompound[] {NBTSamples.everything(), NBTSamples.readEverything()}) {
+      NBTTagCompound display = original.getCompoundTag("display");
+      NBTTagList lore = display.getTagList("Lore", 8);
+      NBTTagList ench = original.getTagList("ench", 10);
+      int[] ints = original.getIntArray("ints");
+      NBTTagCompound copy = (NBTTagCompound) original.copy();
+
+      display.setString("Name", "depois");
+      lore.appendTag(new NBTTagString("depois"));
+      ench.getCompoundTagAt(0).setShort("lvl", (short) 9);
+      ints[0] = 42;
+
+      checkEquals(NBTSamples.everything(), copy, "copy unchanged");
+    }
+  }
+
+  public static void testRetainedChildOfCopy() throws IOException {
+    NBTTagCompound original = NBTSamples.readEverything();
+    NBTTagCompound first = (NBTTagCompound) original.copy();
+    NBTTagCompound display = first.getCompoundTag("display");
+    NBTTagCompound second = (NBTTagCompound) first.copy();
+
+    display.setString("Name", "depois");
+
+    checkEquals(NBTSamples.everything(), original, "original unchanged");
+    checkEquals(NBTSamples.everything(), second, "second copy unchanged");
+    checkEquals("depois", first.getCompoundTag("display").getString("Name"), "first copy changed");
+  }
+
+  public static void testRetainedListElementBeforeCopy() throws IOException {
+    NBTTagList ench = NBTSamples.readEverything().getTagList("ench", 10);
+    NBTTagCompound first = ench.getCompoundTagAt(0);
+    NBTTagList copy = (NBTTagList) ench.copy();
+
+    first.setShort("lvl", (short) 9);
+    checkEquals(NBTSamples.everything().getTagList("ench", 10), copy, "copy unchanged");
+  }
+
+  public static void testSetChildIsolatedFromCopy() {
+    NBTTagCompound child = new NBTTagCompound();
+    NBTTagCompound original = new NBTTagCompound();
+    original.setTag("child", child);
+    NBTTagCompound copy = (NBTTagCompound) original.copy();
+
+    child.setInteger("depois", 1);
+    check(copy.getCompoundTag("child").hasNoTags(), "copy unchanged");
+  }
+
+  public static void testReadCopiesOnlyThePath() throws IOException {
+    NBTTagCompound original = NBTSamples.readEverything();
+    NBTTagCompound copy = (NBTTagCompound) original.copy();
+
+    checkEquals("\u00A76Nome", copy.getCompoundTag("display").getString("Name"), "read");
+    check(original.untrackedMap().get("display") != copy.untrackedMap().get("display"), "display copied");
+    check(((NBTTagCompound) copy.untrackedMap().get("display")).isShared(), "display copied in O(1)");
+    check(original.untrackedMap().get("ench") == copy.untrackedMap().get("ench"), "siblings not copied");
+  }
+
+  public static void testUnmodifiedCopyStaysShared() throws IOException {
+    NBTTagCompound original = NBTSamples.readEverything();
+    NBTTagCompound copy = (NBTTagCompound) original.copy();
+
+    check(copy.equals(original), "equal after copy");
+    check(copy.isShared(), "reading with equals does not unshare");
+    checkEquals(original.hashCode(), copy.hashCode(), "same hash");
+  }
+
+  public static void main(String[] args) throws IOException {
+    testCopyIsolatedFromOriginal();
+    testOriginalIsolatedFromCopy();
+    testArraysAreNotShared();
+    testCopyOfCopy();
+    testReadTreeIsolated();
+    testRetainedChildBeforeCopy();
+    testRetainedChildOfCopy();
+    testRetainedListElementBeforeCopy();
+    testSetChildIsolatedFromCopy();
+    testReadCopiesOnlyThePath();
+    testUnmodifiedCopyStaysShared();
+    System.out.println("NBTCopyOnWriteTest ok");
+  }
+}
@@ -0,0 +1,105 @@
+package io.github.bktlib.nbt;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+
+public class NBTDiffTest {
+
+  private static NBTTagCompound modified() {
+    NBTTagCompound tag = NBTSamples.everything();
+    tag.removeTag("short");
+    tag.setString("added", "novo");
+    tag.setInteger("int", 7);
+    tag.getCompoundTag("display").setString("Name", "Outro nome");
+    tag.getCompoundTag("display").getTagList("Lore", 8).appendTag(new NBTTagString("linha 3"));
+
+    NBTTagCompound nested = new NBTTagCompound();
+    nested.setByte("b", (byte) 1);
+    tag.getCompoundTag("compound").setTag("nested", nested);
+    return tag;
+  }
+
+  public static void testApplyGivesTarget() {
+    NBTTagCompound from = NBTSamples.everything();
+    NBTTagCompound to = modified();
+    NBTDiff diff = NBTDiff.compute(from, to);
+
+    NBTTagCompound target = NBTSamples.everything();
+    diff.apply(target);
+    checkEquals(to, target, "applied");
+    checkEquals(NBTSamples.everything(), from, "from unchanged");
+  }
+
+  public static void testPaths() {
+    NBTDiff diff = NBTDiff.compute(NBTSamples.everything(), modified());
+
+    check(diff.getRemovedPaths().contains("short"), "removed " + diff.getRemovedPaths());
+    check(diff.getAddedPaths().contains("added"), "added " + diff.getAddedPaths());
+    check(diff.getAddedPaths().contains("compound.nested"), "added nested " + diff.getAddedPaths());
+    check(diff.getChangedPaths().contains("int"), "changed " + diff.getChangedPaths());
+    check(diff.getChangedPaths().contains("display.Name"), "changed nested " + diff.getChangedPaths());
+    check(diff.getChangedPaths().contains("display.Lore"), "list changed as a whole " + diff.getChangedPaths());
+  }
+
+  public static void testPathsCompile() {
+    NBTTagCompound from = new NBTTagCompound();
+    from.setTag("a\"b", new NBTTagCompound());
+    NBTTagCompound to = (NBTTagCompound) from.copy();
+    to.getCompoundTag("a\"b").setInteger("c.d", 1);
+    to.setString("e\\\"]", "f");
+    to.setString("", "vazia");
+
+    NBTDiff diff = NBTDiff.compute(from, to);
+    checkEquals(3, diff.getAddedPaths().size(), "added " + diff.getAddedPaths());
+
+    for (String path : diff.getAddedPaths()) {
+      check(NBTPath.compile(path).get(to) != null, "path " + path);
+    }
+  }
+
+  public static void testEmpty() {
+    NBTDiff diff = NBTDiff.compute(NBTSamples.everything(), NBTSamples.everything());
+    check(diff.isEmpty(), "same tags");
+
+    NBTTagCompound target = NBTSamples.everything();
+    diff.apply(target);
+    checkEquals(NBTSamples.everything(), target, "empty diff changes nothing");
+  }
+
+  public static void testBinaryRoundTrip() throws IOException {
+    NBTTagCompound to = modified();
+    byte[] bytes = NBTDiff.compute(NBTSamples.everything(), to).toByteArray();
+
+    NBTTagCompound target = NBTSamples.everything();
+    NBTDiff.fromByteArray(bytes).apply(target);
+    checkEquals(to, target, "fromByteArray");
+
+    target = NBTSamples.everything();
+    NBTDiff.read(new DataInputStream(new ByteArrayInputStream(bytes)), NBTReadLimiter.INFINITE).apply(target);
+    checkEquals(to, target, "read");
+  }
+
+  public static void testApplyCreatesMissingCompounds() {
+    NBTTagCompound to = modified();
+    NBTDiff diff = NBTDiff.compute(NBTSamples.everything(), to);
+
+    NBTTagCompound target = new NBTTagCompound();
+    diff.apply(target);
+    checkEquals("Outro nome", target.getCompoundTag("display").getString("Name"), "created display");
+    checkEquals((byte) 1, target.getCompoundTag("compound").getCompoundTag("nested").getByte("b"), "created nested");
+  }
+
+  public static void main(String[] args) throws IOException {
+    testApplyGivesTarget();
+    testPaths();
+    testPathsCompile();
+    testEmpty();
+    testBinaryRoundTrip();
+    testApplyCreatesMissingCompounds();
+    System.out.println("NBTDiffTest ok");
+  }
+}
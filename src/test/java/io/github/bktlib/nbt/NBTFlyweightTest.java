@@ -0,0 +1,80 @@
+package io.github.bktlib.nbt;
+
+import java.io.IOException;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+
+public class NBTFlyweightTest {
+
+  /**
+   * @return A instancia da chave guardada no compound.
+   */
+  private static String storedKey(NBTTagCompound tag, String key) {
+    for (String stored : tag.getKeySet()) {
+      if (stored.equals(key)) {
+        return stored;
+      }
+    }
+    throw new AssertionError("missing key " + key);
+  }
+
+  public static void testSettersShareInstances() {
+    NBTTagCompound a = new NBTTagCompound();
+    NBTTagCompound b = new NBTTagCompound();
+    a.setInteger("n", 5);
+    b.setInteger("n", 5);
+    a.setBoolean("flag", true);
+    a.setString("empty", "");
+    a.setInteger("big", 100000);
+    b.setInteger("big", 100000);
+
+    check(a.getTag("n") == b.getTag("n"), "small int shared");
+    check(a.getTag("flag") == NBTTagByte.valueOf((byte) 1), "boolean shared");
+    check(a.getTag("empty") == NBTTagString.valueOf(""), "empty string shared");
+    check(a.getTag("big") != b.getTag("big"), "big int not cached");
+    checkEquals(a.getTag("big"), b.getTag("big"), "big int equal");
+  }
+
+  public static void testSignedZeroKept() {
+    check(NBTTagFloat.valueOf(-0.0F) != NBTTagFloat.valueOf(0.0F), "-0.0f not the cached 0.0f");
+    checkEquals(Float.floatToRawIntBits(-0.0F), Float.floatToRawIntBits(NBTTagFloat.valueOf(-0.0F).getFloat()),
+        "-0.0f bits");
+    checkEquals(Double.doubleToRawLongBits(-0.0D), Double.doubleToRawLongBits(NBTTagDouble.valueOf(-0.0D).getDouble()),
+        "-0.0d bits");
+  }
+
+  public static void testReadSharesValuesAndKeys() throws IOException {
+    NBTTagCompound tag = new NBTTagCompound();
+    tag.setInteger("chaveDoTeste", 7);
+    tag.setTag("display", new NBTTagCompound());
+    NBTTagCompound first = NBTSamples.read(NBTSamples.write(tag));
+    NBTTagCompound second = NBTSamples.read(NBTSamples.write(tag));
+
+    check(storedKey(first, "chaveDoTeste") == storedKey(second, "chaveDoTeste"), "new key interned");
+    check(storedKey(first, "display") == "display", "common key interned");
+    check(first.getTag("chaveDoTeste") == second.getTag("chaveDoTeste"), "small int read shared");
+  }
+
+  public static void testInternerDisabled() throws IOException {
+    NBTTagCompound tag = new NBTTagCompound();
+    tag.setInteger("chaveSemTabela", 1);
+    byte[] data = NBTSamples.write(tag);
+    NBTKeyInterner.setEnabled(false);
+
+    try {
+      check(storedKey(NBTSamples.read(data), "chaveSemTabela") != storedKey(NBTSamples.read(data), "chaveSemTabela"),
+          "keys not interned");
+    } finally {
+      NBTKeyInterner.setEnabled(true);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    testSettersShareInstances();
+    testSignedZeroKept();
+    testReadSharesValuesAndKeys();
+    testInternerDisabled();
+    System.out.println("NBTFlyweightTest ok");
+  }
+}
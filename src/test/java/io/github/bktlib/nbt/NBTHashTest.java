@@ -0,0 +1,183 @@
+package io.github.bktlib.nbt;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+
+public class NBTHashTest {
+
+  private static NBTTagCompound parent(int x) {
+    NBTTagCompound child = new NBTTagCompound();
+    child.setInteger("x", x);
+    NBTTagCompound parent = new NBTTagCompound();
+    parent.setTag("c", child);
+    return parent;
+  }
+
+  public static void testChildRehashedAfterMutation() {
+    NBTTagCompound p = parent(1);
+    p.hashCode();
+
+    p.getCompoundTag("c").setInteger("x", 2);
+    p.getCompoundTag("c").hashCode();
+
+    NBTTagCompound fresh = parent(2);
+    checkEquals(fresh.hashCode(), p.hashCode(), "parent hash after child mutation");
+    check(p.equals(fresh), "parent equals fresh tree");
+    check(fresh.equals(p), "fresh tree equals parent");
+  }
+
+  public static void testChildReferenceKeptAcrossHash() {
+    NBTTagCompound p = parent(1);
+    NBTTagCompound c = p.getCompoundTag("c");
+    int before = p.hashCode();
+
+    c.setInteger("x", 2);
+    c.hashCode();
+    check(p.hashCode() != before, "hash changes with a stale child reference");
+    check(p.equals(parent(2)), "equals with a stale child reference");
+
+    c.setInteger("x", 1);
+    checkEquals(before, p.hashCode(), "hash restored");
+  }
+
+  public static void testListElementMutation() {
+    NBTTagList list = new NBTTagList();
+    NBTTagCompound e = new NBTTagCompound();
+    e.setShort("lvl", (short) 1);
+    list.appendTag(e);
+    NBTTagCompound p = new NBTTagCompound();
+    p.setTag("ench", list);
+    p.hashCode();
+    list.hashCode();
+
+    NBTTagCompound elem = p.getTagList("ench", 10).getCompoundTagAt(0);
+    elem.setShort("lvl", (short) 5);
+    elem.hashCode();
+
+    NBTTagList expectedList = new NBTTagList();
+    NBTTagCompound expectedElem = new NBTTagCompound();
+    expectedElem.setShort("lvl", (short) 5);
+    expectedList.appendTag(expectedElem);
+    NBTTagCompound expected = new NBTTagCompound();
+    expected.setTag("ench", expectedList);
+
+    checkEquals(expectedList.hashCode(), p.getTagList("ench", 10).hashCode(), "list hash");
+    checkEquals(expected.hashCode(), p.hashCode(), "compound hash");
+    check(p.equals(expected), "compound equals");
+  }
+
+  public static void testNestedListMutation() {
+    NBTTagList inner = new NBTTagList();
+    inner.appendTag(NBTTagString.valueOf("a"));
+    NBTTagList outer = new NBTTagList();
+    outer.appendTag(inner);
+    outer.hashCode();
+
+    inner.appendTag(NBTTagString.valueOf("b"));
+    inner.hashCode();
+
+    NBTTagList expectedInner = new NBTTagList();
+    expectedInner.appendTag(NBTTagString.valueOf("a"));
+    expectedInner.appendTag(NBTTagString.valueOf("b"));
+    NBTTagList expected = new NBTTagList();
+    expected.appendTag(expectedInner);
+
+    checkEquals(expected.hashCode(), outer.hashCode(), "outer list hash");
+    check(outer.equals(expected), "outer list equals");
+  }
+
+  public static void testArrayMutation() {
+    NBTTagCompound p = new NBTTagCompound();
+    p.setIntArray("a", new int[] {1, 2});
+    int before = p.hashCode();
+
+    p.getIntArray("a")[0] = 9;
+    check(p.hashCode() != before, "array change invalidates hash");
+
+    NBTTagCompound expected = new NBTTagCompound();
+    expected.setIntArray("a", new int[] {9, 2});
+    check(p.equals(expected), "equals after array change");
+  }
+
+  public static void testCopyOnWrite() {
+    NBTTagCompound original = parent(1);
+    original.hashCode();
+    NBTTagCompound copy = (NBTTagCompound) original.copy();
+    checkEquals(original.hashCode(), copy.hashCode(), "copy shares hash");
+
+    copy.getCompoundTag("c").setInteger("x", 2);
+    copy.getCompoundTag("c").hashCode();
+
+    checkEquals(parent(2).hashCode(), copy.hashCode(), "copy hash after change");
+    checkEquals(parent(1).hashCode(), original.hashCode(), "original hash untouched");
+    check(copy.equals(parent(2)), "copy equals");
+    check(original.equals(parent(1)), "original equals");
+    check(!original.equals(copy), "original and copy differ");
+  }
+
+  public static void testListCopyOnWrite() {
+    NBTTagList list = new NBTTagList();
+    list.appendTag(parent(1));
+    list.hashCode();
+    NBTTagList copy = (NBTTagList) list.copy();
+
+    copy.getCompoundTagAt(0).getCompoundTag("c").setInteger("x", 2);
+    copy.getCompoundTagAt(0).hashCode();
+
+    NBTTagList expected = new NBTTagList();
+    expected.appendTag(parent(2));
+    check(copy.equals(expected), "list copy equals");
+    checkEquals(expected.hashCode(), copy.hashCode(), "list copy hash");
+    check(!list.equals(copy), "original list untouched");
+  }
+
+  public static void testSignedZeroAndNaN() {
+    check(!new NBTTagFloat(0.0F).equals(new NBTTagFloat(-0.0F)), "0.0f != -0.0f");
+    check(!new NBTTagDouble(0.0D).equals(new NBTTagDouble(-0.0D)), "0.0d != -0.0d");
+    check(new NBTTagFloat(Float.NaN).equals(new NBTTagFloat(Float.NaN)), "NaN float equals itself");
+    check(new NBTTagDouble(Double.NaN).equals(new NBTTagDouble(Double.NaN)), "NaN double equals itself");
+
+    NBTTagCompound zero = new NBTTagCompound();
+    zero.setFloat("f", 0.0F);
+    zero.setDouble("d", Double.NaN);
+    NBTTagCompound negativeZero = new NBTTagCompound();
+    negativeZero.setFloat("f", -0.0F);
+    negativeZero.setDouble("d", Double.NaN);
+
+    check(!zero.equals(negativeZero) && !negativeZero.equals(zero), "compounds with 0.0 and -0.0");
+    NBTTagCompound same = (NBTTagCompound) negativeZero.copy();
+    same.setString("x", "y");
+    same.removeTag("x");
+    check(same.equals(negativeZero), "compounds with NaN");
+    checkEquals(same.hashCode(), negativeZero.hashCode(), "same hash with NaN");
+
+    NBTTagList packed = new NBTTagList();
+    NBTTagList boxed = new NBTTagList();
+    packed.appendDouble(Double.NaN);
+    packed.appendDouble(-0.0D);
+    boxed.appendTag(new NBTTagDouble(Double.NaN));
+    boxed.appendTag(new NBTTagDouble(-0.0D));
+    boxed.appendTag(new NBTTagString("x"));
+    boxed.removeTag(2);
+
+    check(packed.equals(boxed) && boxed.equals(packed), "packed and boxed lists with NaN and -0.0");
+    checkEquals(packed.hashCode(), boxed.hashCode(), "packed and boxed hash");
+
+    NBTTagList positive = new NBTTagList();
+    positive.appendDouble(Double.NaN);
+    positive.appendDouble(0.0D);
+    check(!packed.equals(positive), "packed lists with 0.0 and -0.0");
+  }
+
+  public static void main(String[] args) {
+    testChildRehashedAfterMutation();
+    testChildReferenceKeptAcrossHash();
+    testListElementMutation();
+    testNestedListMutation();
+    testArrayMutation();
+    testCopyOnWrite();
+    testListCopyOnWrite();
+    testSignedZeroAndNaN();
+    System.out.println("NBTHashTest ok");
+  }
+}
@@ -0,0 +1,133 @@
+package io.github.bktlib.nbt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+import static io.github.bktlib.nbt.NBTAssert.checkThrows;
+
+public class NBTIOTest {
+
+  private static byte[] compressed(NBTTagCompound compound, NBTCompression compression) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    NBTIO.writeCompressed(compound, out, compression);
+    return out.toByteArray();
+  }
+
+  public static void testRoundTrip() throws IOException {
+    NBTTagCompound tag = NBTSamples.everything();
+
+    for (NBTCompression compression : NBTCompression.values()) {
+      byte[] data = compressed(tag, compression);
+
+      checkEquals(compression, NBTCompression.detect(data[0] & 0xFF, data[1] & 0xFF), compression + " detected");
+      checkEquals(tag, NBTIO.readCompressed(new ByteArrayInputStream(data), compression), compression + " stream");
+      checkEquals(tag, NBTView.wrap(NBTIO.decompress(data, 0, data.length, compression, Long.MAX_VALUE)).toCompound(),
+          compression + " buffer");
+    }
+  }
+
+  public static void testGzipCompatibleWithJdk() throws IOException {
+    NBTTagCompound tag = NBTSamples.everything();
+
+    byte[] ours = compressed(tag, NBTCompression.GZIP);
+    checkEquals(tag, NBTIO.read(new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(ours))),
+        NBTReadLimiter.INFINITE), "read by GZIPInputStream");
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try (DataOutputStream jdk = new DataOutputStream(new GZIPOutputStream(out))) {
+      NBTIO.write(tag, jdk);
+    }
+    checkEquals(tag, NBTIO.readCompressed(new ByteArrayInputStream(out.toByteArray()), NBTCompression.GZIP),
+        "written by GZIPOutputStream");
+  }
+
+  public static void testCorruptGzipTrailer() throws IOException {
+    byte[] data = compressed(NBTSamples.everything(), NBTCompression.GZIP);
+    data[data.length - 5] ^= 1;
+
+    checkThrows(IOException.class, () -> NBTIO.decompress(data, 0, data.length, NBTCompression.GZIP, Long.MAX_VALUE),
+        "buffer");
+  }
+
+  public static void testDecompressRejectsBomb() throws IOException {
+    NBTTagCompound bomb = new NBTTagCompound();
+    bomb.setByteArray("zeros", new byte[1 << 20]);
+
+    for (NBTCompression compression : new NBTCompression[] {NBTCompression.GZIP, NBTCompression.ZLIB}) {
+      byte[] data = compressed(bomb, compression);
+
+      checkThrows(IOException.class, () -> NBTIO.decompress(data, 0, data.length, compression, 65536L),
+          compression + " over the limit");
+
+      ByteBuffer buf = NBTIO.decompress(data, 0, data.length, compression, 2L << 20);
+      checkEquals(bomb, NBTView.wrap(buf).toCompound(), compression + " under the limit");
+    }
+  }
+
+  public static void testParallelReaderUsesLimiter() throws IOException {
+    NBTTagCompound bomb = new NBTTagCompound();
+    bomb.setByteArray("zeros", new byte[1 << 20]);
+    byte[] data = compressed(bomb, NBTCompression.GZIP);
+
+    NBTParallelReader reader = new NBTParallelReader(ForkJoinPool.commonPool());
+    checkThrows(IOException.class, () -> reader.readCompressed(data, NBTCompression.GZIP, new NBTReadLimiter(65536L)),
+        "inflated size over the limiter");
+  }
+
+  /**
+   * Stream que entrega um byte por vez e nunca pula nada, como alguns
+   * streams de rede.
+   */
+  private static InputStream trickle(byte[] data) {
+    return new FilterInputStream(new ByteArrayInputStream(data)) {
+      public int read(byte[] b, int off, int len) throws IOException {
+        return super.read(b, off, Math.min(len, 1));
+      }
+
+      public long skip(long n) {
+        return 0L;
+      }
+    };
+  }
+
+  public static void testGzipHeaderFieldsOnTrickleStream() throws IOException {
+    NBTTagCompound tag = new NBTTagCompound();
+    tag.setString("name", "test");
+    byte[] plain = compressed(tag, NBTCompression.GZIP);
+
+    /* Mesmo deflate com FNAME e FHCRC no header. */
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(plain, 0, 3);
+    out.write(8 | 2);
+    out.write(plain, 4, 6);
+    out.write("level.dat\0".getBytes("ISO-8859-1"));
+    out.write(new byte[2]);
+    out.write(plain, 10, plain.length - 10);
+    byte[] data = out.toByteArray();
+
+    checkEquals(tag, NBTIO.readCompressed(trickle(data), NBTCompression.GZIP), "stream");
+    checkEquals(tag, NBTView.wrap(NBTIO.decompress(data, 0, data.length, NBTCompression.GZIP, 1024L)).toCompound(),
+        "buffer");
+  }
+
+  public static void main(String[] args) throws IOException {
+    testRoundTrip();
+    testGzipCompatibleWithJdk();
+    testCorruptGzipTrailer();
+    testDecompressRejectsBomb();
+    testParallelReaderUsesLimiter();
+    testGzipHeaderFieldsOnTrickleStream();
+    System.out.println("NBTIOTest ok");
+  }
+}
@@ -0,0 +1,150 @@
+package io.github.bktlib.nbt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+import static io.github.bktlib.nbt.NBTAssert.checkThrows;
+
+public class NBTParallelReaderTest {
+
+  private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+  private static NBTTagCompound items(int count) {
+    NBTTagList list = new NBTTagList();
+
+    for (int i = 0; i < count; ++i) {
+      NBTTagCompound item = new NBTTagCompound();
+      item.setString("id", "minecraft:stone");
+      item.setInteger("slot", i);
+      item.setByteArray("data", new byte[64]);
+      list.appendTag(item);
+    }
+
+    NBTTagCompound root = new NBTTagCompound();
+    root.setTag("items", list);
+    return root;
+  }
+
+  private static NBTTagCompound chunk() {
+    NBTTagList entities = new NBTTagList();
+    NBTTagList names = new NBTTagList();
+    NBTTagList sections = new NBTTagList();
+
+    for (int i = 0; i < 1500; ++i) {
+      NBTTagCompound entity = NBTSamples.everything();
+      entity.setInteger("index", i);
+      entities.appendTag(entity);
+      names.appendTag(new NBTTagString("entidade \u00E7 " + i));
+
+      NBTTagList section = new NBTTagList();
+
+      for (int j = 0; j < i % 5; ++j) {
+        section.appendInt(i * j);
+      }
+      sections.appendTag(section);
+    }
+
+    NBTTagCompound root = new NBTTagCompound();
+    root.setTag("entities", entities);
+    root.setTag("names", names);
+    root.setTag("sections", sections);
+    root.setTag("small", NBTSamples.everything());
+    return root;
+  }
+
+  public static void testSameAsSequential() throws IOException {
+    NBTTagCompound tag = chunk();
+    byte[] data = NBTSamples.write(tag);
+    NBTTagCompound sequential = NBTSamples.read(data);
+
+    for (int minElements : new int[] {1, 64, NBTParallelReader.DEFAULT_MIN_ELEMENTS, Integer.MAX_VALUE}) {
+      NBTTagCompound parallel = new NBTParallelReader(POOL, minElements).read(ByteBuffer.wrap(data));
+      checkEquals(sequential, parallel, "minElements " + minElements);
+      checkEquals(tag, parallel, "original, minElements " + minElements);
+    }
+
+    ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+    direct.put(data).flip();
+    checkEquals(sequential, new NBTParallelReader(POOL, 64).read(direct), "direct buffer");
+  }
+
+  public static void testCompressedSameAsSequential() throws IOException {
+    NBTTagCompound tag = chunk();
+
+    for (NBTCompression compression : NBTCompression.values()) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      NBTIO.writeCompressed(tag, out, compression);
+      byte[] data = out.toByteArray();
+
+      checkEquals(NBTIO.readCompressed(new ByteArrayInputStream(data), compression),
+          new NBTParallelReader(POOL, 64).readCompressed(data, compression), compression.toString());
+    }
+  }
+
+  public static void testInflatedSizeCappedWithoutLimit() throws IOException {
+    /* Poucos KB compactados que viram mais que o teto ao descompactar. */
+    NBTTagCompound tag = new NBTTagCompound();
+    tag.setByteArray("bomb", new byte[(int) NBTIO.DEFAULT_MAX_INFLATED]);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    NBTIO.writeCompressed(tag, out, NBTCompression.GZIP);
+    byte[] data = out.toByteArray();
+
+    checkThrows(IOException.class, () -> new NBTParallelReader(POOL, 64).readCompressed(data, NBTCompression.GZIP),
+        "no limiter");
+  }
+
+  public static void testLimiterSharedBetweenParts() throws IOException {
+    byte[] data = items(2000).toByteArray("");
+
+    NBTReadLimiter sequential = new NBTReadLimiter(Long.MAX_VALUE);
+    NBTIO.read(new DataInputStream(new ByteArrayInputStream(data)), sequential);
+    long total = sequential.getRead();
+
+    /*
+        Cada parte sozinha cabe no limite, a lista inteira nao: a leitura tem
+        que parar quando a soma das partes passa do limite, e nao so no join.
+    */
+    List<NBTReadLimiter> forks = new CopyOnWriteArrayList<>();
+    NBTReadLimiter limiter = new NBTReadLimiter(total / 2) {
+      NBTReadLimiter fork() {
+        NBTReadLimiter fork = super.fork();
+        forks.add(fork);
+        return fork;
+      }
+    };
+    checkThrows(RuntimeException.class, () -> new NBTParallelReader(POOL, 64).read(ByteBuffer.wrap(data), limiter),
+        "limit over all the parts");
+
+    long read = 0L;
+
+    for (NBTReadLimiter fork : forks) {
+      read += fork.getRead();
+    }
+    check(read <= total / 2 + 4096, "parts stopped at the limit, read " + read + " of " + total);
+
+    NBTReadLimiter counted = new NBTReadLimiter(Long.MAX_VALUE);
+    new NBTParallelReader(POOL, 64).read(ByteBuffer.wrap(data), counted);
+    checkEquals(total, counted.getRead(), "same total as the sequential read");
+    checkEquals(sequential.getNodes(), counted.getNodes(), "same nodes as the sequential read");
+  }
+
+  public static void main(String[] args) throws IOException {
+    try {
+      testSameAsSequential();
+      testCompressedSameAsSequential();
+      testInflatedSizeCappedWithoutLimit();
+      testLimiterSharedBetweenParts();
+    } finally {
+      POOL.shutdown();
+    }
+    System.out.println("NBTParallelReaderTest ok");
+  }
+}
@@ -0,0 +1,112 @@
+package io.github.bktlib.nbt;
+
+import java.io.IOException;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+import static io.github.bktlib.nbt.NBTAssert.checkThrows;
+
+public class NBTPathTest {
+
+  private static NBTTagCompound item() {
+    NBTTagList lore = new NBTTagList();
+    lore.appendTag(new NBTTagString("a"));
+    lore.appendTag(new NBTTagString("b"));
+
+    NBTTagCompound display = new NBTTagCompound();
+    display.setString("Name", "Sword");
+    display.setTag("Lore", lore);
+
+    NBTTagCompound tag = new NBTTagCompound();
+    tag.setTag("display", display);
+    return tag;
+  }
+
+  public static void testReadsDoNotUnshare() throws IOException {
+    NBTTagCompound original = NBTSamples.read(NBTSamples.write(item()));
+    NBTTagCompound copy = (NBTTagCompound) original.copy();
+
+    checkEquals("b", NBTPath.compile("display.Lore[1]").getString(copy), "get");
+    check(NBTPath.compile("display.Name").has(copy), "has");
+    check(!NBTPath.compile("display.Missing").has(copy), "has missing");
+    check(copy.isShared(), "copy still shared after reads");
+    check(original.isShared(), "original still shared after reads");
+  }
+
+  public static void testSetUnsharesCopy() {
+    NBTTagCompound original = item();
+    NBTTagCompound copy = (NBTTagCompound) original.copy();
+
+    NBTPath.compile("display.Lore[1]").set(copy, new NBTTagString("c"));
+    checkEquals("c", NBTPath.compile("display.Lore[1]").getString(copy), "copy changed");
+    checkEquals("b", NBTPath.compile("display.Lore[1]").getString(original), "original kept");
+
+    check(NBTPath.compile("display.Name").remove(copy), "removed");
+    checkEquals("Sword", NBTPath.compile("display.Name").getString(original), "original kept after remove");
+  }
+
+  public static void testGet() {
+    NBTTagCompound tag = NBTSamples.everything();
+
+    checkEquals(2, NBTPath.compile("ench[1].lvl").getInt(tag), "list of compounds");
+    checkEquals(2000 - 7, NBTPath.compile("packedInts[2]").getInt(tag), "packed list");
+    checkEquals(-2.0D, NBTPath.compile("matrix[2][1]").getDouble(tag), "list of lists");
+    checkEquals(null, NBTPath.compile("ench[9].lvl").get(tag), "index out of the list");
+    checkEquals(null, NBTPath.compile("int.x").get(tag), "key inside a number");
+    checkEquals("def", NBTPath.compile("display.Missing").getString(tag, "def"), "default");
+  }
+
+  public static void testQuotedKeys() {
+    NBTTagCompound tag = new NBTTagCompound();
+    NBTTagCompound inner = new NBTTagCompound();
+    inner.setString("aspa\"e\\barra", "ok");
+    tag.setTag("com.ponto", inner);
+
+    checkEquals("ok", NBTPath.compile("\"com.ponto\".\"aspa\\\"e\\\\barra\"").getString(tag), "escaped key");
+    checkThrows(IllegalArgumentException.class, () -> NBTPath.compile("\"aberta\\\""), "escaped closing quote");
+  }
+
+  public static void testMissingPathNotCreated() {
+    NBTTagCompound tag = new NBTTagCompound();
+    NBTPath.compile("display.Lore[0]").get(tag);
+    check(tag.hasNoTags(), "get does not create compounds");
+  }
+
+  public static void testSetCreatesPath() {
+    NBTTagCompound tag = new NBTTagCompound();
+    NBTPath.compile("BlockEntityTag.\"weird.key\"[0].x").set(tag, new NBTTagInt(3));
+
+    NBTTagCompound expected = new NBTTagCompound();
+    NBTTagCompound inner = new NBTTagCompound();
+    inner.setInteger("x", 3);
+    NBTTagList list = new NBTTagList();
+    list.appendTag(inner);
+    NBTTagCompound blockEntity = new NBTTagCompound();
+    blockEntity.setTag("weird.key", list);
+    expected.setTag("BlockEntityTag", blockEntity);
+
+    checkEquals(expected, tag, "created path");
+  }
+
+  public static void testSetErrors() {
+    NBTTagCompound tag = NBTSamples.everything();
+
+    checkThrows(IllegalArgumentException.class, () -> NBTPath.compile("int.x").set(tag, new NBTTagInt(1)),
+        "through a number");
+    checkThrows(IllegalArgumentException.class, () -> NBTPath.compile("ench[5]").set(tag, new NBTTagCompound()),
+        "index after the end");
+    checkThrows(IllegalArgumentException.class, () -> NBTPath.compile("packedInts[0]").set(tag, new NBTTagString("x")),
+        "wrong element type");
+  }
+
+  public static void main(String[] args) throws IOException {
+    testGet();
+    testQuotedKeys();
+    testMissingPathNotCreated();
+    testSetCreatesPath();
+    testSetErrors();
+    testReadsDoNotUnshare();
+    testSetUnsharesCopy();
+    System.out.println("NBTPathTest ok");
+  }
+}
@@ -0,0 +1,160 @@
+package io.github.bktlib.nbt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+import static io.github.bktlib.nbt.NBTAssert.checkThrows;
+
+public class NBTReadLimiterTest {
+
+  private static byte[] bytes(NBTTagCompound compound) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    NBTIO.write(compound, new DataOutputStream(out));
+    return out.toByteArray();
+  }
+
+  private static DataInputStream input(byte[] data) {
+    return new DataInputStream(new ByteArrayInputStream(data));
+  }
+
+  private static NBTTagCompound nested(int depth) {
+    NBTTagCompound root = new NBTTagCompound();
+    NBTTagCompound current = root;
+
+    for (int i = 0; i < depth; ++i) {
+      NBTTagCompound child = new NBTTagCompound();
+      current.setTag("c", child);
+      current = child;
+    }
+    current.setInteger("x", 1);
+    return root;
+  }
+
+  /**
+   * Compound raiz com uma unica entrada {@code type}/"a" cujo payload comeca
+   * com {@code length} e termina ali, como um pacote malicioso.
+   */
+  private static byte[] truncated(int type, int length, boolean shortLength) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(10);
+    out.writeUTF("");
+    out.writeByte(type);
+    out.writeUTF("a");
+
+    if (shortLength) {
+      out.writeShort(length);
+    } else {
+      out.writeInt(length);
+    }
+    return bytes.toByteArray();
+  }
+
+  public static void testAccumulatesAcrossTags() throws IOException {
+    NBTTagCompound tag = new NBTTagCompound();
+    tag.setByteArray("data", new byte[600]);
+    byte[] data = bytes(tag);
+
+    NBTReadLimiter limiter = new NBTReadLimiter(1000L);
+    NBTIO.read(input(data), limiter);
+    check(limiter.getRead() >= 600, "first read counted");
+
+    checkThrows(RuntimeException.class, () -> NBTIO.read(input(data), limiter), "second read over the total");
+  }
+
+  public static void testResetKeepsPeak() throws IOException {
+    NBTTagCompound tag = new NBTTagCompound();
+    tag.setByteArray("data", new byte[600]);
+    byte[] data = bytes(tag);
+
+    NBTReadLimiter limiter = new NBTReadLimiter(1000L, 64, 100L);
+    NBTIO.read(input(data), limiter);
+    long read = limiter.getRead();
+
+    limiter.reset();
+    checkEquals(0L, limiter.getRead(), "read after reset");
+    checkEquals(0L, limiter.getNodes(), "nodes after reset");
+    checkEquals(0, limiter.getPeakDepth(), "peak depth after reset");
+    checkEquals(read, limiter.getPeak(), "peak kept after reset");
+
+    NBTIO.read(input(bytes(nested(3))), limiter);
+    checkEquals(read, limiter.getPeak(), "peak is the largest read");
+    check(limiter.getPeakDepth() >= 3, "peak depth of the second read");
+  }
+
+  public static void testLargeArrayLengthDoesNotOverflow() throws IOException {
+    /* 32 * 2^27 e 8 * 2^29 passam de Integer.MAX_VALUE: em int viravam 0. */
+    byte[] ints = truncated(11, 1 << 27, false);
+    byte[] longs = truncated(12, 1 << 29, false);
+    byte[] raw = truncated(7, Integer.MAX_VALUE, false);
+
+    checkThrows(RuntimeException.class, () -> NBTIO.read(input(ints), new NBTReadLimiter(1048576L)), "int[]");
+    checkThrows(RuntimeException.class, () -> NBTIO.read(input(longs), new NBTReadLimiter(1048576L)), "long[]");
+    checkThrows(RuntimeException.class, () -> NBTIO.read(input(raw), new NBTReadLimiter(1048576L)), "byte[]");
+  }
+
+  public static void testStringChargedBeforeDecode() throws IOException {
+    byte[] data = truncated(8, 60000, true);
+    checkThrows(RuntimeException.class, () -> NBTIO.read(input(data), new NBTReadLimiter(1000L)), "tree reader");
+
+    NBTReader reader = new NBTReader(input(data), new NBTReadLimiter(1000L));
+    reader.nextTag();
+    reader.beginCompound();
+    reader.nextTag();
+    checkThrows(RuntimeException.class, reader::readString, "pull reader");
+  }
+
+  public static void testSkipUsesLimiterDepth() throws IOException {
+    byte[] data = bytes(nested(10));
+
+    NBTReader reader = new NBTReader(input(data), new NBTReadLimiter(Long.MAX_VALUE, 4, Long.MAX_VALUE));
+    reader.nextTag();
+    checkThrows(RuntimeException.class, reader::skipValue, "skipValue");
+
+    NBTReader deep = new NBTReader(input(data), new NBTReadLimiter(Long.MAX_VALUE, 16, Long.MAX_VALUE));
+    deep.nextTag();
+    deep.skipValue();
+  }
+
+  public static void testSkipChargesPayload() throws IOException {
+    NBTTagCompound tag = new NBTTagCompound();
+    tag.setByteArray("data", new byte[600]);
+
+    NBTReadLimiter limiter = new NBTReadLimiter(1000L);
+    NBTReader reader = new NBTReader(input(bytes(tag)), limiter);
+    reader.nextTag();
+    reader.skipValue();
+    check(limiter.getRead() >= 600, "skipped bytes counted: " + limiter.getRead());
+
+    checkThrows(RuntimeException.class, () -> {
+      NBTReader small = new NBTReader(input(bytes(tag)), new NBTReadLimiter(100L));
+      small.nextTag();
+      small.skipValue();
+    }, "skip over the limit");
+  }
+
+  public static void testViewMaxDepth() throws IOException {
+    ByteBuffer buf = ByteBuffer.wrap(bytes(nested(10)));
+
+    checkThrows(RuntimeException.class, () -> NBTView.wrap(buf, 4).getKeySet(), "view");
+    checkThrows(RuntimeException.class, () -> LazyNBTTagCompound.wrap(buf, 4), "lazy compound");
+    checkEquals(1, NBTView.wrap(buf, 16).size(), "view under the limit");
+  }
+
+  public static void main(String[] args) throws IOException {
+    testAccumulatesAcrossTags();
+    testResetKeepsPeak();
+    testLargeArrayLengthDoesNotOverflow();
+    testStringChargedBeforeDecode();
+    testSkipUsesLimiterDepth();
+    testSkipChargesPayload();
+    testViewMaxDepth();
+    System.out.println("NBTReadLimiterTest ok");
+  }
+}
@@ -0,0 +1,135 @@
+package io.github.bktlib.nbt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+import static io.github.bktlib.nbt.NBTAssert.checkThrows;
+
+public class NBTReaderTest {
+
+  private static NBTReader reader(byte[] data) {
+    return new NBTReader(new DataInputStream(new ByteArrayInputStream(data)));
+  }
+
+  /**
+   * Monta a arvore so com as chamadas do leitor pull.
+   */
+  private static NBTBase readValue(NBTReader reader, byte type) throws IOException {
+    switch (type) {
+      case 1:
+        return new NBTTagByte(reader.readByte());
+
+      case 2:
+        return new NBTTagShort(reader.readShort());
+
+      case 3:
+        return new NBTTagInt(reader.readInt());
+
+      case 4:
+        return new NBTTagLong(reader.readLong());
+
+      case 5:
+        return new NBTTagFloat(reader.readFloat());
+
+      case 6:
+        return new NBTTagDouble(reader.readDouble());
+
+      case 7:
+        return new NBTTagByteArray(reader.readByteArray());
+
+      case 8:
+        return new NBTTagString(reader.readString());
+
+      case 9: {
+        NBTTagList list = new NBTTagList();
+        reader.beginList();
+        byte b;
+
+        while ((b = reader.nextTag()) != 0) {
+          list.appendTag(readValue(reader, b));
+        }
+        reader.endList();
+        return list;
+      }
+
+      case 10: {
+        NBTTagCompound compound = new NBTTagCompound();
+        reader.beginCompound();
+        byte b;
+
+        while ((b = reader.nextTag()) != 0) {
+          String name = reader.name();
+          compound.setTag(name, readValue(reader, b));
+        }
+        reader.endCompound();
+        return compound;
+      }
+
+      case 11:
+        return new NBTTagIntArray(reader.readIntArray());
+
+      case 12:
+        return new NBTTagLongArray(reader.readLongArray());
+
+      default:
+        throw new IOException("Unexpected type " + type);
+    }
+  }
+
+  public static void testSameTreeAsTreeReader() throws IOException {
+    NBTTagCompound tag = NBTSamples.everything();
+    byte[] data = NBTSamples.write(tag);
+    NBTReader reader = reader(data);
+
+    checkEquals((byte) 10, reader.nextTag(), "root type");
+    checkEquals(NBTSamples.read(data), readValue(reader, (byte) 10), "pull reader vs tree reader");
+    checkEquals(tag, NBTSamples.read(data), "tree reader round-trip");
+  }
+
+  public static void testFindTagSkipsTheRest() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(NBTSamples.write(NBTSamples.everything()));
+
+    NBTTagCompound second = new NBTTagCompound();
+    second.setString("next", "ok");
+    out.write(NBTSamples.write(second));
+
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    NBTReader reader = new NBTReader(input);
+    reader.nextTag();
+    reader.beginCompound();
+
+    checkEquals((byte) 10, reader.findTag("display"), "display type");
+    reader.beginCompound();
+    checkEquals((byte) 9, reader.findTag("Lore"), "Lore type");
+    checkEquals(2, reader.beginList(), "Lore size");
+    reader.nextTag();
+    checkEquals("linha 1", reader.readString(), "first line");
+    reader.endList();
+    reader.endCompound();
+
+    checkEquals((byte) 0, reader.findTag("missing"), "missing key");
+    reader.endCompound();
+
+    /* O stream tem que ter parado logo apos a primeira raiz. */
+    checkEquals(second, NBTIO.read(input, NBTReadLimiter.INFINITE), "next root");
+  }
+
+  public static void testWrongTypeThrows() throws IOException {
+    NBTReader reader = reader(NBTSamples.write(NBTSamples.everything()));
+    reader.nextTag();
+    reader.beginCompound();
+    reader.findTag("int");
+    checkThrows(IllegalStateException.class, reader::readString, "readString on an int");
+  }
+
+  public static void main(String[] args) throws IOException {
+    testSameTreeAsTreeReader();
+    testFindTagSkipsTheRest();
+    testWrongTypeThrows();
+    System.out.println("NBTReaderTest ok");
+  }
+}
@@ -0,0 +1,94 @@
+package io.github.bktlib.nbt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Tags de exemplo usadas pelos testes de NBT.
+ */
+final class NBTSamples {
+
+  private NBTSamples() {}
+
+  /**
+   * @return Um compound com todos os tipos de tag, listas empacotadas e de
+   * compounds, strings com caracteres fora do ASCII e valores vazios.
+   */
+  static NBTTagCompound everything() {
+    NBTTagCompound tag = new NBTTagCompound();
+    tag.setByte("byte", (byte) -7);
+    tag.setShort("short", (short) 1234);
+    tag.setInteger("int", Integer.MIN_VALUE);
+    tag.setLong("long", Long.MAX_VALUE);
+    tag.setFloat("float", 1.5F);
+    tag.setDouble("double", -0.25D);
+    tag.setString("string", "Espada de diamante \u00E7\u00E3o \u2603 \uD83D\uDE00 \u0000");
+    tag.setString("empty", "");
+    tag.setByteArray("bytes", new byte[] {0, 1, -1, 127, -128});
+    tag.setIntArray("ints", new int[] {1, -2, Integer.MAX_VALUE});
+    tag.setLongArray("longs", new long[] {Long.MIN_VALUE, 0L, 42L});
+    tag.setTag("compound", new NBTTagCompound());
+    tag.setTag("emptyList", new NBTTagList());
+
+    NBTTagList packedInts = new NBTTagList();
+    NBTTagList packedDoubles = new NBTTagList();
+
+    for (int i = 0; i < 20; ++i) {
+      packedInts.appendInt(i * 1000 - 7);
+      packedDoubles.appendDouble(i / 3.0D);
+    }
+    tag.setTag("packedInts", packedInts);
+    tag.setTag("packedDoubles", packedDoubles);
+
+    NBTTagList enchantments = new NBTTagList();
+
+    for (int i = 0; i < 3; ++i) {
+      NBTTagCompound ench = new NBTTagCompound();
+      ench.setShort("id", (short) (16 + i));
+      ench.setShort("lvl", (short) (i + 1));
+      enchantments.appendTag(ench);
+    }
+    tag.setTag("ench", enchantments);
+
+    NBTTagList lore = new NBTTagList();
+    lore.appendTag(new NBTTagString("linha 1"));
+    lore.appendTag(new NBTTagString("\"aspas\" e 'apostrofos'"));
+
+    NBTTagCompound display = new NBTTagCompound();
+    display.setString("Name", "\u00A76Nome");
+    display.setTag("Lore", lore);
+    tag.setTag("display", display);
+
+    NBTTagList matrix = new NBTTagList();
+
+    for (int i = 0; i < 3; ++i) {
+      NBTTagList row = new NBTTagList();
+      row.appendLong(i);
+      row.appendLong(-i);
+      matrix.appendTag(row);
+    }
+    tag.setTag("matrix", matrix);
+    return tag;
+  }
+
+  /**
+   * {@link #everything()} lido dos bytes: nenhum valor saiu por um getter
+   * ainda, entao o {@code copy()} compartilha os mapas.
+   */
+  static NBTTagCompound readEverything() throws IOException {
+    return read(write(everything()));
+  }
+
+  static byte[] write(NBTTagCompound compound) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    NBTIO.write(compound, new DataOutputStream(out));
+    return out.toByteArray();
+  }
+
+  static NBTTagCompound read(byte[] data) throws IOException {
+    return NBTIO.read(new DataInputStream(new ByteArrayInputStream(data)), NBTReadLimiter.INFINITE);
+  }
+}
@@ -0,0 +1,55 @@
+package io.github.bktlib.nbt;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+import static io.github.bktlib.nbt.NBTAssert.checkThrows;
+
+public class NBTSizeTest {
+
+  public static void testSizeMatchesStream() throws IOException {
+    NBTTagCompound tag = NBTSamples.everything();
+    tag.setString("utf", "\u0000 \u00E7 \uD83D\uDE00");
+    byte[] data = NBTSamples.write(tag);
+
+    checkEquals(data.length, tag.sizeOfNamed(""), "sizeOfNamed");
+    checkEquals(data, tag.toByteArray(""), "toByteArray");
+
+    for (String key : tag.getKeySet()) {
+      NBTBase value = tag.getTag(key);
+      checkEquals(3 + key.length() + value.sizeOf(), value.toByteArray(key).length, "sizeOf " + key);
+    }
+  }
+
+  public static void testWriteNamedAtPosition() {
+    NBTTagCompound tag = NBTSamples.everything();
+    int size = tag.sizeOfNamed("root");
+    ByteBuffer buf = ByteBuffer.allocate(size + 10);
+    buf.position(4);
+
+    tag.writeNamed("root", buf);
+
+    checkEquals(4 + size, buf.position(), "position advanced by the size");
+    checkEquals(tag.toByteArray("root"), Arrays.copyOfRange(buf.array(), 4, 4 + size), "bytes");
+  }
+
+  public static void testOverflowWritesNothing() {
+    NBTTagCompound tag = NBTSamples.everything();
+    ByteBuffer buf = ByteBuffer.allocate(tag.sizeOfNamed("") - 1);
+
+    checkThrows(BufferOverflowException.class, () -> tag.writeNamed("", buf), "buffer too small");
+    checkEquals(0, buf.position(), "position unchanged");
+    check(Arrays.equals(new byte[buf.capacity()], buf.array()), "nothing written");
+  }
+
+  public static void main(String[] args) throws IOException {
+    testSizeMatchesStream();
+    testWriteNamedAtPosition();
+    testOverflowWritesNothing();
+    System.out.println("NBTSizeTest ok");
+  }
+}
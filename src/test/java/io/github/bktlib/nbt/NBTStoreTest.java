@@ -0,0 +1,86 @@
+package io.github.bktlib.nbt;
+
+import java.io.IOException;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+
+public class NBTStoreTest {
+
+  /**
+   * @return Um compound com as mesmas chaves de {@code count} inteiros,
+   * inseridas em ordem crescente ou decrescente.
+   */
+  private static NBTTagCompound numbers(int count, boolean reversed) {
+    NBTTagCompound tag = new NBTTagCompound();
+
+    for (int i = 0; i < count; ++i) {
+      int n = reversed ? count - 1 - i : i;
+      tag.setInteger("k" + n, n);
+    }
+    return tag;
+  }
+
+  public static void testCanonicalIgnoresKeyOrder() throws IOException {
+    for (int count : new int[] {3, NBTCompoundMap.THRESHOLD * 4}) {
+      NBTTagCompound a = numbers(count, false);
+      NBTTagCompound b = numbers(count, true);
+      a.setTag("inner", numbers(count, true));
+      b.setTag("inner", numbers(count, false));
+
+      byte[] canonical = NBTCanonical.toByteArray(a);
+      checkEquals(canonical, NBTCanonical.toByteArray(b), "same bytes for " + count + " keys");
+      checkEquals(NBTCanonical.hash(a), NBTCanonical.hash(b), "same hash for " + count + " keys");
+      checkEquals(a, NBTSamples.read(canonical), "canonical bytes are valid NBT");
+    }
+
+    NBTTagCompound changed = numbers(3, false);
+    changed.setInteger("k1", 5);
+    check(!NBTCanonical.hash(numbers(3, false)).equals(NBTCanonical.hash(changed)), "different value");
+  }
+
+  public static void testInternDedups() {
+    NBTStore store = new NBTStore();
+    NBTStore.Ref first = store.intern(NBTSamples.everything());
+    NBTStore.Ref second = store.intern(NBTSamples.everything());
+
+    check(first == second, "same ref for equal tags");
+    checkEquals(1, store.size(), "one entry");
+    check(store.get(first.getHash()) == first, "get by hash while the ref is held");
+    check(first.matches(NBTSamples.everything()), "matches");
+    checkEquals(NBTSamples.everything(), first.get(), "stored tag");
+  }
+
+  public static void testStoreIsolatedFromCaller() throws IOException {
+    for (NBTTagCompound tag : new NBTTagCompound[] {NBTSamples.everything(), NBTSamples.readEverything()}) {
+      NBTStore store = new NBTStore();
+      NBTTagCompound display = tag.getCompoundTag("display");
+      NBTStore.Ref ref = store.intern(tag);
+
+      display.setString("Name", "depois do intern");
+      tag.getTagList("ench", 10).getCompoundTagAt(0).setShort("lvl", (short) 9);
+      checkEquals(NBTSamples.everything(), ref.get(), "interned tag changed afterwards");
+
+      ref.get().getCompoundTag("display").setString("Name", "mudado");
+      checkEquals(NBTSamples.everything(), ref.get(), "returned tag changed");
+      check(ref.get() != ref.get(), "a new tree for each get");
+    }
+  }
+
+  public static void testHashingDoesNotTouchTheTag() throws IOException {
+    NBTTagCompound tag = NBTSamples.readEverything();
+    NBTTagList ench = (NBTTagList) tag.untrackedMap().get("ench");
+    NBTCanonical.hash(tag);
+
+    check(((NBTTagCompound) tag.copy()).isShared(), "copy still O(1) after hashing");
+    check(((NBTTagList) ench.copy()).isShared(), "list copy still O(1) after hashing");
+  }
+
+  public static void main(String[] args) throws IOException {
+    testCanonicalIgnoresKeyOrder();
+    testInternDedups();
+    testStoreIsolatedFromCaller();
+    testHashingDoesNotTouchTheTag();
+    System.out.println("NBTStoreTest ok");
+  }
+}
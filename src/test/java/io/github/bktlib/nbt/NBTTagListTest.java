@@ -0,0 +1,130 @@
+package io.github.bktlib.nbt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+import static io.github.bktlib.nbt.NBTAssert.checkThrows;
+
+public class NBTTagListTest {
+
+  private static NBTTagList roundTrip(NBTTagList list) throws IOException {
+    NBTTagCompound root = new NBTTagCompound();
+    root.setTag("list", list);
+    return (NBTTagList) NBTSamples.read(NBTSamples.write(root)).getTag("list");
+  }
+
+  public static void testPackedRoundTrip() throws IOException {
+    NBTTagList bytes = new NBTTagList();
+    NBTTagList shorts = new NBTTagList();
+    NBTTagList ints = new NBTTagList();
+    NBTTagList longs = new NBTTagList();
+    NBTTagList floats = new NBTTagList();
+    NBTTagList doubles = new NBTTagList();
+
+    for (int i = -50; i < 50; ++i) {
+      bytes.appendByte((byte) i);
+      shorts.appendShort((short) (i * 300));
+      ints.appendInt(i * 100000);
+      longs.appendLong(i * 10000000000L);
+      floats.appendFloat(i / 7.0F);
+      doubles.appendDouble(i / 7.0D);
+    }
+
+    for (NBTTagList list : new NBTTagList[] {bytes, shorts, ints, longs, floats, doubles}) {
+      String type = NBTReader.typeName((byte) list.getTagType());
+      check(list.isPacked(), type + " list is packed");
+
+      NBTTagList read = roundTrip(list);
+      checkEquals(list, read, type + " round-trip");
+      check(read.isPacked(), type + " list is packed after reading");
+      checkEquals(list.hashCode(), read.hashCode(), type + " hash");
+    }
+
+    checkEquals(-50, roundTrip(ints).getInt(0) / 100000, "first int");
+    checkEquals(49 / 7.0D, roundTrip(doubles).getDouble(99), "last double");
+  }
+
+  public static void testPackedEqualsBoxed() {
+    NBTTagList packed = new NBTTagList();
+    packed.appendInt(1);
+    packed.appendInt(2);
+
+    NBTTagList boxed = NBTTagList.of((byte) 3, new NBTBase[] {new NBTTagInt(1), new NBTTagInt(2)});
+
+    check(packed.equals(boxed), "packed equals boxed");
+    check(boxed.equals(packed), "boxed equals packed");
+    checkEquals(packed.hashCode(), boxed.hashCode(), "same hash");
+  }
+
+  public static void testPackedEdits() throws IOException {
+    NBTTagList list = new NBTTagList();
+
+    for (int i = 0; i < 10; ++i) {
+      list.appendTag(new NBTTagLong(i));
+    }
+
+    list.set(3, new NBTTagLong(-3L));
+    list.removeTag(0);
+
+    checkEquals(9, list.tagCount(), "size after remove");
+    checkEquals(-3L, list.getLong(2), "set value");
+    checkEquals(new NBTTagLong(9L), list.get(8), "boxed element");
+    checkEquals(list, roundTrip(list), "round-trip after edits");
+  }
+
+  public static void testListOfLists() throws IOException {
+    NBTTagList matrix = NBTSamples.everything().getTagList("matrix", 9);
+    NBTTagList read = roundTrip(matrix);
+
+    checkEquals(matrix, read, "round-trip");
+    checkEquals(-2L, ((NBTTagList) read.get(2)).getLong(1), "nested value");
+  }
+
+  public static void testNegativeCountRejected() throws IOException {
+    NBTTagList list = new NBTTagList();
+    list.appendTag(new NBTTagCompound());
+    NBTTagCompound root = new NBTTagCompound();
+    root.setTag("c", list);
+    byte[] data = NBTSamples.write(root);
+
+    /* Raiz (3 bytes), tipo e nome "c" (4 bytes) e o tipo dos elementos. */
+    ByteBuffer.wrap(data).putInt(3 + 4 + 1, -1);
+
+    checkThrows(IOException.class, () -> NBTSamples.read(data), "tree reader");
+    checkThrows(IOException.class, () -> {
+      NBTReader reader = new NBTReader(input(data));
+      reader.nextTag();
+      reader.beginCompound();
+      reader.findTag("c");
+      reader.beginList();
+    }, "pull reader");
+    checkThrows(IOException.class, () -> NBTVisitor.walk(input(data), new NBTVisitor() {}), "visitor");
+    checkThrows(IOException.class, () -> NBTTransformer.renameKeys(Collections.<String, String>emptyMap())
+        .transform(input(data), new DataOutputStream(new ByteArrayOutputStream())), "transformer");
+    checkThrows(IOException.class, () -> new NBTParallelReader(ForkJoinPool.commonPool(), 1)
+        .read(ByteBuffer.wrap(data)), "parallel reader");
+    checkThrows(IllegalArgumentException.class, () -> NBTView.wrap(ByteBuffer.wrap(data)).getTagList("c", 10),
+        "view");
+  }
+
+  private static DataInputStream input(byte[] data) {
+    return new DataInputStream(new ByteArrayInputStream(data));
+  }
+
+  public static void main(String[] args) throws IOException {
+    testPackedRoundTrip();
+    testPackedEqualsBoxed();
+    testPackedEdits();
+    testListOfLists();
+    testNegativeCountRejected();
+    System.out.println("NBTTagListTest ok");
+  }
+}
@@ -0,0 +1,58 @@
+package io.github.bktlib.nbt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+
+public class NBTTagLongArrayTest {
+
+  private static final long[] VALUES = {Long.MIN_VALUE, -1L, 0L, 1L, Long.MAX_VALUE};
+
+  public static void testRoundTrip() throws IOException {
+    NBTTagCompound tag = new NBTTagCompound();
+    tag.setLongArray("longs", VALUES);
+    tag.setLongArray("empty", new long[0]);
+    byte[] data = NBTSamples.write(tag);
+
+    NBTTagCompound read = NBTSamples.read(data);
+    checkEquals(VALUES, read.getLongArray("longs"), "tree reader");
+    checkEquals(new long[0], read.getLongArray("empty"), "empty");
+    checkEquals((byte) 12, read.getTag("longs").getId(), "type");
+
+    LongBuffer view = NBTView.wrap(ByteBuffer.wrap(data)).getLongArray("longs");
+    long[] fromView = new long[view.remaining()];
+    view.get(fromView);
+    checkEquals(VALUES, fromView, "view");
+
+    checkEquals(VALUES, LazyNBTTagCompound.wrap(data).getLongArray("longs"), "lazy compound");
+  }
+
+  public static void testCopyAndEquals() {
+    NBTTagLongArray tag = new NBTTagLongArray(VALUES.clone());
+    NBTTagLongArray copy = (NBTTagLongArray) tag.copy();
+
+    check(tag.equals(copy), "copy equals");
+    checkEquals(tag.hashCode(), copy.hashCode(), "copy hash");
+
+    copy.getLongArray()[0] = 5L;
+    checkEquals(VALUES, tag.getLongArray(), "original kept");
+    check(!tag.equals(new NBTTagIntArray(new int[] {0, 1})), "not equal to an int array");
+  }
+
+  public static void testToString() throws NBTException {
+    NBTTagLongArray tag = new NBTTagLongArray(new long[] {1L, 2L});
+
+    checkEquals("[L; 1L, 2L]", tag.toString(), "toString");
+    checkEquals(tag, SNBTParser.parse(tag.toString()), "parsed back");
+  }
+
+  public static void main(String[] args) throws IOException, NBTException {
+    testRoundTrip();
+    testCopyAndEquals();
+    testToString();
+    System.out.println("NBTTagLongArrayTest ok");
+  }
+}
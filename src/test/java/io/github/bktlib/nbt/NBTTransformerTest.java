@@ -0,0 +1,167 @@
+package io.github.bktlib.nbt;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+
+public class NBTTransformerTest {
+
+  private static byte[] transform(NBTTransformer transformer, byte[] data) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    transformer.transform(new DataInputStream(new ByteArrayInputStream(data)), new DataOutputStream(out));
+    return out.toByteArray();
+  }
+
+  public static void testUntouchedIsByteIdentical() throws IOException {
+    byte[] data = NBTSamples.write(NBTSamples.everything());
+
+    checkEquals(data, transform(new NBTTransformer() {}, data), "entering everything");
+    checkEquals(data, transform(new NBTTransformer() {
+      protected boolean enter(String key, byte type) {
+        return false;
+      }
+    }, data), "copying containers whole");
+  }
+
+  public static void testRenameKeepsTheRest() throws IOException {
+    byte[] data = NBTSamples.write(NBTSamples.everything());
+    byte[] renamed = transform(NBTTransformer.renameKeys(ImmutableMap.of("Name", "Nome")), data);
+
+    /* Mesmo tamanho de chave: so o 'a' de "Name" muda. */
+    int changed = 0;
+
+    for (int i = 0; i < data.length; ++i) {
+      changed += data[i] != renamed[i] ? 1 : 0;
+    }
+    checkEquals(data.length, renamed.length, "size");
+    checkEquals(1, changed, "changed bytes");
+
+    NBTTagCompound expected = NBTSamples.everything();
+    NBTTagCompound display = expected.getCompoundTag("display");
+    display.setString("Nome", display.getString("Name"));
+    display.removeTag("Name");
+    checkEquals(expected, NBTSamples.read(renamed), "renamed tree");
+
+    checkEquals(data, transform(NBTTransformer.renameKeys(ImmutableMap.of("Nome", "Name")), renamed), "renamed back");
+  }
+
+  public static void testTransformValue() throws IOException {
+    byte[] data = NBTSamples.write(NBTSamples.everything());
+    byte[] out = transform(new NBTTransformer() {
+      protected boolean transforms(String key, byte type) {
+        return "lvl".equals(key);
+      }
+
+      protected NBTBase transformValue(String key, NBTBase value) {
+        return NBTTagShort.valueOf((short) (((NBTTagShort) value).getShort() + 10));
+      }
+    }, data);
+
+    NBTTagCompound expected = NBTSamples.everything();
+    NBTTagList ench = expected.getTagList("ench", 10);
+
+    for (int i = 0; i < ench.tagCount(); ++i) {
+      NBTTagCompound entry = ench.getCompoundTagAt(i);
+      entry.setShort("lvl", (short) (entry.getShort("lvl") + 10));
+    }
+    checkEquals(expected, NBTSamples.read(out), "values rewritten");
+  }
+
+  /**
+   * Anota cada evento do visitor.
+   */
+  private static final class Recorder extends NBTVisitor {
+    final List<String> events = Lists.newArrayList();
+
+    public void visitCompoundStart() {
+      this.events.add("{");
+    }
+
+    public boolean visitKey(String key, byte type) {
+      this.events.add(key + ":" + type);
+      return !key.equals("display");
+    }
+
+    public void visitCompoundEnd() {
+      this.events.add("}");
+    }
+
+    public void visitListStart(byte elementType, int size) {
+      this.events.add("[" + elementType + "x" + size);
+    }
+
+    public void visitListEnd() {
+      this.events.add("]");
+    }
+
+    public void visitByte(byte value) {
+      this.events.add(value + "b");
+    }
+
+    public void visitShort(short value) {
+      this.events.add(value + "s");
+    }
+
+    public void visitInt(int value) {
+      this.events.add(Integer.toString(value));
+    }
+
+    public void visitLong(long value) {
+      this.events.add(value + "L");
+    }
+
+    public void visitFloat(float value) {
+      this.events.add(value + "f");
+    }
+
+    public void visitDouble(double value) {
+      this.events.add(value + "d");
+    }
+
+    public void visitString(String value) {
+      this.events.add('"' + value + '"');
+    }
+
+    public void visitByteArray(byte[] value) {
+      this.events.add("B" + Arrays.toString(value));
+    }
+
+    public void visitIntArray(int[] value) {
+      this.events.add("I" + Arrays.toString(value));
+    }
+
+    public void visitLongArray(long[] value) {
+      this.events.add("L" + Arrays.toString(value));
+    }
+  }
+
+  public static void testVisitorTreeAndStreamAgree() throws IOException {
+    NBTTagCompound tag = NBTSamples.everything();
+    Recorder fromTree = new Recorder();
+    Recorder fromStream = new Recorder();
+
+    NBTVisitor.walk(tag, fromTree);
+    NBTVisitor.walk(new DataInputStream(new ByteArrayInputStream(NBTSamples.write(tag))), fromStream);
+
+    checkEquals(fromTree.events, fromStream.events, "events");
+    checkEquals(-1, fromStream.events.indexOf("\"" + tag.getCompoundTag("display").getString("Name") + "\""),
+        "skipped key not visited");
+  }
+
+  public static void main(String[] args) throws IOException {
+    testUntouchedIsByteIdentical();
+    testRenameKeepsTheRest();
+    testTransformValue();
+    testVisitorTreeAndStreamAgree();
+    System.out.println("NBTTransformerTest ok");
+  }
+}
@@ -0,0 +1,80 @@
+package io.github.bktlib.nbt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+import static io.github.bktlib.nbt.NBTAssert.checkThrows;
+
+public class NBTViewTest {
+
+  public static void testSameValuesAsTree() throws IOException {
+    NBTTagCompound tag = NBTSamples.everything();
+    NBTView view = NBTView.wrap(ByteBuffer.wrap(NBTSamples.write(tag)));
+
+    checkEquals(tag.getKeySet(), view.getKeySet(), "keys");
+    checkEquals(Integer.MIN_VALUE, view.getInteger("int"), "int");
+    checkEquals(Long.MAX_VALUE, view.getLong("long"), "long");
+    checkEquals(tag.getString("string"), view.getString("string"), "string");
+    checkEquals("\u00A76Nome", view.getCompoundTag("display").getString("Name"), "nested string");
+    checkEquals((short) 2, view.getTagList("ench", 10).getCompoundTagAt(1).getShort("lvl"), "list of compounds");
+    checkEquals(13000 - 7, view.getTagList("packedInts", 3).getInt(13), "list of ints");
+    checkEquals(-2L, view.getTagList("matrix", 9).getListAt(2).getLong(1), "list of lists");
+    checkEquals(0, view.getInteger("missing"), "missing key");
+    checkEquals(tag, view.toCompound(), "toCompound");
+  }
+
+  public static void testArraysAreSlices() throws IOException {
+    NBTTagCompound tag = new NBTTagCompound();
+    tag.setIntArray("ints", new int[] {1, 2, 3});
+    byte[] data = NBTSamples.write(tag);
+    IntBuffer ints = NBTView.wrap(ByteBuffer.wrap(data)).getIntArray("ints");
+
+    checkEquals(3, ints.remaining(), "size");
+    check(ints.isReadOnly(), "read only");
+
+    /* O ultimo int do array sao os 4 bytes antes do TAG_End. */
+    data[data.length - 2] = 9;
+    checkEquals(9, ints.get(2), "slice sees the data without a copy");
+  }
+
+  public static void testMappedFile() throws IOException {
+    NBTTagCompound tag = NBTSamples.everything();
+    File file = File.createTempFile("nbtview", ".nbt");
+
+    try {
+      Files.write(file.toPath(), NBTSamples.write(tag));
+      checkEquals(tag, NBTView.map(file).toCompound(), "mapped");
+    } finally {
+      file.delete();
+    }
+  }
+
+  public static void testForgedLengthRejected() throws IOException {
+    NBTTagCompound tag = new NBTTagCompound();
+    tag.setIntArray("ints", new int[] {1, 2});
+    tag.setInteger("after", 5);
+    byte[] data = NBTSamples.write(tag);
+    ByteBuffer buf = ByteBuffer.wrap(data);
+
+    /* 4 * 0x40000000 da 0 em int: sem a conta em long o array parece vazio. */
+    int lengthPos = 3 + 1 + 2 + "ints".length();
+    buf.putInt(lengthPos, 0x40000000);
+    checkThrows(IndexOutOfBoundsException.class, () -> NBTView.wrap(buf).getKeySet(), "int array length");
+
+    buf.putInt(lengthPos, -1);
+    checkThrows(IllegalArgumentException.class, () -> NBTView.wrap(buf).getKeySet(), "negative length");
+  }
+
+  public static void main(String[] args) throws IOException {
+    testSameValuesAsTree();
+    testArraysAreSlices();
+    testMappedFile();
+    testForgedLengthRejected();
+    System.out.println("NBTViewTest ok");
+  }
+}
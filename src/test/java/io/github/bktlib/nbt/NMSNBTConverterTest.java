@@ -0,0 +1,58 @@
+package io.github.bktlib.nbt;
+
+import java.util.Map;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+
+/**
+ * Precisam das classes do NMS, entao rodam dentro do servidor (como o
+ * {@link io.github.bktlib.inventory.ItemsTest}).
+ */
+public class NMSNBTConverterTest {
+
+  /**
+   * {@link NBTSamples#everything()} sem o LONG[], que so existe no NMS a
+   * partir do 1.12.
+   */
+  static NBTTagCompound sample() {
+    NBTTagCompound tag = NBTSamples.everything();
+    tag.removeTag("longs");
+    return tag;
+  }
+
+  public static void testRoundTrip() {
+    NBTTagCompound tag = sample();
+    Object nms = tag.asNMSCompound();
+
+    checkEquals(tag.getKeySet(), NMSNBTConverter.nmsMap(nms).keySet(), "keys");
+    checkEquals(tag, NMSNBTConverter.fromNMS(nms), "fromNMS");
+    checkEquals(tag, NBTTagCompound.fromNMSCompound(nms), "tracked compound");
+  }
+
+  public static void testNoSharedArrays() {
+    NBTTagCompound tag = sample();
+    Object nms = tag.asNMSCompound();
+
+    tag.getByteArray("bytes")[0] = 42;
+    tag.getIntArray("ints")[0] = 42;
+    tag.getCompoundTag("display").setString("Name", "outro");
+
+    checkEquals(sample(), NMSNBTConverter.fromNMS(nms), "NMS tree unchanged");
+  }
+
+  public static void testPatchKeepsCompounds() {
+    Object nms = sample().asNMSCompound();
+    Map<String, Object> map = NMSNBTConverter.nmsMap(nms);
+    Object display = map.get("display");
+
+    NBTTagCompound changed = sample();
+    changed.getCompoundTag("display").setString("Name", "outro");
+    changed.removeTag("int");
+    NMSNBTConverter.patchCompound(nms, changed);
+
+    check(map.get("display") == display, "compound patched in place");
+    check(!map.containsKey("int"), "removed key");
+    checkEquals(changed, NMSNBTConverter.fromNMS(nms), "patched");
+  }
+}
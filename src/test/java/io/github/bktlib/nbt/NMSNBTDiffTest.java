@@ -0,0 +1,36 @@
+package io.github.bktlib.nbt;
+
+import java.util.Map;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+
+/**
+ * Precisam das classes do NMS, entao rodam dentro do servidor (como o
+ * {@link io.github.bktlib.inventory.ItemsTest}).
+ */
+public class NMSNBTDiffTest {
+
+  public static void testApplyToNMS() {
+    NBTTagCompound to = NMSNBTConverterTest.sample();
+    to.getCompoundTag("display").setString("Name", "Outro nome");
+    to.removeTag("short");
+    to.setString("added", "novo");
+    NBTTagCompound created = new NBTTagCompound();
+    created.setByte("b", (byte) 1);
+    to.getCompoundTag("compound").setTag("novo", created);
+
+    Object nms = NMSNBTConverterTest.sample().asNMSCompound();
+    Map<String, Object> map = NMSNBTConverter.nmsMap(nms);
+    Object display = map.get("display");
+    Object lore = NMSNBTConverter.nmsMap(display).get("Lore");
+    Object ench = map.get("ench");
+
+    NBTDiff.compute(NMSNBTConverterTest.sample(), to).applyToNMS(nms);
+
+    checkEquals(to, NMSNBTConverter.fromNMS(nms), "applied");
+    check(map.get("display") == display, "changed compound patched in place");
+    check(NMSNBTConverter.nmsMap(display).get("Lore") == lore, "sibling of a changed key untouched");
+    check(map.get("ench") == ench, "unchanged key untouched");
+  }
+}
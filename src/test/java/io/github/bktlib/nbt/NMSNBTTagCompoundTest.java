@@ -0,0 +1,74 @@
+package io.github.bktlib.nbt;
+
+import java.util.Map;
+
+import static io.github.bktlib.nbt.NBTAssert.check;
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+
+/**
+ * Precisam das classes do NMS, entao rodam dentro do servidor (como o
+ * {@link io.github.bktlib.inventory.ItemsTest}).
+ */
+public class NMSNBTTagCompoundTest {
+
+  public static void testWritesOnlyChangedKeys() {
+    Object nms = NMSNBTConverterTest.sample().asNMSCompound();
+    Map<String, Object> map = NMSNBTConverter.nmsMap(nms);
+    Object display = map.get("display");
+    Object name = NMSNBTConverter.nmsMap(display).get("Name");
+    Object lore = NMSNBTConverter.nmsMap(display).get("Lore");
+    Object ench = map.get("ench");
+
+    NBTTagCompound tracked = NBTTagCompound.fromNMSCompound(nms);
+    tracked.getCompoundTag("display").setString("Name", "novo");
+    tracked.setInteger("int", 3);
+    tracked.asNMSCompound();
+
+    check(map.get("display") == display, "display patched in place");
+    check(NMSNBTConverter.nmsMap(display).get("Name") != name, "changed key written");
+    check(NMSNBTConverter.nmsMap(display).get("Lore") == lore, "sibling key untouched");
+    check(map.get("ench") == ench, "unchanged key untouched");
+
+    NBTTagCompound expected = NMSNBTConverterTest.sample();
+    expected.getCompoundTag("display").setString("Name", "novo");
+    expected.setInteger("int", 3);
+    checkEquals(expected, NMSNBTConverter.fromNMS(nms), "saved");
+  }
+
+  public static void testMutateAfterSave() {
+    Object nms = NMSNBTConverterTest.sample().asNMSCompound();
+    NMSNBTTagCompound tracked = (NMSNBTTagCompound) NBTTagCompound.fromNMSCompound(nms);
+
+    NBTTagList lore = tracked.getCompoundTag("display").getTagList("Lore", 8);
+    int[] ints = tracked.getIntArray("ints");
+    tracked.asNMSCompound();
+
+    lore.appendTag(new NBTTagString("depois do save"));
+    ints[0] = 7;
+    tracked.asNMSCompound();
+
+    NBTTagCompound saved = (NBTTagCompound) NMSNBTConverter.fromNMS(nms);
+    checkEquals(3, saved.getCompoundTag("display").getTagList("Lore", 8).tagCount(), "list changed after a save");
+    checkEquals(7, saved.getIntArray("ints")[0], "array changed after a save");
+
+    lore.appendTag(new NBTTagString("de novo"));
+    tracked.asNMSCompound();
+    checkEquals(4, ((NBTTagCompound) NMSNBTConverter.fromNMS(nms)).getCompoundTag("display").getTagList("Lore", 8)
+        .tagCount(), "list changed after two saves");
+  }
+
+  public static void testSaveDoesNotMarkValues() {
+    NMSNBTTagCompound source = (NMSNBTTagCompound) NBTTagCompound.fromNMSCompound(
+        NMSNBTConverterTest.sample().asNMSCompound());
+    Object nms = new NBTTagCompound().asNMSCompound();
+    NBTTagCompound tracked = NBTTagCompound.fromNMSCompound(nms);
+
+    /* O compound de outra arvore e lido para ser convertido, sem ser marcado. */
+    tracked.setTag("other", source);
+    tracked.asNMSCompound();
+
+    check(!source.isDirty(), "source not marked by the save");
+    checkEquals(NMSNBTConverterTest.sample(),
+        ((NBTTagCompound) NMSNBTConverter.fromNMS(nms)).getCompoundTag("other"), "saved");
+  }
+}
@@ -0,0 +1,86 @@
+package io.github.bktlib.nbt;
+
+import static io.github.bktlib.nbt.NBTAssert.checkEquals;
+import static io.github.bktlib.nbt.NBTAssert.checkThrows;
+
+public class SNBTTest {
+
+  public static void testWriteParseRoundTrip() throws NBTException {
+    NBTTagCompound tag = NBTSamples.everything();
+
+    checkEquals(tag, SNBTParser.parseCompound(SNBTWriter.toString(tag)), "compact");
+    checkEquals(tag, SNBTParser.parseCompound(SNBTWriter.toPrettyString(tag)), "pretty");
+  }
+
+  public static void testEveryTypeRoundTrip() throws NBTException {
+    NBTBase[] values = {
+        new NBTTagByte((byte) -1),
+        new NBTTagShort((short) 300),
+        new NBTTagInt(-5),
+        new NBTTagLong(1L << 40),
+        new NBTTagFloat(0.1F),
+        new NBTTagDouble(1e300),
+        new NBTTagString("com \"aspas\", \\ e 'apostrofo'"),
+        new NBTTagByteArray(new byte[] {1, -2}),
+        new NBTTagIntArray(new int[0]),
+        new NBTTagLongArray(new long[] {-1L, Long.MAX_VALUE}),
+        new NBTTagList(),
+    };
+
+    for (NBTBase value : values) {
+      String snbt = SNBTWriter.toString(value);
+      checkEquals(value, SNBTParser.parse(snbt), snbt);
+    }
+  }
+
+  public static void testNonFiniteRoundTrip() throws NBTException {
+    float[] floats = {Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY};
+    double[] doubles = {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+    NBTTagList list = new NBTTagList();
+
+    for (float value : floats) {
+      NBTBase parsed = SNBTParser.parse(SNBTWriter.toString(new NBTTagFloat(value)));
+      checkEquals((byte) 5, parsed.getId(), "float " + value);
+      checkEquals(Float.floatToIntBits(value), Float.floatToIntBits(((NBTTagFloat) parsed).getFloat()), "float " + value);
+      list.appendFloat(value);
+    }
+
+    for (double value : doubles) {
+      NBTBase parsed = SNBTParser.parse(SNBTWriter.toString(new NBTTagDouble(value)));
+      checkEquals((byte) 6, parsed.getId(), "double " + value);
+      checkEquals(Double.doubleToLongBits(value), Double.doubleToLongBits(((NBTTagDouble) parsed).getDouble()),
+          "double " + value);
+    }
+
+    NBTTagList parsed = (NBTTagList) SNBTParser.parse(SNBTWriter.toString(list));
+    checkEquals(3, parsed.tagCount(), "list size");
+    checkEquals(Float.NEGATIVE_INFINITY, parsed.getFloat(2), "list element");
+    checkEquals((byte) 8, SNBTParser.parse("NaN").getId(), "NaN without a suffix is a string");
+  }
+
+  public static void testKeysNeedingQuotes() throws NBTException {
+    NBTTagCompound tag = new NBTTagCompound();
+    tag.setInteger("com espaco", 1);
+    tag.setInteger("a:b", 2);
+    tag.setInteger("", 3);
+    tag.setInteger("{x}", 4);
+
+    checkEquals(tag, SNBTParser.parseCompound(SNBTWriter.toString(tag)), "quoted keys");
+  }
+
+  public static void testInvalid() {
+    checkThrows(NBTException.class, () -> SNBTParser.parse("{a:1"), "unclosed compound");
+    checkThrows(NBTException.class, () -> SNBTParser.parse("[1, 2b]"), "mixed list");
+    checkThrows(NBTException.class, () -> SNBTParser.parse("{a:1} x"), "trailing data");
+    checkThrows(NBTException.class, () -> SNBTParser.parseCompound("[1]"), "not a compound");
+  }
+
+  public static void main(String[] args) throws NBTException {
+    testWriteParseRoundTrip();
+    testEveryTypeRoundTrip();
+    testNonFiniteRoundTrip();
+    testKeysNeedingQuotes();
+    testInvalid();
+    System.out.println("SNBTTest ok");
+  }
+}